@@ -0,0 +1,170 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Compares a set of JMH results, as written by <code>-rf json</code>, with a baseline recorded
+ * with the same benchmarks, for example by the previous release.
+ * <p>
+ * Usage: <code>BaselineComparison &lt;baseline.json&gt; &lt;results.json&gt; [threshold]</code>,
+ * where the threshold is the relative slowdown considered a regression, 0.1 (10%) by default. The
+ * program prints a report and exits with status 1 if any benchmark regressed beyond the threshold,
+ * and by more than the sum of the score errors. Benchmarks missing from either file are reported,
+ * but do not count as regressions. An empty baseline or results file is an error, exit status 2,
+ * as nothing would be compared.
+ * </p>
+ */
+public class BaselineComparison {
+
+    /**
+     * Default relative slowdown considered a regression
+     */
+    public static final double DEFAULT_THRESHOLD = 0.1;
+
+    /**
+     * A single JMH result
+     */
+    static class Result {
+        String mode;
+
+        double score;
+
+        double error;
+
+        String unit;
+
+        /**
+         * Relative slowdown of this result compared to the baseline one, positive if slower
+         */
+        double slowdown(Result baseline) {
+            double ratio = score / baseline.score;
+            // in throughput mode higher is better, the opposite of the time based modes
+            return "thrpt".equals(mode) ? 1 / ratio - 1 : ratio - 1;
+        }
+
+        boolean regressed(Result baseline, double threshold) {
+            return slowdown(baseline) > threshold
+                    && Math.abs(score - baseline.score) > error + baseline.error;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparison <baseline.json> <results.json> [threshold]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+
+        Map<String, Result> baseline = read(new File(args[0]));
+        if (baseline.isEmpty()) {
+            // an empty baseline would make every result look NEW and the comparison pass
+            System.err.println("The baseline " + args[0] + " holds no results, record it first "
+                    + "on the reference machine, see the benchmark README");
+            System.exit(2);
+        }
+        Map<String, Result> results = read(new File(args[1]));
+        if (results.isEmpty()) {
+            System.err.println("The results " + args[1] + " hold no benchmark, nothing to compare");
+            System.exit(2);
+        }
+        boolean regressed = compare(baseline, results, threshold, System.out);
+        System.exit(regressed ? 1 : 0);
+    }
+
+    /**
+     * Prints the comparison report, returns true if any regression has been found
+     */
+    static boolean compare(Map<String, Result> baseline, Map<String, Result> results,
+            double threshold, PrintStream out) {
+        List<String> regressions = new ArrayList<String>();
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            String key = entry.getKey();
+            Result result = entry.getValue();
+            Result reference = baseline.get(key);
+            if (reference == null) {
+                out.println(String.format(Locale.ENGLISH, "NEW       %s: %.3f %s", key,
+                        result.score, result.unit));
+            } else if (!reference.unit.equals(result.unit) || !reference.mode.equals(result.mode)) {
+                out.println(String.format(Locale.ENGLISH, "SKIPPED   %s: %s/%s vs %s/%s", key,
+                        result.mode, result.unit, reference.mode, reference.unit));
+            } else {
+                boolean regression = result.regressed(reference, threshold);
+                if (regression) {
+                    regressions.add(key);
+                }
+                out.println(String.format(Locale.ENGLISH, "%-9s %s: %.3f -> %.3f %s (%+.1f%%)",
+                        regression ? "REGRESSED" : "OK", key, reference.score, result.score,
+                        result.unit, result.slowdown(reference) * 100));
+            }
+        }
+        for (String key : baseline.keySet()) {
+            if (!results.containsKey(key)) {
+                out.println("MISSING   " + key);
+            }
+        }
+
+        out.println();
+        out.println(String.format(Locale.ENGLISH, "%d benchmarks compared, %d regressions",
+                results.size(), regressions.size()));
+        for (String key : regressions) {
+            out.println("  " + key);
+        }
+        return !regressions.isEmpty();
+    }
+
+    /**
+     * Reads a JMH json result file, keying results by benchmark name and parameters
+     */
+    static Map<String, Result> read(File file) throws IOException {
+        JSONArray array = JSONArray.fromObject(FileUtils.readFileToString(file, "UTF-8"));
+        Map<String, Result> results = new LinkedHashMap<String, Result>();
+        for (int i = 0; i < array.size(); i++) {
+            JSONObject json = array.getJSONObject(i);
+            JSONObject metric = json.getJSONObject("primaryMetric");
+
+            Result result = new Result();
+            result.mode = json.getString("mode");
+            result.score = metric.getDouble("score");
+            result.error = metric.optDouble("scoreError", 0);
+            if (Double.isNaN(result.error)) {
+                result.error = 0;
+            }
+            result.unit = metric.getString("scoreUnit");
+            results.put(key(json), result);
+        }
+        return results;
+    }
+
+    static String key(JSONObject json) {
+        StringBuilder sb = new StringBuilder(json.getString("benchmark"));
+        JSONObject params = json.optJSONObject("params");
+        if (params != null && !params.isNullObject()) {
+            // sort the parameters, for a stable key
+            Map<String, String> sorted = new TreeMap<String, String>();
+            for (Iterator it = params.keys(); it.hasNext();) {
+                String name = (String) it.next();
+                sorted.put(name, params.getString(name));
+            }
+            sb.append(sorted);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,190 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.xml.namespace.QName;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogBuilder;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.security.AccessMode;
+import org.geoserver.security.impl.DataAccessRule;
+import org.geoserver.security.impl.DataAccessRuleDAO;
+import org.geotools.data.property.PropertyDataStoreFactory;
+import org.geotools.feature.NameImpl;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+
+/**
+ * Generates the benchmark datasets.
+ * <p>
+ * Data is generated from a fixed random seed, so that every run, on every machine, works against
+ * exactly the same features. All layers live in the {@link #PREFIX} workspace, backed by a
+ * property data store:
+ * <ul>
+ * <li>{@link #POINTS}, {@link #POINT_COUNT} points spread over the whole world</li>
+ * <li>{@link #POLYGONS}, {@link #POLYGON_COUNT} small rectangles spread over the whole world</li>
+ * <li>{@link #CATALOG_LAYERS} extra layers named <code>layerNNN</code>, sharing the points data,
+ * used to give the catalog a realistic size. One out of {@link #RESTRICTED_RATIO} of them can be
+ * read only by users with the {@link #RESTRICTED_ROLE} role</li>
+ * </ul>
+ * </p>
+ */
+public class BenchmarkData {
+
+    public static final String PREFIX = "bench";
+
+    public static final String URI = "http://geoserver.org/benchmark";
+
+    public static final QName POINTS = new QName(URI, "points", PREFIX);
+
+    public static final QName POLYGONS = new QName(URI, "polygons", PREFIX);
+
+    public static final long SEED = 20160101;
+
+    public static final int POINT_COUNT = 10000;
+
+    public static final int POLYGON_COUNT = 2000;
+
+    public static final int CATALOG_LAYERS = 500;
+
+    public static final int RESTRICTED_RATIO = 4;
+
+    public static final String RESTRICTED_ROLE = "ROLE_BENCHMARK";
+
+    /**
+     * The extent of all the generated data
+     */
+    public static final ReferencedEnvelope BOUNDS = new ReferencedEnvelope(-180, 180, -90, 90,
+            DefaultGeographicCRS.WGS84);
+
+    static final int CATEGORIES = 10;
+
+    static final String SCHEMA = "_=the_geom:%s:srid=4326,name:String,category:Integer,value:Double";
+
+    /**
+     * Writes the data files and configures the benchmark layers and security rules. The workspace
+     * {@link #PREFIX} is expected to exist already.
+     */
+    public static void setUp(Catalog catalog, File dataDirectory) throws Exception {
+        File dir = new File(dataDirectory, PREFIX);
+        dir.mkdirs();
+        Random random = new Random(SEED);
+        writePoints(new File(dir, POINTS.getLocalPart() + ".properties"), random);
+        writePolygons(new File(dir, POLYGONS.getLocalPart() + ".properties"), random);
+
+        WorkspaceInfo ws = catalog.getWorkspaceByName(PREFIX);
+        CatalogBuilder cb = new CatalogBuilder(catalog);
+        cb.setWorkspace(ws);
+        DataStoreInfo store = cb.buildDataStore(PREFIX);
+        store.getConnectionParameters().put(PropertyDataStoreFactory.DIRECTORY.key, dir);
+        store.getConnectionParameters().put(PropertyDataStoreFactory.NAMESPACE.key, URI);
+        catalog.add(store);
+        cb.setStore(store);
+
+        addLayer(catalog, cb, POINTS.getLocalPart(), POINTS.getLocalPart());
+        addLayer(catalog, cb, POLYGONS.getLocalPart(), POLYGONS.getLocalPart());
+
+        DataAccessRuleDAO dao = DataAccessRuleDAO.get();
+        for (int i = 0; i < CATALOG_LAYERS; i++) {
+            String name = layerName(i);
+            addLayer(catalog, cb, name, POINTS.getLocalPart());
+            if (i % RESTRICTED_RATIO == 0) {
+                dao.addRule(new DataAccessRule(PREFIX, name, AccessMode.READ, RESTRICTED_ROLE));
+            }
+        }
+        dao.storeRules();
+    }
+
+    /**
+     * The name of the i-th catalog filler layer
+     */
+    public static String layerName(int i) {
+        return String.format(Locale.ENGLISH, "layer%03d", i);
+    }
+
+    static void addLayer(Catalog catalog, CatalogBuilder cb, String name, String nativeName)
+            throws Exception {
+        FeatureTypeInfo ft = cb.buildFeatureType(new NameImpl(URI, nativeName));
+        ft.setName(name);
+        ft.setTitle(name);
+        if (ft.getSRS() == null) {
+            ft.setSRS("EPSG:4326");
+        }
+        // we know the bounds already, avoid scanning the data
+        ft.setNativeBoundingBox(BOUNDS);
+        cb.setupBounds(ft);
+        catalog.add(ft);
+
+        LayerInfo layer = cb.buildLayer(ft);
+        catalog.add(layer);
+    }
+
+    static void writePoints(File file, Random random) throws IOException {
+        Writer w = writer(file);
+        try {
+            w.write(String.format(SCHEMA, "Point"));
+            w.write('\n');
+            for (int i = 0; i < POINT_COUNT; i++) {
+                double x = x(random);
+                double y = y(random);
+                w.write(String.format(Locale.ENGLISH, "points.%d=POINT(%.6f %.6f)", i, x, y));
+                writeAttributes(w, i, random);
+            }
+        } finally {
+            w.close();
+        }
+    }
+
+    static void writePolygons(File file, Random random) throws IOException {
+        Writer w = writer(file);
+        try {
+            w.write(String.format(SCHEMA, "Polygon"));
+            w.write('\n');
+            for (int i = 0; i < POLYGON_COUNT; i++) {
+                double size = 0.1 + random.nextDouble() * 1.9;
+                double x1 = Math.min(x(random), BOUNDS.getMaxX() - size);
+                double y1 = Math.min(y(random), BOUNDS.getMaxY() - size);
+                double x2 = x1 + size;
+                double y2 = y1 + size;
+                w.write(String.format(Locale.ENGLISH,
+                        "polygons.%d=POLYGON((%.6f %.6f, %.6f %.6f, %.6f %.6f, %.6f %.6f, %.6f %.6f))",
+                        i, x1, y1, x1, y2, x2, y2, x2, y1, x1, y1));
+                writeAttributes(w, i, random);
+            }
+        } finally {
+            w.close();
+        }
+    }
+
+    static void writeAttributes(Writer w, int i, Random random) throws IOException {
+        w.write(String.format(Locale.ENGLISH, "|feature %d|%d|%.3f\n", i,
+                random.nextInt(CATEGORIES), random.nextDouble() * 1000));
+    }
+
+    static double x(Random random) {
+        return BOUNDS.getMinX() + random.nextDouble() * BOUNDS.getWidth();
+    }
+
+    static double y(Random random) {
+        return BOUNDS.getMinY() + random.nextDouble() * BOUNDS.getHeight();
+    }
+
+    static Writer writer(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    }
+}
@@ -0,0 +1,65 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmark;
+
+import java.net.URLEncoder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Measures complete WFS GetFeature requests through the dispatcher, encoding the benchmark
+ * features in GeoJSON and GML.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class FeatureEncodingBenchmark {
+
+    @Param({ "application/json", "GML2", "text/xml; subtype=gml/3.1.1" })
+    public String outputFormat;
+
+    @Param({ "points", "polygons" })
+    public String typeName;
+
+    GeoServerState geoserver;
+
+    String path;
+
+    @Setup(Level.Trial)
+    public void setUp(GeoServerState geoserver) throws Exception {
+        this.geoserver = geoserver;
+        this.path = "wfs?service=WFS&version=1.1.0&request=GetFeature&typeName="
+                + BenchmarkData.PREFIX + ":" + typeName + "&outputFormat="
+                + URLEncoder.encode(outputFormat, "UTF-8");
+
+        // fail early if the request does not produce features
+        MockHttpServletResponse response = geoserver.get(path);
+        String content = response.getContentAsString();
+        if (response.getStatus() != 200 || content.contains("ExceptionReport")) {
+            throw new IllegalStateException("Unexpected response: " + content);
+        }
+    }
+
+    @Benchmark
+    public byte[] getFeature() throws Exception {
+        return geoserver.get(path).getContentAsByteArray();
+    }
+}
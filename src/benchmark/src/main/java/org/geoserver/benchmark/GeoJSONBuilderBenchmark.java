@@ -0,0 +1,143 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmark;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.catalog.FeatureTypeInfo;
+import net.sf.json.util.JSONBuilder;
+
+import org.geoserver.wfs.json.GeoJSONBuilder;
+import org.geoserver.wfs.json.RoundingUtil;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Measures the raw geometry encoding speed of {@link GeoJSONBuilder}, without any data access or
+ * dispatching overhead, and compares it with the plain json-lib {@link JSONBuilder} encoding the
+ * same output one ordinate String at a time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class GeoJSONBuilderBenchmark {
+
+    @Param({ "points", "polygons" })
+    public String typeName;
+
+    /**
+     * The number of decimals to encode, 6 is the builder default
+     */
+    @Param({ "6", "4" })
+    public int decimals;
+
+    List<Geometry> geometries;
+
+    @Setup(Level.Trial)
+    public void setUp(GeoServerState geoserver) throws Exception {
+        FeatureTypeInfo info = geoserver.rawCatalog().getFeatureTypeByName(
+                BenchmarkData.PREFIX, typeName);
+        SimpleFeatureSource source = (SimpleFeatureSource) info.getFeatureSource(null, null);
+        geometries = new ArrayList<Geometry>();
+        SimpleFeatureIterator it = source.getFeatures().features();
+        try {
+            while (it.hasNext()) {
+                geometries.add((Geometry) it.next().getDefaultGeometry());
+            }
+        } finally {
+            it.close();
+        }
+    }
+
+    @Benchmark
+    public int writeGeometries() {
+        StringWriter writer = new StringWriter();
+        GeoJSONBuilder builder = new GeoJSONBuilder(writer);
+        builder.setNumberOfDecimals(decimals);
+        builder.array();
+        for (Geometry geometry : geometries) {
+            builder.writeGeom(geometry);
+        }
+        builder.endArray();
+        return writer.getBuffer().length();
+    }
+
+    @Benchmark
+    public int writeGeometriesJSONBuilder() {
+        StringWriter writer = new StringWriter();
+        JSONBuilder builder = new JSONBuilder(writer);
+        builder.array();
+        for (Geometry geometry : geometries) {
+            builder.object();
+            builder.key("type").value(GeoJSONBuilder.getGeometryName(geometry));
+            builder.key("coordinates");
+            writeCoordinates(builder, geometry);
+            builder.endObject();
+        }
+        builder.endArray();
+        return writer.getBuffer().length();
+    }
+
+    /**
+     * Writes the coordinates the way GeoJSONBuilder used to, geometry collections are not
+     * supported, the benchmark data does not contain them
+     */
+    void writeCoordinates(JSONBuilder builder, Geometry geometry) {
+        if (geometry instanceof Point) {
+            writeCoordinate(builder, geometry.getCoordinate());
+        } else if (geometry instanceof LineString) {
+            builder.array();
+            for (Coordinate c : geometry.getCoordinates()) {
+                writeCoordinate(builder, c);
+            }
+            builder.endArray();
+        } else if (geometry instanceof Polygon) {
+            Polygon polygon = (Polygon) geometry;
+            builder.array();
+            writeCoordinates(builder, polygon.getExteriorRing());
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                writeCoordinates(builder, polygon.getInteriorRingN(i));
+            }
+            builder.endArray();
+        } else {
+            builder.array();
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                writeCoordinates(builder, geometry.getGeometryN(i));
+            }
+            builder.endArray();
+        }
+    }
+
+    void writeCoordinate(JSONBuilder builder, Coordinate c) {
+        builder.array();
+        builder.value(RoundingUtil.round(c.x, decimals));
+        builder.value(RoundingUtil.round(c.y, decimals));
+        builder.endArray();
+    }
+}
@@ -0,0 +1,92 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmark;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.config.GeoServer;
+import org.geoserver.data.test.SystemTestData;
+import org.geoserver.test.GeoServerSystemTestSupport;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * JMH state holding a fully configured GeoServer, started once per benchmark trial.
+ * <p>
+ * The server is set up exactly as in the system tests, with the default mock data directory, plus
+ * the generated datasets of {@link BenchmarkData}. Requests are dispatched in process against mock
+ * servlet requests, so no network or servlet container overhead is measured.
+ * </p>
+ */
+@State(Scope.Benchmark)
+public class GeoServerState extends GeoServerSystemTestSupport {
+
+    @Setup(Level.Trial)
+    public void startup() throws Exception {
+        setUpLogging();
+        setUpReferencing();
+        doSetup();
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() throws Exception {
+        SecurityContextHolder.clearContext();
+        doTearDownClass();
+    }
+
+    @Override
+    protected void onSetUp(SystemTestData testData) throws Exception {
+        testData.addWorkspace(BenchmarkData.PREFIX, BenchmarkData.URI, rawCatalog());
+        BenchmarkData.setUp(rawCatalog(), testData.getDataDirectoryRoot());
+    }
+
+    /**
+     * The catalog seen by the services, wrapped by the security and virtual service decorators
+     */
+    public Catalog catalog() {
+        return getCatalog();
+    }
+
+    /**
+     * The undecorated catalog
+     */
+    public Catalog rawCatalog() {
+        return applicationContext.getBean("rawCatalog", Catalog.class);
+    }
+
+    public GeoServer geoServer() {
+        return getGeoServer();
+    }
+
+    /**
+     * Looks up a bean from the application context
+     */
+    public <T> T bean(String name, Class<T> type) {
+        return applicationContext.getBean(name, type);
+    }
+
+    /**
+     * Runs a GET request through the OWS dispatcher, returning the mock response
+     */
+    public MockHttpServletResponse get(String path) throws Exception {
+        return getAsServletResponse(path);
+    }
+
+    /**
+     * Authenticates the current thread with the specified roles, or clears the authentication if
+     * the user name is null
+     */
+    public void authenticate(String username, String... roles) {
+        if (username == null) {
+            logout();
+        } else {
+            login(username, "", roles);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmark;
+
+import java.net.URLEncoder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Measures complete GetMap requests, from the dispatcher down to the rendering and encoding of
+ * the map by {@link org.geoserver.wms.map.RenderedImageMapOutputFormat}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class GetMapBenchmark {
+
+    @Param({ "image/png", "image/png8", "image/jpeg" })
+    public String format;
+
+    /**
+     * The layers being rendered
+     */
+    @Param({ "bench:points", "bench:polygons", "bench:polygons,bench:points" })
+    public String layers;
+
+    String path;
+
+    GeoServerState geoserver;
+
+    @Setup(Level.Trial)
+    public void setUp(GeoServerState geoserver) throws Exception {
+        this.geoserver = geoserver;
+        this.path = "wms?service=WMS&version=1.1.1&request=GetMap&layers=" + layers
+                + "&styles=&bbox=-180,-90,180,90&srs=EPSG:4326&width=768&height=384&format="
+                + URLEncoder.encode(format, "UTF-8");
+        // fail early if the request does not produce a map
+        MockHttpServletResponse response = geoserver.get(path);
+        if (!response.getContentType().startsWith("image/")) {
+            throw new IllegalStateException("Unexpected response: "
+                    + response.getContentAsString());
+        }
+    }
+
+    @Benchmark
+    public byte[] getMap() throws Exception {
+        return geoserver.get(path).getContentAsByteArray();
+    }
+}
@@ -0,0 +1,130 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmark;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.geoserver.wms.WMS;
+import org.geoserver.wms.WMSMapContent;
+import org.geoserver.wms.map.JPEGMapResponse;
+import org.geoserver.wms.map.png.PNGJWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Measures the encoding of an already rendered map in PNG, via {@link PNGJWriter} (also in its
+ * parallel compression mode), and JPEG, via {@link JPEGMapResponse}.
+ * <p>
+ * The encoded image is a map of the benchmark polygons and points, rendered once at setup time.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class ImageEncodingBenchmark {
+
+    static final String GETMAP = "wms?service=WMS&version=1.1.1&request=GetMap"
+            + "&layers=bench:polygons,bench:points&styles=&bbox=-180,-90,180,90&srs=EPSG:4326"
+            + "&width=1024&height=512&format=image/png&transparent=true";
+
+    /**
+     * The PNG quality used by default by the WMS
+     */
+    static final float QUALITY = (100 - WMS.PNG_COMPRESSION_DEFAULT) / 100f;
+
+    BufferedImage transparent;
+
+    BufferedImage opaque;
+
+    JPEGMapResponse jpeg;
+
+    WMSMapContent mapContent;
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream(1024 * 1024);
+
+    @Setup(Level.Trial)
+    public void setUp(GeoServerState geoserver) throws Exception {
+        MockHttpServletResponse response = geoserver.get(GETMAP);
+        BufferedImage map = ImageIO.read(new ByteArrayInputStream(response
+                .getContentAsByteArray()));
+        if (map == null) {
+            throw new IllegalStateException("Could not render the benchmark map: "
+                    + response.getContentAsString());
+        }
+
+        // normalize to the image types the renderer produces
+        transparent = new BufferedImage(map.getWidth(), map.getHeight(),
+                BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D graphics = transparent.createGraphics();
+        graphics.drawImage(map, 0, 0, null);
+        graphics.dispose();
+
+        opaque = new BufferedImage(map.getWidth(), map.getHeight(),
+                BufferedImage.TYPE_3BYTE_BGR);
+        graphics = opaque.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, map.getWidth(), map.getHeight());
+        graphics.drawImage(map, 0, 0, null);
+        graphics.dispose();
+
+        jpeg = geoserver.bean("JPEGMapResponse", JPEGMapResponse.class);
+        mapContent = new WMSMapContent();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mapContent.dispose();
+    }
+
+    @Benchmark
+    public int pngTransparent() {
+        output.reset();
+        new PNGJWriter().writePNG(transparent, output, QUALITY, mapContent);
+        return output.size();
+    }
+
+    @Benchmark
+    public int pngOpaque() {
+        output.reset();
+        new PNGJWriter().writePNG(opaque, output, QUALITY, mapContent);
+        return output.size();
+    }
+
+    @Benchmark
+    public int pngTransparentParallel() {
+        output.reset();
+        new PNGJWriter(1, Runtime.getRuntime().availableProcessors()).writePNG(transparent,
+                output, QUALITY, mapContent);
+        return output.size();
+    }
+
+    @Benchmark
+    public int jpeg() throws Exception {
+        output.reset();
+        jpeg.formatImageOutputStream(opaque, output, mapContent);
+        return output.size();
+    }
+}
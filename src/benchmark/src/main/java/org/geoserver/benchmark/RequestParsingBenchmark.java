@@ -0,0 +1,111 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmark;
+
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.ows.KvpRequestReader;
+import org.geoserver.ows.util.KvpMap;
+import org.geoserver.ows.util.KvpUtils;
+import org.geoserver.wms.WMS;
+import org.geoserver.wms.map.GetMapKvpRequestReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the parsing of KVP requests, performed the same way as the
+ * {@link org.geoserver.ows.Dispatcher} does, and the GetMap request reading, which includes the
+ * layer lookups and style resolution.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestParsingBenchmark {
+
+    static final String GETMAP = "wms?service=WMS&version=1.1.1&request=GetMap"
+            + "&layers=bench:polygons,bench:points&bbox=-180,-90,180,90&srs=EPSG:4326"
+            + "&width=768&height=384&format=image/png&transparent=true&format_options=dpi:90";
+
+    static final String SLD_BODY = "<StyledLayerDescriptor version=\"1.0.0\" "
+            + "xmlns=\"http://www.opengis.net/sld\" xmlns:ogc=\"http://www.opengis.net/ogc\">"
+            + "<NamedLayer><Name>bench:polygons</Name><UserStyle><FeatureTypeStyle><Rule>"
+            + "<PolygonSymbolizer/></Rule></FeatureTypeStyle></UserStyle></NamedLayer>"
+            + "<NamedLayer><Name>bench:points</Name><UserStyle><FeatureTypeStyle><Rule>"
+            + "<ogc:Filter><ogc:PropertyIsEqualTo><ogc:PropertyName>category</ogc:PropertyName>"
+            + "<ogc:Literal>1</ogc:Literal></ogc:PropertyIsEqualTo></ogc:Filter>"
+            + "<PointSymbolizer><Graphic><Mark><WellKnownName>circle</WellKnownName></Mark>"
+            + "<Size>4</Size></Graphic></PointSymbolizer></Rule></FeatureTypeStyle></UserStyle>"
+            + "</NamedLayer></StyledLayerDescriptor>";
+
+    /**
+     * How styles are specified: layer defaults, named catalog styles, or an inline SLD
+     */
+    @Param({ "default", "named", "sld_body" })
+    public String styles;
+
+    String path;
+
+    GetMapKvpRequestReader reader;
+
+    @Setup(Level.Trial)
+    public void setUp(GeoServerState geoserver) throws Exception {
+        if ("named".equals(styles)) {
+            path = GETMAP + "&styles=polygon,point";
+        } else if ("sld_body".equals(styles)) {
+            path = GETMAP + "&sld_body=" + URLEncoder.encode(SLD_BODY, "UTF-8");
+        } else {
+            path = GETMAP + "&styles=";
+        }
+        reader = new GetMapKvpRequestReader(geoserver.bean("wms", WMS.class));
+    }
+
+    @Benchmark
+    public Map parseKvp() {
+        return parse(path);
+    }
+
+    @Benchmark
+    public Object readGetMap() throws Exception {
+        return read(reader, path);
+    }
+
+    /**
+     * Mimics the dispatcher KVP handling, returns the parsed kvp
+     */
+    static Map parse(String path) {
+        Map kvp = KvpUtils.normalize(KvpUtils.parseQueryString(path));
+        List<Throwable> errors = KvpUtils.parse(kvp);
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException("Failed to parse " + path, errors.get(0));
+        }
+        return kvp;
+    }
+
+    static Object read(KvpRequestReader reader, String path) throws Exception {
+        Map kvp = KvpUtils.normalize(KvpUtils.parseQueryString(path));
+        Map rawKvp = new KvpMap(kvp);
+        List<Throwable> errors = KvpUtils.parse(kvp);
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException("Failed to parse " + path, errors.get(0));
+        }
+        return reader.read(reader.createRequest(), kvp, rawKvp);
+    }
+}
@@ -0,0 +1,106 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.util.CloseableIterator;
+import org.geoserver.security.SecureCatalogImpl;
+import org.opengis.filter.Filter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the layer filtering performed by {@link SecureCatalogImpl} for users with different
+ * privileges, against a catalog containing the {@link BenchmarkData#CATALOG_LAYERS} generated
+ * layers, part of which are restricted by data access rules.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class SecureCatalogBenchmark {
+
+    /**
+     * The user performing the requests: an administrator, a user allowed to see the restricted
+     * layers, or an anonymous one
+     */
+    @Param({ "admin", "restricted", "anonymous" })
+    public String user;
+
+    Catalog catalog;
+
+    String restrictedLayer;
+
+    String publicLayer;
+
+    @Setup(Level.Trial)
+    public void setUp(GeoServerState geoserver) {
+        catalog = geoserver.bean("secureCatalog", SecureCatalogImpl.class);
+        restrictedLayer = BenchmarkData.PREFIX + ":" + BenchmarkData.layerName(0);
+        publicLayer = BenchmarkData.PREFIX + ":" + BenchmarkData.layerName(1);
+
+        // authentication is thread bound, thread scoped state is set up by the benchmark thread
+        if ("admin".equals(user)) {
+            geoserver.authenticate("admin", "ROLE_ADMINISTRATOR");
+        } else if ("restricted".equals(user)) {
+            geoserver.authenticate("restricted", BenchmarkData.RESTRICTED_ROLE);
+        } else {
+            geoserver.authenticate(null);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(GeoServerState geoserver) {
+        geoserver.authenticate(null);
+    }
+
+    @Benchmark
+    public int getLayers() {
+        return catalog.getLayers().size();
+    }
+
+    @Benchmark
+    public int listLayers() {
+        int count = 0;
+        CloseableIterator<LayerInfo> it = catalog.list(LayerInfo.class, Filter.INCLUDE);
+        try {
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+        } finally {
+            it.close();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int getLayerByName() {
+        int found = 0;
+        if (catalog.getLayerByName(restrictedLayer) != null) {
+            found++;
+        }
+        if (catalog.getLayerByName(publicLayer) != null) {
+            found++;
+        }
+        return found;
+    }
+}
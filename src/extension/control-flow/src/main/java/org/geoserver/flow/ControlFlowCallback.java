@@ -74,6 +74,14 @@ public class ControlFlowCallback extends AbstractDispatcherCallback implements
         return runningRequests.get();
     }
 
+    /**
+     * Returns the flow controllers currently in use, as returned by the
+     * {@link FlowControllerProvider} for a request without any specific characteristic
+     */
+    public List<FlowController> getFlowControllers() throws Exception {
+        return provider.getFlowControllers(null);
+    }
+
     public void finished(Request request) {
         if (SENTINEL.isOutermostRequest() && REQUEST_CONTROLLERS.get() != null) {
             runningRequests.decrementAndGet();
@@ -15,6 +15,7 @@ import java.util.regex.Pattern;
 
 import org.geoserver.flow.ControlFlowConfigurator;
 import org.geoserver.flow.FlowController;
+import org.geoserver.flow.controller.AdaptiveFlowController;
 import org.geoserver.flow.controller.BasicOWSController;
 import org.geoserver.flow.controller.CookieKeyGenerator;
 import org.geoserver.flow.controller.GlobalFlowController;
@@ -22,6 +23,8 @@ import org.geoserver.flow.controller.IpFlowController;
 import org.geoserver.flow.controller.IpKeyGenerator;
 import org.geoserver.flow.controller.KeyGenerator;
 import org.geoserver.flow.controller.OWSRequestMatcher;
+import org.geoserver.flow.controller.PriorityFlowController;
+import org.geoserver.flow.controller.PriorityFlowController.RequestClass;
 import org.geoserver.flow.controller.RateFlowController;
 import org.geoserver.flow.controller.SingleIpFlowController;
 import org.geoserver.flow.controller.UserConcurrentFlowController;
@@ -101,6 +104,10 @@ public class DefaultControlFlowConfigurator implements ControlFlowConfigurator {
 
         Properties p = configFile.getProperties();
         List<FlowController> newControllers = new ArrayList<FlowController>();
+        // the scheduler is built out of several rules, collect them first
+        int schedulerSize = 0;
+        KeyGenerator schedulerKeyGenerator = null;
+        List<RequestClass> schedulerClasses = new ArrayList<RequestClass>();
         for (Object okey : p.keySet()) {
             String key = ((String) okey).trim();
             String value = (String) p.get(okey);
@@ -134,7 +141,34 @@ public class DefaultControlFlowConfigurator implements ControlFlowConfigurator {
                 timeout = queueSize * 1000;
                 continue;
             }
-            if ("ows.global".equalsIgnoreCase(key)) {
+            if ("scheduler".equals(keys[0])) {
+                if (keys.length == 1) {
+                    schedulerSize = queueSize;
+                    String fairness = tokenizer.hasMoreTokens() ? tokenizer.nextToken().trim()
+                            : null;
+                    if ("user".equals(fairness)) {
+                        schedulerKeyGenerator = new CookieKeyGenerator();
+                    } else if ("ip".equals(fairness)) {
+                        schedulerKeyGenerator = new IpKeyGenerator();
+                    } else if (fairness != null) {
+                        LOGGER.severe("The scheduler can share slots among 'user' or 'ip', "
+                                + "instead '" + fairness + "' was found in " + key + "=" + value);
+                    }
+                } else {
+                    RequestClass requestClass = buildRequestClass(keys, queueSize, tokenizer);
+                    if (requestClass == null) {
+                        LOGGER.severe("Could not parse rule '" + okey + "=" + value);
+                    } else {
+                        schedulerClasses.add(requestClass);
+                    }
+                }
+                continue;
+            }
+            if ("adaptive".equals(keys[0])) {
+                if (keys.length >= 2 && "ows".equals(keys[1])) {
+                    controller = buildAdaptiveController(keys, queueSize, tokenizer);
+                }
+            } else if ("ows.global".equalsIgnoreCase(key)) {
                 controller = new GlobalFlowController(queueSize);
             } else if ("ows".equals(keys[0])) {
                 // todo: check, if possible, if the service, method and output format actually exist
@@ -184,9 +218,58 @@ public class DefaultControlFlowConfigurator implements ControlFlowConfigurator {
             }
         }
 
+        if (schedulerSize > 0) {
+            newControllers.add(new PriorityFlowController(schedulerSize, schedulerClasses,
+                    schedulerKeyGenerator));
+        } else if (!schedulerClasses.isEmpty()) {
+            LOGGER.severe("Scheduler request classes have been configured, but the scheduler "
+                    + "itself is not enabled, add a scheduler=<count> rule to activate it");
+        }
+
         return newControllers;
     }
 
+    /**
+     * Parses a adaptive.ows[.<service>[.<request>[.<outputFormat>]]]=<maxLimit>[,<maxWait>] rule
+     */
+    FlowController buildAdaptiveController(String[] keys, int maxLimit,
+            StringTokenizer tokenizer) {
+        try {
+            long maxWait = 0;
+            if (tokenizer.hasMoreTokens()) {
+                maxWait = Long.parseLong(tokenizer.nextToken().trim());
+            }
+            String service = keys.length >= 3 ? keys[2] : null;
+            String request = keys.length >= 4 ? keys[3] : null;
+            String format = keys.length >= 5 ? keys[4] : null;
+            return new AdaptiveFlowController(new OWSRequestMatcher(service, request, format),
+                    maxLimit, maxWait);
+        } catch (IllegalArgumentException e) {
+            LOGGER.severe(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Parses a scheduler.<service>[.<request>[.<outputFormat>]]=<priority>[,<weight>] rule
+     */
+    RequestClass buildRequestClass(String[] keys, int priority, StringTokenizer tokenizer) {
+        try {
+            int weight = 1;
+            if (tokenizer.hasMoreTokens()) {
+                weight = Integer.parseInt(tokenizer.nextToken().trim());
+            }
+            String service = keys[1];
+            String request = keys.length >= 3 ? keys[2] : null;
+            String format = keys.length >= 4 ? keys[3] : null;
+            return new RequestClass(new OWSRequestMatcher(service, request, format), priority,
+                    weight);
+        } catch (IllegalArgumentException e) {
+            LOGGER.severe(e.getMessage());
+            return null;
+        }
+    }
+
     public boolean isStale() {
         return configFile.isStale();
     }
@@ -0,0 +1,344 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.geoserver.flow.ControlFlowCallback;
+import org.geoserver.flow.FlowController;
+import org.geoserver.ows.HttpErrorCodeException;
+import org.geoserver.ows.Request;
+import org.geotools.util.logging.Logging;
+
+import com.google.common.base.Predicate;
+
+/**
+ * A flow controller that does not use a fixed concurrency limit, but adapts it to the observed
+ * request execution times, following a gradient approach: a long term average of the execution
+ * time is compared with a short term one, when the latter grows (e.g., the database is getting
+ * slower) the limit is reduced, when they are close the limit is allowed to grow slowly.
+ * <p>
+ * Requests in excess are queued, but if the estimated time spent in queue exceeds the configured
+ * maximum wait they are rejected right away with a 503 and a Retry-After header
+ * </p>
+ */
+public class AdaptiveFlowController implements FlowController {
+    static final Logger LOGGER = Logging.getLogger(ControlFlowCallback.class);
+
+    /**
+     * Tells the client how many seconds to wait before retrying a rejected request
+     */
+    public static final String RETRY_AFTER = "Retry-After";
+
+    /**
+     * Weight of a new sample in the short term execution time average (roughly 10 samples)
+     */
+    static final double SHORT_ALPHA = 2d / 11;
+
+    /**
+     * Weight of a new sample in the long term execution time average (roughly 600 samples)
+     */
+    static final double LONG_ALPHA = 2d / 601;
+
+    /**
+     * How much slower than the long term average requests can get before the limit is reduced
+     */
+    static final double LATENCY_TOLERANCE = 1.5;
+
+    /**
+     * How fast the limit moves towards the newly computed one
+     */
+    static final double SMOOTHING = 0.2;
+
+    Predicate<Request> matcher;
+
+    int maxLimit;
+
+    long maxWait;
+
+    ReentrantLock lock = new ReentrantLock();
+
+    Condition slotAvailable = lock.newCondition();
+
+    /**
+     * Start time of the request holding a slot in the current thread
+     */
+    ThreadLocal<Long> START = new ThreadLocal<Long>();
+
+    volatile double limit;
+
+    int running;
+
+    int waiting;
+
+    double shortLatency;
+
+    double longLatency;
+
+    long rejected;
+
+    /**
+     * Builds a new {@link AdaptiveFlowController} starting at twice the number of available
+     * processors, which is usually a good concurrency level for CPU bound requests
+     *
+     * @param matcher the requests this controller applies to
+     * @param maxLimit the maximum concurrency level the controller can reach
+     * @param maxWait the maximum estimated time a request can spend in queue before being
+     *        rejected, in milliseconds, or zero to rely on the control flow timeout only
+     */
+    public AdaptiveFlowController(Predicate<Request> matcher, int maxLimit, long maxWait) {
+        this(matcher, Math.min(maxLimit, 2 * Runtime.getRuntime().availableProcessors()),
+                maxLimit, maxWait);
+    }
+
+    /**
+     * Builds a new {@link AdaptiveFlowController}
+     *
+     * @param matcher the requests this controller applies to
+     * @param initialLimit the initial concurrency level
+     * @param maxLimit the maximum concurrency level the controller can reach
+     * @param maxWait the maximum estimated time a request can spend in queue before being
+     *        rejected, in milliseconds, or zero to rely on the control flow timeout only
+     */
+    public AdaptiveFlowController(Predicate<Request> matcher, int initialLimit, int maxLimit,
+            long maxWait) {
+        if (maxLimit < 1) {
+            throw new IllegalArgumentException("The maximum concurrency limit must be positive");
+        }
+        this.matcher = matcher;
+        this.maxLimit = maxLimit;
+        this.maxWait = maxWait;
+        this.limit = Math.max(1, Math.min(initialLimit, maxLimit));
+    }
+
+    public int getPriority() {
+        return maxLimit;
+    }
+
+    public boolean requestIncoming(Request request, long timeout) {
+        if (!matcher.apply(request)) {
+            return true;
+        }
+
+        long wait = maxWait;
+        if (timeout > 0 && (wait <= 0 || timeout < wait)) {
+            wait = timeout;
+        }
+
+        lock.lock();
+        try {
+            if (running >= getLimit()) {
+                // check if it's worth queueing up at all
+                long estimatedWait = getEstimatedWait();
+                if (wait > 0 && estimatedWait > wait) {
+                    reject(request, estimatedWait);
+                }
+
+                waiting++;
+                try {
+                    long remaining = TimeUnit.MILLISECONDS.toNanos(wait);
+                    while (running >= getLimit()) {
+                        if (wait > 0) {
+                            if (remaining <= 0) {
+                                reject(request, getEstimatedWait());
+                            }
+                            remaining = slotAvailable.awaitNanos(remaining);
+                        } else {
+                            slotAvailable.await();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    LOGGER.log(Level.WARNING,
+                            "Unexpected interruption while waiting for an execution slot");
+                    return true;
+                } finally {
+                    waiting--;
+                }
+            }
+
+            running++;
+            START.set(System.currentTimeMillis());
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(this + " running " + running + ", waiting " + waiting);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void requestComplete(Request request) {
+        Long start = START.get();
+        START.remove();
+        if (start == null) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            int inflight = running;
+            running--;
+            updateLimit(System.currentTimeMillis() - start, inflight);
+            slotAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Updates the latency averages and the concurrency limit with a new execution time sample.
+     * Must be called with the lock held
+     */
+    void updateLimit(long latency, int inflight) {
+        // avoid zero latencies, would make the gradient meaningless
+        double sample = Math.max(latency, 1);
+        if (longLatency == 0) {
+            shortLatency = sample;
+            longLatency = sample;
+        } else {
+            shortLatency = shortLatency * (1 - SHORT_ALPHA) + sample * SHORT_ALPHA;
+            longLatency = longLatency * (1 - LONG_ALPHA) + sample * LONG_ALPHA;
+        }
+
+        // if requests got much faster (e.g., the slowdown went away) let the long term average
+        // catch up quickly, or a new slowdown would go unnoticed until it decays
+        if (longLatency / shortLatency > 2) {
+            longLatency *= 0.95;
+        }
+
+        // the limit is not being used, we know nothing about how the server would behave with more
+        // requests, don't grow it
+        if (inflight < limit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, LATENCY_TOLERANCE * longLatency
+                / shortLatency));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        limit = Math.max(1, Math.min(maxLimit, newLimit));
+    }
+
+    /**
+     * Estimates how long a new request would stay in queue before getting a slot, in milliseconds
+     */
+    long getEstimatedWait() {
+        return Math.round((waiting + 1) * shortLatency / getLimit());
+    }
+
+    void reject(Request request, long estimatedWait) {
+        rejected++;
+        HttpServletResponse response = request.getHttpResponse();
+        if (response != null) {
+            long seconds = Math.max(1, (estimatedWait + 999) / 1000);
+            response.setHeader(RETRY_AFTER, String.valueOf(seconds));
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(this + " rejecting request, estimated wait " + estimatedWait + "ms");
+        }
+        throw new HttpErrorCodeException(503, "The server is too busy to handle " + matcher
+                + " requests at the moment, please retry later");
+    }
+
+    /**
+     * Returns the requests matcher
+     */
+    public Predicate<Request> getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * Returns the current concurrency limit
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Returns the maximum concurrency limit
+     */
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * Returns the maximum estimated queue wait before requests get rejected, in milliseconds
+     */
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Returns the number of requests currently executing
+     */
+    public int getRunningRequests() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests currently waiting for a slot
+     */
+    public int getWaitingRequests() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the short term average of the execution time, in milliseconds
+     */
+    public long getLatency() {
+        lock.lock();
+        try {
+            return Math.round(shortLatency);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the long term average of the execution time, in milliseconds
+     */
+    public long getBaselineLatency() {
+        lock.lock();
+        try {
+            return Math.round(longLatency);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests rejected so far
+     */
+    public long getRejectedRequests() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveFlowController(" + matcher + "," + getLimit() + "/" + maxLimit + ")";
+    }
+
+}
@@ -0,0 +1,417 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.flow.ControlFlowCallback;
+import org.geoserver.flow.FlowController;
+import org.geoserver.ows.Request;
+import org.geotools.util.logging.Logging;
+
+/**
+ * A flow controller sharing a fixed number of execution slots among classes of requests, instead
+ * of serving them in FIFO order. When a slot frees up the waiting request is picked as follows:
+ * <ul>
+ * <li>the classes with the highest priority go first</li>
+ * <li>classes having the same priority share the slots proportionally to their weight</li>
+ * <li>inside a class, requests coming from different users (as identified by the optional
+ * {@link KeyGenerator}) are served round robin, so that a single user cannot monopolize it</li>
+ * </ul>
+ * The controller also keeps a running average of the execution time of each class, and uses it to
+ * reject right away requests that would not make it out of the queue before their timeout expires.
+ */
+public class PriorityFlowController implements FlowController {
+    static final Logger LOGGER = Logging.getLogger(ControlFlowCallback.class);
+
+    /**
+     * Weight of the most recent sample in the execution time running average
+     */
+    static final double SERVICE_TIME_ALPHA = 0.2;
+
+    /**
+     * A class of requests, identified by a {@link OWSRequestMatcher}, along with its priority
+     * (higher values are served first) and weight (share of the slots compared to the classes
+     * having the same priority)
+     */
+    public static class RequestClass {
+        OWSRequestMatcher matcher;
+
+        int priority;
+
+        int weight;
+
+        /**
+         * Waiting tickets, grouped by user key, in round robin order
+         */
+        LinkedHashMap<String, ArrayDeque<Ticket>> waiting = new LinkedHashMap<String, ArrayDeque<Ticket>>();
+
+        int waitingCount;
+
+        /**
+         * Virtual time used to share slots among classes of the same priority (stride scheduling)
+         */
+        double pass;
+
+        /**
+         * Running average of the execution time, in milliseconds
+         */
+        double serviceTime;
+
+        public RequestClass(OWSRequestMatcher matcher, int priority, int weight) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("The request class weight must be positive, "
+                        + matcher + " has weight " + weight);
+            }
+            this.matcher = matcher;
+            this.priority = priority;
+            this.weight = weight;
+        }
+
+        public OWSRequestMatcher getMatcher() {
+            return matcher;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        /**
+         * Number of matcher elements that are specified, used to pick the most specific class
+         */
+        int getSpecificity() {
+            int specificity = 0;
+            if (matcher.getService() != null) {
+                specificity++;
+            }
+            if (matcher.getMethod() != null) {
+                specificity++;
+            }
+            if (matcher.getOutputFormat() != null) {
+                specificity++;
+            }
+            return specificity;
+        }
+
+        @Override
+        public String toString() {
+            return matcher + "(" + priority + "," + weight + ")";
+        }
+    }
+
+    /**
+     * A request waiting for, or holding, an execution slot
+     */
+    static final class Ticket {
+        RequestClass requestClass;
+
+        String key;
+
+        Condition condition;
+
+        boolean granted;
+
+        long grantTime;
+
+        Ticket(RequestClass requestClass, String key, Condition condition) {
+            this.requestClass = requestClass;
+            this.key = key;
+            this.condition = condition;
+        }
+    }
+
+    /**
+     * The ticket of the request running in the current thread
+     */
+    ThreadLocal<Ticket> TICKET = new ThreadLocal<Ticket>();
+
+    ReentrantLock lock = new ReentrantLock();
+
+    List<RequestClass> classes;
+
+    RequestClass defaultClass = new RequestClass(new OWSRequestMatcher(), 0, 1);
+
+    KeyGenerator keyGenerator;
+
+    int queueSize;
+
+    int running;
+
+    double virtualTime;
+
+    /**
+     * Builds a new {@link PriorityFlowController}
+     *
+     * @param queueSize the number of requests that can execute in parallel
+     * @param classes the request classes, requests not matching any of them get priority 0 and
+     *        weight 1
+     * @param keyGenerator used to share slots fairly among users inside a request class, can be
+     *        null
+     */
+    public PriorityFlowController(int queueSize, List<RequestClass> classes,
+            KeyGenerator keyGenerator) {
+        this.queueSize = queueSize;
+        this.keyGenerator = keyGenerator;
+        // most specific classes first, so that "wms.getmap" wins over "wms"
+        this.classes = new ArrayList<RequestClass>(classes);
+        Collections.sort(this.classes, new Comparator<RequestClass>() {
+
+            @Override
+            public int compare(RequestClass o1, RequestClass o2) {
+                return o2.getSpecificity() - o1.getSpecificity();
+            }
+        });
+    }
+
+    public int getPriority() {
+        return queueSize;
+    }
+
+    /**
+     * Returns the configured request classes
+     */
+    public List<RequestClass> getRequestClasses() {
+        return Collections.unmodifiableList(classes);
+    }
+
+    /**
+     * Returns the key generator used for fair sharing, or null if none is used
+     */
+    public KeyGenerator getKeyGenerator() {
+        return keyGenerator;
+    }
+
+    /**
+     * Returns the number of requests currently holding an execution slot
+     */
+    public int getRunningRequests() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests currently waiting for an execution slot
+     */
+    public int getWaitingRequests() {
+        lock.lock();
+        try {
+            int count = defaultClass.waitingCount;
+            for (RequestClass rc : classes) {
+                count += rc.waitingCount;
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    RequestClass getRequestClass(Request request) {
+        for (RequestClass rc : classes) {
+            if (rc.matcher.apply(request)) {
+                return rc;
+            }
+        }
+        return defaultClass;
+    }
+
+    public boolean requestIncoming(Request request, long timeout) {
+        RequestClass requestClass = getRequestClass(request);
+        String key = keyGenerator != null ? keyGenerator.getUserKey(request) : "";
+
+        lock.lock();
+        try {
+            // don't bother queueing up requests that we know won't make it in time
+            if (timeout > 0 && running >= queueSize) {
+                long estimatedWait = getEstimatedWait(requestClass);
+                if (estimatedWait > timeout) {
+                    if (LOGGER.isLoggable(Level.FINE)) {
+                        LOGGER.fine(this + " rejecting " + requestClass + " request, estimated wait "
+                                + estimatedWait + "ms exceeds the timeout of " + timeout + "ms");
+                    }
+                    return false;
+                }
+            }
+
+            Ticket ticket = new Ticket(requestClass, key, lock.newCondition());
+            enqueue(ticket);
+            dispatch();
+
+            try {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+                while (!ticket.granted) {
+                    if (timeout > 0) {
+                        if (remaining <= 0) {
+                            dequeue(ticket);
+                            return false;
+                        }
+                        remaining = ticket.condition.awaitNanos(remaining);
+                    } else {
+                        ticket.condition.await();
+                    }
+                }
+            } catch (InterruptedException e) {
+                LOGGER.log(Level.WARNING,
+                        "Unexpected interruption while waiting for an execution slot");
+                if (!ticket.granted) {
+                    dequeue(ticket);
+                    return true;
+                }
+            }
+            TICKET.set(ticket);
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(this + " running " + running + ", " + requestClass + " waiting "
+                        + requestClass.waitingCount);
+            }
+
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void requestComplete(Request request) {
+        Ticket ticket = TICKET.get();
+        TICKET.remove();
+        if (ticket == null) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            running--;
+            RequestClass rc = ticket.requestClass;
+            long elapsed = System.currentTimeMillis() - ticket.grantTime;
+            if (rc.serviceTime == 0) {
+                rc.serviceTime = elapsed;
+            } else {
+                rc.serviceTime = rc.serviceTime * (1 - SERVICE_TIME_ALPHA) + elapsed
+                        * SERVICE_TIME_ALPHA;
+            }
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Estimates how long a request of the given class would wait before getting an execution slot,
+     * based on the requests queued ahead of it and the average execution time of their classes
+     */
+    long getEstimatedWait(RequestClass requestClass) {
+        double work = requestClass.waitingCount * requestClass.serviceTime;
+        for (RequestClass rc : getAllClasses()) {
+            if (rc == requestClass || rc.waitingCount == 0) {
+                continue;
+            }
+            if (rc.priority > requestClass.priority) {
+                work += rc.waitingCount * rc.serviceTime;
+            } else if (rc.priority == requestClass.priority) {
+                // classes at the same priority get served in proportion to their weight
+                double share = (requestClass.waitingCount + 1) * (double) rc.weight
+                        / requestClass.weight;
+                work += Math.min(rc.waitingCount, share) * rc.serviceTime;
+            }
+        }
+        return Math.round(work / queueSize);
+    }
+
+    List<RequestClass> getAllClasses() {
+        List<RequestClass> result = new ArrayList<RequestClass>(classes);
+        result.add(defaultClass);
+        return result;
+    }
+
+    void enqueue(Ticket ticket) {
+        RequestClass rc = ticket.requestClass;
+        if (rc.waitingCount == 0) {
+            // a class that has been idle does not get to accumulate credit
+            rc.pass = Math.max(rc.pass, virtualTime);
+        }
+        ArrayDeque<Ticket> userQueue = rc.waiting.get(ticket.key);
+        if (userQueue == null) {
+            userQueue = new ArrayDeque<Ticket>();
+            rc.waiting.put(ticket.key, userQueue);
+        }
+        userQueue.add(ticket);
+        rc.waitingCount++;
+    }
+
+    void dequeue(Ticket ticket) {
+        RequestClass rc = ticket.requestClass;
+        ArrayDeque<Ticket> userQueue = rc.waiting.get(ticket.key);
+        if (userQueue != null && userQueue.remove(ticket)) {
+            rc.waitingCount--;
+            if (userQueue.isEmpty()) {
+                rc.waiting.remove(ticket.key);
+            }
+        }
+    }
+
+    /**
+     * Hands out the free execution slots to the waiting requests. Must be called with the lock held
+     */
+    void dispatch() {
+        while (running < queueSize) {
+            RequestClass selected = null;
+            for (RequestClass rc : getAllClasses()) {
+                if (rc.waitingCount == 0) {
+                    continue;
+                }
+                if (selected == null || rc.priority > selected.priority
+                        || (rc.priority == selected.priority && rc.pass < selected.pass)) {
+                    selected = rc;
+                }
+            }
+            if (selected == null) {
+                return;
+            }
+
+            // round robin among the users waiting in this class
+            Iterator<Map.Entry<String, ArrayDeque<Ticket>>> it = selected.waiting.entrySet()
+                    .iterator();
+            Map.Entry<String, ArrayDeque<Ticket>> entry = it.next();
+            it.remove();
+            ArrayDeque<Ticket> userQueue = entry.getValue();
+            Ticket ticket = userQueue.poll();
+            if (!userQueue.isEmpty()) {
+                selected.waiting.put(entry.getKey(), userQueue);
+            }
+            selected.waitingCount--;
+            virtualTime = selected.pass;
+            selected.pass += 1d / selected.weight;
+
+            running++;
+            ticket.granted = true;
+            ticket.grantTime = System.currentTimeMillis();
+            ticket.condition.signal();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PriorityFlowController(" + queueSize + "," + classes + ")";
+    }
+
+}
@@ -0,0 +1,61 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.rest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geoserver.flow.ControlFlowCallback;
+import org.geoserver.flow.FlowController;
+import org.geoserver.flow.controller.AdaptiveFlowController;
+import org.geoserver.rest.MapResource;
+
+/**
+ * Reports the status of the control flow module, including the current limits of the adaptive
+ * flow controllers
+ */
+public class ControlFlowResource extends MapResource {
+
+    ControlFlowCallback callback;
+
+    public ControlFlowResource(ControlFlowCallback callback) {
+        this.callback = callback;
+    }
+
+    @Override
+    public Map getMap() throws Exception {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("runningRequests", callback.getRunningRequests());
+        map.put("blockedRequests", callback.getBlockedRequests());
+
+        List<Map<String, Object>> controllers = new ArrayList<Map<String, Object>>();
+        for (FlowController controller : callback.getFlowControllers()) {
+            Map<String, Object> cm = new LinkedHashMap<String, Object>();
+            if (controller instanceof AdaptiveFlowController) {
+                AdaptiveFlowController afc = (AdaptiveFlowController) controller;
+                cm.put("type", "adaptive");
+                cm.put("requests", String.valueOf(afc.getMatcher()));
+                cm.put("limit", afc.getLimit());
+                cm.put("maxLimit", afc.getMaxLimit());
+                cm.put("maxWait", afc.getMaxWait());
+                cm.put("running", afc.getRunningRequests());
+                cm.put("waiting", afc.getWaitingRequests());
+                cm.put("latency", afc.getLatency());
+                cm.put("baselineLatency", afc.getBaselineLatency());
+                cm.put("rejected", afc.getRejectedRequests());
+            } else {
+                cm.put("type", "static");
+                cm.put("description", controller.toString());
+                cm.put("priority", controller.getPriority());
+            }
+            controllers.add(cm);
+        }
+        map.put("controllers", controllers);
+
+        return map;
+    }
+}
@@ -14,10 +14,14 @@ import java.util.Properties;
 
 import org.geoserver.flow.ControllerPriorityComparator;
 import org.geoserver.flow.FlowController;
+import org.geoserver.flow.controller.AdaptiveFlowController;
 import org.geoserver.flow.controller.BasicOWSController;
 import org.geoserver.flow.controller.GlobalFlowController;
 import org.geoserver.flow.controller.IpFlowController;
+import org.geoserver.flow.controller.IpKeyGenerator;
 import org.geoserver.flow.controller.IpRequestMatcher;
+import org.geoserver.flow.controller.PriorityFlowController;
+import org.geoserver.flow.controller.PriorityFlowController.RequestClass;
 import org.geoserver.flow.controller.RateFlowController;
 import org.geoserver.flow.controller.SingleIpFlowController;
 import org.geoserver.flow.controller.UserConcurrentFlowController;
@@ -108,6 +112,77 @@ public class DefaultControlFlowConfigurationTest {
         assertEquals(100, gc.getPriority());
     }
 
+    @Test
+    public void testSchedulerParsing() throws Exception {
+        Properties p = new Properties();
+        p.put("scheduler", "8,ip");
+        p.put("scheduler.gwc", "100");
+        p.put("scheduler.wms.getmap", "50,3");
+        p.put("scheduler.wfs", "50");
+        p.put("scheduler.wps", "abc");
+
+        DefaultControlFlowConfigurator configurator = new DefaultControlFlowConfigurator(
+                new FixedWatcher(p));
+        List<FlowController> controllers = configurator.buildFlowControllers();
+        assertEquals(1, controllers.size());
+
+        assertTrue(controllers.get(0) instanceof PriorityFlowController);
+        PriorityFlowController pfc = (PriorityFlowController) controllers.get(0);
+        assertEquals(8, pfc.getPriority());
+        assertTrue(pfc.getKeyGenerator() instanceof IpKeyGenerator);
+        // the invalid wps rule has been skipped, most specific classes come first
+        List<RequestClass> classes = pfc.getRequestClasses();
+        assertEquals(3, classes.size());
+        RequestClass getMap = classes.get(0);
+        assertEquals("wms.getmap", getMap.getMatcher().toString());
+        assertEquals(50, getMap.getPriority());
+        assertEquals(3, getMap.getWeight());
+        for (RequestClass rc : classes.subList(1, 3)) {
+            if ("gwc".equals(rc.getMatcher().toString())) {
+                assertEquals(100, rc.getPriority());
+                assertEquals(1, rc.getWeight());
+            } else {
+                assertEquals("wfs", rc.getMatcher().toString());
+                assertEquals(50, rc.getPriority());
+                assertEquals(1, rc.getWeight());
+            }
+        }
+    }
+
+    @Test
+    public void testAdaptiveParsing() throws Exception {
+        Properties p = new Properties();
+        p.put("adaptive.ows.wms.getmap", "64,2000");
+        p.put("adaptive.ows", "200");
+
+        DefaultControlFlowConfigurator configurator = new DefaultControlFlowConfigurator(
+                new FixedWatcher(p));
+        List<FlowController> controllers = configurator.buildFlowControllers();
+        Collections.sort(controllers, new ControllerPriorityComparator());
+        assertEquals(2, controllers.size());
+
+        AdaptiveFlowController afc = (AdaptiveFlowController) controllers.get(0);
+        assertEquals("wms.getmap", afc.getMatcher().toString());
+        assertEquals(64, afc.getMaxLimit());
+        assertEquals(2000, afc.getMaxWait());
+        assertTrue(afc.getLimit() <= 64);
+
+        afc = (AdaptiveFlowController) controllers.get(1);
+        assertEquals("Any OGC request", afc.getMatcher().toString());
+        assertEquals(200, afc.getMaxLimit());
+        assertEquals(0, afc.getMaxWait());
+    }
+
+    @Test
+    public void testSchedulerClassesWithoutScheduler() throws Exception {
+        Properties p = new Properties();
+        p.put("scheduler.gwc", "100");
+
+        DefaultControlFlowConfigurator configurator = new DefaultControlFlowConfigurator(
+                new FixedWatcher(p));
+        assertEquals(0, configurator.buildFlowControllers().size());
+    }
+
     static class FixedWatcher extends PropertyFileWatcher {
         boolean stale = true;
 
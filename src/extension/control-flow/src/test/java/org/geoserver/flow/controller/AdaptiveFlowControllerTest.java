@@ -0,0 +1,126 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import static org.junit.Assert.*;
+
+import org.geoserver.flow.controller.FlowControllerTestingThread.ThreadState;
+import org.geoserver.ows.HttpErrorCodeException;
+import org.geoserver.ows.Request;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class AdaptiveFlowControllerTest extends AbstractFlowControllerTest {
+
+    @Test
+    public void testPriority() {
+        AdaptiveFlowController controller = new AdaptiveFlowController(new OWSRequestMatcher(),
+                4, 32, 0);
+        // priority == max limit
+        assertEquals(32, controller.getPriority());
+        assertEquals(4, controller.getLimit());
+    }
+
+    @Test
+    public void testLimitFollowsLatency() {
+        AdaptiveFlowController controller = new AdaptiveFlowController(new OWSRequestMatcher(),
+                10, 100, 0);
+
+        // stable latency with the limit in use, grows
+        for (int i = 0; i < 50; i++) {
+            controller.updateLimit(10, controller.getLimit());
+        }
+        int grownLimit = controller.getLimit();
+        assertTrue(grownLimit > 10);
+
+        // the server got a lot slower, shrinks
+        for (int i = 0; i < 50; i++) {
+            controller.updateLimit(100, controller.getLimit());
+        }
+        assertTrue(controller.getLimit() < grownLimit);
+        assertTrue(controller.getLatency() > controller.getBaselineLatency());
+    }
+
+    @Test
+    public void testNoGrowthWhenUnused() {
+        AdaptiveFlowController controller = new AdaptiveFlowController(new OWSRequestMatcher(),
+                10, 100, 0);
+        for (int i = 0; i < 50; i++) {
+            controller.updateLimit(10, 1);
+        }
+        assertEquals(10, controller.getLimit());
+    }
+
+    @Test
+    public void testMaxLimit() {
+        AdaptiveFlowController controller = new AdaptiveFlowController(new OWSRequestMatcher(),
+                10, 12, 0);
+        for (int i = 0; i < 100; i++) {
+            controller.updateLimit(10, controller.getLimit());
+        }
+        assertEquals(12, controller.getLimit());
+    }
+
+    @Test
+    public void testQueueing() throws Exception {
+        AdaptiveFlowController controller = new AdaptiveFlowController(new OWSRequestMatcher(),
+                1, 1, 0);
+
+        FlowControllerTestingThread t1 = new FlowControllerTestingThread(new Request(), 0,
+                Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t2 = new FlowControllerTestingThread(new Request(), 0,
+                Long.MAX_VALUE, controller);
+        try {
+            t1.start();
+            waitBlocked(t1, MAX_WAIT);
+            t2.start();
+            waitBlocked(t2, MAX_WAIT);
+
+            assertEquals(ThreadState.PROCESSING, t1.state);
+            assertEquals(ThreadState.STARTED, t2.state);
+            assertEquals(1, controller.getWaitingRequests());
+
+            t1.interrupt();
+            waitTerminated(t1, MAX_WAIT);
+            waitState(ThreadState.PROCESSING, t2, MAX_WAIT);
+
+            t2.interrupt();
+            waitTerminated(t2, MAX_WAIT);
+            assertEquals(0, controller.getRunningRequests());
+        } finally {
+            waitAndKill(t1, MAX_WAIT);
+            waitAndKill(t2, MAX_WAIT);
+        }
+    }
+
+    @Test
+    public void testShedLoad() throws Exception {
+        AdaptiveFlowController controller = new AdaptiveFlowController(new OWSRequestMatcher(),
+                1, 1, 100);
+        // requests take around 2.5 seconds
+        controller.updateLimit(2500, 1);
+
+        Request running = buildIpRequest("127.0.0.1", "");
+        assertTrue(controller.requestIncoming(running, -1));
+        try {
+            Request rejected = buildIpRequest("127.0.0.1", "");
+            try {
+                controller.requestIncoming(rejected, -1);
+                fail("Should have rejected the request");
+            } catch (HttpErrorCodeException e) {
+                assertEquals(503, e.getErrorCode());
+            }
+            MockHttpServletResponse response = (MockHttpServletResponse) rejected
+                    .getHttpResponse();
+            assertEquals("3", response.getHeader(AdaptiveFlowController.RETRY_AFTER));
+            assertEquals(1, controller.getRejectedRequests());
+            assertEquals(0, controller.getWaitingRequests());
+        } finally {
+            controller.requestComplete(running);
+        }
+        assertEquals(0, controller.getRunningRequests());
+    }
+
+}
@@ -0,0 +1,242 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.geoserver.flow.controller.FlowControllerTestingThread.ThreadState;
+import org.geoserver.flow.controller.PriorityFlowController.RequestClass;
+import org.geoserver.ows.Request;
+import org.junit.Test;
+
+public class PriorityFlowControllerTest extends AbstractFlowControllerTest {
+
+    @Test
+    public void testPriority() {
+        PriorityFlowController controller = new PriorityFlowController(4,
+                Collections.<RequestClass> emptyList(), null);
+        // priority == queue size
+        assertEquals(4, controller.getPriority());
+    }
+
+    @Test
+    public void testClassification() {
+        RequestClass wms = new RequestClass(new OWSRequestMatcher("wms"), 10, 1);
+        RequestClass getMap = new RequestClass(new OWSRequestMatcher("wms", "GetMap"), 20, 1);
+        PriorityFlowController controller = new PriorityFlowController(4, Arrays.asList(wms,
+                getMap), null);
+
+        assertSame(getMap, controller.getRequestClass(buildOwsRequest("WMS", "GetMap")));
+        assertSame(wms, controller.getRequestClass(buildOwsRequest("WMS", "GetFeatureInfo")));
+        assertSame(controller.defaultClass,
+                controller.getRequestClass(buildOwsRequest("WFS", "GetFeature")));
+    }
+
+    @Test
+    public void testHigherPriorityFirst() throws Exception {
+        List<RequestClass> classes = Arrays.asList(
+                new RequestClass(new OWSRequestMatcher("gwc"), 100, 1),
+                new RequestClass(new OWSRequestMatcher("wfs"), 10, 1));
+        PriorityFlowController controller = new PriorityFlowController(1, classes, null);
+
+        FlowControllerTestingThread t1 = new FlowControllerTestingThread(buildOwsRequest("wfs",
+                "GetFeature"), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t2 = new FlowControllerTestingThread(buildOwsRequest("wfs",
+                "GetFeature"), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t3 = new FlowControllerTestingThread(buildOwsRequest("gwc",
+                "dispatch"), 0, Long.MAX_VALUE, controller);
+        try {
+            t1.start();
+            waitBlocked(t1, MAX_WAIT);
+            t2.start();
+            waitBlocked(t2, MAX_WAIT);
+            t3.start();
+            waitBlocked(t3, MAX_WAIT);
+
+            assertEquals(ThreadState.PROCESSING, t1.state);
+            assertEquals(ThreadState.STARTED, t2.state);
+            assertEquals(ThreadState.STARTED, t3.state);
+            assertEquals(2, controller.getWaitingRequests());
+
+            // t3 came in last, but it's a tile request, should go before t2
+            t1.interrupt();
+            waitTerminated(t1, MAX_WAIT);
+            waitState(ThreadState.PROCESSING, t3, MAX_WAIT);
+            assertEquals(ThreadState.STARTED, t2.state);
+
+            t3.interrupt();
+            waitTerminated(t3, MAX_WAIT);
+            waitState(ThreadState.PROCESSING, t2, MAX_WAIT);
+
+            t2.interrupt();
+            waitTerminated(t2, MAX_WAIT);
+            assertEquals(0, controller.getRunningRequests());
+            assertEquals(0, controller.getWaitingRequests());
+        } finally {
+            waitAndKill(t1, MAX_WAIT);
+            waitAndKill(t2, MAX_WAIT);
+            waitAndKill(t3, MAX_WAIT);
+        }
+    }
+
+    @Test
+    public void testWeightedShare() throws Exception {
+        RequestClass wms = new RequestClass(new OWSRequestMatcher("wms"), 10, 3);
+        RequestClass wfs = new RequestClass(new OWSRequestMatcher("wfs"), 10, 1);
+        PriorityFlowController controller = new PriorityFlowController(1, Arrays.asList(wms,
+                wfs), null);
+
+        // fill the queues directly, and check in which order the slots are handed out
+        controller.lock.lock();
+        try {
+            for (int i = 0; i < 8; i++) {
+                controller.enqueue(new PriorityFlowController.Ticket(wms, "", controller.lock
+                        .newCondition()));
+                controller.enqueue(new PriorityFlowController.Ticket(wfs, "", controller.lock
+                        .newCondition()));
+            }
+            int wmsServed = 0;
+            for (int i = 0; i < 8; i++) {
+                controller.dispatch();
+                if (wms.waitingCount < 8 - wmsServed) {
+                    wmsServed++;
+                }
+                controller.running--;
+            }
+            // three to one ratio
+            assertEquals(6, wmsServed);
+        } finally {
+            controller.lock.unlock();
+        }
+    }
+
+    @Test
+    public void testFairShare() throws Exception {
+        PriorityFlowController controller = new PriorityFlowController(1,
+                Collections.<RequestClass> emptyList(), new IpKeyGenerator());
+
+        FlowControllerTestingThread t1 = new FlowControllerTestingThread(buildIpRequest(
+                "192.168.1.1", ""), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t2 = new FlowControllerTestingThread(buildIpRequest(
+                "192.168.1.1", ""), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t3 = new FlowControllerTestingThread(buildIpRequest(
+                "192.168.1.1", ""), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t4 = new FlowControllerTestingThread(buildIpRequest(
+                "192.168.1.2", ""), 0, Long.MAX_VALUE, controller);
+        try {
+            t1.start();
+            waitBlocked(t1, MAX_WAIT);
+            t2.start();
+            waitBlocked(t2, MAX_WAIT);
+            t3.start();
+            waitBlocked(t3, MAX_WAIT);
+            t4.start();
+            waitBlocked(t4, MAX_WAIT);
+            assertEquals(ThreadState.PROCESSING, t1.state);
+
+            // first user gets its turn
+            t1.interrupt();
+            waitTerminated(t1, MAX_WAIT);
+            waitState(ThreadState.PROCESSING, t2, MAX_WAIT);
+
+            // then the second user goes, even if it came in after t3
+            t2.interrupt();
+            waitTerminated(t2, MAX_WAIT);
+            waitState(ThreadState.PROCESSING, t4, MAX_WAIT);
+            assertEquals(ThreadState.STARTED, t3.state);
+
+            t4.interrupt();
+            waitTerminated(t4, MAX_WAIT);
+            waitState(ThreadState.PROCESSING, t3, MAX_WAIT);
+            t3.interrupt();
+        } finally {
+            waitAndKill(t1, MAX_WAIT);
+            waitAndKill(t2, MAX_WAIT);
+            waitAndKill(t3, MAX_WAIT);
+            waitAndKill(t4, MAX_WAIT);
+        }
+    }
+
+    @Test
+    public void testEarlyRejection() throws Exception {
+        PriorityFlowController controller = new PriorityFlowController(1,
+                Collections.<RequestClass> emptyList(), null);
+
+        // teach the controller requests take around 300ms
+        Request request = buildOwsRequest("wms", "GetMap");
+        assertTrue(controller.requestIncoming(request, -1));
+        Thread.sleep(300);
+        controller.requestComplete(request);
+
+        // one request running, four queued up
+        FlowControllerTestingThread[] threads = new FlowControllerTestingThread[5];
+        try {
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new FlowControllerTestingThread(buildOwsRequest("wms", "GetMap"),
+                        0, Long.MAX_VALUE, controller);
+                threads[i].start();
+                waitBlocked(threads[i], MAX_WAIT);
+            }
+            assertEquals(4, controller.getWaitingRequests());
+
+            // the estimated wait is over 1 second, we should be rejected without waiting
+            long start = System.currentTimeMillis();
+            assertFalse(controller.requestIncoming(buildOwsRequest("wms", "GetMap"), 1000));
+            assertTrue(System.currentTimeMillis() - start < 1000);
+            assertEquals(4, controller.getWaitingRequests());
+
+            // let them go one at a time, in order
+            for (FlowControllerTestingThread t : threads) {
+                waitState(ThreadState.PROCESSING, t, MAX_WAIT);
+                t.interrupt();
+                waitTerminated(t, MAX_WAIT);
+            }
+        } finally {
+            for (FlowControllerTestingThread t : threads) {
+                if (t != null) {
+                    waitAndKill(t, MAX_WAIT);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTimeout() {
+        PriorityFlowController controller = new PriorityFlowController(1,
+                Collections.<RequestClass> emptyList(), null);
+
+        FlowControllerTestingThread t1 = new FlowControllerTestingThread(new Request(), 100,
+                400, controller);
+        FlowControllerTestingThread t2 = new FlowControllerTestingThread(new Request(), 100,
+                400, controller);
+        try {
+            t1.start();
+            waitBlocked(t1, MAX_WAIT);
+            t2.start();
+
+            waitTerminated(t1, MAX_WAIT);
+            waitTerminated(t2, MAX_WAIT);
+
+            assertEquals(ThreadState.COMPLETE, t1.state);
+            assertEquals(ThreadState.TIMED_OUT, t2.state);
+            assertEquals(0, controller.getWaitingRequests());
+        } finally {
+            waitAndKill(t1, MAX_WAIT);
+            waitAndKill(t2, MAX_WAIT);
+        }
+    }
+
+    Request buildOwsRequest(String service, String request) {
+        Request result = new Request();
+        result.setService(service);
+        result.setRequest(request);
+        return result;
+    }
+
+}
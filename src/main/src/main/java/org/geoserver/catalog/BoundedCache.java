@@ -0,0 +1,326 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A thread safe map holding hard references to its values, evicting them when the number of
+ * entries or their total weight exceeds the configured limits, or when they have not been accessed
+ * for longer than the configured expiry time.
+ * <p>
+ * Two eviction policies are supported:
+ * <ul>
+ * <li>{@link Policy#LRU}: the least recently used entry is evicted first</li>
+ * <li>{@link Policy#LFU}: the least frequently used entry is evicted first, among the ones with
+ * the same frequency the least recently used one. Frequencies are periodically halved, so that
+ * entries that were popular a long time ago eventually make room for the current ones</li>
+ * </ul>
+ * The entry just added is never evicted to make room for itself. Expired entries are purged
+ * lazily, when the map is accessed. The {@link EvictionListener} is called outside of the map
+ * lock, entries explicitly removed or cleared are not reported to it.
+ * </p>
+ * <p>
+ * The {@link #entrySet()}, {@link #keySet()} and {@link #values()} views are read only snapshots.
+ * </p>
+ */
+public class BoundedCache<K, V> extends AbstractMap<K, V> {
+
+    /**
+     * The eviction policies
+     */
+    public enum Policy {
+        LRU, LFU
+    }
+
+    /**
+     * Computes the weight of an entry, used to bound the cache by weight instead of (or in
+     * addition to) the number of entries
+     */
+    public interface Weigher<K, V> {
+        int weigh(K key, V value);
+    }
+
+    /**
+     * Notified of the entries evicted because of the size/weight limits, or because they expired
+     */
+    public interface EvictionListener<K, V> {
+        void evicted(K key, V value);
+    }
+
+    /**
+     * The frequencies are halved every AGING_PERIOD accesses, or every ten accesses per entry,
+     * whatever is greater
+     */
+    static final int AGING_PERIOD = 1000;
+
+    static class Node<V> {
+        V value;
+
+        int weight;
+
+        int frequency = 1;
+
+        long lastAccess;
+
+        Node(V value, int weight, long lastAccess) {
+            this.value = value;
+            this.weight = weight;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     * Iteration order is the access order, least recently used first
+     */
+    final LinkedHashMap<K, Node<V>> map = new LinkedHashMap<K, Node<V>>(16, 0.75f, true);
+
+    final Policy policy;
+
+    final int maxEntries;
+
+    final long maxWeight;
+
+    final long expireAfterAccess;
+
+    final Weigher<? super K, ? super V> weigher;
+
+    final EvictionListener<? super K, ? super V> listener;
+
+    long weight;
+
+    int accesses;
+
+    /**
+     * Builds a new cache
+     *
+     * @param policy the eviction policy
+     * @param maxEntries the max number of entries, zero or negative for no limit
+     * @param maxWeight the max total weight of the entries, zero or negative for no limit
+     * @param expireAfterAccess how long an entry can stay in the cache without being accessed, in
+     *        milliseconds, zero or negative for no expiry
+     * @param weigher computes the entries weight, can be null if every entry weighs 1
+     * @param listener notified of the evicted entries, can be null
+     */
+    public BoundedCache(Policy policy, int maxEntries, long maxWeight, long expireAfterAccess,
+            Weigher<? super K, ? super V> weigher, EvictionListener<? super K, ? super V> listener) {
+        if (policy == null) {
+            throw new IllegalArgumentException("The eviction policy must be specified");
+        }
+        this.policy = policy;
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.expireAfterAccess = expireAfterAccess > 0 ? TimeUnit.MILLISECONDS
+                .toNanos(expireAfterAccess) : 0;
+        this.weigher = weigher;
+        this.listener = listener;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Returns the expiry time in milliseconds, zero if entries never expire
+     */
+    public long getExpireAfterAccess() {
+        return TimeUnit.NANOSECONDS.toMillis(expireAfterAccess);
+    }
+
+    /**
+     * Returns the total weight of the entries in the cache
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    @Override
+    public V get(Object key) {
+        List<Map.Entry<K, V>> evicted = new ArrayList<Map.Entry<K, V>>(0);
+        V value = null;
+        synchronized (this) {
+            long now = System.nanoTime();
+            expire(now, evicted);
+            Node<V> node = map.get(key);
+            if (node != null) {
+                node.lastAccess = now;
+                if (policy == Policy.LFU) {
+                    node.frequency++;
+                    age();
+                }
+                value = node.value;
+            }
+        }
+        notifyEvicted(evicted);
+        return value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("Keys and values cannot be null");
+        }
+        List<Map.Entry<K, V>> evicted = new ArrayList<Map.Entry<K, V>>(0);
+        V previous = null;
+        synchronized (this) {
+            long now = System.nanoTime();
+            expire(now, evicted);
+            Node<V> node = new Node<V>(value, weigher != null ? weigher.weigh(key, value) : 1, now);
+            Node<V> old = map.put(key, node);
+            if (old != null) {
+                weight -= old.weight;
+                node.frequency = old.frequency;
+                previous = old.value;
+            }
+            weight += node.weight;
+            evict(key, evicted);
+        }
+        notifyEvicted(evicted);
+        return previous;
+    }
+
+    @Override
+    public synchronized V remove(Object key) {
+        Node<V> node = map.remove(key);
+        if (node == null) {
+            return null;
+        }
+        weight -= node.weight;
+        return node.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        // does not count as an access, LinkedHashMap.containsKey does not alter the access order
+        List<Map.Entry<K, V>> evicted = new ArrayList<Map.Entry<K, V>>(0);
+        boolean contained;
+        synchronized (this) {
+            expire(System.nanoTime(), evicted);
+            contained = map.containsKey(key);
+        }
+        notifyEvicted(evicted);
+        return contained;
+    }
+
+    @Override
+    public synchronized int size() {
+        return map.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        map.clear();
+        weight = 0;
+    }
+
+    @Override
+    public synchronized Set<Map.Entry<K, V>> entrySet() {
+        Map<K, V> copy = new LinkedHashMap<K, V>();
+        for (Map.Entry<K, Node<V>> entry : map.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().value);
+        }
+        return Collections.unmodifiableMap(copy).entrySet();
+    }
+
+    /**
+     * Removes the expired entries. Iteration follows the access order, so the expired entries are
+     * all at the beginning
+     */
+    void expire(long now, List<Map.Entry<K, V>> evicted) {
+        if (expireAfterAccess <= 0) {
+            return;
+        }
+        for (Iterator<Map.Entry<K, Node<V>>> it = map.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<K, Node<V>> entry = it.next();
+            if (!isExpired(entry.getValue(), now)) {
+                break;
+            }
+            it.remove();
+            weight -= entry.getValue().weight;
+            evicted.add(new SimpleImmutableEntry<K, V>(entry.getKey(), entry.getValue().value));
+        }
+    }
+
+    boolean isExpired(Node<V> node, long now) {
+        return expireAfterAccess > 0 && now - node.lastAccess > expireAfterAccess;
+    }
+
+    /**
+     * Evicts entries until the cache is back within its limits, the entry just added is not
+     * considered
+     */
+    void evict(K added, List<Map.Entry<K, V>> evicted) {
+        while (map.size() > 1 && ((maxEntries > 0 && map.size() > maxEntries)
+                || (maxWeight > 0 && weight > maxWeight))) {
+            K victim = policy == Policy.LFU ? leastFrequentlyUsed(added) : leastRecentlyUsed(added);
+            Node<V> node = map.remove(victim);
+            weight -= node.weight;
+            evicted.add(new SimpleImmutableEntry<K, V>(victim, node.value));
+        }
+    }
+
+    K leastRecentlyUsed(K added) {
+        for (K key : map.keySet()) {
+            if (!key.equals(added)) {
+                return key;
+            }
+        }
+        throw new IllegalStateException("No entry to evict");
+    }
+
+    /**
+     * Linear scan, these caches are meant to hold at most a few thousands expensive objects, and
+     * evictions are rare compared to lookups
+     */
+    K leastFrequentlyUsed(K added) {
+        K victim = null;
+        int min = Integer.MAX_VALUE;
+        for (Map.Entry<K, Node<V>> entry : map.entrySet()) {
+            // strict comparison, among equals the least recently used one wins
+            if (entry.getValue().frequency < min && !entry.getKey().equals(added)) {
+                victim = entry.getKey();
+                min = entry.getValue().frequency;
+            }
+        }
+        if (victim == null) {
+            throw new IllegalStateException("No entry to evict");
+        }
+        return victim;
+    }
+
+    void age() {
+        if (++accesses >= Math.max(AGING_PERIOD, map.size() * 10)) {
+            accesses = 0;
+            for (Node<V> node : map.values()) {
+                node.frequency = Math.max(1, node.frequency / 2);
+            }
+        }
+    }
+
+    void notifyEvicted(List<Map.Entry<K, V>> evicted) {
+        if (listener == null) {
+            return;
+        }
+        for (Map.Entry<K, V> entry : evicted) {
+            listener.evicted(entry.getKey(), entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A snapshot of the configuration and usage statistics of one of the {@link ResourcePool} caches.
+ * <p>
+ * Hits and misses are counted on lookups, a load is the time elapsed between a miss and the
+ * thread that missed storing the value in the cache, which is how the {@link ResourcePool} builds
+ * the resources it caches.
+ * </p>
+ */
+public class ResourceCacheStatistics {
+
+    String name;
+
+    String policy;
+
+    int size;
+
+    long weight;
+
+    int maxEntries;
+
+    long maxWeight;
+
+    long expireAfterAccess;
+
+    long hitCount;
+
+    long missCount;
+
+    long loadCount;
+
+    long totalLoadTime;
+
+    long evictionCount;
+
+    @ConstructorProperties({ "name", "policy", "size", "weight", "maxEntries", "maxWeight",
+            "expireAfterAccess", "hitCount", "missCount", "loadCount", "totalLoadTime",
+            "evictionCount" })
+    public ResourceCacheStatistics(String name, String policy, int size, long weight,
+            int maxEntries, long maxWeight, long expireAfterAccess, long hitCount, long missCount,
+            long loadCount, long totalLoadTime, long evictionCount) {
+        this.name = name;
+        this.policy = policy;
+        this.size = size;
+        this.weight = weight;
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.expireAfterAccess = expireAfterAccess;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadCount = loadCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCount = evictionCount;
+    }
+
+    /**
+     * The cache name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The eviction policy, SOFT, LRU or LFU
+     */
+    public String getPolicy() {
+        return policy;
+    }
+
+    /**
+     * The number of entries in the cache
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * The total weight of the entries in the cache
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    /**
+     * The max number of entries, or the number of hard references for the SOFT policy, zero if
+     * unbounded
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * The max total weight, zero if unbounded
+     */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * How long an entry can sit in the cache without being used, in milliseconds, zero if entries
+     * never expire
+     */
+    public long getExpireAfterAccess() {
+        return expireAfterAccess;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * The ratio of lookups that found a value in the cache, 1 if no lookup was made yet
+     */
+    public double getHitRatio() {
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 1 : hitCount / (double) lookups;
+    }
+
+    public long getLoadCount() {
+        return loadCount;
+    }
+
+    /**
+     * The total time spent loading values, in milliseconds
+     */
+    public long getTotalLoadTime() {
+        return totalLoadTime;
+    }
+
+    /**
+     * The average time spent loading a value, in milliseconds
+     */
+    public double getAverageLoadTime() {
+        return loadCount == 0 ? 0 : totalLoadTime / (double) loadCount;
+    }
+
+    /**
+     * The number of entries evicted because of the cache limits, expiry or garbage collection
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceCacheStatistics[name=" + name + ", policy=" + policy + ", size=" + size
+                + ", hits=" + hitCount + ", misses=" + missCount + ", loads=" + loadCount
+                + ", evictions=" + evictionCount + "]";
+    }
+}
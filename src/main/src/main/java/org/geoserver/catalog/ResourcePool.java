@@ -27,12 +27,16 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -135,6 +139,11 @@ import org.vfny.geoserver.util.DataStoreUtils;
  * <li>{@link #hintCoverageReaderCache} </li>
  * <li>{@link #styleCache} </li>
  * </p>
+ * <p>
+ * The eviction policy and limits of these caches, other than the CRS one, can be configured, see
+ * {@link CatalogResourceCache}, and their usage statistics are available via
+ * {@link #getCacheStatistics()}.
+ * </p>
  * 
  * @author Justin Deoliveira, Boundless
  */
@@ -377,7 +386,7 @@ public class ResourcePool {
     }
 
     protected Map<StyleInfo, Style> createStyleCache() {
-        return new HashMap<StyleInfo, Style>();
+        return new StyleCache();
     }
 
     /**
@@ -1886,6 +1895,39 @@ public class ResourcePool {
         return new GeoServerDataDirectory(catalog.getResourceLoader());
     }
 
+    /**
+     * Returns the configuration and usage statistics of the resource caches, keyed by cache name.
+     * Only the caches extending {@link CatalogResourceCache} are reported.
+     */
+    public Map<String, ResourceCacheStatistics> getCacheStatistics() {
+        Map<String, ResourceCacheStatistics> result = new LinkedHashMap<String, ResourceCacheStatistics>();
+        for (Map<?, ?> cache : getResourceCaches()) {
+            if (cache instanceof CatalogResourceCache) {
+                ResourceCacheStatistics statistics = ((CatalogResourceCache<?, ?>) cache)
+                        .getStatistics();
+                result.put(statistics.getName(), statistics);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Resets the hit, miss, load and eviction counters of the resource caches
+     */
+    public void resetCacheStatistics() {
+        for (Map<?, ?> cache : getResourceCaches()) {
+            if (cache instanceof CatalogResourceCache) {
+                ((CatalogResourceCache<?, ?>) cache).resetStatistics();
+            }
+        }
+    }
+
+    List<Map<?, ?>> getResourceCaches() {
+        return Arrays.<Map<?, ?>> asList(dataStoreCache, featureTypeCache,
+                featureTypeAttributeCache, coverageReaderCache, hintCoverageReaderCache, wmsCache,
+                styleCache);
+    }
+
     /**
      * Disposes all cached resources.
      *
@@ -1904,32 +1946,196 @@ public class ResourcePool {
     
     /**
      * Base class for all the resource caches, ensures type safety and provides
-     * an easier way to handle with resource disposal 
+     * an easier way to handle with resource disposal.
+     * <p>
+     * How the entries are kept around is configured by the 
+     * <code>RESOURCE_POOL_CACHE_&lt;NAME&gt;</code> system property, environment variable or servlet
+     * context parameter, where NAME is the upper case cache name (e.g., 
+     * <code>RESOURCE_POOL_CACHE_FEATURETYPE</code>). The value is a comma separated list of
+     * key=value pairs:
+     * <ul>
+     * <li><code>policy</code>: <code>SOFT</code> keeps hard references to the most recently used
+     * values and soft references to the others, which the garbage collector can clear all at once
+     * under memory pressure. <code>LRU</code> and <code>LFU</code> keep only hard references and
+     * evict the least recently or least frequently used values, see {@link BoundedCache}</li>
+     * <li><code>maxEntries</code>: the max number of entries, or hard references for the SOFT
+     * policy</li>
+     * <li><code>maxWeight</code>: the max total weight of the entries, a feature type weighs as
+     * much as its attributes, the other resources weigh 1 (LRU and LFU only)</li>
+     * <li><code>expireAfterAccess</code>: how long an entry can stay unused in the cache, in
+     * seconds (LRU and LFU only)</li>
+     * </ul>
+     * For example, <code>RESOURCE_POOL_CACHE_DATASTORE=policy=LRU,maxEntries=200,expireAfterAccess=3600</code>.
+     * Mind that evicting a store or a coverage reader disposes it, the LRU and LFU caches for those
+     * should be sized to hold the working set.
+     * </p>
      * @author Andrea Aime
      *
      * @param <K>
      * @param <V>
      */
-    abstract class CatalogResourceCache<K, V> extends SoftValueHashMap<K, V> {
+    abstract class CatalogResourceCache<K, V> extends SoftValueHashMap<K, V> implements
+            BoundedCache.Weigher<K, V>, BoundedCache.EvictionListener<K, V> {
+
+        final String name;
+
+        String policy;
+
+        int maxEntries;
+
+        long maxWeight;
+
+        long expireAfterAccess;
+
+        final Map<K, V> store;
+
+        final AtomicLong hits = new AtomicLong();
+
+        final AtomicLong misses = new AtomicLong();
 
-        public CatalogResourceCache() {
-            this(100);
+        final AtomicLong loads = new AtomicLong();
+
+        final AtomicLong loadTime = new AtomicLong();
+
+        final AtomicLong evictions = new AtomicLong();
+
+        /**
+         * The key last missed by the current thread, and when, to measure how long it takes to
+         * load it
+         */
+        final ThreadLocal<PendingLoad> pendingLoad = new ThreadLocal<PendingLoad>();
+
+        public CatalogResourceCache(String name) {
+            this(name, 100);
+        }
+
+        public CatalogResourceCache(String name, int hardReferences) {
+            this(name, hardReferences, SOFT_POLICY);
         }
 
-        public CatalogResourceCache(int hardReferences) {
-            super(hardReferences);
-            super.cleaner = new ValueCleaner() {
+        public CatalogResourceCache(String name, int maxEntries, String defaultPolicy) {
+            this(name, maxEntries, defaultPolicy, GeoServerExtensions
+                    .getProperty(CACHE_PROPERTY_PREFIX + name.toUpperCase()));
+        }
 
-                @Override
-                public void clean(Object key, Object object) {
-                    dispose((K) key, (V) object);
+        CatalogResourceCache(String name, int maxEntries, String defaultPolicy, String spec) {
+            // the inherited map is not used, only its hard references count is reported
+            super(Math.max(0, configuredMaxEntries(spec, maxEntries)));
+            this.name = name;
+            this.maxEntries = maxEntries;
+            this.policy = defaultPolicy;
+            configure(spec);
+            if (SOFT_POLICY.equals(policy)) {
+                store = new SoftStore(this.maxEntries);
+            } else {
+                store = new BoundedCache<K, V>(BoundedCache.Policy.valueOf(policy),
+                        this.maxEntries, maxWeight, expireAfterAccess, this, this);
+            }
+        }
+
+        void configure(String spec) {
+            if (spec == null) {
+                return;
+            }
+            for (String token : spec.split(",")) {
+                String[] kvp = token.split("=", 2);
+                String key = kvp[0].trim();
+                try {
+                    if (kvp.length < 2) {
+                        throw new IllegalArgumentException("missing value");
+                    }
+                    String value = kvp[1].trim();
+                    if ("policy".equalsIgnoreCase(key)) {
+                        value = value.toUpperCase();
+                        if (!SOFT_POLICY.equals(value)) {
+                            BoundedCache.Policy.valueOf(value);
+                        }
+                        policy = value;
+                    } else if ("maxEntries".equalsIgnoreCase(key)) {
+                        maxEntries = Integer.parseInt(value);
+                    } else if ("maxWeight".equalsIgnoreCase(key)) {
+                        maxWeight = Long.parseLong(value);
+                    } else if ("expireAfterAccess".equalsIgnoreCase(key)) {
+                        expireAfterAccess = TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+                    } else {
+                        throw new IllegalArgumentException("unknown key");
+                    }
+                } catch (IllegalArgumentException e) {
+                    LOGGER.warning("Ignoring invalid setting '" + token + "' for the " + name
+                            + " cache: " + e.getMessage());
                 }
-            };
+            }
+            if (SOFT_POLICY.equals(policy) && (maxWeight > 0 || expireAfterAccess > 0)) {
+                LOGGER.warning("The " + name + " cache uses the SOFT policy, maxWeight and "
+                        + "expireAfterAccess will be ignored");
+            }
+        }
+
+        @Override
+        public V get(Object key) {
+            V value = store.get(key);
+            PendingLoad pending = pendingLoad.get();
+            boolean pendingKey = pending != null && pending.key.equals(key);
+            if (value != null) {
+                hits.incrementAndGet();
+                if (pendingKey) {
+                    // someone else loaded it meanwhile
+                    pendingLoad.remove();
+                }
+            } else if (!pendingKey) {
+                // the pool looks up again after grabbing the lock, count only the first miss
+                misses.incrementAndGet();
+                pendingLoad.set(new PendingLoad(key, System.nanoTime()));
+            }
+            return value;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            PendingLoad pending = pendingLoad.get();
+            if (pending != null && pending.key.equals(key)) {
+                loads.incrementAndGet();
+                loadTime.addAndGet(System.nanoTime() - pending.start);
+                pendingLoad.remove();
+            }
+            return store.put(key, value);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return store.containsKey(key);
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            return store.containsValue(value);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return store.isEmpty();
+        }
+
+        @Override
+        public void putAll(Map<? extends K, ? extends V> map) {
+            for (Entry<? extends K, ? extends V> entry : map.entrySet()) {
+                put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        @Override
+        public int size() {
+            return store.size();
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return store.entrySet();
         }
 
         @Override
         public V remove(Object key) {
-            V object = super.remove(key);
+            V object = store.remove(key);
             if (object != null) {
                 dispose((K) key, object);
             }
@@ -1938,24 +2144,118 @@ public class ResourcePool {
 
         @Override
         public void clear() {
-            for (Entry entry : entrySet()) {
+            for (Entry<K, V> entry : store.entrySet()) {
                 try {
-                    dispose((K) entry.getKey(), (V) entry.getValue());
+                    dispose(entry.getKey(), entry.getValue());
                 }
                 catch(Exception e) {
                     LOGGER.log(Level.WARNING, "Error dispoing entry: " + entry, e);
                 }
             }
-            super.clear();
+            store.clear();
+        }
+
+        /**
+         * Called when an entry is evicted due to the cache limits, expiry, or garbage collection
+         */
+        @Override
+        public void evicted(K key, V value) {
+            evictions.incrementAndGet();
+            try {
+                dispose(key, value);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Error disposing evicted entry: " + key, e);
+            }
+        }
+
+        /**
+         * Returns the weight of a cache entry, 1 by default
+         */
+        @Override
+        public int weigh(K key, V value) {
+            return 1;
+        }
+
+        public ResourceCacheStatistics getStatistics() {
+            long weight = store instanceof BoundedCache ? ((BoundedCache<K, V>) store).getWeight()
+                    : store.size();
+            return new ResourceCacheStatistics(name, policy, store.size(), weight, maxEntries,
+                    maxWeight, expireAfterAccess, hits.get(), misses.get(), loads.get(),
+                    TimeUnit.NANOSECONDS.toMillis(loadTime.get()), evictions.get());
+        }
+
+        public void resetStatistics() {
+            hits.set(0);
+            misses.set(0);
+            loads.set(0);
+            loadTime.set(0);
+            evictions.set(0);
         }
 
         protected abstract void dispose(K key, V object);
+
+        /**
+         * Keeps hard references to the most recently used values, soft references to the others
+         */
+        class SoftStore extends SoftValueHashMap<K, V> {
+
+            SoftStore(int hardReferences) {
+                super(hardReferences);
+                super.cleaner = new ValueCleaner() {
+
+                    @Override
+                    public void clean(Object key, Object object) {
+                        evicted((K) key, (V) object);
+                    }
+                };
+            }
+        }
+    }
+
+    static final String SOFT_POLICY = "SOFT";
+
+    /**
+     * Returns the max number of entries set by a cache configuration, or the default one. Errors
+     * are reported when the configuration is actually applied.
+     */
+    static int configuredMaxEntries(String spec, int defaultMaxEntries) {
+        if (spec != null) {
+            for (String token : spec.split(",")) {
+                String[] kvp = token.split("=", 2);
+                if (kvp.length == 2 && "maxEntries".equalsIgnoreCase(kvp[0].trim())) {
+                    try {
+                        return Integer.parseInt(kvp[1].trim());
+                    } catch (NumberFormatException e) {
+                        return defaultMaxEntries;
+                    }
+                }
+            }
+        }
+        return defaultMaxEntries;
+    }
+
+    static final String CACHE_PROPERTY_PREFIX = "RESOURCE_POOL_CACHE_";
+
+    static class PendingLoad {
+        final Object key;
+
+        final long start;
+
+        PendingLoad(Object key, long start) {
+            this.key = key;
+            this.start = start;
+        }
     }
     
     class FeatureTypeCache extends CatalogResourceCache<String, FeatureType> {
         
         public FeatureTypeCache(int maxSize) {
-            super(maxSize);
+            super("featureType", maxSize);
+        }
+
+        @Override
+        public int weigh(String key, FeatureType featureType) {
+            return Math.max(1, featureType.getDescriptors().size());
         }
         
         protected void dispose(String key, FeatureType featureType) {
@@ -1980,6 +2280,11 @@ public class ResourcePool {
      */
     @SuppressWarnings("rawtypes")
     class DataStoreCache extends CatalogResourceCache<String, DataAccess> {
+
+        public DataStoreCache() {
+            super("dataStore");
+        }
+
         /**
          * Ensure data access entry is removed from catalog, and
          * ensure DataAccess dispose is called to return system resources.
@@ -2013,7 +2318,11 @@ public class ResourcePool {
     }
     
     class CoverageReaderCache extends CatalogResourceCache<String, GridCoverageReader> {
-        
+
+        public CoverageReaderCache() {
+            super("coverageReader");
+        }
+
         protected void dispose(String id, GridCoverageReader reader) {
         	CoverageStoreInfo info = catalog.getCoverageStore(id);
         	if(info != null) {
@@ -2033,7 +2342,11 @@ public class ResourcePool {
     }
     
     class CoverageHintReaderCache extends CatalogResourceCache<CoverageHintReaderKey, GridCoverageReader> {
-        
+
+        public CoverageHintReaderCache() {
+            super("hintCoverageReader");
+        }
+
         protected void dispose(CoverageHintReaderKey key, GridCoverageReader reader) {
         	CoverageStoreInfo info = catalog.getCoverageStore(key.id);
         	if(info != null) {
@@ -2103,7 +2416,12 @@ public class ResourcePool {
     class FeatureTypeAttributeCache extends CatalogResourceCache<String, List<AttributeTypeInfo>> {
 
         FeatureTypeAttributeCache(int size) {
-            super(size);
+            super("featureTypeAttribute", size);
+        }
+
+        @Override
+        public int weigh(String key, List<AttributeTypeInfo> attributes) {
+            return Math.max(1, attributes.size());
         }
 
         @Override
@@ -2114,6 +2432,10 @@ public class ResourcePool {
 
     class WMSCache extends CatalogResourceCache<String, WebMapServer> {
 
+        public WMSCache() {
+            super("wms");
+        }
+
         @Override
         protected void dispose(String key, WebMapServer server) {
             HTTPClient client = server.getHTTPClient();
@@ -2133,6 +2455,22 @@ public class ResourcePool {
 
     }
     
+    /**
+     * The style cache used to be an unbounded map, it's still unbounded unless configured
+     * otherwise
+     */
+    class StyleCache extends CatalogResourceCache<StyleInfo, Style> {
+
+        public StyleCache() {
+            super("style", 0, BoundedCache.Policy.LRU.name());
+        }
+
+        @Override
+        protected void dispose(StyleInfo key, Style style) {
+            // nothing to do
+        }
+    }
+
     /**
      * Listens to catalog events clearing cache entires when resources are modified.
      */
@@ -0,0 +1,23 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link ResourcePool} caches
+ */
+public interface ResourcePoolMXBean {
+
+    /**
+     * Returns the statistics of each cache, keyed by cache name
+     */
+    Map<String, ResourceCacheStatistics> getCacheStatistics();
+
+    /**
+     * Resets the hit, miss, load and eviction counters of all caches
+     */
+    void resetCacheStatistics();
+}
@@ -0,0 +1,79 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.geotools.util.logging.Logging;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Publishes the statistics of the {@link ResourcePool} caches in the platform MBean server. The
+ * pool is looked up from the catalog on each call, so the statistics follow the catalog when its
+ * resource pool gets replaced.
+ */
+public class ResourcePoolMonitor implements ResourcePoolMXBean, InitializingBean, DisposableBean {
+
+    static final Logger LOGGER = Logging.getLogger(ResourcePoolMonitor.class);
+
+    public static final String OBJECT_NAME = "org.geoserver:type=ResourcePool";
+
+    Catalog catalog;
+
+    ObjectName name;
+
+    public ResourcePoolMonitor(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public Map<String, ResourceCacheStatistics> getCacheStatistics() {
+        return catalog.getResourcePool().getCacheStatistics();
+    }
+
+    @Override
+    public void resetCacheStatistics() {
+        catalog.getResourcePool().resetCacheStatistics();
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            // multiple application contexts in the same JVM (e.g., tests), keep the last one
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            this.name = name;
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not register the resource pool MBean", e);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (name == null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Could not unregister the resource pool MBean", e);
+        }
+        name = null;
+    }
+}
@@ -9,9 +9,14 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.rmi.server.UID;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 
+import javax.annotation.Nullable;
+
 import org.geoserver.catalog.CatalogFacade;
 import org.geoserver.catalog.CatalogInfo;
 import org.geoserver.catalog.LayerGroupInfo;
@@ -23,7 +28,15 @@ import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.catalog.StoreInfo;
 import org.geoserver.catalog.StyleInfo;
 import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.util.CloseableIterator;
+import org.geoserver.catalog.util.CloseableIteratorAdapter;
 import org.geoserver.ows.util.OwsUtils;
+import org.opengis.filter.Filter;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Ordering;
 
 public abstract class AbstractCatalogFacade implements CatalogFacade {
 
@@ -212,4 +225,160 @@ public abstract class AbstractCatalogFacade implements CatalogFacade {
         }
     }
 
+    @Override
+    public <T extends CatalogInfo> int count(final Class<T> of, final Filter filter) {
+        return Iterables.size(iterable(of, filter, null));
+    }
+
+    /**
+     * This default implementation supports sorting against properties (could be nested) that are
+     * either of a primitive type or implement {@link Comparable}.
+     * 
+     * @param type the type of object to sort
+     * @param propertyName the property name of the objects of type {@code type} to sort by
+     * @see org.geoserver.catalog.CatalogFacade#canSort(java.lang.Class, java.lang.String)
+     */
+    @Override
+    public boolean canSort(final Class<? extends CatalogInfo> type, final String propertyName) {
+        final String[] path = propertyName.split("\\.");
+        Class<?> clazz = type;
+        for (int i = 0; i < path.length; i++) {
+            String property = path[i];
+            Method getter;
+            try {
+                getter = OwsUtils.getter(clazz, property, null);
+            } catch (RuntimeException e) {
+                return false;
+            }
+            clazz = getter.getReturnType();
+            if (i == path.length - 1) {
+                boolean primitive = clazz.isPrimitive();
+                boolean comparable = Comparable.class.isAssignableFrom(clazz);
+                boolean canSort = primitive || comparable;
+                return canSort;
+            }
+        }
+        throw new IllegalStateException("empty property name");
+    }
+
+    @Override
+    public <T extends CatalogInfo> CloseableIterator<T> list(final Class<T> of,
+            final Filter filter, @Nullable Integer offset, @Nullable Integer count,
+            @Nullable SortBy sortOrder) {
+
+        SortBy[] sortOrderList = null;
+
+        if (sortOrder != null) {
+            sortOrderList = new SortBy[] { sortOrder };
+        }
+        
+        return list(of, filter, offset, count, sortOrderList);
+    }
+    
+    @Override
+    public <T extends CatalogInfo> CloseableIterator<T> list(final Class<T> of,
+            final Filter filter, @Nullable Integer offset, @Nullable Integer count,
+            @Nullable SortBy... sortOrder) {
+
+        if (sortOrder != null) {
+            for (SortBy so : sortOrder) {
+                if (sortOrder != null && !canSort(of, so.getPropertyName().getPropertyName())) {
+                    throw new IllegalArgumentException(
+                        "Can't sort objects of type "+of.getName()+" by "+so.getPropertyName());
+                }
+            }
+        }
+
+        Iterable<T> iterable = iterable(of, filter, sortOrder);
+
+        if (offset != null && offset.intValue() > 0) {
+            iterable = Iterables.skip(iterable, offset.intValue());
+        }
+
+        if (count != null && count.intValue() >= 0) {
+            iterable = Iterables.limit(iterable, count.intValue());
+        }
+
+        Iterator<T> iterator = iterable.iterator();
+
+        return new CloseableIteratorAdapter<T>(iterator);
+    }
+
+    public <T extends CatalogInfo> Iterable<T> iterable(final Class<? super T> of,
+            final Filter filter, final SortBy[] sortByList) {
+        List<T> all;
+
+        T t = null;
+        if (NamespaceInfo.class.isAssignableFrom(of)) {
+            all = getNamespaces();
+        } else if (WorkspaceInfo.class.isAssignableFrom(of)) {
+            all = (List<T>) getWorkspaces();
+        } else if (StoreInfo.class.isAssignableFrom(of)) {
+            all = getStores(of);
+        } else if (ResourceInfo.class.isAssignableFrom(of)) {
+            all = getResources(of);
+        } else if (LayerInfo.class.isAssignableFrom(of)) {
+            all = (List<T>) getLayers();
+        } else if (LayerGroupInfo.class.isAssignableFrom(of)) {
+            all = (List<T>) getLayerGroups();
+        } else if (PublishedInfo.class.isAssignableFrom(of)) {
+            all = new ArrayList<>();
+            all.addAll((List<T>) getLayers());
+            all.addAll((List<T>) getLayerGroups());
+        } else if (StyleInfo.class.isAssignableFrom(of)) {
+            all = (List<T>) getStyles();
+        } else if (MapInfo.class.isAssignableFrom(of)) {
+            all = (List<T>) getMaps();
+        } else {
+            throw new IllegalArgumentException("Unknown type: " + of);
+        }
+
+        if (null != sortByList) {
+            for (int i = sortByList.length - 1; i >=0 ; i--) {
+            	SortBy sortBy = sortByList[i];
+	            Ordering<Object> ordering = Ordering.from(comparator(sortBy));
+	            if (SortOrder.DESCENDING.equals(sortBy.getSortOrder())) {
+	                ordering = ordering.reverse();
+	            }
+	            all = ordering.sortedCopy(all);
+            }
+        }
+
+        if (Filter.INCLUDE.equals(filter)) {
+            return all;
+        }
+
+        com.google.common.base.Predicate<T> filterAdapter = new com.google.common.base.Predicate<T>() {
+
+            @Override
+            public boolean apply(T input) {
+                return filter.evaluate(input);
+            }
+        };
+
+        return Iterables.filter(all, filterAdapter);
+    }
+
+    private Comparator<Object> comparator(final SortBy sortOrder) {
+        return new Comparator<Object>() {
+            @Override
+            public int compare(Object o1, Object o2) {
+                Object v1 = OwsUtils.get(o1, sortOrder.getPropertyName().getPropertyName());
+                Object v2 = OwsUtils.get(o2, sortOrder.getPropertyName().getPropertyName());
+                if (v1 == null) {
+                    if (v2 == null) {
+                        return 0;
+                    } else {
+                        return -1;
+                    }
+                } else if (v2 == null) {
+                    return 1;
+                }
+                Comparable c1 = (Comparable) v1;
+                Comparable c2 = (Comparable) v2;
+                return c1.compareTo(c2);
+            }
+        };
+    }
+
 }
@@ -83,6 +83,16 @@ public class CatalogImpl implements Catalog {
      */
     private static final Logger LOGGER = Logging.getLogger(CatalogImpl.class);
 
+    /**
+     * System/context/environment variable selecting the in memory facade used by the catalog
+     */
+    public static final String CATALOG_FACADE_KEY = "GEOSERVER_CATALOG_FACADE";
+
+    /**
+     * Value of {@link #CATALOG_FACADE_KEY} enabling the {@link IndexedCatalogFacade}
+     */
+    public static final String INDEXED_FACADE = "indexed";
+
     /**
      * data access facade
      */
@@ -105,9 +115,23 @@ public class CatalogImpl implements Catalog {
     protected boolean extendedValidation = true;
 
     public CatalogImpl() {
-        facade = new DefaultCatalogFacade(this);
+        facade = createFacade();
         resourcePool = ResourcePool.create(this);
     }
+
+    /**
+     * Creates the in memory facade, an {@link IndexedCatalogFacade} if
+     * {@link #CATALOG_FACADE_KEY} is set to {@link #INDEXED_FACADE}, a
+     * {@link DefaultCatalogFacade} otherwise
+     */
+    private CatalogFacade createFacade() {
+        String facadeType = GeoServerExtensions.getProperty(CATALOG_FACADE_KEY);
+        if (INDEXED_FACADE.equalsIgnoreCase(facadeType)) {
+            LOGGER.fine("Using the indexed in memory catalog facade");
+            return new IndexedCatalogFacade(this);
+        }
+        return new DefaultCatalogFacade(this);
+    }
     
     public CatalogFacade getFacade() {
         return facade;
@@ -0,0 +1,263 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.geoserver.catalog.CatalogInfo;
+
+import com.google.common.base.Function;
+
+/**
+ * Thread safe in memory container for a single kind of catalog object, used by
+ * {@link IndexedCatalogFacade}.
+ * <p>
+ * Objects are kept in insertion order and indexed by id, plus any number of named secondary
+ * indexes mapping a key (name, workspace id, store id, ...) to the objects having it. Lookups
+ * work against concurrent maps and do not lock, modifications are serialized on a lock owned by
+ * this store only, so writes to different kinds of objects do not contend.
+ * </p>
+ * <p>
+ * Secondary indexes remember the keys each object was indexed under, so that an object can be
+ * re-indexed with {@link #reindex(CatalogInfo)} after its properties have been changed in place.
+ * Since objects can be modified before being re-indexed, callers should always double check the
+ * objects returned by {@link #lookup(String, String)}.
+ * </p>
+ */
+class CatalogInfoStore<T extends CatalogInfo> {
+
+    /**
+     * Extracts the keys an object is indexed under
+     */
+    static abstract class KeyExtractor<T> implements Function<T, Collection<String>> {
+
+        /**
+         * Helper building a singleton key list, or an empty one if the key is null
+         */
+        static Collection<String> key(String key) {
+            if (key == null) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(key);
+        }
+    }
+
+    /**
+     * A secondary index over the objects of the store
+     */
+    static class Index<T extends CatalogInfo> {
+        final Function<? super T, Collection<String>> extractor;
+
+        final ConcurrentMap<String, ConcurrentMap<String, T>> entries = new ConcurrentHashMap<String, ConcurrentMap<String, T>>();
+
+        /**
+         * The keys each object was indexed under, keyed by object id. Only accessed under the store
+         * write lock
+         */
+        final Map<String, Collection<String>> indexedKeys = new HashMap<String, Collection<String>>();
+
+        Index(Function<? super T, Collection<String>> extractor) {
+            this.extractor = extractor;
+        }
+
+        void add(T info) {
+            Collection<String> keys = new ArrayList<String>(extractor.apply(info));
+            indexedKeys.put(info.getId(), keys);
+            for (String key : keys) {
+                ConcurrentMap<String, T> matches = entries.get(key);
+                if (matches == null) {
+                    matches = new ConcurrentHashMap<String, T>();
+                    entries.put(key, matches);
+                }
+                matches.put(info.getId(), info);
+            }
+        }
+
+        void remove(String id) {
+            Collection<String> keys = indexedKeys.remove(id);
+            if (keys == null) {
+                return;
+            }
+            for (String key : keys) {
+                ConcurrentMap<String, T> matches = entries.get(key);
+                if (matches != null) {
+                    matches.remove(id);
+                    if (matches.isEmpty()) {
+                        entries.remove(key);
+                    }
+                }
+            }
+        }
+
+        Collection<T> get(String key) {
+            ConcurrentMap<String, T> matches = entries.get(key);
+            if (matches == null) {
+                return Collections.emptyList();
+            }
+            return matches.values();
+        }
+
+        void clear() {
+            entries.clear();
+            indexedKeys.clear();
+        }
+    }
+
+    final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * All the objects, in insertion order, guarded by {@link #lock}
+     */
+    final Map<String, T> objects = new LinkedHashMap<String, T>();
+
+    /**
+     * The objects keyed by id, for lock free lookups
+     */
+    final ConcurrentMap<String, T> byId = new ConcurrentHashMap<String, T>();
+
+    final Map<String, Index<T>> indexes = new HashMap<String, Index<T>>();
+
+    /**
+     * Registers a new secondary index. Indexes should be all registered before the store is used.
+     */
+    CatalogInfoStore<T> index(String name, Function<? super T, Collection<String>> extractor) {
+        indexes.put(name, new Index<T>(extractor));
+        return this;
+    }
+
+    void add(T info) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(info.getId());
+            objects.put(info.getId(), info);
+            byId.put(info.getId(), info);
+            for (Index<T> index : indexes.values()) {
+                index.add(info);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    T remove(T info) {
+        if (info == null || info.getId() == null) {
+            return null;
+        }
+        lock.writeLock().lock();
+        try {
+            return removeInternal(info.getId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private T removeInternal(String id) {
+        T removed = objects.remove(id);
+        if (removed != null) {
+            byId.remove(id);
+            for (Index<T> index : indexes.values()) {
+                index.remove(id);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Updates the secondary indexes of the stored object having the same id as the one provided,
+     * to be called after the object properties have been modified
+     */
+    void reindex(T info) {
+        if (info == null || info.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            T stored = objects.get(info.getId());
+            if (stored == null) {
+                return;
+            }
+            for (Index<T> index : indexes.values()) {
+                index.remove(stored.getId());
+                index.add(stored);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    T get(String id) {
+        if (id == null) {
+            return null;
+        }
+        return byId.get(id);
+    }
+
+    /**
+     * Returns a live view of the objects indexed under the specified key
+     */
+    Collection<T> lookup(String index, String key) {
+        if (key == null) {
+            return Collections.emptyList();
+        }
+        return indexes.get(index).get(key);
+    }
+
+    /**
+     * Returns a snapshot of all the objects in the store, in insertion order
+     */
+    List<T> list() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<T>(objects.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a snapshot of all the objects in the store of the given class, in insertion order
+     */
+    <S> List<S> list(Class<S> clazz) {
+        List<S> result = new ArrayList<S>();
+        lock.readLock().lock();
+        try {
+            for (T info : objects.values()) {
+                if (clazz.isInstance(info)) {
+                    result.add(clazz.cast(info));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            objects.clear();
+            byId.clear();
+            for (Index<T> index : indexes.values()) {
+                index.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
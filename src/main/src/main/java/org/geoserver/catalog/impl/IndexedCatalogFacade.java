@@ -0,0 +1,1029 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogFacade;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.MapInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.CatalogInfoStore.KeyExtractor;
+import org.geoserver.catalog.util.CloseableIterator;
+import org.geoserver.catalog.util.CloseableIteratorAdapter;
+import org.opengis.filter.Filter;
+import org.opengis.filter.sort.SortBy;
+
+/**
+ * In memory catalog facade keeping each kind of catalog object in its own
+ * {@link CatalogInfoStore}, indexed by id and by the properties the catalog looks objects up by
+ * (name, workspace, namespace, store, style).
+ * <p>
+ * Compared to {@link DefaultCatalogFacade} lookups by id, name, workspace, store or style do not
+ * scan the full object lists, and adding an object does not copy them, which keeps catalogs with
+ * tens of thousands of layers responsive. Reads do not lock, writes lock only the store of the
+ * kind of object being modified.
+ * </p>
+ * <p>
+ * The facade can be used in place of the default one by setting the
+ * {@link CatalogImpl#CATALOG_FACADE_KEY} system/context/environment variable to
+ * {@link CatalogImpl#INDEXED_FACADE}.
+ * </p>
+ * <p>
+ * Queries issued through {@link #list} and {@link #count} are answered by
+ * {@link IndexedCatalogQuery}, which uses the same indexes to narrow down the objects to be
+ * filtered and streams the results.
+ * </p>
+ */
+public class IndexedCatalogFacade extends AbstractCatalogFacade implements CatalogFacade {
+
+    /**
+     * Index key used for objects that are not associated to any workspace
+     */
+    static final String NO_WORKSPACE_KEY = "";
+
+    static final String NAME = "name";
+
+    static final String WORKSPACE = "workspace";
+
+    static final String NAMESPACE = "namespace";
+
+    static final String STORE = "store";
+
+    static final String RESOURCE = "resource";
+
+    static final String STYLE = "style";
+
+    static final String URI = "uri";
+
+    /**
+     * Extracts the name of an object, for objects other than namespaces and layers
+     */
+    static final KeyExtractor<CatalogInfo> NAME_EXTRACTOR = new KeyExtractor<CatalogInfo>() {
+
+        @Override
+        public Collection<String> apply(CatalogInfo info) {
+            if (info instanceof StoreInfo) {
+                return key(((StoreInfo) info).getName());
+            } else if (info instanceof ResourceInfo) {
+                return key(((ResourceInfo) info).getName());
+            } else if (info instanceof StyleInfo) {
+                return key(((StyleInfo) info).getName());
+            } else if (info instanceof LayerGroupInfo) {
+                return key(((LayerGroupInfo) info).getName());
+            } else if (info instanceof MapInfo) {
+                return key(((MapInfo) info).getName());
+            } else if (info instanceof WorkspaceInfo) {
+                return key(((WorkspaceInfo) info).getName());
+            } else if (info instanceof NamespaceInfo) {
+                return key(((NamespaceInfo) info).getPrefix());
+            }
+            throw new IllegalArgumentException("Unexpected object type " + info);
+        }
+    };
+
+    /**
+     * Extracts the workspace id of stores, styles and layer groups
+     */
+    static final KeyExtractor<CatalogInfo> WORKSPACE_EXTRACTOR = new KeyExtractor<CatalogInfo>() {
+
+        @Override
+        public Collection<String> apply(CatalogInfo info) {
+            WorkspaceInfo ws;
+            if (info instanceof StoreInfo) {
+                ws = ((StoreInfo) info).getWorkspace();
+            } else if (info instanceof StyleInfo) {
+                ws = ((StyleInfo) info).getWorkspace();
+            } else if (info instanceof LayerGroupInfo) {
+                ws = ((LayerGroupInfo) info).getWorkspace();
+            } else {
+                throw new IllegalArgumentException("Unexpected object type " + info);
+            }
+            return key(ws == null ? NO_WORKSPACE_KEY : ws.getId());
+        }
+    };
+
+    /**
+     * stores
+     */
+    protected CatalogInfoStore<StoreInfo> stores;
+
+    /**
+     * The default store keyed by workspace id
+     */
+    protected Map<String, DataStoreInfo> defaultStores;
+
+    /**
+     * resources
+     */
+    protected CatalogInfoStore<ResourceInfo> resources;
+
+    /**
+     * namespaces
+     */
+    protected CatalogInfoStore<NamespaceInfo> namespaces;
+
+    /**
+     * workspaces
+     */
+    protected CatalogInfoStore<WorkspaceInfo> workspaces;
+
+    /**
+     * layers
+     */
+    protected CatalogInfoStore<LayerInfo> layers;
+
+    /**
+     * maps
+     */
+    protected CatalogInfoStore<MapInfo> maps;
+
+    /**
+     * layer groups
+     */
+    protected CatalogInfoStore<LayerGroupInfo> layerGroups;
+
+    /**
+     * styles
+     */
+    protected CatalogInfoStore<StyleInfo> styles;
+
+    /**
+     * The default workspace and namespace
+     */
+    protected volatile WorkspaceInfo defaultWorkspace;
+
+    protected volatile NamespaceInfo defaultNamespace;
+
+    /**
+     * the catalog
+     */
+    private CatalogImpl catalog;
+
+    public IndexedCatalogFacade(Catalog catalog) {
+        setCatalog(catalog);
+
+        stores = new CatalogInfoStore<StoreInfo>().index(NAME, NAME_EXTRACTOR).index(WORKSPACE,
+                WORKSPACE_EXTRACTOR);
+        defaultStores = new ConcurrentHashMap<String, DataStoreInfo>();
+        resources = new CatalogInfoStore<ResourceInfo>().index(NAME, NAME_EXTRACTOR)
+                .index(NAMESPACE, new KeyExtractor<ResourceInfo>() {
+
+                    @Override
+                    public Collection<String> apply(ResourceInfo resource) {
+                        NamespaceInfo ns = resource.getNamespace();
+                        return key(ns == null ? null : ns.getId());
+                    }
+                }).index(STORE, new KeyExtractor<ResourceInfo>() {
+
+                    @Override
+                    public Collection<String> apply(ResourceInfo resource) {
+                        StoreInfo store = resource.getStore();
+                        return key(store == null ? null : store.getId());
+                    }
+                });
+        namespaces = new CatalogInfoStore<NamespaceInfo>().index(NAME, NAME_EXTRACTOR).index(URI,
+                new KeyExtractor<NamespaceInfo>() {
+
+                    @Override
+                    public Collection<String> apply(NamespaceInfo ns) {
+                        return key(ns.getURI());
+                    }
+                });
+        workspaces = new CatalogInfoStore<WorkspaceInfo>().index(NAME, NAME_EXTRACTOR);
+        layers = new CatalogInfoStore<LayerInfo>().index(RESOURCE,
+                new KeyExtractor<LayerInfo>() {
+
+                    @Override
+                    public Collection<String> apply(LayerInfo layer) {
+                        ResourceInfo resource = layer.getResource();
+                        return key(resource == null ? null : resource.getId());
+                    }
+                }).index(STYLE, new KeyExtractor<LayerInfo>() {
+
+                    @Override
+                    public Collection<String> apply(LayerInfo layer) {
+                        List<String> ids = new ArrayList<String>();
+                        if (layer.getDefaultStyle() != null) {
+                            ids.add(layer.getDefaultStyle().getId());
+                        }
+                        for (StyleInfo style : layer.getStyles()) {
+                            if (style != null && style.getId() != null
+                                    && !ids.contains(style.getId())) {
+                                ids.add(style.getId());
+                            }
+                        }
+                        ids.remove(null);
+                        return ids;
+                    }
+                });
+        maps = new CatalogInfoStore<MapInfo>().index(NAME, NAME_EXTRACTOR);
+        layerGroups = new CatalogInfoStore<LayerGroupInfo>().index(NAME, NAME_EXTRACTOR).index(
+                WORKSPACE, WORKSPACE_EXTRACTOR);
+        styles = new CatalogInfoStore<StyleInfo>().index(NAME, NAME_EXTRACTOR).index(WORKSPACE,
+                WORKSPACE_EXTRACTOR);
+    }
+
+    public void setCatalog(Catalog catalog) {
+        this.catalog = (CatalogImpl) catalog;
+    }
+
+    public Catalog getCatalog() {
+        return catalog;
+    }
+
+    //
+    // Stores
+    //
+    public StoreInfo add(StoreInfo store) {
+        resolve(store);
+        stores.add(store);
+        return ModificationProxy.create(store, StoreInfo.class);
+    }
+
+    public void remove(StoreInfo store) {
+        stores.remove(unwrap(store));
+    }
+
+    public void save(StoreInfo store) {
+        commit(store, stores);
+    }
+
+    public <T extends StoreInfo> T detach(T store) {
+        return store;
+    }
+
+    public <T extends StoreInfo> T getStore(String id, Class<T> clazz) {
+        StoreInfo store = stores.get(id);
+        if (clazz.isInstance(store)) {
+            return ModificationProxy.create(clazz.cast(store), clazz);
+        }
+        return null;
+    }
+
+    public <T extends StoreInfo> T getStoreByName(WorkspaceInfo workspace, String name,
+            Class<T> clazz) {
+        List<T> matches = new ArrayList<T>();
+        for (StoreInfo store : stores.lookup(NAME, name)) {
+            if (!clazz.isInstance(store) || !name.equals(store.getName())) {
+                continue;
+            }
+            if (workspace == ANY_WORKSPACE || store.getWorkspace().equals(workspace)) {
+                matches.add(clazz.cast(store));
+            }
+        }
+
+        if (workspace == ANY_WORKSPACE) {
+            if (matches.size() == 1) {
+                return ModificationProxy.create(matches.get(0), clazz);
+            }
+        } else if (!matches.isEmpty()) {
+            return ModificationProxy.create(matches.get(0), clazz);
+        }
+        return null;
+    }
+
+    public <T extends StoreInfo> List<T> getStoresByWorkspace(WorkspaceInfo workspace,
+            Class<T> clazz) {
+        if (workspace == ANY_WORKSPACE) {
+            return getStores(clazz);
+        }
+        if (workspace == null) {
+            workspace = getDefaultWorkspace();
+        }
+
+        List<T> matches = new ArrayList<T>();
+        if (workspace != null) {
+            for (StoreInfo store : stores.lookup(WORKSPACE, workspace.getId())) {
+                if (clazz.isInstance(store) && workspace.equals(store.getWorkspace())) {
+                    matches.add(clazz.cast(store));
+                }
+            }
+        }
+
+        return ModificationProxy.createList(matches, clazz);
+    }
+
+    public <T extends StoreInfo> List<T> getStores(Class<T> clazz) {
+        return ModificationProxy.createList(stores.list(clazz), clazz);
+    }
+
+    public DataStoreInfo getDefaultDataStore(WorkspaceInfo workspace) {
+        DataStoreInfo defaultStore = defaultStores.get(workspace.getId());
+        if (defaultStore != null) {
+            return ModificationProxy.create(defaultStore, DataStoreInfo.class);
+        } else {
+            return null;
+        }
+    }
+
+    public void setDefaultDataStore(WorkspaceInfo workspace, DataStoreInfo store) {
+        DataStoreInfo old;
+        if (store != null) {
+            old = defaultStores.put(workspace.getId(), store);
+        } else {
+            old = defaultStores.remove(workspace.getId());
+        }
+
+        // fire change event
+        catalog.fireModified(catalog, Arrays.asList("defaultDataStore"), Arrays.asList(old),
+                Arrays.asList(store));
+    }
+
+    //
+    // Resources
+    //
+    public ResourceInfo add(ResourceInfo resource) {
+        resolve(resource);
+        resources.add(resource);
+        return ModificationProxy.create(resource, ResourceInfo.class);
+    }
+
+    public void remove(ResourceInfo resource) {
+        resources.remove(unwrap(resource));
+    }
+
+    public void save(ResourceInfo resource) {
+        commit(resource, resources);
+    }
+
+    public <T extends ResourceInfo> T detach(T resource) {
+        return resource;
+    }
+
+    public <T extends ResourceInfo> T getResource(String id, Class<T> clazz) {
+        ResourceInfo resource = resources.get(id);
+        if (clazz.isInstance(resource)) {
+            return ModificationProxy.create(clazz.cast(resource), clazz);
+        }
+        return null;
+    }
+
+    public <T extends ResourceInfo> T getResourceByName(NamespaceInfo namespace, String name,
+            Class<T> clazz) {
+        List<T> matches = new ArrayList<T>();
+        for (ResourceInfo resource : resources.lookup(NAME, name)) {
+            if (!clazz.isInstance(resource) || !name.equals(resource.getName())) {
+                continue;
+            }
+            if (namespace == ANY_NAMESPACE) {
+                matches.add(clazz.cast(resource));
+            } else {
+                NamespaceInfo namespace1 = resource.getNamespace();
+                if (namespace1 != null && namespace1.equals(namespace)) {
+                    return ModificationProxy.create(clazz.cast(resource), clazz);
+                }
+            }
+        }
+
+        if (matches.size() == 1) {
+            return ModificationProxy.create(matches.get(0), clazz);
+        }
+        return null;
+    }
+
+    public <T extends ResourceInfo> List<T> getResources(Class<T> clazz) {
+        return ModificationProxy.createList(resources.list(clazz), clazz);
+    }
+
+    public <T extends ResourceInfo> List<T> getResourcesByNamespace(NamespaceInfo namespace,
+            Class<T> clazz) {
+        if (namespace == ANY_NAMESPACE) {
+            return getResources(clazz);
+        }
+        if (namespace == null) {
+            namespace = getDefaultNamespace();
+        }
+
+        List<T> matches = new ArrayList<T>();
+        if (namespace != null) {
+            for (ResourceInfo resource : resources.lookup(NAMESPACE, namespace.getId())) {
+                if (clazz.isInstance(resource) && namespace.equals(resource.getNamespace())) {
+                    matches.add(clazz.cast(resource));
+                }
+            }
+        } else {
+            for (T resource : resources.list(clazz)) {
+                if (resource.getNamespace() == null) {
+                    matches.add(resource);
+                }
+            }
+        }
+
+        return ModificationProxy.createList(matches, clazz);
+    }
+
+    public <T extends ResourceInfo> T getResourceByStore(StoreInfo store, String name,
+            Class<T> clazz) {
+        for (ResourceInfo resource : resources.lookup(STORE, store.getId())) {
+            if (clazz.isInstance(resource) && name.equals(resource.getName())
+                    && store.equals(resource.getStore())) {
+                return ModificationProxy.create(clazz.cast(resource), clazz);
+            }
+        }
+
+        return null;
+    }
+
+    public <T extends ResourceInfo> List<T> getResourcesByStore(StoreInfo store, Class<T> clazz) {
+        List<T> matches = new ArrayList<T>();
+        for (ResourceInfo resource : resources.lookup(STORE, store.getId())) {
+            if (clazz.isInstance(resource) && store.equals(resource.getStore())) {
+                matches.add(clazz.cast(resource));
+            }
+        }
+
+        return ModificationProxy.createList(matches, clazz);
+    }
+
+    //
+    // Layers
+    //
+    public LayerInfo add(LayerInfo layer) {
+        resolve(layer);
+        layers.add(layer);
+        return ModificationProxy.create(layer, LayerInfo.class);
+    }
+
+    public void remove(LayerInfo layer) {
+        layers.remove(unwrap(layer));
+    }
+
+    public void save(LayerInfo layer) {
+        beforeSaved(layer);
+        LayerInfo real = commitProxy(layer);
+        layers.reindex(real);
+        // the layer name is the resource one, renaming a layer renames its resource
+        if (real.getResource() != null) {
+            resources.reindex(unwrap(real.getResource()));
+        }
+        afterSaved(layer);
+    }
+
+    public LayerInfo detach(LayerInfo layer) {
+        return layer;
+    }
+
+    public LayerInfo getLayer(String id) {
+        LayerInfo layer = layers.get(id);
+        return layer != null ? ModificationProxy.create(layer, LayerInfo.class) : null;
+    }
+
+    public LayerInfo getLayerByName(String name) {
+        // layers take their name from the resource they publish
+        for (ResourceInfo resource : resources.lookup(NAME, name)) {
+            for (LayerInfo layer : layers.lookup(RESOURCE, resource.getId())) {
+                if (name.equals(layer.getName())) {
+                    return ModificationProxy.create(layer, LayerInfo.class);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    public List<LayerInfo> getLayers(ResourceInfo resource) {
+        List<LayerInfo> matches = new ArrayList<LayerInfo>();
+        for (LayerInfo layer : layers.lookup(RESOURCE, resource.getId())) {
+            if (resource.equals(layer.getResource())) {
+                matches.add(layer);
+            }
+        }
+
+        return ModificationProxy.createList(matches, LayerInfo.class);
+    }
+
+    public List<LayerInfo> getLayers(StyleInfo style) {
+        List<LayerInfo> matches = new ArrayList<LayerInfo>();
+        for (LayerInfo layer : layers.lookup(STYLE, style.getId())) {
+            if (style.equals(layer.getDefaultStyle()) || layer.getStyles().contains(style)) {
+                matches.add(layer);
+            }
+        }
+
+        return ModificationProxy.createList(matches, LayerInfo.class);
+    }
+
+    public List<LayerInfo> getLayers() {
+        return ModificationProxy.createList(layers.list(), LayerInfo.class);
+    }
+
+    //
+    // Maps
+    //
+    public MapInfo add(MapInfo map) {
+        resolve(map);
+        maps.add(map);
+        return ModificationProxy.create(map, MapInfo.class);
+    }
+
+    public void remove(MapInfo map) {
+        maps.remove(unwrap(map));
+    }
+
+    public void save(MapInfo map) {
+        commit(map, maps);
+    }
+
+    public MapInfo detach(MapInfo map) {
+        return map;
+    }
+
+    public MapInfo getMap(String id) {
+        MapInfo map = maps.get(id);
+        return map != null ? ModificationProxy.create(map, MapInfo.class) : null;
+    }
+
+    public MapInfo getMapByName(String name) {
+        for (MapInfo map : maps.lookup(NAME, name)) {
+            if (name.equals(map.getName())) {
+                return ModificationProxy.create(map, MapInfo.class);
+            }
+        }
+
+        return null;
+    }
+
+    public List<MapInfo> getMaps() {
+        return ModificationProxy.createList(maps.list(), MapInfo.class);
+    }
+
+    //
+    // Layer groups
+    //
+    public LayerGroupInfo add(LayerGroupInfo layerGroup) {
+        resolve(layerGroup);
+        layerGroups.add(layerGroup);
+        return ModificationProxy.create(layerGroup, LayerGroupInfo.class);
+    }
+
+    public void remove(LayerGroupInfo layerGroup) {
+        layerGroups.remove(unwrap(layerGroup));
+    }
+
+    public void save(LayerGroupInfo layerGroup) {
+        commit(layerGroup, layerGroups);
+    }
+
+    public LayerGroupInfo detach(LayerGroupInfo layerGroup) {
+        return layerGroup;
+    }
+
+    public List<LayerGroupInfo> getLayerGroups() {
+        return ModificationProxy.createList(layerGroups.list(), LayerGroupInfo.class);
+    }
+
+    public List<LayerGroupInfo> getLayerGroupsByWorkspace(WorkspaceInfo workspace) {
+        if (workspace == ANY_WORKSPACE) {
+            return getLayerGroups();
+        }
+        if (workspace == null) {
+            workspace = getDefaultWorkspace();
+        }
+
+        List<LayerGroupInfo> matches = new ArrayList<LayerGroupInfo>();
+        if (workspace == NO_WORKSPACE) {
+            for (LayerGroupInfo layerGroup : layerGroups.lookup(WORKSPACE, NO_WORKSPACE_KEY)) {
+                if (layerGroup.getWorkspace() == null) {
+                    matches.add(layerGroup);
+                }
+            }
+        } else if (workspace != null) {
+            for (LayerGroupInfo layerGroup : layerGroups.lookup(WORKSPACE, workspace.getId())) {
+                if (workspace.equals(layerGroup.getWorkspace())) {
+                    matches.add(layerGroup);
+                }
+            }
+        }
+
+        return ModificationProxy.createList(matches, LayerGroupInfo.class);
+    }
+
+    public LayerGroupInfo getLayerGroup(String id) {
+        LayerGroupInfo layerGroup = layerGroups.get(id);
+        return layerGroup != null ? ModificationProxy.create(layerGroup, LayerGroupInfo.class)
+                : null;
+    }
+
+    @Override
+    public LayerGroupInfo getLayerGroupByName(String name) {
+        return getLayerGroupByName(NO_WORKSPACE, name);
+    }
+
+    @Override
+    public LayerGroupInfo getLayerGroupByName(WorkspaceInfo workspace, String name) {
+        ArrayList<LayerGroupInfo> matches = new ArrayList<LayerGroupInfo>(2);
+
+        for (LayerGroupInfo layerGroup : layerGroups.lookup(NAME, name)) {
+            if (!name.equals(layerGroup.getName())) {
+                continue;
+            }
+            WorkspaceInfo lgWorkspace = layerGroup.getWorkspace();
+            if (NO_WORKSPACE == workspace) {
+                if (lgWorkspace == null) {
+                    matches.add(layerGroup);
+                }
+            } else if (ANY_WORKSPACE == workspace) {
+                matches.add(layerGroup);
+            } else if (lgWorkspace != null && workspace.equals(lgWorkspace)) {
+                matches.add(layerGroup);
+            }
+            if (matches.size() > 1) {
+                break;
+            }
+        }
+
+        if (matches.size() == 1) {
+            return ModificationProxy.create(matches.get(0), LayerGroupInfo.class);
+        }
+        return null;
+    }
+
+    //
+    // Namespaces
+    //
+    public NamespaceInfo add(NamespaceInfo namespace) {
+        resolve(namespace);
+        namespaces.add(namespace);
+        return ModificationProxy.create(namespace, NamespaceInfo.class);
+    }
+
+    public void remove(NamespaceInfo namespace) {
+        NamespaceInfo removed = namespaces.remove(unwrap(namespace));
+        if (removed != null && removed == defaultNamespace) {
+            defaultNamespace = null;
+        }
+    }
+
+    public void save(NamespaceInfo namespace) {
+        commit(namespace, namespaces);
+    }
+
+    public NamespaceInfo detach(NamespaceInfo namespace) {
+        return namespace;
+    }
+
+    public NamespaceInfo getDefaultNamespace() {
+        NamespaceInfo ns = defaultNamespace;
+        return ns != null ? ModificationProxy.create(ns, NamespaceInfo.class) : null;
+    }
+
+    public void setDefaultNamespace(NamespaceInfo defaultNamespace) {
+        NamespaceInfo ns = defaultNamespace != null ? lookupNamespace(defaultNamespace.getPrefix())
+                : null;
+        NamespaceInfo old = this.defaultNamespace;
+        this.defaultNamespace = ns;
+
+        // fire change event
+        catalog.fireModified(catalog, Arrays.asList("defaultNamespace"), Arrays.asList(old),
+                Arrays.asList(defaultNamespace));
+    }
+
+    public NamespaceInfo getNamespace(String id) {
+        NamespaceInfo ns = namespaces.get(id);
+        return ns != null ? ModificationProxy.create(ns, NamespaceInfo.class) : null;
+    }
+
+    public NamespaceInfo getNamespaceByPrefix(String prefix) {
+        NamespaceInfo ns;
+        if (prefix == null || Catalog.DEFAULT.equals(prefix)) {
+            ns = defaultNamespace;
+        } else {
+            ns = lookupNamespace(prefix);
+        }
+        return ns != null ? ModificationProxy.create(ns, NamespaceInfo.class) : null;
+    }
+
+    NamespaceInfo lookupNamespace(String prefix) {
+        for (NamespaceInfo ns : namespaces.lookup(NAME, prefix)) {
+            if (prefix.equals(ns.getPrefix())) {
+                return ns;
+            }
+        }
+        return null;
+    }
+
+    public NamespaceInfo getNamespaceByURI(String uri) {
+        for (NamespaceInfo namespace : namespaces.lookup(URI, uri)) {
+            if (uri.equals(namespace.getURI())) {
+                return ModificationProxy.create(namespace, NamespaceInfo.class);
+            }
+        }
+
+        return null;
+    }
+
+    public List<NamespaceInfo> getNamespaces() {
+        return ModificationProxy.createList(namespaces.list(), NamespaceInfo.class);
+    }
+
+    //
+    // Workspaces
+    //
+    public WorkspaceInfo add(WorkspaceInfo workspace) {
+        resolve(workspace);
+        workspaces.add(workspace);
+        return ModificationProxy.create(workspace, WorkspaceInfo.class);
+    }
+
+    public void remove(WorkspaceInfo workspace) {
+        workspaces.remove(unwrap(workspace));
+    }
+
+    public void save(WorkspaceInfo workspace) {
+        commit(workspace, workspaces);
+    }
+
+    public WorkspaceInfo detach(WorkspaceInfo workspace) {
+        return workspace;
+    }
+
+    public WorkspaceInfo getDefaultWorkspace() {
+        WorkspaceInfo ws = defaultWorkspace;
+        return ws != null ? ModificationProxy.create(ws, WorkspaceInfo.class) : null;
+    }
+
+    public void setDefaultWorkspace(WorkspaceInfo workspace) {
+        WorkspaceInfo old = defaultWorkspace;
+        defaultWorkspace = workspace != null ? lookupWorkspace(workspace.getName()) : null;
+
+        // fire change event
+        catalog.fireModified(catalog, Arrays.asList("defaultWorkspace"), Arrays.asList(old),
+                Arrays.asList(workspace));
+    }
+
+    public List<WorkspaceInfo> getWorkspaces() {
+        return ModificationProxy.createList(workspaces.list(), WorkspaceInfo.class);
+    }
+
+    public WorkspaceInfo getWorkspace(String id) {
+        WorkspaceInfo ws = workspaces.get(id);
+        return ws != null ? ModificationProxy.create(ws, WorkspaceInfo.class) : null;
+    }
+
+    public WorkspaceInfo getWorkspaceByName(String name) {
+        WorkspaceInfo ws;
+        if (name == null || Catalog.DEFAULT.equals(name)) {
+            ws = defaultWorkspace;
+        } else {
+            ws = lookupWorkspace(name);
+        }
+        return ws != null ? ModificationProxy.create(ws, WorkspaceInfo.class) : null;
+    }
+
+    WorkspaceInfo lookupWorkspace(String name) {
+        for (WorkspaceInfo ws : workspaces.lookup(NAME, name)) {
+            if (name.equals(ws.getName())) {
+                return ws;
+            }
+        }
+        return null;
+    }
+
+    //
+    // Styles
+    //
+    public StyleInfo add(StyleInfo style) {
+        resolve(style);
+        styles.add(style);
+        return ModificationProxy.create(style, StyleInfo.class);
+    }
+
+    public void remove(StyleInfo style) {
+        styles.remove(unwrap(style));
+    }
+
+    public void save(StyleInfo style) {
+        commit(style, styles);
+    }
+
+    public StyleInfo detach(StyleInfo style) {
+        return style;
+    }
+
+    public StyleInfo getStyle(String id) {
+        StyleInfo style = styles.get(id);
+        return style != null ? ModificationProxy.create(style, StyleInfo.class) : null;
+    }
+
+    public StyleInfo getStyleByName(String name) {
+        for (StyleInfo style : styles.lookup(NAME, name)) {
+            if (name.equals(style.getName())) {
+                return ModificationProxy.create(style, StyleInfo.class);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public StyleInfo getStyleByName(WorkspaceInfo workspace, String name) {
+        if (null == workspace) {
+            throw new NullPointerException("workspace");
+        }
+        if (null == name) {
+            throw new NullPointerException("name");
+        }
+        List<StyleInfo> matches = new ArrayList<StyleInfo>();
+        for (StyleInfo style : styles.lookup(NAME, name)) {
+            if (!name.equals(style.getName())) {
+                continue;
+            }
+            if (workspace == ANY_WORKSPACE) {
+                matches.add(style);
+            } else if (style.getWorkspace() != null && style.getWorkspace().equals(workspace)
+                    || style.getWorkspace() == null && workspace == NO_WORKSPACE) {
+                return ModificationProxy.create(style, StyleInfo.class);
+            }
+        }
+
+        if (matches.size() == 1) {
+            return ModificationProxy.create(matches.get(0), StyleInfo.class);
+        }
+        return null;
+    }
+
+    public List<StyleInfo> getStyles() {
+        return ModificationProxy.createList(styles.list(), StyleInfo.class);
+    }
+
+    public List<StyleInfo> getStylesByWorkspace(WorkspaceInfo workspace) {
+        if (workspace == ANY_WORKSPACE) {
+            return getStyles();
+        }
+        if (workspace == null) {
+            workspace = getDefaultWorkspace();
+        }
+
+        List<StyleInfo> matches = new ArrayList<StyleInfo>();
+        if (workspace == NO_WORKSPACE) {
+            for (StyleInfo style : styles.lookup(WORKSPACE, NO_WORKSPACE_KEY)) {
+                if (style.getWorkspace() == null) {
+                    matches.add(style);
+                }
+            }
+        } else if (workspace != null) {
+            for (StyleInfo style : styles.lookup(WORKSPACE, workspace.getId())) {
+                if (workspace.equals(style.getWorkspace())) {
+                    matches.add(style);
+                }
+            }
+        }
+
+        return ModificationProxy.createList(matches, StyleInfo.class);
+    }
+
+    //
+    // Queries
+    //
+    @Override
+    public <T extends CatalogInfo> int count(final Class<T> of, final Filter filter) {
+        return new IndexedCatalogQuery(this).count(of, filter);
+    }
+
+    @Override
+    public <T extends CatalogInfo> CloseableIterator<T> list(final Class<T> of,
+            final Filter filter, @Nullable Integer offset, @Nullable Integer count,
+            @Nullable SortBy... sortOrder) {
+        if (sortOrder != null) {
+            for (SortBy so : sortOrder) {
+                if (!canSort(of, so.getPropertyName().getPropertyName())) {
+                    throw new IllegalArgumentException("Can't sort objects of type "
+                            + of.getName() + " by " + so.getPropertyName());
+                }
+            }
+        }
+
+        Iterator<T> iterator = new IndexedCatalogQuery(this).query(of, filter, offset, count,
+                sortOrder);
+        return new CloseableIteratorAdapter<T>(iterator);
+    }
+
+    /**
+     * Commits the changes to the object and updates the indexes of its store, firing the
+     * modification events around it
+     */
+    <T extends CatalogInfo> void commit(T info, CatalogInfoStore<? super T> store) {
+        beforeSaved(info);
+        T real = commitProxy(info);
+        store.reindex(real);
+        afterSaved(info);
+    }
+
+    public void dispose() {
+        stores.clear();
+        defaultStores.clear();
+        resources.clear();
+        namespaces.clear();
+        workspaces.clear();
+        layers.clear();
+        layerGroups.clear();
+        maps.clear();
+        styles.clear();
+        defaultWorkspace = null;
+        defaultNamespace = null;
+    }
+
+    public void resolve() {
+        for (WorkspaceInfo ws : workspaces.list()) {
+            resolve(ws);
+        }
+        for (NamespaceInfo ns : namespaces.list()) {
+            resolve(ns);
+        }
+        for (StoreInfo s : stores.list()) {
+            resolve(s);
+        }
+        for (StyleInfo s : styles.list()) {
+            resolve(s);
+        }
+        for (ResourceInfo r : resources.list()) {
+            resolve(r);
+        }
+        for (LayerInfo l : layers.list()) {
+            resolve(l);
+        }
+        for (LayerGroupInfo lg : layerGroups.list()) {
+            resolve(lg);
+        }
+        for (MapInfo m : maps.list()) {
+            resolve(m);
+        }
+    }
+
+    public void syncTo(CatalogFacade dao) {
+        if (dao instanceof IndexedCatalogFacade) {
+            // do an optimized sync
+            IndexedCatalogFacade other = (IndexedCatalogFacade) dao;
+
+            other.stores = stores;
+            other.defaultStores = defaultStores;
+            other.resources = resources;
+            other.namespaces = namespaces;
+            other.workspaces = workspaces;
+            other.layers = layers;
+            other.maps = maps;
+            other.layerGroups = layerGroups;
+            other.styles = styles;
+            other.defaultWorkspace = defaultWorkspace;
+            other.defaultNamespace = defaultNamespace;
+        } else {
+            // do a manual import
+            for (WorkspaceInfo ws : workspaces.list()) {
+                dao.add(ws);
+            }
+            for (NamespaceInfo ns : namespaces.list()) {
+                dao.add(ns);
+            }
+            for (StoreInfo s : stores.list()) {
+                dao.add(s);
+            }
+            for (ResourceInfo r : resources.list()) {
+                dao.add(r);
+            }
+            for (StyleInfo s : styles.list()) {
+                dao.add(s);
+            }
+            for (LayerInfo l : layers.list()) {
+                dao.add(l);
+            }
+            for (LayerGroupInfo lg : layerGroups.list()) {
+                dao.add(lg);
+            }
+            for (MapInfo m : maps.list()) {
+                dao.add(m);
+            }
+
+            if (defaultWorkspace != null) {
+                dao.setDefaultWorkspace(defaultWorkspace);
+            }
+            if (defaultNamespace != null) {
+                dao.setDefaultNamespace(defaultNamespace);
+            }
+
+            for (Map.Entry<String, DataStoreInfo> e : defaultStores.entrySet()) {
+                WorkspaceInfo ws = workspaces.get(e.getKey());
+                if (null != ws) {
+                    dao.setDefaultDataStore(ws, e.getValue());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.MapInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.ows.util.OwsUtils;
+import org.opengis.filter.And;
+import org.opengis.filter.Filter;
+import org.opengis.filter.Or;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
+
+/**
+ * Query engine behind {@link IndexedCatalogFacade#list} and {@link IndexedCatalogFacade#count}.
+ * <p>
+ * The filter is first inspected looking for equality comparisons against indexed properties
+ * (ids, names, prefixes, workspace, namespace, store, resource and style references), possibly
+ * nested in {@link And} and {@link Or} filters, that are used to pick a small set of candidates out
+ * of the indexes instead of scanning all objects. The full filter is then evaluated lazily on the
+ * candidates, so that unsorted queries are streamed and stop as soon as the requested page is
+ * filled.
+ * </p>
+ * <p>
+ * Sorted queries extract the sort values once per matching object, and when a page is requested
+ * keep only the top {@code offset + count} objects in a bounded heap instead of sorting the full
+ * result.
+ * </p>
+ */
+class IndexedCatalogQuery {
+
+    final IndexedCatalogFacade facade;
+
+    IndexedCatalogQuery(IndexedCatalogFacade facade) {
+        this.facade = facade;
+    }
+
+    /**
+     * Returns the objects of the specified type matching the filter, sorted and paged
+     */
+    <T extends CatalogInfo> Iterator<T> query(final Class<T> of, final Filter filter,
+            Integer offset, Integer count, SortBy[] sortBy) {
+        Iterable<CatalogInfo> matches = filter(of, filter);
+
+        Iterable<CatalogInfo> result;
+        if (sortBy != null && sortBy.length > 0) {
+            result = sort(matches, offset, count, sortBy);
+        } else {
+            result = matches;
+            if (offset != null && offset.intValue() > 0) {
+                result = Iterables.skip(result, offset.intValue());
+            }
+            if (count != null && count.intValue() >= 0) {
+                result = Iterables.limit(result, count.intValue());
+            }
+        }
+
+        return Iterables.transform(result, new Function<CatalogInfo, T>() {
+
+            @Override
+            public T apply(CatalogInfo info) {
+                return ModificationProxy.create(of.cast(info), of);
+            }
+        }).iterator();
+    }
+
+    /**
+     * Counts the objects of the specified type matching the filter
+     */
+    <T extends CatalogInfo> int count(final Class<T> of, final Filter filter) {
+        return Iterables.size(filter(of, filter));
+    }
+
+    /**
+     * Lazily filters the candidates of the specified type
+     */
+    Iterable<CatalogInfo> filter(final Class<?> of, final Filter filter) {
+        if (Filter.EXCLUDE.equals(filter)) {
+            return Collections.emptyList();
+        }
+        Iterable<CatalogInfo> candidates = Collections.emptyList();
+        for (CatalogInfoStore<? extends CatalogInfo> store : stores(of)) {
+            candidates = Iterables.concat(candidates, candidates(store, filter));
+        }
+
+        return Iterables.filter(candidates, new Predicate<CatalogInfo>() {
+
+            @Override
+            public boolean apply(CatalogInfo input) {
+                return of.isInstance(input) && (filter == null || filter.evaluate(input));
+            }
+        });
+    }
+
+    /**
+     * Returns the stores holding the objects of the given type
+     */
+    List<CatalogInfoStore<? extends CatalogInfo>> stores(Class<?> of) {
+        List<CatalogInfoStore<? extends CatalogInfo>> result = new ArrayList<CatalogInfoStore<? extends CatalogInfo>>();
+        if (NamespaceInfo.class.isAssignableFrom(of)) {
+            result.add(facade.namespaces);
+        } else if (WorkspaceInfo.class.isAssignableFrom(of)) {
+            result.add(facade.workspaces);
+        } else if (StoreInfo.class.isAssignableFrom(of)) {
+            result.add(facade.stores);
+        } else if (ResourceInfo.class.isAssignableFrom(of)) {
+            result.add(facade.resources);
+        } else if (LayerInfo.class.isAssignableFrom(of)) {
+            result.add(facade.layers);
+        } else if (LayerGroupInfo.class.isAssignableFrom(of)) {
+            result.add(facade.layerGroups);
+        } else if (PublishedInfo.class.isAssignableFrom(of)) {
+            result.add(facade.layers);
+            result.add(facade.layerGroups);
+        } else if (StyleInfo.class.isAssignableFrom(of)) {
+            result.add(facade.styles);
+        } else if (MapInfo.class.isAssignableFrom(of)) {
+            result.add(facade.maps);
+        } else {
+            throw new IllegalArgumentException("Unknown type: " + of);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a snapshot of the objects in the store that might match the filter, all of them
+     * if the filter cannot be answered with the indexes
+     */
+    @SuppressWarnings("unchecked")
+    Collection<CatalogInfo> candidates(CatalogInfoStore<? extends CatalogInfo> store, Filter filter) {
+        Collection<? extends CatalogInfo> planned = filter == null ? null : plan(store, filter);
+        if (planned == null) {
+            return (Collection<CatalogInfo>) store.list();
+        }
+        return new ArrayList<CatalogInfo>(planned);
+    }
+
+    /**
+     * Uses the indexes to find the objects possibly matching the filter, or returns null if the
+     * filter cannot be answered with the indexes. The result is a superset of the objects
+     * matching the filter.
+     */
+    Collection<? extends CatalogInfo> plan(CatalogInfoStore<? extends CatalogInfo> store,
+            Filter filter) {
+        if (filter instanceof PropertyIsEqualTo) {
+            PropertyIsEqualTo equal = (PropertyIsEqualTo) filter;
+            if (!equal.isMatchingCase()) {
+                return null;
+            }
+            String property = propertyName(equal.getExpression1(), equal.getExpression2());
+            String value = literalValue(equal.getExpression1(), equal.getExpression2());
+            if (property == null || value == null) {
+                return null;
+            }
+            return lookup(store, property, value);
+        } else if (filter instanceof And) {
+            // use the most selective of the indexed children
+            Collection<? extends CatalogInfo> best = null;
+            for (Filter child : ((And) filter).getChildren()) {
+                Collection<? extends CatalogInfo> planned = plan(store, child);
+                if (planned != null && (best == null || planned.size() < best.size())) {
+                    best = planned;
+                }
+            }
+            return best;
+        } else if (filter instanceof Or) {
+            // all the children must be indexed, the result is the union of their candidates
+            Map<String, CatalogInfo> union = new LinkedHashMap<String, CatalogInfo>();
+            for (Filter child : ((Or) filter).getChildren()) {
+                Collection<? extends CatalogInfo> planned = plan(store, child);
+                if (planned == null) {
+                    return null;
+                }
+                for (CatalogInfo info : planned) {
+                    union.put(info.getId(), info);
+                }
+            }
+            return union.values();
+        }
+        return null;
+    }
+
+    /**
+     * Looks up the objects in the store whose property has the given value, or returns null if
+     * there is no index for the property
+     */
+    Collection<? extends CatalogInfo> lookup(CatalogInfoStore<? extends CatalogInfo> store,
+            String property, String value) {
+        if ("id".equals(property)) {
+            CatalogInfo info = store.get(value);
+            return info == null ? Collections.<CatalogInfo> emptyList() : Collections
+                    .singletonList(info);
+        }
+
+        if (store == facade.layers) {
+            if ("resource.id".equals(property)) {
+                return facade.layers.lookup(IndexedCatalogFacade.RESOURCE, value);
+            } else if ("styles.id".equals(property) || "defaultStyle.id".equals(property)) {
+                return facade.layers.lookup(IndexedCatalogFacade.STYLE, value);
+            } else if ("name".equals(property) || "resource.name".equals(property)) {
+                // layers take their name from the resource they publish
+                List<LayerInfo> layers = new ArrayList<LayerInfo>();
+                for (ResourceInfo resource : facade.resources.lookup(IndexedCatalogFacade.NAME,
+                        value)) {
+                    layers.addAll(facade.layers.lookup(IndexedCatalogFacade.RESOURCE,
+                            resource.getId()));
+                }
+                return layers;
+            }
+            return null;
+        }
+
+        if (store.indexes.containsKey(IndexedCatalogFacade.NAME)
+                && ("name".equals(property) || store == facade.namespaces
+                        && "prefix".equals(property))) {
+            return store.lookup(IndexedCatalogFacade.NAME, value);
+        }
+
+        if (store == facade.namespaces && "URI".equalsIgnoreCase(property)) {
+            return store.lookup(IndexedCatalogFacade.URI, value);
+        }
+
+        if (store.indexes.containsKey(IndexedCatalogFacade.WORKSPACE)) {
+            if ("workspace.id".equals(property)) {
+                return store.lookup(IndexedCatalogFacade.WORKSPACE, value);
+            } else if ("workspace.name".equals(property)) {
+                WorkspaceInfo ws = facade.lookupWorkspace(value);
+                return ws == null ? Collections.<CatalogInfo> emptyList() : store.lookup(
+                        IndexedCatalogFacade.WORKSPACE, ws.getId());
+            }
+        }
+
+        if (store == facade.resources) {
+            if ("namespace.id".equals(property)) {
+                return store.lookup(IndexedCatalogFacade.NAMESPACE, value);
+            } else if ("namespace.prefix".equals(property)) {
+                NamespaceInfo ns = facade.lookupNamespace(value);
+                return ns == null ? Collections.<CatalogInfo> emptyList() : store.lookup(
+                        IndexedCatalogFacade.NAMESPACE, ns.getId());
+            } else if ("store.id".equals(property)) {
+                return store.lookup(IndexedCatalogFacade.STORE, value);
+            }
+        }
+
+        return null;
+    }
+
+    String propertyName(Expression e1, Expression e2) {
+        if (e1 instanceof PropertyName && e2 instanceof Literal) {
+            return ((PropertyName) e1).getPropertyName();
+        } else if (e2 instanceof PropertyName && e1 instanceof Literal) {
+            return ((PropertyName) e2).getPropertyName();
+        }
+        return null;
+    }
+
+    String literalValue(Expression e1, Expression e2) {
+        Object value = null;
+        if (e1 instanceof Literal) {
+            value = ((Literal) e1).getValue();
+        } else if (e2 instanceof Literal) {
+            value = ((Literal) e2).getValue();
+        }
+        // only plain string comparisons can be answered with the indexes
+        return value instanceof String ? (String) value : null;
+    }
+
+    /**
+     * An object along with its sort values, and position in the unsorted result to keep the
+     * sort stable
+     */
+    static class SortEntry {
+        final CatalogInfo info;
+
+        final Comparable<Object>[] values;
+
+        final int position;
+
+        SortEntry(CatalogInfo info, Comparable<Object>[] values, int position) {
+            this.info = info;
+            this.values = values;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Sorts the matches, keeping only the first {@code offset + count} ones if a count is provided
+     */
+    @SuppressWarnings("unchecked")
+    Iterable<CatalogInfo> sort(Iterable<CatalogInfo> matches, Integer offset, Integer count,
+            final SortBy[] sortBy) {
+        final Comparator<SortEntry> comparator = new Comparator<SortEntry>() {
+
+            @Override
+            public int compare(SortEntry e1, SortEntry e2) {
+                for (int i = 0; i < sortBy.length; i++) {
+                    int result = compareValues(e1.values[i], e2.values[i]);
+                    if (SortOrder.DESCENDING.equals(sortBy[i].getSortOrder())) {
+                        result = -result;
+                    }
+                    if (result != 0) {
+                        return result;
+                    }
+                }
+                return e1.position < e2.position ? -1 : (e1.position == e2.position ? 0 : 1);
+            }
+        };
+
+        int skip = offset != null && offset.intValue() > 0 ? offset.intValue() : 0;
+        int limit = count != null && count.intValue() >= 0 ? count.intValue() : -1;
+
+        List<SortEntry> sorted;
+        if (limit >= 0) {
+            // bounded heap keeping the top "skip + limit" entries, worst entry on top
+            int size = skip + limit;
+            if (size == 0) {
+                return Collections.emptyList();
+            }
+            PriorityQueue<SortEntry> heap = new PriorityQueue<SortEntry>(Math.min(size, 1024),
+                    Collections.reverseOrder(comparator));
+            int position = 0;
+            for (CatalogInfo info : matches) {
+                SortEntry entry = new SortEntry(info, sortValues(info, sortBy), position++);
+                if (heap.size() < size) {
+                    heap.add(entry);
+                } else if (comparator.compare(entry, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(entry);
+                }
+            }
+            sorted = new ArrayList<SortEntry>(heap);
+        } else {
+            sorted = new ArrayList<SortEntry>();
+            int position = 0;
+            for (CatalogInfo info : matches) {
+                sorted.add(new SortEntry(info, sortValues(info, sortBy), position++));
+            }
+        }
+        Collections.sort(sorted, comparator);
+
+        List<CatalogInfo> result = new ArrayList<CatalogInfo>(sorted.size());
+        for (int i = skip; i < sorted.size() && (limit < 0 || i < skip + limit); i++) {
+            result.add(sorted.get(i).info);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    Comparable<Object>[] sortValues(CatalogInfo info, SortBy[] sortBy) {
+        Comparable<Object>[] values = new Comparable[sortBy.length];
+        for (int i = 0; i < sortBy.length; i++) {
+            values[i] = (Comparable<Object>) OwsUtils.get(info, sortBy[i].getPropertyName()
+                    .getPropertyName());
+        }
+        return values;
+    }
+
+    int compareValues(Comparable<Object> v1, Comparable<Object> v2) {
+        if (v1 == null) {
+            return v2 == null ? 0 : -1;
+        } else if (v2 == null) {
+            return 1;
+        }
+        return v1.compareTo(v2);
+    }
+}
@@ -18,6 +18,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.CatalogInfo;
@@ -51,6 +52,17 @@ import org.opengis.filter.FilterFactory;
  */
 public class ModificationProxy implements WrappingProxy, Serializable {
 
+    /**
+     * Parsed getter/setter information for the methods invoked on the proxies, shared among all
+     * proxy instances
+     */
+    static final Map<Method, MethodInfo> METHOD_INFOS = new ConcurrentHashMap<Method, MethodInfo>();
+
+    /**
+     * Getter lookup cache, by class and property name
+     */
+    static final Map<Class, Map<String, Method>> GETTERS = new ConcurrentHashMap<Class, Map<String, Method>>();
+
     /** 
      * the proxy object 
      */
@@ -69,7 +81,8 @@ public class ModificationProxy implements WrappingProxy, Serializable {
     /**
      * The old values of the live collections (we have to clone them because once
      * the proxy commits the original map will contain the same values as the new one,
-     * breaking getOldValues()
+     * breaking getOldValues(). The copy is taken lazily, when the old values are first
+     * requested or right before the commit, as most collections are accessed read only
      */
     HashMap<String,Object> oldCollectionValues;
 
@@ -90,19 +103,17 @@ public class ModificationProxy implements WrappingProxy, Serializable {
     public Object invoke(Object proxy, Method method, Object[] args)
             throws Throwable {
         
-        String property = null;
-        if ( ( method.getName().startsWith( "get")  || method.getName().startsWith( "is" ) ) 
-                && method.getParameterTypes().length == 0 ) {
+        MethodInfo info = methodInfo(method);
+        String property = info.property;
+        if ( info.getter ) {
             //intercept getter to check the dirty property set
-            property = method.getName().substring( 
-                method.getName().startsWith( "get") ? 3 : 2 );
             if ( properties != null && properties().containsKey( property ) ) {
                 //return the previously set object
                 return properties().get( property );
             }
             else {
                 //if collection, create a wrapper
-                if ( Collection.class.isAssignableFrom( method.getReturnType() ) ) {
+                if ( info.collection ) {
                     Collection real = (Collection) method.invoke( proxyObject, null );
                     if(real == null) {
                         // in this case there is nothing we can do
@@ -110,12 +121,8 @@ public class ModificationProxy implements WrappingProxy, Serializable {
                     }
                     Collection wrap = ModificationProxyCloner.cloneCollection(real, true);
                     properties().put( property, wrap );
-                    // we also need to store a clone of the initial state as the collection
-                    // might be a live one
-                    Collection clone = ModificationProxyCloner.cloneCollection(real, false);
-                    oldCollectionValues().put(property, clone);
                     return wrap;
-                } else if(Map.class.isAssignableFrom( method.getReturnType() )) {
+                } else if( info.map ) {
                     Map real = (Map) method.invoke( proxyObject, null );
                     if(real == null) {
                         // in this case there is nothing we can do
@@ -123,10 +130,6 @@ public class ModificationProxy implements WrappingProxy, Serializable {
                     }
                     Map wrap = ModificationProxyCloner.cloneMap(real, true);
                     properties().put( property, wrap );
-                    // we also need to store a clone of the initial state as the collection
-                    // might be a live one
-                    Map clone = ModificationProxyCloner.cloneMap(real, false);
-                    oldCollectionValues().put(property, clone);
                     return wrap;
                 } else {
                   //proceed with the invocation    
@@ -135,9 +138,8 @@ public class ModificationProxy implements WrappingProxy, Serializable {
             }
             
         }
-        if ( method.getName().startsWith( "set") && args.length == 1) {
+        if ( info.setter ) {
             //intercept setter and put new value in list
-            property = method.getName().substring( 3 );
             properties().put( property, args[0] );
             
             return null;
@@ -195,13 +197,15 @@ public class ModificationProxy implements WrappingProxy, Serializable {
                 try {
                     Method g = getter(p);
                     
-                    //handle collection case
+                    //handle collection case, preserving the old values before overwriting them
                     if ( Collection.class.isAssignableFrom( g.getReturnType() ) ) {
                         Collection c = (Collection) g.invoke(proxyObject,null);
+                        oldCollectionValue(p, c);
                         c.clear();
                         c.addAll( (Collection) v );
                     } else if( Map.class.isAssignableFrom( g.getReturnType() )) {
                         Map m = (Map) g.invoke(proxyObject, null);
+                        oldCollectionValue(p, m);
                         m.clear();
                         m.putAll( (Map) v);
                     } else {
@@ -241,8 +245,9 @@ public class ModificationProxy implements WrappingProxy, Serializable {
                 }
             } 
             
-            //reset
+            //reset, the old collection values are taken again on the next modification
             properties = null;
+            oldCollectionValues = null;
         }
     }
     
@@ -382,7 +387,11 @@ public class ModificationProxy implements WrappingProxy, Serializable {
                         throw new IllegalArgumentException( "No such property: " + propertyName );
                     }
                     
-                    oldValues.add( g.invoke( proxyObject, null ) );
+                    Object value = g.invoke( proxyObject, null );
+                    if ( value instanceof Collection || value instanceof Map ) {
+                        value = oldCollectionValue(propertyName, value);
+                    }
+                    oldValues.add( value );
                 } catch (Exception e) {
                     throw new RuntimeException( e );
                 }
@@ -391,6 +400,24 @@ public class ModificationProxy implements WrappingProxy, Serializable {
         
         return oldValues;
     }
+
+    /**
+     * Returns the copy of the original state of a live collection or map, taking it if not done
+     * already
+     */
+    Object oldCollectionValue(String propertyName, Object live) throws InstantiationException,
+            IllegalAccessException {
+        Object clone = oldCollectionValues().get(propertyName);
+        if (clone == null && live != null) {
+            if (live instanceof Collection) {
+                clone = ModificationProxyCloner.cloneCollection((Collection) live, false);
+            } else {
+                clone = ModificationProxyCloner.cloneMap((Map) live, false);
+            }
+            oldCollectionValues().put(propertyName, clone);
+        }
+        return clone;
+    }
     
     /**
      * Returns the new values of any changed properties.
@@ -407,6 +434,22 @@ public class ModificationProxy implements WrappingProxy, Serializable {
      * Helper method for looking up a getter method.
      */
     Method getter( String propertyName ) {
+        Map<String, Method> getters = GETTERS.get(proxyObject.getClass());
+        if (getters == null) {
+            getters = new ConcurrentHashMap<String, Method>();
+            GETTERS.put(proxyObject.getClass(), getters);
+        }
+        Method g = getters.get(propertyName);
+        if (g == null) {
+            g = lookupGetter(propertyName);
+            if (g != null) {
+                getters.put(propertyName, g);
+            }
+        }
+        return g;
+    }
+
+    Method lookupGetter( String propertyName ) {
         Method g = null;
         try {
             g = proxyObject.getClass().getMethod( "get" + propertyName , null );
@@ -440,6 +483,58 @@ public class ModificationProxy implements WrappingProxy, Serializable {
         return s;
     }
 
+    /**
+     * Returns the parsed information about the specified method
+     */
+    static MethodInfo methodInfo(Method method) {
+        MethodInfo info = METHOD_INFOS.get(method);
+        if (info == null) {
+            info = new MethodInfo(method);
+            METHOD_INFOS.put(method, info);
+        }
+        return info;
+    }
+
+    /**
+     * Getter/setter classification of a method, computed once and then reused at each call
+     */
+    static final class MethodInfo {
+
+        final boolean getter;
+
+        final boolean setter;
+
+        final boolean collection;
+
+        final boolean map;
+
+        final String property;
+
+        MethodInfo(Method method) {
+            String name = method.getName();
+            int parameters = method.getParameterTypes().length;
+            if ((name.startsWith("get") || name.startsWith("is")) && parameters == 0) {
+                getter = true;
+                setter = false;
+                property = name.substring(name.startsWith("get") ? 3 : 2);
+                collection = Collection.class.isAssignableFrom(method.getReturnType());
+                map = Map.class.isAssignableFrom(method.getReturnType());
+            } else if (name.startsWith("set") && parameters == 1) {
+                getter = false;
+                setter = true;
+                property = name.substring(3);
+                collection = false;
+                map = false;
+            } else {
+                getter = false;
+                setter = false;
+                property = null;
+                collection = false;
+                map = false;
+            }
+        }
+    }
+
     private Object readResolve() throws ObjectStreamException {
         // replace the main proxy object
         if(proxyObject instanceof CatalogInfo) {
@@ -17,8 +17,10 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -55,6 +57,21 @@ class ModificationProxyCloner {
     
     static final Map<Class, Class> CATALOGINFO_INTERFACE_CACHE = new ConcurrentHashMap<Class, Class>();
 
+    /**
+     * Marks classes lacking a public clone method or a copy constructor in the caches below
+     */
+    static final Object NONE = new Object();
+
+    /**
+     * Caches the public clone method lookup, by class
+     */
+    static final Map<Class, Object> CLONE_METHOD_CACHE = new ConcurrentHashMap<Class, Object>();
+
+    /**
+     * Caches the copy constructor lookup, by class
+     */
+    static final Map<Class, Object> COPY_CONSTRUCTOR_CACHE = new ConcurrentHashMap<Class, Object>();
+
     /**
      * Best effort object cloning utility, tries different lightweight strategies, then falls back
      * on copy by XStream serialization (we use that one as we have a number of hooks to avoid deep
@@ -81,32 +98,25 @@ class ModificationProxyCloner {
         }
 
         // if a known immutable?
-        if (source instanceof String || source instanceof Byte || source instanceof Short
-                || source instanceof Integer || source instanceof Float || source instanceof Double
-                || source instanceof BigInteger || source instanceof BigDecimal) {
+        if (isImmutable(source)) {
             return (T) source;
         }
 
         // is it cloneable?
-        try {
-            if (source instanceof Cloneable) {
-                // methodutils does not seem to work against "clone()"...
-                // return (T) MethodUtils.invokeExactMethod(source, "clone", null, null);
-                Method method = source.getClass().getDeclaredMethod("clone");
-                if(Modifier.isPublic(method.getModifiers()) && method.getParameterTypes().length == 0) {
+        if (source instanceof Cloneable) {
+            Method method = getCloneMethod(source.getClass());
+            if (method != null) {
+                try {
                     return (T) method.invoke(source);
+                } catch (Exception e) {
+                    LOGGER.log(Level.FINE, "Source object clone method failed, skipping to the "
+                            + "other strategies", e);
                 }
             }
-        } catch (Exception e) {
-            LOGGER.log(
-                    Level.FINE,
-                    "Source object is cloneable, yet it does not have a public no argument method 'clone'",
-                    e);
         }
 
         // does it have a copy constructor?
-        Constructor copyConstructor = ConstructorUtils.getAccessibleConstructor(source.getClass(),
-                source.getClass());
+        Constructor copyConstructor = getCopyConstructor(source.getClass());
         if (copyConstructor != null) {
             try {
                 return (T) copyConstructor.newInstance(source);
@@ -128,6 +138,50 @@ class ModificationProxyCloner {
         }
     }
 
+    /**
+     * Returns true if the object is a well known immutable one, which can be shared instead of
+     * being cloned (avoids, among others, serializing a Boolean to clone it)
+     */
+    static boolean isImmutable(Object source) {
+        return source instanceof String || source instanceof Boolean || source instanceof Character
+                || source instanceof Byte || source instanceof Short || source instanceof Integer
+                || source instanceof Long || source instanceof Float || source instanceof Double
+                || source instanceof BigInteger || source instanceof BigDecimal
+                || source instanceof Enum || source instanceof Class || source instanceof Locale
+                || source instanceof UUID;
+    }
+
+    static Method getCloneMethod(Class clazz) {
+        Object cached = CLONE_METHOD_CACHE.get(clazz);
+        if (cached == null) {
+            cached = NONE;
+            try {
+                // methodutils does not seem to work against "clone()"...
+                // return (T) MethodUtils.invokeExactMethod(source, "clone", null, null);
+                Method method = clazz.getDeclaredMethod("clone");
+                if (Modifier.isPublic(method.getModifiers())
+                        && method.getParameterTypes().length == 0) {
+                    cached = method;
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Source object is cloneable, yet it does not have a public "
+                        + "no argument method 'clone'", e);
+            }
+            CLONE_METHOD_CACHE.put(clazz, cached);
+        }
+        return cached == NONE ? null : (Method) cached;
+    }
+
+    static Constructor getCopyConstructor(Class clazz) {
+        Object cached = COPY_CONSTRUCTOR_CACHE.get(clazz);
+        if (cached == null) {
+            Constructor constructor = ConstructorUtils.getAccessibleConstructor(clazz, clazz);
+            cached = constructor != null ? constructor : NONE;
+            COPY_CONSTRUCTOR_CACHE.put(clazz, cached);
+        }
+        return cached == NONE ? null : (Constructor) cached;
+    }
+
     static <T extends Serializable> T cloneSerializable(T source) {
         byte[] bytes = SerializationUtils.serialize(source);
         try {
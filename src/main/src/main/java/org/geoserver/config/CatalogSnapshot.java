@@ -0,0 +1,498 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.catalog.impl.ModificationProxy;
+import org.geoserver.config.util.XStreamPersister;
+import org.geoserver.config.util.XStreamPersisterFactory;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geoserver.platform.resource.Resource;
+import org.geoserver.platform.resource.Resource.Type;
+import org.geoserver.platform.resource.Resources;
+import org.geotools.util.logging.Logging;
+
+import com.thoughtworks.xstream.io.binary.BinaryStreamDriver;
+
+/**
+ * Keeps a compact binary copy of the catalog in the data directory, so that a warm restart does
+ * not need to parse the thousands of XML files a large catalog is made of.
+ * <p>
+ * The snapshot records the path and last modification time of the catalog configuration files it
+ * has been taken from: if any of them changed, appeared or went away since, the snapshot is ignored
+ * and the catalog is read from the XML files as usual. The snapshot is rewritten in the background
+ * a few seconds after the catalog has been loaded from XML, or modified.
+ * </p>
+ * <p>
+ * Enabled by setting the {@link #CATALOG_SNAPSHOT} system, environment or servlet context variable
+ * to <code>true</code>.
+ * </p>
+ */
+public class CatalogSnapshot implements CatalogListener {
+
+    static final Logger LOGGER = Logging.getLogger("org.geoserver");
+
+    /**
+     * Enables the usage of the catalog snapshot
+     */
+    public static final String CATALOG_SNAPSHOT = "GEOSERVER_CATALOG_SNAPSHOT";
+
+    static final String SNAPSHOT_FILE = "catalog.snapshot";
+
+    /**
+     * Version of the snapshot layout, to be increased every time the layout changes
+     */
+    static final int VERSION = 1;
+
+    static final String END = "END";
+
+    /**
+     * Some file systems have a coarse modification time resolution, a file modified right after
+     * the snapshot is taken might end up with the same time stamp. Snapshots are postponed until
+     * the configuration files have not been touched for this many milliseconds.
+     */
+    static final long TIMESTAMP_RESOLUTION = 2000;
+
+    static final long WRITE_DELAY = 5000;
+
+    /**
+     * The path and modification time based digest of the catalog configuration files, along with
+     * the most recent modification time among them
+     */
+    static class Fingerprint {
+        String digest;
+
+        long lastModified;
+    }
+
+    GeoServerResourceLoader resourceLoader;
+
+    XStreamPersisterFactory xpf;
+
+    Catalog catalog;
+
+    /**
+     * The data stores disabled by the loader because the connection failed, their configuration
+     * files still have them enabled
+     */
+    Set<String> failedStores = Collections.synchronizedSet(new HashSet<String>());
+
+    boolean loaded;
+
+    long writeDelay = WRITE_DELAY;
+
+    ScheduledExecutorService executor;
+
+    ScheduledFuture<?> pendingWrite;
+
+    public CatalogSnapshot(GeoServerResourceLoader resourceLoader, XStreamPersisterFactory xpf) {
+        this.resourceLoader = resourceLoader;
+        this.xpf = xpf;
+    }
+
+    /**
+     * Returns true if the {@link #CATALOG_SNAPSHOT} variable is set to true
+     */
+    public static boolean isEnabled() {
+        return Boolean.valueOf(GeoServerExtensions.getProperty(CATALOG_SNAPSHOT));
+    }
+
+    public void setXStreamPersisterFactory(XStreamPersisterFactory xpf) {
+        this.xpf = xpf;
+    }
+
+    /**
+     * Returns true if the last catalog load came from the snapshot
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Starts tracking the changes of the catalog, to keep the snapshot up to date
+     */
+    public void watch(Catalog catalog) {
+        this.catalog = catalog;
+        catalog.removeListeners(CatalogSnapshot.class);
+        catalog.addListener(this);
+    }
+
+    /**
+     * Records a data store that got disabled because the connection to it failed
+     */
+    void connectionFailed(DataStoreInfo store) {
+        failedStores.add(store.getId());
+    }
+
+    /**
+     * Reads the catalog from the snapshot
+     *
+     * @return the catalog, or null if the snapshot is missing, out of date or unreadable
+     */
+    public CatalogImpl read() {
+        loaded = false;
+        failedStores.clear();
+        Resource snapshot = resourceLoader.get(SNAPSHOT_FILE);
+        if (!Resources.exists(snapshot)) {
+            return null;
+        }
+
+        try {
+            String expected = fingerprint().digest;
+            InputStream in = new BufferedInputStream(snapshot.in());
+            try {
+                XStreamPersister xp = xpf.createBinaryPersister();
+                ObjectInputStream ois = xp.getXStream().createObjectInputStream(
+                        new BinaryStreamDriver().createReader(in));
+                if (!Integer.valueOf(VERSION).equals(ois.readObject())
+                        || !expected.equals(ois.readObject())) {
+                    LOGGER.info("The catalog snapshot is out of date, loading the catalog from "
+                            + "the configuration files");
+                    return null;
+                }
+
+                CatalogImpl catalog = new CatalogImpl();
+                catalog.setResourceLoader(resourceLoader);
+                xp.setCatalog(catalog);
+                xp.setUnwrapNulls(false);
+
+                // same order as the objects got written, references always point back
+                for (int i = next(ois, Integer.class); i > 0; i--) {
+                    catalog.add(next(ois, WorkspaceInfo.class));
+                }
+                for (int i = next(ois, Integer.class); i > 0; i--) {
+                    catalog.add(next(ois, NamespaceInfo.class));
+                }
+                for (int i = next(ois, Integer.class); i > 0; i--) {
+                    catalog.add(next(ois, StyleInfo.class));
+                }
+                for (int i = next(ois, Integer.class); i > 0; i--) {
+                    catalog.add(next(ois, StoreInfo.class));
+                }
+                for (int i = next(ois, Integer.class); i > 0; i--) {
+                    catalog.add(next(ois, ResourceInfo.class));
+                }
+                for (int i = next(ois, Integer.class); i > 0; i--) {
+                    catalog.add(next(ois, LayerInfo.class));
+                }
+                for (int i = next(ois, Integer.class); i > 0; i--) {
+                    catalog.add(next(ois, LayerGroupInfo.class));
+                }
+
+                String defaultWorkspace = next(ois, String.class);
+                if (defaultWorkspace != null) {
+                    catalog.setDefaultWorkspace(catalog.getWorkspace(defaultWorkspace));
+                }
+                String defaultNamespace = next(ois, String.class);
+                if (defaultNamespace != null) {
+                    catalog.setDefaultNamespace(catalog.getNamespace(defaultNamespace));
+                }
+                Map<?, ?> defaultStores = next(ois, Map.class);
+                for (Map.Entry<?, ?> entry : defaultStores.entrySet()) {
+                    catalog.setDefaultDataStore(catalog.getWorkspace((String) entry.getKey()),
+                            catalog.getDataStore((String) entry.getValue()));
+                }
+                // give the stores that failed last time another chance, as the loader would do
+                for (Object id : next(ois, List.class)) {
+                    DataStoreInfo store = catalog.getDataStore((String) id);
+                    if (store != null) {
+                        ModificationProxy.unwrap(store).setEnabled(true);
+                    }
+                }
+                if (!END.equals(ois.readObject())) {
+                    throw new IOException("The catalog snapshot is not properly terminated");
+                }
+
+                xp.setUnwrapNulls(true);
+                catalog.resolve();
+                loaded = true;
+                LOGGER.info("Loaded the catalog from the snapshot");
+                return catalog;
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to read the catalog snapshot, loading the catalog "
+                    + "from the configuration files", e);
+            return null;
+        }
+    }
+
+    <T> T next(ObjectInputStream ois, Class<T> clazz) throws IOException, ClassNotFoundException {
+        return clazz.cast(ois.readObject());
+    }
+
+    /**
+     * Writes down the snapshot of the catalog
+     *
+     * @param catalog the catalog
+     * @param fingerprint the fingerprint of the configuration files, must be computed before
+     *        the catalog contents are accessed, so that concurrent changes invalidate the snapshot
+     */
+    synchronized void write(Catalog catalog, Fingerprint fingerprint) throws IOException {
+        Resource snapshot = resourceLoader.get(SNAPSHOT_FILE);
+        OutputStream out = new BufferedOutputStream(snapshot.out());
+        boolean complete = false;
+        try {
+            XStreamPersister xp = xpf.createBinaryPersister();
+            ObjectOutputStream oos = xp.getXStream().createObjectOutputStream(
+                    new BinaryStreamDriver().createWriter(out), "snapshot");
+            oos.writeObject(VERSION);
+            oos.writeObject(fingerprint.digest);
+
+            List<WorkspaceInfo> workspaces = catalog.getWorkspaces();
+            writeAll(oos, workspaces);
+            writeAll(oos, catalog.getNamespaces());
+            writeAll(oos, catalog.getStyles());
+            writeAll(oos, catalog.getStores(StoreInfo.class));
+            writeAll(oos, catalog.getResources(ResourceInfo.class));
+            writeAll(oos, catalog.getLayers());
+            writeAll(oos, sortLayerGroups(catalog.getLayerGroups()));
+
+            oos.writeObject(id(catalog.getDefaultWorkspace()));
+            oos.writeObject(id(catalog.getDefaultNamespace()));
+            // not part of the configuration files, the XML loader picks the first store found
+            HashMap<String, String> defaultStores = new HashMap<String, String>();
+            for (WorkspaceInfo ws : workspaces) {
+                DataStoreInfo store = catalog.getDefaultDataStore(ws);
+                if (store != null) {
+                    defaultStores.put(ws.getId(), store.getId());
+                }
+            }
+            oos.writeObject(defaultStores);
+            synchronized (failedStores) {
+                oos.writeObject(new ArrayList<String>(failedStores));
+            }
+            oos.writeObject(END);
+            oos.flush();
+            complete = true;
+        } finally {
+            out.close();
+            if (!complete) {
+                snapshot.delete();
+            }
+        }
+    }
+
+    void writeAll(ObjectOutputStream oos, Collection<? extends CatalogInfo> infos)
+            throws IOException {
+        oos.writeObject(infos.size());
+        for (CatalogInfo info : infos) {
+            oos.writeObject(XStreamPersister.unwrapProxies(info));
+        }
+    }
+
+    String id(CatalogInfo info) {
+        return info != null ? info.getId() : null;
+    }
+
+    /**
+     * Sorts the layer groups so that nested groups come before the groups containing them
+     */
+    List<LayerGroupInfo> sortLayerGroups(List<LayerGroupInfo> groups) {
+        Map<String, LayerGroupInfo> pending = new LinkedHashMap<String, LayerGroupInfo>();
+        for (LayerGroupInfo group : groups) {
+            pending.put(group.getId(), group);
+        }
+        List<LayerGroupInfo> result = new ArrayList<LayerGroupInfo>(groups.size());
+        for (LayerGroupInfo group : groups) {
+            addLayerGroup(group, pending, result);
+        }
+        return result;
+    }
+
+    void addLayerGroup(LayerGroupInfo group, Map<String, LayerGroupInfo> pending,
+            List<LayerGroupInfo> result) {
+        if (pending.remove(group.getId()) == null) {
+            return;
+        }
+        for (PublishedInfo published : group.getLayers()) {
+            if (published instanceof LayerGroupInfo) {
+                addLayerGroup((LayerGroupInfo) published, pending, result);
+            }
+        }
+        result.add(group);
+    }
+
+    /**
+     * Computes the fingerprint of the catalog configuration files
+     */
+    Fingerprint fingerprint() throws IOException {
+        List<Resource> files = new ArrayList<Resource>();
+        collect(resourceLoader.get("styles"), 0, files);
+        collect(resourceLoader.get("layergroups"), 0, files);
+        // workspace, store and resource directories, plus the workspace styles and layer groups
+        collect(resourceLoader.get("workspaces"), 3, files);
+        Collections.sort(files, new Comparator<Resource>() {
+
+            @Override
+            public int compare(Resource r1, Resource r2) {
+                return r1.path().compareTo(r2.path());
+            }
+        });
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            Fingerprint fingerprint = new Fingerprint();
+            for (Resource file : files) {
+                long lastModified = file.lastmodified();
+                digest.update((file.path() + ":" + lastModified + "\n").getBytes("UTF-8"));
+                fingerprint.lastModified = Math.max(fingerprint.lastModified, lastModified);
+            }
+            fingerprint.digest = new BigInteger(1, digest.digest()).toString(16);
+            return fingerprint;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    void collect(Resource directory, int depth, List<Resource> files) {
+        if (directory.getType() != Type.DIRECTORY) {
+            return;
+        }
+        for (Resource child : directory.list()) {
+            Type type = child.getType();
+            if (type == Type.RESOURCE && child.name().endsWith(".xml")) {
+                files.add(child);
+            } else if (type == Type.DIRECTORY && depth > 0) {
+                collect(child, depth - 1, files);
+            }
+        }
+    }
+
+    /**
+     * Schedules a rewrite of the snapshot. Requests coming in before the rewrite starts are folded
+     * into it.
+     */
+    public synchronized void scheduleWrite() {
+        if (pendingWrite != null && pendingWrite.getDelay(TimeUnit.MILLISECONDS) > 0) {
+            return;
+        }
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "GeoServer catalog snapshot writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        pendingWrite = executor.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                writeSnapshot();
+            }
+        }, writeDelay, TimeUnit.MILLISECONDS);
+    }
+
+    void writeSnapshot() {
+        Catalog catalog = this.catalog;
+        if (catalog == null) {
+            return;
+        }
+        try {
+            Fingerprint fingerprint = fingerprint();
+            if (System.currentTimeMillis() - fingerprint.lastModified < TIMESTAMP_RESOLUTION) {
+                // configuration still being written, try again later
+                scheduleWrite();
+                return;
+            }
+            long start = System.currentTimeMillis();
+            write(catalog, fingerprint);
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Wrote the catalog snapshot in " + (System.currentTimeMillis() - start)
+                        + "ms");
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to write the catalog snapshot", e);
+        }
+    }
+
+    /**
+     * Stops the background snapshot writer
+     */
+    public synchronized void dispose() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+            pendingWrite = null;
+        }
+    }
+
+    public void handleAddEvent(CatalogAddEvent event) {
+        scheduleWrite();
+    }
+
+    public void handleRemoveEvent(CatalogRemoveEvent event) {
+        if (event.getSource() instanceof DataStoreInfo) {
+            failedStores.remove(event.getSource().getId());
+        }
+        scheduleWrite();
+    }
+
+    public void handleModifyEvent(CatalogModifyEvent event) {
+        // wait for the post modify one
+    }
+
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) {
+        if (event.getSource() instanceof DataStoreInfo) {
+            // the enabled flag in the snapshot is now the one in the configuration file
+            failedStores.remove(event.getSource().getId());
+        }
+        scheduleWrite();
+    }
+
+    public void reloaded() {
+    }
+
+}
@@ -39,6 +39,14 @@ public class DefaultGeoServerLoader extends GeoServerLoader {
             //add the listener which will persist changes
             catalog.addListener( new GeoServerPersister( resourceLoader, xp ) );
         }
+        
+        if (snapshot != null) {
+            // keep the snapshot up to date, and take one right away if we read from XML
+            snapshot.watch(catalog);
+            if (!snapshot.isLoaded()) {
+                snapshot.scheduleWrite();
+            }
+        }
     }
     
     protected void loadGeoServer(final GeoServer geoServer, XStreamPersister xp) throws Exception {
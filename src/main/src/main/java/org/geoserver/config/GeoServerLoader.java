@@ -12,6 +12,9 @@ import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,7 +27,9 @@ import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.LayerGroupInfo;
 import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.catalog.ResourcePool;
+import org.geoserver.catalog.StoreInfo;
 import org.geoserver.catalog.StyleInfo;
 import org.geoserver.catalog.WMSLayerInfo;
 import org.geoserver.catalog.WMSStoreInfo;
@@ -32,6 +37,8 @@ import org.geoserver.catalog.WorkspaceInfo;
 import org.geoserver.catalog.Wrapper;
 import org.geoserver.catalog.event.CatalogListener;
 import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.catalog.impl.ModificationProxy;
+import org.geoserver.catalog.impl.ResolvingProxy;
 import org.geoserver.catalog.util.LegacyCatalogImporter;
 import org.geoserver.catalog.util.LegacyCatalogReader;
 import org.geoserver.catalog.util.LegacyFeatureTypeInfoReader;
@@ -62,6 +69,12 @@ import org.springframework.context.ApplicationContext;
 public abstract class GeoServerLoader {
 
     static Logger LOGGER = Logging.getLogger( "org.geoserver" );
+
+    /**
+     * Number of threads used to load the stores, resources and layers of the catalog, a value
+     * greater than one enables parallel loading
+     */
+    public static final String CATALOG_LOAD_THREADS = "GEOSERVER_CATALOG_LOAD_THREADS";
     
     protected GeoServerResourceLoader resourceLoader;
     GeoServer geoserver;
@@ -72,8 +85,27 @@ public abstract class GeoServerLoader {
     // this ugly hack can die
     static boolean legacy = false;
     
+    int catalogLoadThreads = 1;
+    
+    /**
+     * The binary catalog snapshot, null if not enabled
+     */
+    CatalogSnapshot snapshot;
+    
     public GeoServerLoader( GeoServerResourceLoader resourceLoader ) {
         this.resourceLoader = resourceLoader;
+        if (CatalogSnapshot.isEnabled()) {
+            snapshot = new CatalogSnapshot(resourceLoader, xpf);
+        }
+        String threads = GeoServerExtensions.getProperty(CATALOG_LOAD_THREADS);
+        if (threads != null) {
+            try {
+                catalogLoadThreads = Integer.parseInt(threads);
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + CATALOG_LOAD_THREADS + ": " + threads
+                        + ", loading the catalog on a single thread");
+            }
+        }
     }
     
     public void setApplicationContext(ApplicationContext applicationContext)
@@ -82,8 +114,18 @@ public abstract class GeoServerLoader {
     
     public void setXStreamPeristerFactory(XStreamPersisterFactory xpf) {
         this.xpf = xpf;
+        if (snapshot != null) {
+            snapshot.setXStreamPersisterFactory(xpf);
+        }
     }
     
+    /**
+     * Sets the number of threads used to load the catalog, one or less means serial loading
+     */
+    public void setCatalogLoadThreads(int catalogLoadThreads) {
+        this.catalogLoadThreads = catalogLoadThreads;
+    }
+
     public static void setLegacy(boolean legacy) {
         GeoServerLoader.legacy = legacy;
     }
@@ -219,8 +261,11 @@ public abstract class GeoServerLoader {
         // an old data directory
         Resource f = resourceLoader.get( "catalog.xml" );
         if ( !Resources.exists(f) ) {
-            //assume 2.x style data directory
-            CatalogImpl catalog2 = (CatalogImpl) readCatalog( xp );
+            //assume 2.x style data directory, use the snapshot if available and up to date
+            CatalogImpl catalog2 = snapshot != null ? readSnapshot() : null;
+            if (catalog2 == null) {
+                catalog2 = (CatalogImpl) readCatalog( xp );
+            }
             // make to remove the old resource pool catalog listener
             ((CatalogImpl)catalog).sync( catalog2 );
         } else {
@@ -236,6 +281,19 @@ public abstract class GeoServerLoader {
         }
     }
     
+    /**
+     * Reads the catalog from the binary snapshot, returns null if the snapshot cannot be used
+     */
+    CatalogImpl readSnapshot() {
+        CatalogImpl catalog = snapshot.read();
+        if (catalog != null) {
+            for (DataStoreInfo ds : catalog.getDataStores()) {
+                checkConnection(ModificationProxy.unwrap(ds));
+            }
+        }
+        return catalog;
+    }
+    
     /**
      * Reads the catalog from disk.
      */
@@ -332,180 +390,27 @@ public abstract class GeoServerLoader {
                 }
             }
             
-            for ( Resource wsd : Resources.list(workspaces, Resources.DirectoryFilter.INSTANCE )) {
-            
-                //load the stores for this workspace
-                for ( Resource sd : Resources.list(wsd, Resources.DirectoryFilter.INSTANCE) ) {
-                    Resource f = sd.get("datastore.xml");
-                    if ( Resources.exists(f)) {
-                        //load as a datastore
-                        DataStoreInfo ds = null;
-                        try {    
-                            ds = depersist( xp, f, DataStoreInfo.class );
-                            catalog.add( ds );
-                            
-                            LOGGER.info( "Loaded data store '" + ds.getName() +"'");
-                            
-                            if (ds.isEnabled()) {
-                                //connect to the datastore to determine if we should disable it
-                                try {
-                                    ds.getDataStore(null);
-                                }
-                                catch( Throwable t ) {
-                                    LOGGER.warning( "Error connecting to '" + ds.getName() + "'. Disabling." );
-                                    LOGGER.log( Level.INFO, "", t );
-                                    
-                                    ds.setError(t);
-                                    ds.setEnabled(false);
-                                }
-                            }
-                        }
-                        catch( Exception e ) {
-                            LOGGER.log( Level.WARNING, "Failed to load data store '" + sd.name() + "'", e);
-                            continue;
-                        }
-                        
-                        //load feature types
-                        for ( Resource ftd : Resources.list(sd, Resources.DirectoryFilter.INSTANCE) ) {
-                            f =  ftd.get("featuretype.xml" );
-                            if( Resources.exists(f) ) {
-                                FeatureTypeInfo ft = null;
-                                try {
-                                    ft = depersist(xp,f,FeatureTypeInfo.class);
-                                    catalog.add(ft);
-                                }
-                                catch( Exception e ) {
-                                    LOGGER.log( Level.WARNING, "Failed to load feature type '" + ftd.name() +"'", e);
-                                    continue;
-                                }
-                                
-                                LOGGER.info( "Loaded feature type '" + ds.getName() +"'");
-                                
-                                f = ftd.get("layer.xml" );
-                                if ( Resources.exists(f) ) {
-                                    try {
-                                        LayerInfo l = depersist(xp, f, LayerInfo.class );
-                                        catalog.add( l );
-                                        
-                                        LOGGER.info( "Loaded layer '" + l.getName() + "'" );
-                                    }
-                                    catch( Exception e ) {
-                                        LOGGER.log( Level.WARNING, "Failed to load layer for feature type '" + ft.getName() +"'", e);
-                                    }
-                                }
-                            }
-                            else {
-                                LOGGER.warning( "Ignoring feature type directory " + ftd.path() );
-                            }
-                        }
-                    } else {
-                        //look for a coverage store
-                        f = sd.get("coveragestore.xml" );
-                        if ( Resources.exists(f) ) {
-                            CoverageStoreInfo cs = null;
-                            try {
-                                cs = depersist( xp, f, CoverageStoreInfo.class );
-                                catalog.add( cs );
-                            
-                                LOGGER.info( "Loaded coverage store '" + cs.getName() +"'");
-                            }
-                            catch( Exception e ) {
-                                LOGGER.log( Level.WARNING, "Failed to load coverage store '" + sd.name() +"'", e);
-                                continue;
-                            }
-                            
-                            //load coverages
-                            for ( Resource cd : Resources.list(sd, Resources.DirectoryFilter.INSTANCE) ) {
-                                f = cd.get("coverage.xml" );
-                                if( Resources.exists(f) ) {
-                                    CoverageInfo c = null;
-                                    try {
-                                        c = depersist(xp,f,CoverageInfo.class);
-                                        catalog.add( c );
-                                        
-                                        LOGGER.info( "Loaded coverage '" + cs.getName() +"'");
-                                    }
-                                    catch( Exception e ) {
-                                        LOGGER.log( Level.WARNING, "Failed to load coverage '" + cd.name() +"'", e);
-                                        continue;
-                                    }
-                                    
-                                    f = cd.get("layer.xml" );
-                                    if ( Resources.exists(f) ) {
-                                        try {
-                                            LayerInfo l = depersist(xp, f, LayerInfo.class );
-                                            catalog.add( l );
-                                            
-                                            LOGGER.info( "Loaded layer '" + l.getName() + "'" );
-                                        }
-                                        catch( Exception e ) {
-                                            LOGGER.log( Level.WARNING, "Failed to load layer coverage '" + c.getName() +"'", e);
-                                        }
-                                    }
-                                }
-                                else {
-                                    LOGGER.warning( "Ignoring coverage directory " + cd.path() );
-                                }
-                            }
-                        } else {
-                            f = sd.get("wmsstore.xml");
-                            if(Resources.exists(f)) {
-                                WMSStoreInfo wms = null;
-                                try {
-                                    wms = depersist( xp, f, WMSStoreInfo.class );
-                                    catalog.add( wms );
-                                
-                                    LOGGER.info( "Loaded wmsstore '" + wms.getName() +"'");
-                                } catch( Exception e ) {
-                                    LOGGER.log( Level.WARNING, "Failed to load wms store '" + sd.name() +"'", e);
-                                    continue;
-                                }
-                                
-                                //load wms layers
-                                for ( Resource cd : Resources.list(sd,Resources.DirectoryFilter.INSTANCE) ) {
-                                    f =  cd.get("wmslayer.xml" );
-                                    if( Resources.exists(f) ) {
-                                        WMSLayerInfo wl = null;
-                                        try {
-                                            wl = depersist(xp,f,WMSLayerInfo.class);
-                                            catalog.add( wl );
-                                            
-                                            LOGGER.info( "Loaded wms layer'" + wl.getName() +"'");
-                                        }
-                                        catch( Exception e ) {
-                                            LOGGER.log( Level.WARNING, "Failed to load wms layer '" + cd.name() +"'", e);
-                                            continue;
-                                        }
-                                        
-                                        f =  cd.get("layer.xml" );
-                                        if ( Resources.exists(f) ) {
-                                            try {
-                                                LayerInfo l = depersist(xp, f, LayerInfo.class );
-                                                catalog.add( l );
-                                                
-                                                LOGGER.info( "Loaded layer '" + l.getName() + "'" );
-                                            }
-                                            catch( Exception e ) {
-                                                LOGGER.log( Level.WARNING, "Failed to load cascaded wms layer '" + wl.getName() +"'", e);
-                                            }
-                                        }
-                                    }
-                                    else {
-                                        LOGGER.warning( "Ignoring coverage directory " + cd.path() );
-                                    }
-                                }
-                            } else if(!isConfigDirectory(sd)) {
-                                LOGGER.warning( "Ignoring store directory '" + sd.name() +  "'");
-                                continue;
-                            }
+            List<Resource> workspaceDirs = Resources.list(workspaces,
+                    Resources.DirectoryFilter.INSTANCE);
+            if (catalogLoadThreads > 1) {
+                loadStoresInParallel(workspaceDirs, catalog, xp);
+            } else {
+                for (Resource wsd : workspaceDirs) {
+                    //load the stores for this workspace
+                    for ( Resource sd : Resources.list(wsd, Resources.DirectoryFilter.INSTANCE) ) {
+                        StoreContents contents = readStore(sd, xp);
+                        StoreInfo store = addStore(catalog, contents);
+                        if (store instanceof DataStoreInfo) {
+                            checkConnection((DataStoreInfo) store);
                         }
+                        addResources(catalog, contents, store);
                     }
-                }
 
-                //load hte layer groups for this workspace
-                Resource layergroups = wsd.get("layergroups");
-                if (layergroups != null) {
-                    loadLayerGroups(layergroups, catalog, xp);
+                    //load hte layer groups for this workspace
+                    Resource layergroups = wsd.get("layergroups");
+                    if (layergroups != null) {
+                        loadLayerGroups(layergroups, catalog, xp);
+                    }
                 }
             }
         }
@@ -525,6 +430,315 @@ public abstract class GeoServerLoader {
         return catalog;
     }
     
+    /**
+     * Loads the stores, resources and layers of the workspaces using a fork/join pool. The
+     * configuration files are parsed in parallel, each worker using its own
+     * {@link XStreamPersister}, then, once all the parsing is done, the objects are added to the
+     * catalog from the calling thread, in the same order as the serial load. The catalog is only
+     * read while the workers run, references to the stores and resources not added yet are
+     * resolved right before each add, and the remaining cross references at the end as usual.
+     */
+    void loadStoresInParallel(List<Resource> workspaceDirs, final Catalog catalog,
+            XStreamPersister xp) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(catalogLoadThreads);
+        try {
+            final ThreadLocal<XStreamPersister> persisters = new ThreadLocal<XStreamPersister>() {
+                @Override
+                protected XStreamPersister initialValue() {
+                    XStreamPersister persister = xpf.createXMLPersister();
+                    persister.setCatalog(catalog);
+                    persister.setUnwrapNulls(false);
+                    return persister;
+                }
+            };
+
+            // fan out parsing per workspace and store
+            List<ForkJoinTask<List<StoreContents>>> workspaceTasks = new ArrayList<ForkJoinTask<List<StoreContents>>>();
+            for (final Resource wsd : workspaceDirs) {
+                workspaceTasks.add(pool.submit(new RecursiveTask<List<StoreContents>>() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected List<StoreContents> compute() {
+                        List<RecursiveTask<StoreContents>> storeTasks = new ArrayList<RecursiveTask<StoreContents>>();
+                        for (final Resource sd : Resources.list(wsd,
+                                Resources.DirectoryFilter.INSTANCE)) {
+                            storeTasks.add(new RecursiveTask<StoreContents>() {
+                                private static final long serialVersionUID = 1L;
+
+                                @Override
+                                protected StoreContents compute() {
+                                    return readStore(sd, persisters.get());
+                                }
+                            });
+                        }
+                        invokeAll(storeTasks);
+
+                        List<StoreContents> result = new ArrayList<StoreContents>();
+                        for (RecursiveTask<StoreContents> task : storeTasks) {
+                            result.add(task.join());
+                        }
+                        return result;
+                    }
+                }));
+            }
+
+            // the workers resolve references looking up the catalog, which is not thread safe,
+            // wait for all of them to be done before adding anything, from this thread only
+            List<List<StoreContents>> parsed = new ArrayList<List<StoreContents>>();
+            for (ForkJoinTask<List<StoreContents>> task : workspaceTasks) {
+                parsed.add(task.join());
+            }
+            for (int i = 0; i < workspaceDirs.size(); i++) {
+                for (StoreContents contents : parsed.get(i)) {
+                    StoreInfo store = addStore(catalog, contents);
+                    if (store instanceof DataStoreInfo) {
+                        checkConnection((DataStoreInfo) store);
+                    }
+                    addResources(catalog, contents, store);
+                }
+
+                //load hte layer groups for this workspace
+                Resource layergroups = workspaceDirs.get(i).get("layergroups");
+                if (layergroups != null) {
+                    loadLayerGroups(layergroups, catalog, xp);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The kinds of store found in a workspace directory, along with the files describing them
+     */
+    static enum StoreType {
+        DATA("datastore.xml", DataStoreInfo.class, "data store", "featuretype.xml",
+                FeatureTypeInfo.class, "feature type"),
+        COVERAGE("coveragestore.xml", CoverageStoreInfo.class, "coverage store", "coverage.xml",
+                CoverageInfo.class, "coverage"),
+        WMS("wmsstore.xml", WMSStoreInfo.class, "wms store", "wmslayer.xml",
+                WMSLayerInfo.class, "wms layer");
+
+        String storeFile;
+
+        Class<? extends StoreInfo> storeClass;
+
+        String storeLabel;
+
+        String resourceFile;
+
+        Class<? extends ResourceInfo> resourceClass;
+
+        String resourceLabel;
+
+        private StoreType(String storeFile, Class<? extends StoreInfo> storeClass,
+                String storeLabel, String resourceFile,
+                Class<? extends ResourceInfo> resourceClass, String resourceLabel) {
+            this.storeFile = storeFile;
+            this.storeClass = storeClass;
+            this.storeLabel = storeLabel;
+            this.resourceFile = resourceFile;
+            this.resourceClass = resourceClass;
+            this.resourceLabel = resourceLabel;
+        }
+    }
+
+    /**
+     * The parsed contents of a store directory, along with the errors found parsing them
+     */
+    static class StoreContents {
+        Resource directory;
+
+        StoreType type;
+
+        StoreInfo store;
+
+        Exception error;
+
+        List<ResourceContents> resources = new ArrayList<ResourceContents>();
+
+        StoreContents(Resource directory) {
+            this.directory = directory;
+        }
+    }
+
+    /**
+     * The parsed contents of a resource directory, along with the errors found parsing them
+     */
+    static class ResourceContents {
+        Resource directory;
+
+        ResourceInfo resource;
+
+        Exception error;
+
+        LayerInfo layer;
+
+        Exception layerError;
+
+        ResourceContents(Resource directory) {
+            this.directory = directory;
+        }
+    }
+
+    /**
+     * Parses the store, resources and layers found in a store directory, without modifying the
+     * catalog
+     */
+    StoreContents readStore(Resource sd, XStreamPersister xp) {
+        StoreContents contents = new StoreContents(sd);
+        Resource f = null;
+        for (StoreType type : StoreType.values()) {
+            f = sd.get(type.storeFile);
+            if (Resources.exists(f)) {
+                contents.type = type;
+                break;
+            }
+        }
+        if (contents.type == null) {
+            return contents;
+        }
+
+        try {
+            contents.store = depersist(xp, f, contents.type.storeClass);
+        } catch (Exception e) {
+            contents.error = e;
+            return contents;
+        }
+
+        for (Resource rd : Resources.list(sd, Resources.DirectoryFilter.INSTANCE)) {
+            ResourceContents rc = new ResourceContents(rd);
+            contents.resources.add(rc);
+            f = rd.get(contents.type.resourceFile);
+            if (!Resources.exists(f)) {
+                continue;
+            }
+            try {
+                rc.resource = depersist(xp, f, contents.type.resourceClass);
+            } catch (Exception e) {
+                rc.error = e;
+                continue;
+            }
+
+            f = rd.get("layer.xml");
+            if (Resources.exists(f)) {
+                try {
+                    rc.layer = depersist(xp, f, LayerInfo.class);
+                } catch (Exception e) {
+                    rc.layerError = e;
+                }
+            }
+        }
+
+        return contents;
+    }
+
+    /**
+     * Adds the store parsed by {@link #readStore(Resource, XStreamPersister)} to the catalog,
+     * returning it, or null if it could not be loaded
+     */
+    StoreInfo addStore(Catalog catalog, StoreContents contents) {
+        Resource sd = contents.directory;
+        if (contents.type == null) {
+            if (!isConfigDirectory(sd)) {
+                LOGGER.warning( "Ignoring store directory '" + sd.name() +  "'");
+            }
+            return null;
+        }
+
+        StoreInfo store = contents.store;
+        try {
+            if (contents.error != null) {
+                throw contents.error;
+            }
+            catalog.add(store);
+            LOGGER.info( "Loaded " + contents.type.storeLabel + " '" + store.getName() +"'");
+            return store;
+        } catch (Exception e) {
+            LOGGER.log( Level.WARNING, "Failed to load " + contents.type.storeLabel + " '"
+                    + sd.name() + "'", e);
+            return null;
+        }
+    }
+
+    /**
+     * Adds the resources and layers parsed by {@link #readStore(Resource, XStreamPersister)} to
+     * the catalog, provided their store was successfully added
+     */
+    void addResources(Catalog catalog, StoreContents contents, StoreInfo store) {
+        if (store == null) {
+            return;
+        }
+
+        String label = contents.type.resourceLabel;
+        for (ResourceContents rc : contents.resources) {
+            if (rc.resource == null && rc.error == null) {
+                LOGGER.warning( "Ignoring " + label + " directory " + rc.directory.path() );
+                continue;
+            }
+
+            ResourceInfo resource = rc.resource;
+            try {
+                if (rc.error != null) {
+                    throw rc.error;
+                }
+                // the store was not in the catalog yet when the resource got parsed
+                StoreInfo resolved = ResolvingProxy.resolve(catalog, resource.getStore());
+                if (resolved != null) {
+                    resource.setStore(resolved);
+                }
+                catalog.add(resource);
+            } catch (Exception e) {
+                LOGGER.log( Level.WARNING, "Failed to load " + label + " '" + rc.directory.name()
+                        + "'", e);
+                continue;
+            }
+            LOGGER.info( "Loaded " + label + " '" + resource.getName() +"'");
+
+            if (rc.layer != null || rc.layerError != null) {
+                try {
+                    if (rc.layerError != null) {
+                        throw rc.layerError;
+                    }
+                    ResourceInfo layerResource = ResolvingProxy.resolve(catalog,
+                            rc.layer.getResource());
+                    if (layerResource != null) {
+                        rc.layer.setResource(layerResource);
+                    }
+                    catalog.add(rc.layer);
+
+                    LOGGER.info( "Loaded layer '" + rc.layer.getName() + "'" );
+                } catch (Exception e) {
+                    LOGGER.log( Level.WARNING, "Failed to load layer for " + label + " '"
+                            + resource.getName() +"'", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Connects to an enabled data store, disabling it if the connection fails
+     */
+    void checkConnection(DataStoreInfo ds) {
+        if (ds.isEnabled()) {
+            //connect to the datastore to determine if we should disable it
+            try {
+                ds.getDataStore(null);
+            }
+            catch( Throwable t ) {
+                LOGGER.warning( "Error connecting to '" + ds.getName() + "'. Disabling." );
+                LOGGER.log( Level.INFO, "", t );
+
+                ds.setError(t);
+                ds.setEnabled(false);
+                if (snapshot != null) {
+                    snapshot.connectionFailed(ds);
+                }
+            }
+        }
+    }
+
     /**
      * Some config directories in GeoServer are used to store workspace specific configurations, 
      * identify them so that we don't log complaints about their existence
@@ -770,6 +984,9 @@ public abstract class GeoServerLoader {
     
     public void destroy() throws Exception {
         //dispose
+        if (snapshot != null) {
+            snapshot.dispose();
+        }
         geoserver.dispose();
     }
 }
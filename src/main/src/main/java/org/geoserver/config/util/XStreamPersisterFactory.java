@@ -14,6 +14,7 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 
 import com.thoughtworks.xstream.io.HierarchicalStreamDriver;
+import com.thoughtworks.xstream.io.binary.BinaryStreamDriver;
 import com.thoughtworks.xstream.io.json.JettisonMappedXmlDriver;
 
 /**
@@ -56,6 +57,15 @@ public class XStreamPersisterFactory implements ApplicationContextAware {
         return buildPersister(new JettisonMappedXmlDriver());
     }
 
+    /**
+     * Creates an instance configured to persist in the XStream compact binary format. The binary
+     * format cannot be written to character streams, use {@link XStreamPersister#getXStream()}
+     * along with a {@link BinaryStreamDriver} to read and write byte streams.
+     */
+    public XStreamPersister createBinaryPersister() {
+        return buildPersister(new BinaryStreamDriver());
+    }
+
     /**
      * Builds a persister and runs the initializers against it
      */
@@ -0,0 +1,88 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.ServiceException;
+
+/**
+ * Writes out the encoded response of another, identical request, see
+ * {@link RequestCoalescingCallback}
+ */
+public class CoalescedResponse extends Response {
+
+    /**
+     * The encoded response of a request, along with the information needed to set up the HTTP
+     * response headers
+     */
+    public static class Result {
+        byte[] bytes;
+
+        String mimeType;
+
+        String charset;
+
+        String[][] headers;
+
+        String disposition;
+
+        String fileName;
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+    }
+
+    public CoalescedResponse() {
+        super(Result.class);
+    }
+
+    @Override
+    public String getMimeType(Object value, Operation operation) throws ServiceException {
+        return ((Result) value).mimeType;
+    }
+
+    @Override
+    public String[][] getHeaders(Object value, Operation operation) throws ServiceException {
+        return ((Result) value).headers;
+    }
+
+    @Override
+    public String getPreferredDisposition(Object value, Operation operation) {
+        return ((Result) value).disposition;
+    }
+
+    @Override
+    public String getAttachmentFileName(Object value, Operation operation) {
+        return ((Result) value).fileName;
+    }
+
+    @Override
+    public String getCharset(Operation operation) {
+        // the charset does not depend on the value, grab it from the request being waited for
+        Object service = operation.getService().getService();
+        if (service instanceof RequestCoalescingCallback.Follower) {
+            Result result = ((RequestCoalescingCallback.Follower) service).getResult();
+            if (result != null) {
+                return result.charset;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void write(Object value, OutputStream output, Operation operation) throws IOException,
+            ServiceException {
+        output.write(((Result) value).bytes);
+    }
+
+}
@@ -0,0 +1,473 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.geoserver.ows.URLMangler.URLType;
+import org.geoserver.ows.util.ResponseUtils;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.Service;
+import org.geoserver.platform.ServiceException;
+import org.geotools.util.logging.Logging;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Coalesces identical requests running at the same time: the first one is executed, the others
+ * wait for it to complete and send back a copy of its encoded response.
+ * <p>
+ * Only GET requests for the configured operations are coalesced. Two requests are identical if
+ * they have the same path and parameters, regardless of the parameter order and name case, come
+ * through the same base URL and proxy headers (the responses can contain absolute URLs), and are
+ * made by the same user with the same roles (anonymous requests are all equivalent).
+ * </p>
+ * <p>
+ * Responses larger than the max buffer size are not recorded, in that case, or if the first
+ * request fails, or does not complete within the max wait time, the waiting requests are executed
+ * independently.
+ * </p>
+ * <p>
+ * The callback is disabled by default, it can be configured with the following properties:
+ * <ul>
+ * <li>REQUEST_COALESCING: true to enable it</li>
+ * <li>REQUEST_COALESCING_OPERATIONS: comma separated list of service.operation pairs to coalesce,
+ * defaults to {@value #DEFAULT_OPERATIONS}</li>
+ * <li>REQUEST_COALESCING_MAX_BUFFER: max size of a shared response, in bytes</li>
+ * <li>REQUEST_COALESCING_MAX_WAIT: max time waiting for an identical request, in seconds</li>
+ * </ul>
+ * </p>
+ */
+public class RequestCoalescingCallback extends AbstractDispatcherCallback {
+
+    static final Logger LOGGER = Logging.getLogger(RequestCoalescingCallback.class);
+
+    /**
+     * Default operations being coalesced
+     */
+    public static final String DEFAULT_OPERATIONS = "WMS.GetMap,WFS.GetFeature";
+
+    /**
+     * Default max size of a shared response, 4MB
+     */
+    public static final long DEFAULT_MAX_BUFFER = 4 * 1024 * 1024;
+
+    /**
+     * Default max time waiting for an identical request, in seconds
+     */
+    public static final long DEFAULT_MAX_WAIT = 60;
+
+    /**
+     * The request being executed on behalf of others in the current thread
+     */
+    static final ThreadLocal<Flight> LEADER = new ThreadLocal<Flight>();
+
+    /**
+     * The headers proxies use to tell about the original request, they can affect the URLs
+     * generated in the response
+     */
+    static final List<String> PROXY_HEADERS = Arrays.asList("Host", "Forwarded",
+            "X-Forwarded-Host", "X-Forwarded-Proto", "X-Forwarded-Port", "X-Forwarded-Path");
+
+    boolean enabled;
+
+    Set<String> operations;
+
+    long maxBuffer = DEFAULT_MAX_BUFFER;
+
+    long maxWait = DEFAULT_MAX_WAIT;
+
+    final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+
+    final AtomicLong coalescedRequests = new AtomicLong();
+
+    public RequestCoalescingCallback() {
+        enabled = Boolean.valueOf(GeoServerExtensions.getProperty("REQUEST_COALESCING"));
+        String ops = GeoServerExtensions.getProperty("REQUEST_COALESCING_OPERATIONS");
+        setOperations(ops != null ? ops : DEFAULT_OPERATIONS);
+        String buffer = GeoServerExtensions.getProperty("REQUEST_COALESCING_MAX_BUFFER");
+        if (buffer != null) {
+            maxBuffer = Long.parseLong(buffer);
+        }
+        String wait = GeoServerExtensions.getProperty("REQUEST_COALESCING_MAX_WAIT");
+        if (wait != null) {
+            maxWait = Long.parseLong(wait);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Sets the operations to be coalesced, as a comma separated list of service.operation pairs,
+     * e.g. "WMS.GetMap,WFS.GetFeature"
+     */
+    public void setOperations(String operations) {
+        Set<String> result = new HashSet<String>();
+        for (String op : operations.split("\\s*,\\s*")) {
+            if (!op.trim().isEmpty()) {
+                result.add(op.trim().toUpperCase());
+            }
+        }
+        this.operations = result;
+    }
+
+    public long getMaxBuffer() {
+        return maxBuffer;
+    }
+
+    /**
+     * Sets the max size, in bytes, of a response shared among identical requests
+     */
+    public void setMaxBuffer(long maxBuffer) {
+        this.maxBuffer = maxBuffer;
+    }
+
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Sets the max time, in seconds, a request waits for an identical one to complete
+     */
+    public void setMaxWait(long maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Returns the number of requests that got the response of another, identical one
+     */
+    public long getCoalescedRequests() {
+        return coalescedRequests.get();
+    }
+
+    @Override
+    public Operation operationDispatched(Request request, Operation operation) {
+        // nested requests are not coalesced
+        if (!enabled || LEADER.get() != null || !isCoalescable(request, operation)) {
+            return operation;
+        }
+
+        String key = getKey(request);
+        Flight flight = new Flight(key, request);
+        Flight running = flights.putIfAbsent(key, flight);
+        if (running == null) {
+            LEADER.set(flight);
+            return operation;
+        }
+
+        // an identical request is in progress, wait for it during the execution
+        Service service = operation.getService();
+        Service follower = new Service(service.getId(), service.getNamespace(), new Follower(
+                running, operation), service.getVersion(), service.getOperations());
+        return new Operation(operation.getId(), follower, operation.getMethod(),
+                operation.getParameters());
+    }
+
+    @Override
+    public Response responseDispatched(Request request, Operation operation, Object result,
+            Response response) {
+        Flight flight = LEADER.get();
+        if (flight != null && flight.request == request) {
+            return new RecordingResponse(response, flight);
+        }
+        return response;
+    }
+
+    @Override
+    public void finished(Request request) {
+        Flight flight = LEADER.get();
+        if (flight != null && flight.request == request) {
+            LEADER.remove();
+            // requests arriving from now on won't find this one
+            flights.remove(flight.key);
+            flight.complete();
+        }
+    }
+
+    boolean isCoalescable(Request request, Operation operation) {
+        if (!request.isGet() || request.isSOAP() || request.getRawKvp() == null) {
+            return false;
+        }
+        String id = operation.getService().getId() + "." + operation.getId();
+        return operations.contains(id.toUpperCase());
+    }
+
+    /**
+     * Builds the key identifying the request among the ones running at the same time, based on
+     * the path, the raw parameters and the current user
+     */
+    String getKey(Request request) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(request.getContext()).append('|');
+        sb.append(request.getPath()).append('|');
+
+        // the raw parameters, in a case insensitive, predictable order
+        Map<String, Object> sorted = new TreeMap<String, Object>();
+        for (Object o : request.getRawKvp().entrySet()) {
+            Map.Entry entry = (Map.Entry) o;
+            if (entry.getKey() != null) {
+                Object value = entry.getValue();
+                if (value instanceof Object[]) {
+                    value = Arrays.toString((Object[]) value);
+                }
+                sorted.put(entry.getKey().toString().toUpperCase(), value);
+            }
+        }
+        sb.append(sorted).append('|');
+
+        // the absolute URLs in the response depend on the scheme, host and port the request came
+        // through, and on the proxy in front of GeoServer, if any
+        HttpServletRequest httpRequest = request.getHttpRequest();
+        if (httpRequest != null) {
+            String baseURL = ResponseUtils.baseURL(httpRequest);
+            sb.append(baseURL).append('|');
+            sb.append(ResponseUtils.buildURL(baseURL, null, null, URLType.SERVICE)).append('|');
+            for (String header : PROXY_HEADERS) {
+                String value = httpRequest.getHeader(header);
+                if (value != null) {
+                    sb.append(header).append('=').append(value).append('|');
+                }
+            }
+        }
+
+        // the current user, its name can be used in styles and filters via env variables
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null && !(auth instanceof AnonymousAuthenticationToken)) {
+            sb.append(auth.getName()).append('|');
+            if (auth.getAuthorities() != null) {
+                List<String> roles = new ArrayList<String>();
+                for (GrantedAuthority authority : auth.getAuthorities()) {
+                    roles.add(authority.getAuthority());
+                }
+                Collections.sort(roles);
+                sb.append(roles);
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * A request being executed, along with its encoded response once complete
+     */
+    static class Flight {
+        final String key;
+
+        final Request request;
+
+        final CountDownLatch done = new CountDownLatch(1);
+
+        volatile CoalescedResponse.Result recorded;
+
+        volatile CoalescedResponse.Result result;
+
+        Flight(String key, Request request) {
+            this.key = key;
+            this.request = request;
+        }
+
+        /**
+         * Marks the request as complete, publishing its response if fully recorded
+         */
+        void complete() {
+            result = recorded;
+            done.countDown();
+        }
+
+        /**
+         * Waits for the request to complete, returns its response, or null if not available
+         */
+        CoalescedResponse.Result await(long timeout) throws InterruptedException {
+            if (done.await(timeout, TimeUnit.SECONDS)) {
+                return result;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Service object executing a request on behalf of the one waiting for an identical request
+     * to complete, or falling back on the original service
+     */
+    class Follower implements DirectInvocationService {
+
+        final Flight flight;
+
+        final Operation operation;
+
+        volatile CoalescedResponse.Result result;
+
+        Follower(Flight flight, Operation operation) {
+            this.flight = flight;
+            this.operation = operation;
+        }
+
+        public CoalescedResponse.Result getResult() {
+            return result;
+        }
+
+        @Override
+        public Object invokeDirect(String operationName, Object[] parameters) throws Exception {
+            result = flight.await(maxWait);
+            if (result != null) {
+                coalescedRequests.incrementAndGet();
+                return result;
+            }
+
+            // execute independently
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Identical request response not available, executing " + flight.key);
+            }
+            Object service = operation.getService().getService();
+            if (service instanceof DirectInvocationService) {
+                return ((DirectInvocationService) service).invokeDirect(operationName, parameters);
+            } else {
+                return operation.getMethod().invoke(service, parameters);
+            }
+        }
+    }
+
+    /**
+     * Response recording the encoded output and headers of the wrapped one
+     */
+    class RecordingResponse extends Response {
+
+        final Response delegate;
+
+        final Flight flight;
+
+        final CoalescedResponse.Result result = new CoalescedResponse.Result();
+
+        RecordingResponse(Response delegate, Flight flight) {
+            super(delegate.getBinding(), delegate.getOutputFormats());
+            this.delegate = delegate;
+            this.flight = flight;
+        }
+
+        @Override
+        public boolean canHandle(Operation operation) {
+            return delegate.canHandle(operation);
+        }
+
+        @Override
+        public String getMimeType(Object value, Operation operation) throws ServiceException {
+            result.mimeType = delegate.getMimeType(value, operation);
+            return result.mimeType;
+        }
+
+        @Override
+        public String[][] getHeaders(Object value, Operation operation) throws ServiceException {
+            result.headers = delegate.getHeaders(value, operation);
+            return result.headers;
+        }
+
+        @Override
+        public String getPreferredDisposition(Object value, Operation operation) {
+            result.disposition = delegate.getPreferredDisposition(value, operation);
+            return result.disposition;
+        }
+
+        @Override
+        public String getAttachmentFileName(Object value, Operation operation) {
+            result.fileName = delegate.getAttachmentFileName(value, operation);
+            return result.fileName;
+        }
+
+        @Override
+        public String getCharset(Operation operation) {
+            result.charset = delegate.getCharset(operation);
+            return result.charset;
+        }
+
+        @Override
+        public void write(Object value, OutputStream output, Operation operation)
+                throws IOException, ServiceException {
+            RecordingOutputStream recorder = new RecordingOutputStream(output, maxBuffer);
+            delegate.write(value, recorder, operation);
+            if (recorder.isComplete()) {
+                result.bytes = recorder.getBytes();
+                flight.recorded = result;
+            }
+        }
+    }
+
+    /**
+     * Copies the bytes written to the wrapped stream in memory, until the max size is reached
+     */
+    static class RecordingOutputStream extends FilterOutputStream {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        long maxSize;
+
+        boolean overflow;
+
+        RecordingOutputStream(OutputStream out, long maxSize) {
+            super(out);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            record(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            record(b, off, len);
+        }
+
+        void record(byte[] b, int off, int len) {
+            if (overflow) {
+                return;
+            }
+            if (bytes.size() + len > maxSize) {
+                // give up, and release the memory
+                overflow = true;
+                bytes = null;
+            } else {
+                bytes.write(b, off, len);
+            }
+        }
+
+        boolean isComplete() {
+            return !overflow;
+        }
+
+        byte[] getBytes() {
+            return bytes.toByteArray();
+        }
+    }
+}
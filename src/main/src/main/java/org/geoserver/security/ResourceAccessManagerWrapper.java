@@ -206,6 +206,10 @@ public abstract class ResourceAccessManagerWrapper implements ResourceAccessMana
         this.delegate = delegate;
     }
 
+    public ResourceAccessManager getDelegate() {
+        return delegate;
+    }
+
     public DataAccessLimits getAccessLimits(Authentication user, ResourceInfo resource) {
         return delegate.getAccessLimits(user, resource);
     }
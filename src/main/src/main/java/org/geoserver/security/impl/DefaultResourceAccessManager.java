@@ -8,29 +8,44 @@ package org.geoserver.security.impl;
 import static org.geoserver.security.impl.DataAccessRule.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.CatalogInfo;
 import org.geoserver.catalog.CoverageInfo;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.LayerGroupInfo;
 import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
 import org.geoserver.catalog.Predicates;
 import org.geoserver.catalog.PublishedInfo;
 import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
 import org.geoserver.catalog.StyleInfo;
 import org.geoserver.catalog.WMSLayerInfo;
 import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.security.AccessMode;
 import org.geoserver.security.AdminRequest;
 import org.geoserver.security.CatalogMode;
 import org.geoserver.security.CoverageAccessLimits;
 import org.geoserver.security.DataAccessLimits;
 import org.geoserver.security.DataAccessManager;
+import org.geoserver.security.GeoServerSecurityFilterChainProxy;
 import org.geoserver.security.InMemorySecurityFilter;
 import org.geoserver.security.LayerGroupAccessLimits;
 import org.geoserver.security.ResourceAccessManager;
@@ -41,6 +56,11 @@ import org.geoserver.security.WorkspaceAccessLimits;
 import org.geotools.util.logging.Logging;
 import org.opengis.filter.Filter;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 
 /**
  * Default implementation of {@link DataAccessManager}, loads simple access
@@ -68,12 +88,92 @@ import org.springframework.security.core.Authentication;
  * If no {@link Properties} is provided, one will be looked upon in
  * <code>GEOSERVER_DATA_DIR/security/layers.properties, and the class will
  * keep up to date vs changes in the file</code>
+ * <p>
+ * The access decisions for workspaces and resources are cached, keyed by the roles of the user,
+ * the id of the catalog object and the access mode. The cache is cleared when the rules are
+ * reloaded or the catalog changes, its maximum size can be set with the
+ * {@link #ACCESS_CACHE_SIZE} variable, zero disables it.
  * 
  * @author Andrea Aime - TOPP
  */
 public class DefaultResourceAccessManager implements ResourceAccessManager, DataAccessManager {
     static final Logger LOGGER = Logging.getLogger(DefaultResourceAccessManager.class);
 
+    /**
+     * Maximum number of access decisions kept in the cache
+     */
+    public static final String ACCESS_CACHE_SIZE = "GEOSERVER_ACCESS_CACHE_SIZE";
+
+    static final int DEFAULT_ACCESS_CACHE_SIZE = 100000;
+
+    /**
+     * Key of a cached access decision. The generation makes sure decisions computed against old
+     * rules or catalog contents, and stored while the cache was being cleared, are never used
+     */
+    static final class AccessKey {
+        final Set<String> roles;
+
+        final String id;
+
+        final AccessMode mode;
+
+        final long generation;
+
+        final int hashCode;
+
+        AccessKey(Set<String> roles, String id, AccessMode mode, long generation) {
+            this.roles = roles;
+            this.id = id;
+            this.mode = mode;
+            this.generation = generation;
+            int hash = roles.hashCode();
+            hash = 31 * hash + id.hashCode();
+            hash = 31 * hash + mode.hashCode();
+            this.hashCode = 31 * hash + (int) (generation ^ (generation >>> 32));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof AccessKey)) {
+                return false;
+            }
+            AccessKey other = (AccessKey) obj;
+            return generation == other.generation && mode == other.mode && id.equals(other.id)
+                    && roles.equals(other.roles);
+        }
+    }
+
+    /**
+     * Clears the cached decisions when the catalog objects they refer to change
+     */
+    class CacheInvalidator implements CatalogListener {
+
+        public void handleAddEvent(CatalogAddEvent event) {
+            // new objects have no cached decisions yet
+        }
+
+        public void handleRemoveEvent(CatalogRemoveEvent event) {
+            invalidateCache();
+        }
+
+        public void handleModifyEvent(CatalogModifyEvent event) {
+            // wait for the post modify one
+        }
+
+        public void handlePostModifyEvent(CatalogPostModifyEvent event) {
+            invalidateCache();
+        }
+
+        public void reloaded() {
+            invalidateCache();
+        }
+    }
+
     SecureTreeNode root;
 
 //    Catalog catalog;
@@ -82,9 +182,39 @@ public class DefaultResourceAccessManager implements ResourceAccessManager, Data
 
     long lastLoaded = Long.MIN_VALUE;
 
+    Cache<AccessKey, Boolean> decisions;
+
+    /**
+     * Canonical role sets, so that the many cache keys share them
+     */
+    Map<Set<String>, Set<String>> roleSets = new ConcurrentHashMap<Set<String>, Set<String>>();
+
+    /**
+     * Bumped on every invalidation, concurrent invalidations must all be accounted for
+     */
+    final AtomicLong generation = new AtomicLong();
+
+    CacheInvalidator cacheInvalidator = new CacheInvalidator();
+
     public DefaultResourceAccessManager(DataAccessRuleDAO dao) {
         this.dao = dao;
         this.root = buildAuthorizationTree(dao);
+
+        int cacheSize = DEFAULT_ACCESS_CACHE_SIZE;
+        String size = GeoServerExtensions.getProperty(ACCESS_CACHE_SIZE);
+        if (size != null) {
+            try {
+                cacheSize = Integer.parseInt(size);
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + ACCESS_CACHE_SIZE + ": " + size
+                        + ", using the default cache size");
+            }
+        }
+        this.decisions = CacheBuilder.newBuilder().maximumSize(cacheSize).recordStats().build();
+        Catalog catalog = dao.rawCatalog;
+        if (catalog != null) {
+            catalog.addListener(cacheInvalidator);
+        }
     }
 
     public CatalogMode getMode() {
@@ -93,6 +223,19 @@ public class DefaultResourceAccessManager implements ResourceAccessManager, Data
 
     public boolean canAccess(Authentication user, WorkspaceInfo workspace, AccessMode mode) {
         checkPropertyFile();
+        AccessKey key = getCacheKey(user, workspace, mode);
+        if (key == null) {
+            return checkAccess(user, workspace, mode);
+        }
+        Boolean result = decisions.getIfPresent(key);
+        if (result == null) {
+            result = checkAccess(user, workspace, mode);
+            decisions.put(key, result);
+        }
+        return result;
+    }
+
+    boolean checkAccess(Authentication user, WorkspaceInfo workspace, AccessMode mode) {
         SecureTreeNode node = root.getDeepestNode(new String[] { workspace.getName() });
         if(node.canAccess(user, mode)) {
             return true;
@@ -147,6 +290,19 @@ public class DefaultResourceAccessManager implements ResourceAccessManager, Data
 
     public boolean canAccess(Authentication user, ResourceInfo resource, AccessMode mode) {
         checkPropertyFile();
+        AccessKey key = getCacheKey(user, resource, mode);
+        if (key == null) {
+            return checkAccess(user, resource, mode);
+        }
+        Boolean result = decisions.getIfPresent(key);
+        if (result == null) {
+            result = checkAccess(user, resource, mode);
+            decisions.put(key, result);
+        }
+        return result;
+    }
+
+    boolean checkAccess(Authentication user, ResourceInfo resource, AccessMode mode) {
         String workspace;
         try {
             workspace = resource.getStore().getWorkspace().getName();
@@ -166,7 +322,62 @@ public class DefaultResourceAccessManager implements ResourceAccessManager, Data
         if(lastLoaded < daoLastModified) {
             root = buildAuthorizationTree(dao);
             lastLoaded = daoLastModified;
+            invalidateCache();
+        }
+    }
+
+    /**
+     * Builds the cache key for the access decision, or returns null if the decision cannot be
+     * cached
+     */
+    AccessKey getCacheKey(Authentication user, CatalogInfo info, AccessMode mode) {
+        String id = info.getId();
+        // security can be disabled on a per request basis, don't mix up the two cases
+        if (id == null || !GeoServerSecurityFilterChainProxy.isSecurityEnabledForCurrentRequest()) {
+            return null;
+        }
+        // read the generation first, the tree and catalog changes happen before it's bumped
+        long generation = this.generation.get();
+        return new AccessKey(getRoles(user), id, mode, generation);
+    }
+
+    Set<String> getRoles(Authentication user) {
+        if (user == null || user.getAuthorities() == null) {
+            return Collections.emptySet();
+        }
+        Set<String> roles = new HashSet<String>();
+        for (GrantedAuthority authority : user.getAuthorities()) {
+            roles.add(authority.getAuthority());
+        }
+        Set<String> canonical = roleSets.get(roles);
+        if (canonical == null) {
+            roleSets.put(roles, roles);
+            canonical = roles;
         }
+        return canonical;
+    }
+
+    /**
+     * Drops all the cached access decisions
+     */
+    void invalidateCache() {
+        generation.incrementAndGet();
+        decisions.invalidateAll();
+        roleSets.clear();
+    }
+
+    /**
+     * Returns the number of access decisions currently cached
+     */
+    public long getCacheSize() {
+        return decisions.size();
+    }
+
+    /**
+     * Returns the hit and miss statistics of the access decision cache
+     */
+    public CacheStats getCacheStats() {
+        return decisions.stats();
     }
 
     SecureTreeNode buildAuthorizationTree(DataAccessRuleDAO dao) {
@@ -285,27 +496,45 @@ public class DefaultResourceAccessManager implements ResourceAccessManager, Data
 
     @Override
     public Filter getSecurityFilter(Authentication user, Class<? extends CatalogInfo> clazz) {
+        checkPropertyFile();
         if(getMode() == CatalogMode.CHALLENGE) {
-            // If we're in CHALLENGE mode, we cannot pre-filter
-            // for the other types we have no clue, use the in memory filtering
+            if (AdminRequest.get() == null) {
+                // in CHALLENGE mode nothing gets hidden while listing, the secure catalog
+                // will expose the objects the user cannot read as metadata only
+                return Filter.INCLUDE;
+            }
+            // admin requests hide some of the objects, but not all of them, we cannot pre-filter
             return InMemorySecurityFilter.buildUserAccessFilter(this, user);
         }
 
         
-        if (WorkspaceInfo.class.isAssignableFrom(clazz)) {
-            // base access
+        if (WorkspaceInfo.class.isAssignableFrom(clazz)
+                || NamespaceInfo.class.isAssignableFrom(clazz)
+                || StoreInfo.class.isAssignableFrom(clazz)) {
+            // namespaces and stores are visible along with their workspace
+            String wsNameProperty;
+            if (WorkspaceInfo.class.isAssignableFrom(clazz)) {
+                wsNameProperty = "name";
+            } else if (NamespaceInfo.class.isAssignableFrom(clazz)) {
+                wsNameProperty = "prefix";
+            } else {
+                wsNameProperty = "workspace.name";
+            }
+            
+            // base access, no drill down here, a readable layer anywhere would otherwise open up
+            // all the workspaces not having rules of their own
             boolean rootAccess = canAccess(user, root);
             List<Filter> exceptions = new ArrayList<>();
             // exceptions
             for (Map.Entry<String, SecureTreeNode> entry : root.getChildren().entrySet()) {
                 String wsName = entry.getKey();
                 SecureTreeNode node = entry.getValue();
-                boolean nodeAccess = canAccess(user, node);
+                boolean nodeAccess = canAccessWorkspace(user, node);
                 if (nodeAccess != rootAccess) {
                     if (rootAccess) {
-                        exceptions.add(Predicates.notEqual("name", wsName));
+                        exceptions.add(Predicates.notEqual(wsNameProperty, wsName));
                     } else {
-                        exceptions.add(Predicates.equal("name", wsName));
+                        exceptions.add(Predicates.equal(wsNameProperty, wsName));
                     }
                 }
             }
@@ -414,6 +643,19 @@ public class DefaultResourceAccessManager implements ResourceAccessManager, Data
         }
     }
 
+    /**
+     * Same logic as {@link #canAccess(Authentication, WorkspaceInfo, AccessMode)}, including the
+     * drill down in the layers, so that the filter does not hide workspaces the secure catalog
+     * would show. Meant for the explicit workspace nodes only, not for the root.
+     */
+    private boolean canAccessWorkspace(Authentication user, SecureTreeNode node) {
+        if (AdminRequest.get() != null) {
+            return node.canAccess(user, AccessMode.ADMIN);
+        } else {
+            return canAccessChild(node, user, AccessMode.READ);
+        }
+    }
+
     private boolean canAccess(Authentication user, SecureTreeNode node) {
         boolean access = node.canAccess(user, AccessMode.READ);
         if (access && AdminRequest.get() != null) {
@@ -0,0 +1,42 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.threadlocals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.geotools.filter.function.EnvFunction;
+
+/**
+ * Transfers the request local values of the {@link EnvFunction} (the <code>env</code> request
+ * parameter and the variables injected by GeoServer) to another thread
+ */
+public class EnvFunctionThreadLocalTransfer implements ThreadLocalTransfer {
+
+    public static final String KEY = EnvFunction.class.getName() + "#localValues";
+
+    @Override
+    public void collect(Map<String, Object> storage) {
+        Map<String, Object> values = EnvFunction.getLocalValues();
+        if (values != null) {
+            storage.put(KEY, new HashMap<String, Object>(values));
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void apply(Map<String, Object> storage) {
+        Map<String, Object> values = (Map<String, Object>) storage.get(KEY);
+        if (values != null) {
+            EnvFunction.setLocalValues(values);
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        EnvFunction.clearLocalValues();
+    }
+
+}
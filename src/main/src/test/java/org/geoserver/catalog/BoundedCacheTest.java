@@ -0,0 +1,130 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.geoserver.catalog.BoundedCache.Policy;
+import org.junit.Test;
+
+public class BoundedCacheTest {
+
+    Map<String, Integer> evicted = new LinkedHashMap<String, Integer>();
+
+    BoundedCache.EvictionListener<String, Integer> listener = new BoundedCache.EvictionListener<String, Integer>() {
+
+        @Override
+        public void evicted(String key, Integer value) {
+            evicted.put(key, value);
+        }
+    };
+
+    @Test
+    public void testLRU() {
+        BoundedCache<String, Integer> cache = new BoundedCache<String, Integer>(Policy.LRU, 3, 0,
+                0, null, listener);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        // touch a, b becomes the least recently used
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        cache.put("d", 4);
+
+        assertEquals(3, cache.size());
+        assertFalse(cache.containsKey("b"));
+        assertEquals(1, evicted.size());
+        assertEquals(Integer.valueOf(2), evicted.get("b"));
+    }
+
+    @Test
+    public void testLFU() {
+        BoundedCache<String, Integer> cache = new BoundedCache<String, Integer>(Policy.LFU, 3, 0,
+                0, null, listener);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        cache.get("c");
+        // b and c used the same number of times, b is the least recently used
+        cache.put("d", 4);
+        assertFalse(cache.containsKey("b"));
+        // d was never used since it was added, it goes, but the new entry is not evicted to make
+        // room for itself
+        cache.put("e", 5);
+        assertFalse(cache.containsKey("d"));
+        assertTrue(cache.containsKey("a"));
+        assertTrue(cache.containsKey("c"));
+        assertTrue(cache.containsKey("e"));
+        assertEquals(2, evicted.size());
+    }
+
+    @Test
+    public void testWeight() {
+        BoundedCache.Weigher<String, Integer> weigher = new BoundedCache.Weigher<String, Integer>() {
+
+            @Override
+            public int weigh(String key, Integer value) {
+                return value;
+            }
+        };
+        BoundedCache<String, Integer> cache = new BoundedCache<String, Integer>(Policy.LRU, 0, 10,
+                0, weigher, listener);
+        cache.put("a", 4);
+        cache.put("b", 5);
+        assertEquals(9, cache.getWeight());
+        cache.put("c", 3);
+        assertEquals(8, cache.getWeight());
+        assertFalse(cache.containsKey("a"));
+
+        // an entry heavier than the limit pushes out all the others, but stays
+        cache.put("d", 20);
+        assertEquals(1, cache.size());
+        assertEquals(20, cache.getWeight());
+
+        // replacing and removing keep the weight in synch
+        cache.put("d", 2);
+        assertEquals(2, cache.getWeight());
+        cache.remove("d");
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        BoundedCache<String, Integer> cache = new BoundedCache<String, Integer>(Policy.LRU, 0, 0,
+                200, null, listener);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        Thread.sleep(120);
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        Thread.sleep(120);
+        // b was not accessed for more than 200ms
+        assertNull(cache.get("b"));
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        assertEquals(Integer.valueOf(2), evicted.get("b"));
+        Thread.sleep(250);
+        assertFalse(cache.containsKey("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testRemoveAndClearDoNotNotify() {
+        BoundedCache<String, Integer> cache = new BoundedCache<String, Integer>(Policy.LFU, 2, 0,
+                0, null, listener);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        assertEquals(Integer.valueOf(1), cache.remove("a"));
+        cache.clear();
+        assertTrue(cache.isEmpty());
+        assertTrue(evicted.isEmpty());
+    }
+}
@@ -225,6 +225,52 @@ public class ResourcePoolTest extends GeoServerSystemTestSupport {
         // we actually keep two versions of the feature type in the cache, so we need it 
         // twice as big
         assertEquals(400, ((SoftValueHashMap)catalog.getResourcePool().getFeatureTypeCache()).getHardReferencesCount());
+        assertEquals(400, catalog.getResourcePool().getCacheStatistics().get("featureType")
+                .getMaxEntries());
+    }
+
+    @Test public void testCacheStatistics() throws Exception {
+        ResourcePool pool = ResourcePool.create(getCatalog());
+        FeatureTypeInfo info = getCatalog().getFeatureTypeByName(
+                MockData.LAKES.getNamespaceURI(), MockData.LAKES.getLocalPart());
+        pool.getFeatureType(info);
+        pool.getFeatureType(info);
+        pool.getFeatureType(info);
+
+        ResourceCacheStatistics statistics = pool.getCacheStatistics().get("featureType");
+        assertEquals("SOFT", statistics.getPolicy());
+        assertEquals(1, statistics.getSize());
+        // the double checked lookup in the pool counts as a single miss
+        assertEquals(1, statistics.getMissCount());
+        assertEquals(1, statistics.getLoadCount());
+        assertEquals(2, statistics.getHitCount());
+
+        pool.resetCacheStatistics();
+        statistics = pool.getCacheStatistics().get("featureType");
+        assertEquals(0, statistics.getHitCount());
+        assertEquals(0, statistics.getMissCount());
+        assertEquals(0, statistics.getLoadCount());
+    }
+
+    @Test public void testBoundedCache() throws Exception {
+        System.setProperty("RESOURCE_POOL_CACHE_STYLE", "policy=LFU,maxEntries=1,expireAfterAccess=60");
+        try {
+            ResourcePool pool = ResourcePool.create(getCatalog());
+            ResourceCacheStatistics statistics = pool.getCacheStatistics().get("style");
+            assertEquals("LFU", statistics.getPolicy());
+            assertEquals(1, statistics.getMaxEntries());
+            assertEquals(60000, statistics.getExpireAfterAccess());
+
+            Style polygon = pool.getStyle(getCatalog().getStyleByName("polygon"));
+            pool.getStyle(getCatalog().getStyleByName("line"));
+            statistics = pool.getCacheStatistics().get("style");
+            assertEquals(1, statistics.getSize());
+            assertEquals(1, statistics.getEvictionCount());
+            // evicted, gets parsed again
+            assertNotSame(polygon, pool.getStyle(getCatalog().getStyleByName("polygon")));
+        } finally {
+            System.clearProperty("RESOURCE_POOL_CACHE_STYLE");
+        }
     }
     
     @Test public void testDropCoverageStore() throws Exception {
@@ -0,0 +1,163 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import static org.geoserver.catalog.Predicates.acceptAll;
+import static org.geoserver.catalog.Predicates.and;
+import static org.geoserver.catalog.Predicates.asc;
+import static org.geoserver.catalog.Predicates.desc;
+import static org.geoserver.catalog.Predicates.equal;
+import static org.geoserver.catalog.Predicates.or;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.CatalogFacade;
+import org.geoserver.catalog.CoverageInfo;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.util.CloseableIterator;
+import org.junit.Test;
+import org.opengis.filter.sort.SortBy;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Runs the catalog tests against the {@link IndexedCatalogFacade}, plus a few checks making sure
+ * the indexes are kept up to date when objects are modified
+ */
+public class IndexedCatalogFacadeTest extends CatalogImplTest {
+
+    @Override
+    protected Catalog createCatalog() {
+        CatalogImpl catalog = new CatalogImpl();
+        catalog.setFacade(new IndexedCatalogFacade(catalog));
+        return catalog;
+    }
+
+    @Test
+    public void testFacadeType() {
+        CatalogFacade facade = ((CatalogImpl) catalog).getFacade();
+        assertTrue(facade instanceof IndexedCatalogFacade);
+    }
+
+    @Test
+    public void testRenameReindexes() {
+        addLayer();
+
+        FeatureTypeInfo ft = catalog.getFeatureTypeByName("ftName");
+        ft.setName("renamed");
+        catalog.save(ft);
+
+        assertNull(catalog.getFeatureTypeByName(ns, "ftName"));
+        assertNull(catalog.getLayerByName("ftName"));
+        assertEquals("renamed", catalog.getFeatureTypeByName(ns, "renamed").getName());
+        assertEquals("renamed", catalog.getLayerByName("renamed").getName());
+    }
+
+    @Test
+    public void testStyleChangeReindexes() {
+        addLayer();
+        StyleInfo s2 = catalog.getFactory().createStyle();
+        s2.setName("s2Name");
+        s2.setFilename("s2Filename");
+        catalog.add(s2);
+
+        assertEquals(1, catalog.getLayers(catalog.getStyleByName("styleName")).size());
+        assertEquals(0, catalog.getLayers(catalog.getStyleByName("s2Name")).size());
+
+        LayerInfo layer = catalog.getLayerByName("ftName");
+        layer.getStyles().add(catalog.getStyleByName("s2Name"));
+        catalog.save(layer);
+
+        assertEquals(1, catalog.getLayers(catalog.getStyleByName("s2Name")).size());
+    }
+
+    @Test
+    public void testIndexedQueries() {
+        addLayer();
+        FeatureTypeInfo ft2 = catalog.getFactory().createFeatureType();
+        ft2.setName("ft2Name");
+        ft2.setStore(ds);
+        ft2.setNamespace(ns);
+        catalog.add(ft2);
+
+        assertEquals(1, catalog.count(LayerInfo.class, equal("resource.id", ft.getId())));
+        assertEquals(1, catalog.count(LayerInfo.class, equal("name", "ftName")));
+        assertEquals(0, catalog.count(LayerInfo.class, equal("name", "ft2Name")));
+        assertEquals(2, catalog.count(ResourceInfo.class,
+                or(equal("name", "ftName"), equal("name", "ft2Name"))));
+        assertEquals(0, catalog.count(CoverageInfo.class,
+                or(equal("name", "ftName"), equal("name", "ft2Name"))));
+        assertEquals(0, catalog.count(ResourceInfo.class,
+                and(equal("name", "ftName"), equal("enabled", Boolean.FALSE))));
+        assertEquals(1, catalog.count(ResourceInfo.class,
+                and(equal("namespace.prefix", ns.getPrefix()), equal("name", "ftName"))));
+    }
+
+    @Test
+    public void testAnyWorkspace() {
+        addLayerGroup();
+        catalog.add(wsA);
+        catalog.add(dsA);
+
+        List<DataStoreInfo> stores = catalog.getStoresByWorkspace(CatalogFacade.ANY_WORKSPACE,
+                DataStoreInfo.class);
+        assertEquals(2, stores.size());
+        assertEquals(catalog.getStores(DataStoreInfo.class), stores);
+        assertEquals(catalog.getFeatureTypes(), catalog.getResourcesByNamespace(
+                CatalogFacade.ANY_NAMESPACE, FeatureTypeInfo.class));
+        assertEquals(1, catalog.getResourcesByNamespace(CatalogFacade.ANY_NAMESPACE,
+                FeatureTypeInfo.class).size());
+        assertEquals(catalog.getLayerGroups(),
+                catalog.getLayerGroupsByWorkspace(CatalogFacade.ANY_WORKSPACE));
+        assertEquals(1, catalog.getLayerGroupsByWorkspace(CatalogFacade.ANY_WORKSPACE).size());
+        assertEquals(catalog.getStyles(),
+                catalog.getStylesByWorkspace(CatalogFacade.ANY_WORKSPACE));
+        assertEquals(1, catalog.getStylesByWorkspace(CatalogFacade.ANY_WORKSPACE).size());
+    }
+
+    @Test
+    public void testSortedPages() {
+        for (int i = 0; i < 10; i++) {
+            StyleInfo style = catalog.getFactory().createStyle();
+            style.setName("style" + i);
+            style.setFilename("style" + i + ".sld");
+            catalog.add(style);
+        }
+
+        List<StyleInfo> page = list(StyleInfo.class, 2, 3, asc("name"));
+        assertEquals(3, page.size());
+        assertEquals("style2", page.get(0).getName());
+        assertEquals("style3", page.get(1).getName());
+        assertEquals("style4", page.get(2).getName());
+
+        page = list(StyleInfo.class, 0, 2, desc("name"));
+        assertEquals(2, page.size());
+        assertEquals("style9", page.get(0).getName());
+        assertEquals("style8", page.get(1).getName());
+
+        page = list(StyleInfo.class, 8, 5, asc("name"));
+        assertEquals(2, page.size());
+        assertEquals("style8", page.get(0).getName());
+        assertEquals("style9", page.get(1).getName());
+    }
+
+    <T extends CatalogInfo> List<T> list(Class<T> type, int offset, int count, SortBy sortBy) {
+        CloseableIterator<T> it = catalog.list(type, acceptAll(), offset, count, sortBy);
+        try {
+            return Lists.newArrayList(it);
+        } finally {
+            it.close();
+        }
+    }
+}
@@ -53,6 +53,53 @@ public class InfoObjectProxyTest {
         assertEquals( 2, bean.getScratch().size() );
     }
     
+    @Test
+    public void testCollectionOldValues() throws Exception {
+        BeanImpl bean = new BeanImpl();
+        bean.getScratch().add( "x" );
+        Bean proxy = ModificationProxy.create( bean, Bean.class );
+        ModificationProxy handler = ModificationProxy.handler( proxy );
+        
+        // read only access does not make the proxy dirty
+        assertEquals( 1, proxy.getScratch().size() );
+        assertFalse( handler.isDirty() );
+        
+        proxy.getScratch().add( "y" );
+        assertTrue( handler.isDirty() );
+        assertEquals( 1, ((List) handler.getOldValues().get(0)).size() );
+        assertEquals( 2, ((List) handler.getNewValues().get(0)).size() );
+        
+        // the old values are preserved across the commit
+        List oldScratch = (List) handler.getOldValues().get(0);
+        handler.commit();
+        assertEquals( 2, bean.getScratch().size() );
+        assertEquals( 1, oldScratch.size() );
+    }
+
+    @Test
+    public void testCollectionOldValuesSuccessiveCommits() throws Exception {
+        BeanImpl bean = new BeanImpl();
+        bean.getScratch().add( "x" );
+        Bean proxy = ModificationProxy.create( bean, Bean.class );
+        ModificationProxy handler = ModificationProxy.handler( proxy );
+
+        proxy.getScratch().add( "y" );
+        assertEquals( 1, ((List) handler.getOldValues().get(0)).size() );
+        handler.commit();
+        assertTrue( handler.getOldValues().isEmpty() );
+
+        // the second cycle sees the state left by the first commit as the old value
+        proxy.getScratch().add( "z" );
+        List oldScratch = (List) handler.getOldValues().get(0);
+        assertEquals( 2, oldScratch.size() );
+        assertTrue( oldScratch.contains( "y" ) );
+        assertEquals( 3, ((List) handler.getNewValues().get(0)).size() );
+        handler.commit();
+        assertEquals( 3, bean.getScratch().size() );
+        assertEquals( 2, oldScratch.size() );
+        assertTrue( handler.getOldValues().isEmpty() );
+    }
+
     static interface Bean {
         
         String getFoo();
@@ -2,6 +2,8 @@ package org.geoserver.catalog.impl;
 
 import static org.junit.Assert.*;
 
+import java.util.concurrent.TimeUnit;
+
 import org.geotools.jdbc.VirtualTable;
 import org.junit.Test;
 
@@ -27,6 +29,15 @@ public class ModificationProxyClonerTest {
         assertSame(source, copy);
     }
     
+    @Test
+    public void testCloneImmutables() {
+        Boolean bool = new Boolean(true);
+        assertSame(bool, ModificationProxyCloner.clone(bool));
+        Long number = new Long(10);
+        assertSame(number, ModificationProxyCloner.clone(number));
+        assertSame(TimeUnit.SECONDS, ModificationProxyCloner.clone(TimeUnit.SECONDS));
+    }
+    
     @Test
     public void testCloneCloneable() {
         TestCloneable source = new TestCloneable("test");
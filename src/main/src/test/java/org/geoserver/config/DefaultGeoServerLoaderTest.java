@@ -10,11 +10,22 @@ import static org.junit.Assert.*;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogFactory;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.LayerGroupInfo;
 import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
 import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
 import org.geoserver.catalog.impl.CatalogImpl;
 import org.geoserver.config.impl.GeoServerImpl;
 import org.geoserver.config.impl.ServiceInfoImpl;
@@ -27,9 +38,14 @@ import org.geoserver.platform.GeoServerResourceLoader;
 import org.geotools.data.DataUtilities;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class DefaultGeoServerLoaderTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
     DefaultGeoServerLoader loader;
     
     Catalog catalog;
@@ -129,6 +145,171 @@ public class DefaultGeoServerLoaderTest {
         assertTrue(nestedLayerGroup.getLayers().get(1) instanceof LayerInfo);
     }
 
+    @Test
+    public void testParallelLoad() throws Exception {
+        loader.readCatalog(catalog, xp);
+
+        Catalog parallel = new CatalogImpl();
+        parallel.setResourceLoader(catalog.getResourceLoader());
+        XStreamPersister pxp = new XStreamPersisterFactory().createXMLPersister();
+        loader.setCatalogLoadThreads(4);
+        loader.readCatalog(parallel, pxp);
+
+        assertEquals(ids(catalog.getWorkspaces()), ids(parallel.getWorkspaces()));
+        assertEquals(ids(catalog.getStores(StoreInfo.class)),
+                ids(parallel.getStores(StoreInfo.class)));
+        assertEquals(ids(catalog.getResources(ResourceInfo.class)),
+                ids(parallel.getResources(ResourceInfo.class)));
+        assertEquals(ids(catalog.getLayers()), ids(parallel.getLayers()));
+        assertEquals(ids(catalog.getLayerGroups()), ids(parallel.getLayerGroups()));
+        assertFalse(parallel.getLayers().isEmpty());
+
+        // cross references got resolved
+        for (LayerInfo layer : parallel.getLayers()) {
+            StoreInfo store = layer.getResource().getStore();
+            assertEquals(catalog.getLayer(layer.getId()).getResource().getStore().getName(),
+                    store.getName());
+        }
+        LayerGroupInfo nestedLayerGroup = parallel.getLayerGroupByName("topp", "nestedgroup");
+        assertEquals(2, nestedLayerGroup.getLayers().size());
+    }
+
+    @Test
+    public void testParallelLoadManyWorkspaces() throws Exception {
+        // write out a data directory with many workspaces, each with a few stores, resources and
+        // layers referring to each other and to a global style
+        GeoServerResourceLoader resourceLoader = new GeoServerResourceLoader(
+                tmp.newFolder("many_workspaces"));
+        GeoServerExtensionsHelper.singleton("resourceLoader", resourceLoader,
+                GeoServerResourceLoader.class);
+        CatalogImpl source = new CatalogImpl();
+        source.setResourceLoader(resourceLoader);
+        XStreamPersister sxp = new XStreamPersisterFactory().createXMLPersister();
+        sxp.setCatalog(source);
+        source.addListener(new GeoServerPersister(resourceLoader, sxp));
+        CatalogFactory factory = source.getFactory();
+        StyleInfo style = factory.createStyle();
+        style.setName("shared");
+        style.setFilename("shared.sld");
+        source.add(style);
+        for (int w = 0; w < 30; w++) {
+            WorkspaceInfo ws = factory.createWorkspace();
+            ws.setName("ws" + w);
+            source.add(ws);
+            NamespaceInfo ns = factory.createNamespace();
+            ns.setPrefix("ws" + w);
+            ns.setURI("http://geoserver.org/ws" + w);
+            source.add(ns);
+            for (int s = 0; s < 3; s++) {
+                DataStoreInfo ds = factory.createDataStore();
+                ds.setName("store" + s);
+                ds.setWorkspace(ws);
+                ds.setEnabled(false);
+                source.add(ds);
+                for (int r = 0; r < 3; r++) {
+                    FeatureTypeInfo ft = factory.createFeatureType();
+                    ft.setName("type" + s + "_" + r);
+                    ft.setNativeName(ft.getName());
+                    ft.setStore(ds);
+                    ft.setNamespace(ns);
+                    source.add(ft);
+                    LayerInfo layer = factory.createLayer();
+                    layer.setResource(ft);
+                    layer.setDefaultStyle(style);
+                    source.add(layer);
+                }
+            }
+        }
+
+        DefaultGeoServerLoader parallelLoader = new DefaultGeoServerLoader(resourceLoader);
+        parallelLoader.setCatalogLoadThreads(8);
+        for (int i = 0; i < 5; i++) {
+            Catalog parallel = new CatalogImpl();
+            parallel.setResourceLoader(resourceLoader);
+            parallelLoader.readCatalog(parallel, new XStreamPersisterFactory().createXMLPersister());
+
+            assertEquals(30, parallel.getWorkspaces().size());
+            assertEquals(ids(source.getStores(StoreInfo.class)),
+                    ids(parallel.getStores(StoreInfo.class)));
+            assertEquals(ids(source.getResources(ResourceInfo.class)),
+                    ids(parallel.getResources(ResourceInfo.class)));
+            assertEquals(ids(source.getLayers()), ids(parallel.getLayers()));
+            assertEquals(270, parallel.getLayers().size());
+
+            // every reference points to the object of the same workspace in the loaded catalog
+            for (LayerInfo layer : parallel.getLayers()) {
+                ResourceInfo resource = layer.getResource();
+                StoreInfo store = resource.getStore();
+                String prefix = resource.getNamespace().getPrefix();
+                assertEquals(prefix, store.getWorkspace().getName());
+                assertEquals(parallel.getStoreByName(prefix, store.getName(), StoreInfo.class)
+                        .getId(), store.getId());
+                assertEquals(source.getLayer(layer.getId()).getResource().getStore().getId(),
+                        store.getId());
+                assertEquals("shared", layer.getDefaultStyle().getName());
+            }
+        }
+    }
+
+    @Test
+    public void testCatalogSnapshot() throws Exception {
+        loader.readCatalog(catalog, xp);
+
+        GeoServerResourceLoader resourceLoader = catalog.getResourceLoader();
+        CatalogSnapshot snapshot = new CatalogSnapshot(resourceLoader,
+                new XStreamPersisterFactory());
+        try {
+            snapshot.write(catalog, snapshot.fingerprint());
+            CatalogImpl restored = snapshot.read();
+            assertNotNull(restored);
+            assertTrue(snapshot.isLoaded());
+
+            assertEquals(ids(catalog.getWorkspaces()), ids(restored.getWorkspaces()));
+            assertEquals(ids(catalog.getNamespaces()), ids(restored.getNamespaces()));
+            assertEquals(ids(catalog.getStyles()), ids(restored.getStyles()));
+            assertEquals(ids(catalog.getStores(StoreInfo.class)),
+                    ids(restored.getStores(StoreInfo.class)));
+            assertEquals(ids(catalog.getResources(ResourceInfo.class)),
+                    ids(restored.getResources(ResourceInfo.class)));
+            assertEquals(ids(catalog.getLayers()), ids(restored.getLayers()));
+            assertEquals(ids(catalog.getLayerGroups()), ids(restored.getLayerGroups()));
+            assertEquals(catalog.getDefaultWorkspace().getId(),
+                    restored.getDefaultWorkspace().getId());
+
+            // cross references got resolved
+            for (LayerInfo layer : restored.getLayers()) {
+                StoreInfo store = layer.getResource().getStore();
+                assertEquals(catalog.getLayer(layer.getId()).getResource().getStore().getName(),
+                        store.getName());
+            }
+            LayerGroupInfo nestedLayerGroup = restored.getLayerGroupByName("topp", "nestedgroup");
+            assertEquals(2, nestedLayerGroup.getLayers().size());
+            assertTrue(nestedLayerGroup.getLayers().get(0) instanceof LayerGroupInfo);
+
+            // touching a configuration file makes the snapshot out of date
+            File workspace = resourceLoader.get("workspaces/topp/workspace.xml").file();
+            long lastModified = workspace.lastModified();
+            try {
+                assertTrue(workspace.setLastModified(lastModified + 10000));
+                assertNull(snapshot.read());
+                assertFalse(snapshot.isLoaded());
+            } finally {
+                workspace.setLastModified(lastModified);
+            }
+        } finally {
+            snapshot.dispose();
+            resourceLoader.get(CatalogSnapshot.SNAPSHOT_FILE).delete();
+        }
+    }
+
+    Set<String> ids(List<? extends CatalogInfo> infos) {
+        Set<String> result = new TreeSet<String>();
+        for (CatalogInfo info : infos) {
+            result.add(info.getId());
+        }
+        return result;
+    }
+
     @Test
     public void testLoadWithoutResaving() throws Exception {
         GeoServerImpl gs = new GeoServerImpl();
@@ -0,0 +1,182 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.Service;
+import org.geoserver.platform.ServiceException;
+import org.geotools.util.Version;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class RequestCoalescingCallbackTest {
+
+    RequestCoalescingCallback callback;
+
+    Service service;
+
+    @Before
+    public void setUp() {
+        callback = new RequestCoalescingCallback();
+        callback.setEnabled(true);
+        service = new Service("wms", new Object(), new Version("1.1.1"),
+                Arrays.asList("GetMap"));
+    }
+
+    Request request(String... kvp) {
+        Map<String, Object> rawKvp = new HashMap<String, Object>();
+        for (int i = 0; i < kvp.length; i += 2) {
+            rawKvp.put(kvp[i], kvp[i + 1]);
+        }
+        Request request = new Request();
+        request.setGet(true);
+        request.setPath("wms");
+        request.setRawKvp(rawKvp);
+        return request;
+    }
+
+    Operation getMap() {
+        return new Operation("GetMap", service, null, new Object[0]);
+    }
+
+    @Test
+    public void testKeyNormalization() {
+        String k1 = callback.getKey(request("LAYERS", "a", "bbox", "0,0,1,1"));
+        String k2 = callback.getKey(request("BBOX", "0,0,1,1", "layers", "a"));
+        String k3 = callback.getKey(request("BBOX", "0,0,1,1", "layers", "b"));
+        assertEquals(k1, k2);
+        assertFalse(k1.equals(k3));
+    }
+
+    @Test
+    public void testKeyBaseURL() {
+        Request a = request("LAYERS", "a");
+        a.setHttpRequest(httpRequest("hostA"));
+        Request a2 = request("LAYERS", "a");
+        a2.setHttpRequest(httpRequest("hostA"));
+        Request b = request("LAYERS", "a");
+        b.setHttpRequest(httpRequest("hostB"));
+        assertEquals(callback.getKey(a), callback.getKey(a2));
+        assertFalse(callback.getKey(a).equals(callback.getKey(b)));
+
+        // same host, but coming through a different proxy
+        MockHttpServletRequest proxied = httpRequest("hostA");
+        proxied.addHeader("X-Forwarded-Host", "proxy.example.com");
+        Request p = request("LAYERS", "a");
+        p.setHttpRequest(proxied);
+        assertFalse(callback.getKey(a).equals(callback.getKey(p)));
+    }
+
+    MockHttpServletRequest httpRequest(String host) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/geoserver/wms");
+        request.setServerName(host);
+        request.setContextPath("/geoserver");
+        return request;
+    }
+
+    @Test
+    public void testNotCoalescable() {
+        Request post = request("LAYERS", "a");
+        post.setGet(false);
+        assertFalse(callback.isCoalescable(post, getMap()));
+
+        Operation caps = new Operation("GetCapabilities", service, null, new Object[0]);
+        assertFalse(callback.isCoalescable(request("LAYERS", "a"), caps));
+        assertTrue(callback.isCoalescable(request("LAYERS", "a"), getMap()));
+    }
+
+    @Test
+    public void testFollowerGetsLeaderResponse() throws Exception {
+        final Request leader = request("LAYERS", "a");
+        final Operation leaderOp = getMap();
+        assertSame(leaderOp, callback.operationDispatched(leader, leaderOp));
+
+        // an identical request waits for the leader
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Object> follower = executor.submit(new Callable<Object>() {
+
+                @Override
+                public Object call() throws Exception {
+                    Operation op = callback.operationDispatched(request("layers", "a"), getMap());
+                    assertNotSame(service, op.getService());
+                    return ((DirectInvocationService) op.getService().getService()).invokeDirect(
+                            op.getId(), op.getParameters());
+                }
+            });
+
+            Response response = callback.responseDispatched(leader, leaderOp, "abc",
+                    new TestResponse());
+            assertEquals("text/plain", response.getMimeType("abc", leaderOp));
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            response.write("abc", bos, leaderOp);
+            callback.finished(leader);
+
+            CoalescedResponse.Result result = (CoalescedResponse.Result) follower.get();
+            assertArrayEquals(bos.toByteArray(), result.getBytes());
+            assertEquals("text/plain", result.getMimeType());
+            assertEquals(1, callback.getCoalescedRequests());
+            assertTrue(callback.flights.isEmpty());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testMaxBuffer() throws Exception {
+        callback.setMaxBuffer(2);
+        Request leader = request("LAYERS", "a");
+        Operation leaderOp = getMap();
+        callback.operationDispatched(leader, leaderOp);
+        RequestCoalescingCallback.Flight flight = callback.flights.values().iterator().next();
+
+        Response response = callback.responseDispatched(leader, leaderOp, "abc",
+                new TestResponse());
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        response.write("abc", bos, leaderOp);
+        callback.finished(leader);
+
+        // the client still got the full response, but it was too big to be shared
+        assertEquals("abc", bos.toString());
+        assertEquals(null, flight.await(1));
+    }
+
+    static class TestResponse extends Response {
+
+        public TestResponse() {
+            super(String.class);
+        }
+
+        @Override
+        public String getMimeType(Object value, Operation operation) throws ServiceException {
+            return "text/plain";
+        }
+
+        @Override
+        public void write(Object value, OutputStream output, Operation operation)
+                throws IOException, ServiceException {
+            output.write(((String) value).getBytes());
+        }
+    }
+}
@@ -4,13 +4,19 @@
  * application directory.
  */
 package org.geoserver.security.impl;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.impl.CatalogPostModifyEventImpl;
 import org.geoserver.security.AccessMode;
 import org.geoserver.security.CatalogMode;
 import org.geoserver.security.DataAccessLimits;
@@ -48,6 +54,39 @@ public class DefaultResourceAccessManagerAuthTest extends AbstractAuthorizationT
         checkUserAccessFlat(manager, root, true, true);
     }
     
+    @Test
+    public void testAccessCache() throws Exception {
+        WorkspaceInfo ws = createNiceMock(WorkspaceInfo.class);
+        expect(ws.getId()).andReturn("ws-topp").anyTimes();
+        expect(ws.getName()).andReturn("topp").anyTimes();
+        replay(ws);
+        DataStoreInfo store = createNiceMock(DataStoreInfo.class);
+        expect(store.getWorkspace()).andReturn(ws).anyTimes();
+        replay(store);
+        FeatureTypeInfo states = createNiceMock(FeatureTypeInfo.class);
+        expect(states.getId()).andReturn("ft-states").anyTimes();
+        expect(states.getName()).andReturn("states").anyTimes();
+        expect(states.getStore()).andReturn(store).anyTimes();
+        replay(states);
+
+        DefaultResourceAccessManager manager = buildAccessManager("lockedDown.properties");
+        assertFalse(manager.canAccess(roUser, states, AccessMode.READ));
+        assertFalse(manager.canAccess(roUser, states, AccessMode.READ));
+        // different roles, different decision
+        assertTrue(manager.canAccess(rwUser, states, AccessMode.READ));
+        assertTrue(manager.canAccess(rwUser, ws, AccessMode.WRITE));
+        assertEquals(1, manager.getCacheStats().hitCount());
+        assertEquals(3, manager.getCacheSize());
+
+        // a catalog change drops the cached decisions
+        CatalogPostModifyEventImpl event = new CatalogPostModifyEventImpl();
+        event.setSource(states);
+        manager.cacheInvalidator.handlePostModifyEvent(event);
+        assertEquals(0, manager.getCacheSize());
+        assertFalse(manager.canAccess(roUser, states, AccessMode.READ));
+        assertEquals(1, manager.getCacheStats().hitCount());
+    }
+
     private void checkUserAccessFlat(ResourceAccessManager manager, Authentication user, boolean expectedRead, boolean expectedWrite) {
         // states as a layer
         assertEquals(expectedRead, canAccess(manager, user, statesLayer, AccessMode.READ));
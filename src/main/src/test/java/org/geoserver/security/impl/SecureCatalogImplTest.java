@@ -18,6 +18,7 @@ import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
@@ -41,9 +42,11 @@ import org.geoserver.catalog.CoverageInfo;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.LayerGroupInfo;
 import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
 import org.geoserver.catalog.Predicates;
 import org.geoserver.catalog.PublishedInfo;
 import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
 import org.geoserver.catalog.StyleInfo;
 import org.geoserver.catalog.WMSLayerInfo;
 import org.geoserver.catalog.WorkspaceInfo;
@@ -768,6 +771,54 @@ public class SecureCatalogImplTest extends AbstractAuthorizationTest {
         assertSame(security3, Filter.INCLUDE);
     }
 
+    @Test
+    public void testSecurityFilterStoresNamespaces() throws Exception {
+        ResourceAccessManager resourceManager = getResourceAccessManager(buildAccessManager("wsLock.properties"));
+
+        // only the military can see the topp workspace, its stores and namespace
+        assertSame(Filter.INCLUDE, resourceManager.getSecurityFilter(milUser, StoreInfo.class));
+        assertSame(Filter.INCLUDE, resourceManager.getSecurityFilter(milUser, NamespaceInfo.class));
+
+        Filter stores = resourceManager.getSecurityFilter(anonymous, StoreInfo.class);
+        assertFalse(stores.evaluate(statesStore));
+        assertTrue(stores.evaluate(arcGridStore));
+
+        NamespaceInfo toppNs = createNiceMock(NamespaceInfo.class);
+        expect(toppNs.getPrefix()).andReturn("topp").anyTimes();
+        NamespaceInfo nurcNs = createNiceMock(NamespaceInfo.class);
+        expect(nurcNs.getPrefix()).andReturn("nurc").anyTimes();
+        replay(toppNs, nurcNs);
+        Filter namespaces = resourceManager.getSecurityFilter(anonymous, NamespaceInfo.class);
+        assertFalse(namespaces.evaluate(toppNs));
+        assertTrue(namespaces.evaluate(nurcNs));
+    }
+
+    @Test
+    public void testSecurityFilterWorkspaceRootNoDrillDown() throws Exception {
+        ResourceAccessManager resourceManager = getResourceAccessManager(buildAccessManager("rootAdminToppPublic.properties"));
+
+        // topp is readable by everybody, the other workspaces only by the admins, a readable
+        // layer in topp must not open up the workspaces without rules of their own
+        Filter workspaces = resourceManager.getSecurityFilter(anonymous, WorkspaceInfo.class);
+        assertNotSame(Filter.INCLUDE, workspaces);
+        assertTrue(workspaces.evaluate(toppWs));
+        assertFalse(workspaces.evaluate(nurcWs));
+
+        Filter stores = resourceManager.getSecurityFilter(anonymous, StoreInfo.class);
+        assertTrue(stores.evaluate(statesStore));
+        assertFalse(stores.evaluate(arcGridStore));
+    }
+
+    @Test
+    public void testSecurityFilterChallenge() throws Exception {
+        ResourceAccessManager resourceManager = getResourceAccessManager(buildAccessManager("lockedDownChallenge.properties"));
+
+        // in challenge mode the unreadable objects are listed anyways, as metadata only
+        assertSame(Filter.INCLUDE, resourceManager.getSecurityFilter(anonymous, LayerInfo.class));
+        assertSame(Filter.INCLUDE, resourceManager.getSecurityFilter(anonymous, WorkspaceInfo.class));
+        assertSame(Filter.INCLUDE, resourceManager.getSecurityFilter(anonymous, StoreInfo.class));
+    }
+
     @Test
     public void testSecurityFilterWsLock() throws Exception {
         // getting the resourceAccessManager
@@ -0,0 +1,43 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.threadlocals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+
+import org.geotools.filter.function.EnvFunction;
+import org.junit.After;
+import org.junit.Test;
+
+public class EnvFunctionThreadLocalTransferTest extends AbstractThreadLocalTransferTest {
+
+    @After
+    public void cleanupThreadLocals() {
+        EnvFunction.clearLocalValues();
+    }
+
+    @Test
+    public void testEnvValues() throws InterruptedException, ExecutionException {
+        // setup the state
+        EnvFunction.setLocalValues(Collections.<String, Object> singletonMap("COLOR", "red"));
+        // test it's transferred properly using the base class machinery
+        testThreadLocalTransfer(new ThreadLocalTransferCallable(
+                new EnvFunctionThreadLocalTransfer()) {
+
+            @Override
+            void assertThreadLocalCleaned() {
+                assertTrue(EnvFunction.getLocalValues().isEmpty());
+            }
+
+            @Override
+            void assertThreadLocalApplied() {
+                assertEquals("red", EnvFunction.getLocalValues().get("COLOR"));
+            }
+        });
+    }
+}
@@ -0,0 +1,92 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.util.logging.Logging;
+
+/**
+ * Signals that a request should stop processing, because the client is no longer waiting for the
+ * response. Long running operations can either poll {@link #isCancelled()}, or register a listener
+ * that will be called once the request is cancelled (e.g., to stop a renderer).
+ */
+public class CancellationToken {
+
+    static final Logger LOGGER = Logging.getLogger(CancellationToken.class);
+
+    volatile boolean cancelled;
+
+    List<Runnable> listeners = new CopyOnWriteArrayList<Runnable>();
+
+    /**
+     * Returns the token of the request being executed in the current thread, or null if not
+     * running inside a {@link Dispatcher} request
+     */
+    public static CancellationToken current() {
+        Request request = Dispatcher.REQUEST.get();
+        return request != null ? request.getCancellationToken() : null;
+    }
+
+    /**
+     * Throws a {@link ClientStreamAbortedException} if the request running in the current thread
+     * has been cancelled
+     */
+    public static void checkCurrent() throws ClientStreamAbortedException {
+        CancellationToken token = current();
+        if (token != null) {
+            token.check();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Throws a {@link ClientStreamAbortedException} if the request has been cancelled
+     */
+    public void check() throws ClientStreamAbortedException {
+        if (cancelled) {
+            throw new ClientStreamAbortedException("The client disconnected, request cancelled");
+        }
+    }
+
+    /**
+     * Cancels the request, notifying the listeners
+     */
+    public void cancel() {
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+        }
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Request cancellation listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * Registers a listener called when the request is cancelled, or immediately if it already was
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+        if (cancelled) {
+            listener.run();
+        }
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+}
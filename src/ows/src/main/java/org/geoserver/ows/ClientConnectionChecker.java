@@ -0,0 +1,26 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Extension point checking if the client of a request being processed is still connected.
+ * <p>
+ * The servlet API does not provide a portable way to find out if the client went away before
+ * writing the response, implementations are usually specific to a servlet container. When at least
+ * one checker is registered in the application context, the {@link Dispatcher} polls the running
+ * requests and cancels the ones whose client disconnected, see {@link CancellationToken}
+ * </p>
+ */
+public interface ClientConnectionChecker {
+
+    /**
+     * Returns true if the client of the request is known to have disconnected, false if it is
+     * still connected or the checker cannot tell
+     */
+    boolean isDisconnected(HttpServletRequest request, HttpServletResponse response);
+}
@@ -0,0 +1,100 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.util.logging.Logging;
+
+/**
+ * Periodically checks the connection of the clients of the running requests with the available
+ * {@link ClientConnectionChecker}, and cancels the requests whose client went away
+ */
+class ClientDisconnectMonitor {
+
+    static final Logger LOGGER = Logging.getLogger(ClientDisconnectMonitor.class);
+
+    final List<ClientConnectionChecker> checkers;
+
+    final Set<Request> requests = ConcurrentHashMap.newKeySet();
+
+    final ScheduledExecutorService executor;
+
+    ClientDisconnectMonitor(List<ClientConnectionChecker> checkers, long interval) {
+        this.checkers = checkers;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "GeoServer client disconnect monitor");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                checkRequests();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    void register(Request request) {
+        requests.add(request);
+    }
+
+    /**
+     * Removes the request from the monitored ones, waiting for a check in progress on it to
+     * complete: checkers may read from the connection, which must be left alone once the request
+     * is done
+     */
+    void unregister(Request request) {
+        synchronized (request) {
+            requests.remove(request);
+        }
+    }
+
+    void checkRequests() {
+        for (Request request : requests) {
+            synchronized (request) {
+                if (!requests.contains(request)
+                        || request.getCancellationToken().isCancelled()) {
+                    continue;
+                }
+                checkRequest(request);
+            }
+        }
+    }
+
+    void checkRequest(Request request) {
+        for (ClientConnectionChecker checker : checkers) {
+            try {
+                if (checker.isDisconnected(request.getHttpRequest(), request.getHttpResponse())) {
+                    if (LOGGER.isLoggable(Level.FINE)) {
+                        LOGGER.fine("Client disconnected, cancelling request " + request);
+                    }
+                    request.getCancellationToken().cancel();
+                    break;
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Client connection check failed", e);
+            }
+        }
+    }
+
+    void dispose() {
+        executor.shutdownNow();
+        requests.clear();
+    }
+}
@@ -56,6 +56,7 @@ import org.geoserver.platform.ServiceException;
 import org.geotools.util.Version;
 import org.geotools.xml.EMFUtils;
 import org.geotools.xml.transform.TransformerBase;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.web.servlet.ModelAndView;
@@ -113,7 +114,7 @@ import org.xmlpull.v1.XmlPullParserFactory;
  *
  * @author Justin Deoliveira, The Open Planning Project, jdeolive@openplans.org
  */
-public class Dispatcher extends AbstractController {
+public class Dispatcher extends AbstractController implements DisposableBean {
     /**
      * Logging instance
      */
@@ -142,6 +143,16 @@ public class Dispatcher extends AbstractController {
      */
     List<DispatcherCallback> callbacks = Collections.EMPTY_LIST;
 
+    /**
+     * Default interval, in milliseconds, between two checks of the client connections
+     */
+    static final long DEFAULT_DISCONNECT_CHECK_INTERVAL = 1000;
+
+    /**
+     * Cancels the requests whose client disconnected, null if no connection checker is available
+     */
+    ClientDisconnectMonitor disconnectMonitor;
+
     /** SOAP namespace */
     static final String SOAP_NS = "http://www.w3.org/2003/05/soap-envelope";
     
@@ -182,10 +193,42 @@ public class Dispatcher extends AbstractController {
         return citeCompliant;
     }
 
+    /**
+     * Stops the client disconnect monitor, if any, when the application context is closed
+     */
+    @Override
+    public void destroy() throws Exception {
+        if (disconnectMonitor != null) {
+            disconnectMonitor.dispose();
+            disconnectMonitor = null;
+        }
+    }
+
     @Override
     protected void initApplicationContext(ApplicationContext context) {
         //load life cycle callbacks
         callbacks = GeoServerExtensions.extensions( DispatcherCallback.class, context);
+
+        // poll the client connections only if someone can tell us about them
+        List<ClientConnectionChecker> checkers = GeoServerExtensions.extensions(
+                ClientConnectionChecker.class, context);
+        if (!checkers.isEmpty()) {
+            if (disconnectMonitor != null) {
+                disconnectMonitor.dispose();
+            }
+            long interval = DEFAULT_DISCONNECT_CHECK_INTERVAL;
+            String value = GeoServerExtensions.getProperty("CLIENT_DISCONNECT_CHECK_INTERVAL",
+                    context);
+            if (value != null) {
+                try {
+                    interval = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    logger.log(Level.SEVERE, "Invalid CLIENT_DISCONNECT_CHECK_INTERVAL value, "
+                            + "will use " + interval + " instead");
+                }
+            }
+            disconnectMonitor = new ClientDisconnectMonitor(checkers, interval);
+        }
         
         // setup the xml lookahead value
         String lookahead = GeoServerExtensions.getProperty("XML_LOOKAHEAD", context);
@@ -239,6 +282,9 @@ public class Dispatcher extends AbstractController {
 
             // store it in the thread local
             REQUEST.set(request);
+            if (disconnectMonitor != null) {
+                disconnectMonitor.register(request);
+            }
             
             //find the service
             try {
@@ -277,6 +323,9 @@ public class Dispatcher extends AbstractController {
                 throw (Exception) t;
             exception(t, service, request);
         } finally {
+            if (disconnectMonitor != null) {
+                disconnectMonitor.unregister(request);
+            }
             fireFinishedCallback(request);
             REQUEST.remove();
         }
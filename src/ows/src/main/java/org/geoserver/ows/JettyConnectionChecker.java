@@ -0,0 +1,169 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletRequestWrapper;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.geotools.util.logging.Logging;
+
+/**
+ * Checks the client connection of the requests served by Jetty 9, the container shipped with the
+ * GeoServer binary distribution, looking at the connection end point reached through
+ * {@code request.getHttpChannel().getEndPoint()}.
+ * <p>
+ * Jetty only notices the client went away when it reads from the connection, which it does not do
+ * while the request is being processed, so a closed or input shut down end point is not enough.
+ * When the request body has been fully read and the response is not committed yet, the checker
+ * also performs a non blocking read on the plain socket channel of the end point: end of stream
+ * means the client closed the connection. Should the read return the first bytes of a pipelined
+ * request instead, the response is marked with {@code Connection: close} so that the client sends
+ * it again on a new connection. Secure connections are not probed, the socket carries encrypted
+ * records the checker cannot interpret.
+ * </p>
+ * <p>
+ * Jetty classes are accessed by reflection, so that GeoServer does not depend on them. The checker
+ * looks at the first request it is handed, and disables itself for good if it does not come from
+ * Jetty.
+ * </p>
+ */
+public class JettyConnectionChecker implements ClientConnectionChecker {
+
+    static final Logger LOGGER = Logging.getLogger(JettyConnectionChecker.class);
+
+    /**
+     * Whether the requests are served by Jetty, null until the first request is checked
+     */
+    volatile Boolean jetty;
+
+    /**
+     * The methods looked up so far, by class and name
+     */
+    final Map<Class<?>, Map<String, Method>> methods =
+            new ConcurrentHashMap<Class<?>, Map<String, Method>>();
+
+    @Override
+    public boolean isDisconnected(HttpServletRequest request, HttpServletResponse response) {
+        if (Boolean.FALSE.equals(jetty)) {
+            return false;
+        }
+        ServletRequest unwrapped = request;
+        while (unwrapped instanceof ServletRequestWrapper) {
+            unwrapped = ((ServletRequestWrapper) unwrapped).getRequest();
+        }
+        if (unwrapped == null) {
+            return false;
+        }
+
+        Object channel;
+        try {
+            channel = invoke(unwrapped, "getHttpChannel");
+            if (jetty == null) {
+                jetty = true;
+            }
+        } catch (NoSuchMethodException e) {
+            if (jetty == null) {
+                LOGGER.info("Not running in Jetty, client disconnection checks are disabled");
+                jetty = false;
+            }
+            return false;
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Failed to check the client connection", e);
+            return false;
+        }
+
+        try {
+            Object endPoint = channel != null ? invoke(channel, "getEndPoint") : null;
+            if (endPoint == null) {
+                return false;
+            }
+            if (!Boolean.TRUE.equals(invoke(endPoint, "isOpen"))
+                    || Boolean.TRUE.equals(invoke(endPoint, "isInputShutdown"))) {
+                return true;
+            }
+            return isClosedByClient(unwrapped, endPoint, request, response);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Failed to check the client connection", e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads from the socket behind the end point, if that can be done without stealing bytes from
+     * the request being processed
+     */
+    boolean isClosedByClient(ServletRequest jettyRequest, Object endPoint,
+            HttpServletRequest request, HttpServletResponse response) throws Exception {
+        if (response == null || response.isCommitted() || !isBodyRead(jettyRequest, request)) {
+            return false;
+        }
+        Object transport = invoke(endPoint, "getTransport");
+        if (!(transport instanceof SocketChannel)) {
+            return false;
+        }
+        SocketChannel socket = (SocketChannel) transport;
+        if (socket.isBlocking()) {
+            // a read could hang the monitor
+            return false;
+        }
+
+        int read = socket.read(ByteBuffer.allocate(1));
+        if (read < 0) {
+            return true;
+        } else if (read > 0) {
+            // a pipelined request, have the client resend it
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Read pipelined data while checking the client connection, "
+                        + "closing the connection after the response");
+            }
+            response.setHeader("Connection", "close");
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the request has no body, or if it has been read to the end
+     */
+    boolean isBodyRead(ServletRequest jettyRequest, HttpServletRequest request) {
+        int length = request.getContentLength();
+        if (length == 0 || (length < 0 && request.getHeader("Transfer-Encoding") == null)) {
+            return true;
+        }
+        try {
+            Object input = invoke(jettyRequest, "getHttpInput");
+            return input != null && Boolean.TRUE.equals(invoke(input, "isFinished"));
+        } catch (Exception e) {
+            LOGGER.log(Level.FINEST, "Cannot tell if the request body has been read", e);
+            return false;
+        }
+    }
+
+    Object invoke(Object target, String methodName) throws Exception {
+        Class<?> clazz = target.getClass();
+        Map<String, Method> classMethods = methods.get(clazz);
+        if (classMethods == null) {
+            classMethods = new ConcurrentHashMap<String, Method>();
+            methods.put(clazz, classMethods);
+        }
+        Method method = classMethods.get(methodName);
+        if (method == null) {
+            method = clazz.getMethod(methodName);
+            // the implementation classes are not necessarily public
+            method.setAccessible(true);
+            classMethods.put(methodName, method);
+        }
+        return method.invoke(target);
+    }
+}
@@ -119,6 +119,11 @@ public class Request {
      */
     protected UUID identifier;
 
+    /**
+     * Cancelled when the client disconnects before the response is written
+     */
+    protected CancellationToken cancellationToken = new CancellationToken();
+
     public Request() {
         timestamp = new Date(); 
         identifier = UUID.randomUUID();
@@ -149,6 +154,7 @@ public class Request {
         this.timestamp = other.timestamp;
         this.operation = other.operation;
         this.identifier = other.identifier;
+        this.cancellationToken = other.cancellationToken;
     }
 
     /**
@@ -502,4 +508,11 @@ public class Request {
             return false;
         return true;
     }
+
+    /**
+     * The token signalling the request should stop processing, because the client went away
+     */
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
 }
@@ -0,0 +1,185 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class CancellationTokenTest {
+
+    @Test
+    public void testCancel() throws Exception {
+        CancellationToken token = new CancellationToken();
+        final AtomicInteger calls = new AtomicInteger();
+        Runnable listener = new Runnable() {
+
+            @Override
+            public void run() {
+                calls.incrementAndGet();
+            }
+        };
+        token.addListener(listener);
+        assertFalse(token.isCancelled());
+        token.check();
+
+        token.cancel();
+        token.cancel();
+        assertTrue(token.isCancelled());
+        assertEquals(1, calls.get());
+        try {
+            token.check();
+            fail("Should have thrown an exception");
+        } catch (ClientStreamAbortedException e) {
+            // fine
+        }
+
+        // late listeners are called right away
+        token.addListener(listener);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testCurrent() throws Exception {
+        Request request = new Request();
+        Dispatcher.REQUEST.set(request);
+        try {
+            assertEquals(request.getCancellationToken(), CancellationToken.current());
+            // copies share the token
+            assertEquals(request.getCancellationToken(),
+                    new Request(request).getCancellationToken());
+        } finally {
+            Dispatcher.REQUEST.remove();
+        }
+    }
+
+    @Test
+    public void testMonitor() throws Exception {
+        Request connected = new Request();
+        final Request disconnected = new Request();
+        ClientConnectionChecker checker = new ClientConnectionChecker() {
+
+            @Override
+            public boolean isDisconnected(HttpServletRequest request,
+                    HttpServletResponse response) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        ClientDisconnectMonitor monitor = new ClientDisconnectMonitor(
+                Collections.singletonList(checker), 100000);
+        try {
+            // failing checkers do not cancel anything
+            monitor.register(connected);
+            monitor.checkRequests();
+            assertFalse(connected.getCancellationToken().isCancelled());
+        } finally {
+            monitor.dispose();
+        }
+
+        monitor = new ClientDisconnectMonitor(
+                Collections.<ClientConnectionChecker> singletonList(new ClientConnectionChecker() {
+
+                    @Override
+                    public boolean isDisconnected(HttpServletRequest request,
+                            HttpServletResponse response) {
+                        return request == disconnected.getHttpRequest();
+                    }
+                }), 100000);
+        try {
+            disconnected.setHttpRequest(new MockHttpServletRequest());
+            monitor.register(connected);
+            monitor.register(disconnected);
+            monitor.checkRequests();
+            assertFalse(connected.getCancellationToken().isCancelled());
+            assertTrue(disconnected.getCancellationToken().isCancelled());
+        } finally {
+            monitor.dispose();
+        }
+    }
+
+    @Test
+    public void testDispatcherDestroyStopsMonitor() throws Exception {
+        Dispatcher dispatcher = new Dispatcher();
+        ClientDisconnectMonitor monitor = new ClientDisconnectMonitor(
+                Collections.<ClientConnectionChecker> emptyList(), 100000);
+        dispatcher.disconnectMonitor = monitor;
+        dispatcher.destroy();
+        assertTrue(monitor.executor.isShutdown());
+        assertNull(dispatcher.disconnectMonitor);
+        // destroying twice is harmless
+        dispatcher.destroy();
+    }
+
+    /**
+     * Mimics the Jetty request, channel and end point
+     */
+    public static class JettyLikeRequest extends MockHttpServletRequest {
+        public final EndPoint endPoint = new EndPoint();
+
+        public Object getHttpChannel() {
+            return new Channel(endPoint);
+        }
+    }
+
+    public static class Channel {
+        final EndPoint endPoint;
+
+        Channel(EndPoint endPoint) {
+            this.endPoint = endPoint;
+        }
+
+        public EndPoint getEndPoint() {
+            return endPoint;
+        }
+    }
+
+    public static class EndPoint {
+        public boolean open = true;
+
+        public boolean inputShutdown = false;
+
+        public boolean isOpen() {
+            return open;
+        }
+
+        public boolean isInputShutdown() {
+            return inputShutdown;
+        }
+    }
+
+    @Test
+    public void testJettyConnectionChecker() throws Exception {
+        // not jetty, cannot tell, and the checker disables itself
+        JettyConnectionChecker checker = new JettyConnectionChecker();
+        assertFalse(checker.isDisconnected(new MockHttpServletRequest(), null));
+        assertEquals(Boolean.FALSE, checker.jetty);
+        JettyLikeRequest disconnected = new JettyLikeRequest();
+        disconnected.endPoint.open = false;
+        assertFalse(checker.isDisconnected(disconnected, null));
+
+        checker = new JettyConnectionChecker();
+        JettyLikeRequest request = new JettyLikeRequest();
+        HttpServletRequest wrapped = new HttpServletRequestWrapper(request);
+        assertFalse(checker.isDisconnected(wrapped, null));
+        request.endPoint.inputShutdown = true;
+        assertTrue(checker.isDisconnected(wrapped, null));
+        request.endPoint.inputShutdown = false;
+        request.endPoint.open = false;
+        assertTrue(checker.isDisconnected(wrapped, null));
+        assertEquals(Boolean.TRUE, checker.jetty);
+    }
+}
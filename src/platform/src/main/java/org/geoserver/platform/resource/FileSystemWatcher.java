@@ -6,19 +6,36 @@
 package org.geoserver.platform.resource;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.resource.ResourceNotification.Kind;
+import org.geotools.util.logging.Logging;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
@@ -26,14 +43,44 @@ import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 /**
  * Active object (using a ScheduledExecutorService) used to watch file system for changes.
  * <p>
- * This implementation currently polls the file system and should be updated with Java 7 WatchService when available. The internal design is similar
- * to WatchService, WatchKey and WatchEvent in order to facilitate this transition.
+ * When available, the Java 7 WatchService is used to get notified of the changes by the
+ * operating system: the directories containing the watched resources (and, for watched
+ * directories, their sub-directories) get registered, and the events are coalesced and used to
+ * trigger a check of the affected resources only. The file system is polled instead if the
+ * WatchService is not available, if the directories are on a network file system (where the
+ * changes made by other hosts are not notified), or if the {@link #POLLING} property is set to
+ * true. Natively watched resources are still polled, at a much lower rate, as a safety net.
  * <p>
  * This implementation makes a few concessions to being associated with ResourceStore, reporting changes with resource paths rather than files.
  * 
  * @author Jody Garnett (Boundless)
  */
 public class FileSystemWatcher implements ResourceNotificationDispatcher, DisposableBean {
+
+    static final Logger LOGGER = Logging.getLogger(FileSystemWatcher.class);
+
+    /**
+     * System/environment variable/servlet context property forcing the watcher to poll the file
+     * system instead of using the native WatchService
+     */
+    public static final String POLLING = "GEOSERVER_FILESYSTEM_POLLING";
+
+    /**
+     * File system types that do not notify the changes made by other hosts
+     */
+    static final Set<String> NETWORK_FILE_SYSTEMS = new HashSet<String>(Arrays.asList("nfs",
+            "nfs4", "cifs", "smbfs", "smb2", "afs", "ncpfs", "fuse.sshfs", "glusterfs"));
+
+    /**
+     * How long native events are accumulated before checking the affected resources, in
+     * milliseconds (a single save usually generates a burst of events)
+     */
+    static final long COALESCE_DELAY = 100;
+
+    /**
+     * Natively watched resources get polled once every SWEEP_RATIO polling runs
+     */
+    static final int SWEEP_RATIO = 6;
     
     interface FileExtractor {
         public File getFile(String path);
@@ -99,8 +146,15 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
         
         File[] contents; // directory contents at last check
 
+        /** Absolute version of the file, used to match native events */
+        final File absolute;
+
+        /** True if the changes are notified by the native WatchService */
+        volatile boolean nativeWatch;
+
         public Watch(File file, String path) {
             this.file = file;
+            this.absolute = file.getAbsoluteFile();
             this.path = path;
             this.exsists = file.exists();
             this.last = exsists ? file.lastModified() : 0;
@@ -287,44 +341,270 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
     CopyOnWriteArrayList<Watch> watchers = new CopyOnWriteArrayList<Watch>();
     
     /**
-     * Note we have a single runnable here to review all outstanding Watch instances.
-     * The focus is on using minimal system resources while we wait for Java 7 WatchService
-     * (to be more efficient).
+     * Native WatchService, null if not (yet) available
+     */
+    private volatile WatchService watchService;
+
+    private boolean watchServiceInitialized;
+
+    /**
+     * The directories registered in the WatchService
+     */
+    final Map<Path, WatchKey> keys = new ConcurrentHashMap<Path, WatchKey>();
+
+    /**
+     * The natively watched resources affected by events, waiting to be checked
+     */
+    private final Set<Watch> pending = Collections
+            .newSetFromMap(new ConcurrentHashMap<Watch, Boolean>());
+
+    private final AtomicBoolean checkScheduled = new AtomicBoolean();
+
+    private int runs;
+
+    /**
+     * Note we have a single runnable here to review all outstanding Watch instances that are not
+     * natively watched, the others get reviewed only once every {@link #SWEEP_RATIO} runs.
      */
     private Runnable sync = new Runnable() {
         @Override
         public void run() {
             long now = System.currentTimeMillis();
+            boolean sweep = ++runs % SWEEP_RATIO == 0;
             for (Watch watch : watchers) {
                 if( watch.getListeners().isEmpty()){
                     watchers.remove(watch);
                     continue;
                 }
-                Delta delta = watch.changed(now);
-                if (delta != null) {
-                    
-                    /** Created based on created/removed/modified files */
-                    List<ResourceNotification.Event> events = ResourceNotification.delta(
-                            watch.file, delta.created, delta.removed, delta.modified);
-                    
-                    ResourceNotification notify = new ResourceNotification( watch.getPath(),
-                            delta.kind, watch.last, events);
-                    
-                    for (ResourceListener listener : watch.getListeners()) {
-                        try {
-                            listener.changed(notify);
-                        } catch (Throwable t) {
-                            Logger logger = Logger.getLogger(listener.getClass().getPackage()
-                                    .getName());
-                            logger.log(Level.FINE,
-                                    "Unable to notify " + watch + ":" + t.getMessage(), t);
-                        }
+                if (watch.nativeWatch && !sweep) {
+                    continue;
+                }
+                check(watch, now);
+            }
+        }
+    };
+
+    /**
+     * Checks the watches affected by native events
+     */
+    private Runnable checkPending = new Runnable() {
+        @Override
+        public void run() {
+            checkScheduled.set(false);
+            long now = System.currentTimeMillis();
+            for (Iterator<Watch> it = pending.iterator(); it.hasNext();) {
+                Watch watch = it.next();
+                it.remove();
+                if (watchers.contains(watch)) {
+                    check(watch, now);
+                    // directories might have been created in the meantime
+                    register(watch);
+                }
+            }
+        }
+    };
+
+    /**
+     * Receives the native events and marks the affected watches as pending
+     */
+    private Runnable receiveEvents = new Runnable() {
+        @Override
+        public void run() {
+            WatchService service = watchService;
+            while (service != null) {
+                WatchKey key;
+                try {
+                    key = service.take();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (ClosedWatchServiceException e) {
+                    return;
+                }
+
+                Path dir = (Path) key.watchable();
+                File directory = dir.toFile();
+                // the directory itself, its parent (its last modified changed) and the children
+                // reported by the events
+                Set<File> affected = new HashSet<File>();
+                affected.add(directory);
+                if (directory.getParentFile() != null) {
+                    affected.add(directory.getParentFile());
+                }
+                boolean overflow = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        overflow = true;
+                    } else {
+                        affected.add(dir.resolve((Path) event.context()).toFile());
+                    }
+                }
+                if (!key.reset()) {
+                    keys.remove(dir);
+                }
+
+                for (Watch watch : watchers) {
+                    if (watch.nativeWatch
+                            && (affected.contains(watch.absolute) || (overflow && directory
+                                    .equals(watch.absolute.getParentFile())))) {
+                        pending.add(watch);
+                    }
+                }
+                if (!pending.isEmpty() && checkScheduled.compareAndSet(false, true)) {
+                    try {
+                        pool.schedule(checkPending, COALESCE_DELAY, TimeUnit.MILLISECONDS);
+                    } catch (RejectedExecutionException e) {
+                        // shutting down
+                        return;
                     }
                 }
             }
         }
     };
 
+    /**
+     * Checks the watch for changes and notifies its listeners
+     */
+    private void check(Watch watch, long now) {
+        Delta delta = watch.changed(now);
+        if (delta != null) {
+            
+            /** Created based on created/removed/modified files */
+            List<ResourceNotification.Event> events = ResourceNotification.delta(
+                    watch.file, delta.created, delta.removed, delta.modified);
+            
+            ResourceNotification notify = new ResourceNotification( watch.getPath(),
+                    delta.kind, watch.last, events);
+            
+            for (ResourceListener listener : watch.getListeners()) {
+                try {
+                    listener.changed(notify);
+                } catch (Throwable t) {
+                    Logger logger = Logger.getLogger(listener.getClass().getPackage()
+                            .getName());
+                    logger.log(Level.FINE,
+                            "Unable to notify " + watch + ":" + t.getMessage(), t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets up the native WatchService, unless disabled or not supported
+     */
+    private void initWatchService() {
+        if (watchServiceInitialized) {
+            return;
+        }
+        watchServiceInitialized = true;
+        if (Boolean.valueOf(GeoServerExtensions.getProperty(POLLING))) {
+            LOGGER.config("Native file system watching disabled, will poll the file system");
+            return;
+        }
+        try {
+            WatchService service = FileSystems.getDefault().newWatchService();
+            if (service.getClass().getSimpleName().contains("Polling")) {
+                // the JDK falls back on its own polling on some platforms, ours is better tuned
+                service.close();
+                LOGGER.config("Native file system watching not available, will poll the file system");
+                return;
+            }
+            watchService = service;
+            Thread thread = tFactory.newThread(receiveEvents);
+            thread.start();
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.log(Level.CONFIG, "Native file system watching not available, "
+                    + "will poll the file system", e);
+        }
+    }
+
+    /**
+     * Registers the directories needed to natively watch the resource, falling back on polling if
+     * that is not possible
+     */
+    private synchronized void register(Watch watch) {
+        if (watchService == null) {
+            return;
+        }
+        File parent = watch.absolute.getParentFile();
+        // the parent is needed to track creation, modification and removal
+        boolean registered = parent != null && registerDirectory(parent);
+        if (registered && watch.absolute.isDirectory()) {
+            // the directory and its children, the latter to track changes in the
+            // sub-directories, which the polling would report as modified
+            registered = registerDirectory(watch.absolute);
+            File[] children = watch.absolute.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    if (registered && child.isDirectory()) {
+                        registered = registerDirectory(child);
+                    }
+                }
+            }
+        }
+        watch.nativeWatch = registered;
+    }
+
+    private boolean registerDirectory(File directory) {
+        Path path = directory.toPath();
+        if (keys.containsKey(path)) {
+            return true;
+        }
+        if (!directory.isDirectory()) {
+            return false;
+        }
+        try {
+            String type = java.nio.file.Files.getFileStore(path).type();
+            if (type != null && NETWORK_FILE_SYSTEMS.contains(type.toLowerCase())) {
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine(directory + " is on a " + type
+                            + " network file system, will be polled");
+                }
+                return false;
+            }
+            WatchKey key = path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            keys.put(path, key);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            // e.g., too many watches, fall back on polling
+            LOGGER.log(Level.FINE, "Could not natively watch " + directory
+                    + ", will be polled", e);
+            return false;
+        }
+    }
+
+    /**
+     * Cancels the registrations no longer needed by the remaining watches
+     */
+    private synchronized void unregisterUnused() {
+        if (watchService == null) {
+            return;
+        }
+        Set<Path> used = new HashSet<Path>();
+        for (Watch watch : watchers) {
+            if (watch.nativeWatch) {
+                File parent = watch.absolute.getParentFile();
+                if (parent != null) {
+                    used.add(parent.toPath());
+                }
+                used.add(watch.absolute.toPath());
+                File[] children = watch.absolute.listFiles();
+                if (children != null) {
+                    for (File child : children) {
+                        used.add(child.toPath());
+                    }
+                }
+            }
+        }
+        for (Iterator<Map.Entry<Path, WatchKey>> it = keys.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Path, WatchKey> entry = it.next();
+            if (!used.contains(entry.getKey())) {
+                entry.getValue().cancel();
+                it.remove();
+            }
+        }
+    }
+
     private ScheduledFuture<?> monitor;
 
     private TimeUnit unit = TimeUnit.SECONDS;
@@ -378,6 +658,8 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
         Watch watch = watch( file, path );
         if( watch == null ){
             watch = new Watch(file, path);
+            initWatchService();
+            register(watch);
             watchers.add(watch);
             if( monitor == null){
                 monitor = pool.scheduleWithFixedDelay(sync, delay, delay, unit);
@@ -408,6 +690,9 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
                 monitor = null;
             }
         }
+        if (removed) {
+            unregisterUnused();
+        }
         return removed;
     }
 
@@ -429,6 +714,13 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
     @Override
     public void destroy() throws Exception {
         pool.shutdown();
+        synchronized (this) {
+            if (watchService != null) {
+                watchService.close();
+                watchService = null;
+                keys.clear();
+            }
+        }
     }
 
     @Override
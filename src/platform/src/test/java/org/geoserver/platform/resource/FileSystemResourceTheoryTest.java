@@ -15,6 +15,7 @@ import java.util.concurrent.locks.ReentrantLock;
 
 import org.geoserver.platform.resource.ResourceNotification.Event;
 import org.geoserver.platform.resource.ResourceNotification.Kind;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -163,6 +164,28 @@ public class FileSystemResourceTheoryTest extends ResourceTheoryTest {
         store.get(Paths.BASE).removeListener(listener);
     }
 
+    @Test
+    public void nativeDirectoryEvents() throws Exception {
+        AwaitResourceListener listener = new AwaitResourceListener();
+        store.get("DirC").addListener(listener);
+        // native watching is not available everywhere
+        Assume.assumeFalse(store.watcher.keys.isEmpty());
+        // the polling alone would not catch the change in time
+        store.watcher.schedule(1, TimeUnit.MINUTES);
+        try {
+            Paths.toFile(store.baseDirectory, "DirC/FileX").createNewFile();
+            ResourceNotification n = listener.await(5, TimeUnit.SECONDS);
+            assertNotNull("detected event", n);
+            assertEquals(Kind.ENTRY_MODIFY, n.getKind());
+            assertEquals("DirC", n.getPath());
+            Event e = n.events().get(0);
+            assertEquals(Kind.ENTRY_CREATE, e.getKind());
+            assertEquals("FileX", e.getPath());
+        } finally {
+            store.get("DirC").removeListener(listener);
+        }
+    }
+
     /** ResourceListener that traps the next ResourceNotification for testing */
     static class AwaitResourceListener extends Await<ResourceNotification> implements ResourceListener {
         @Override
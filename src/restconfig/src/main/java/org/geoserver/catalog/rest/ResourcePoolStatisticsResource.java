@@ -0,0 +1,51 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.ResourceCacheStatistics;
+import org.geoserver.rest.MapResource;
+
+/**
+ * Returns the configuration and usage statistics of the resource pool caches
+ */
+public class ResourcePoolStatisticsResource extends MapResource {
+
+    Catalog catalog;
+
+    public ResourcePoolStatisticsResource(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public Map getMap() throws Exception {
+        Map<String, Object> caches = new LinkedHashMap<String, Object>();
+        for (ResourceCacheStatistics statistics : catalog.getResourcePool().getCacheStatistics()
+                .values()) {
+            Map<String, Object> cache = new LinkedHashMap<String, Object>();
+            cache.put("policy", statistics.getPolicy());
+            cache.put("size", statistics.getSize());
+            cache.put("weight", statistics.getWeight());
+            cache.put("maxEntries", statistics.getMaxEntries());
+            cache.put("maxWeight", statistics.getMaxWeight());
+            cache.put("expireAfterAccess", statistics.getExpireAfterAccess());
+            cache.put("hitCount", statistics.getHitCount());
+            cache.put("missCount", statistics.getMissCount());
+            cache.put("hitRatio", statistics.getHitRatio());
+            cache.put("loadCount", statistics.getLoadCount());
+            cache.put("totalLoadTime", statistics.getTotalLoadTime());
+            cache.put("averageLoadTime", statistics.getAverageLoadTime());
+            cache.put("evictionCount", statistics.getEvictionCount());
+            caches.put(statistics.getName(), cache);
+        }
+
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("caches", caches);
+        return map;
+    }
+}
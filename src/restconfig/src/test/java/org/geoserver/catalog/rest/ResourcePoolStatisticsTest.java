@@ -0,0 +1,40 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import net.sf.json.JSON;
+import net.sf.json.JSONObject;
+
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.data.test.MockData;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class ResourcePoolStatisticsTest extends CatalogRESTTestSupport {
+
+    @Test
+    public void testGetAsXML() throws Exception {
+        Document dom = getAsDOM("/rest/resourcepool.xml");
+        assertEquals("SOFT", xp.evaluate("//caches/featureType/policy", dom));
+        assertEquals("LRU", xp.evaluate("//caches/style/policy", dom));
+    }
+
+    @Test
+    public void testGetAsJSON() throws Exception {
+        FeatureTypeInfo info = catalog.getFeatureTypeByName(MockData.BUILDINGS.getPrefix(),
+                MockData.BUILDINGS.getLocalPart());
+        catalog.getResourcePool().getFeatureType(info);
+
+        JSON json = getAsJSON("/rest/resourcepool.json");
+        assertTrue(json instanceof JSONObject);
+        JSONObject featureType = ((JSONObject) json).getJSONObject("caches").getJSONObject(
+                "featureType");
+        assertTrue(featureType.getInt("size") > 0);
+        assertTrue(featureType.getInt("loadCount") > 0);
+    }
+}
@@ -47,6 +47,7 @@ import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.catalog.util.ReaderDimensionsAccessor;
 import org.geoserver.config.GeoServer;
 import org.geoserver.data.util.CoverageUtils;
+import org.geoserver.ows.CancellationToken;
 import org.geoserver.ows.util.RequestUtils;
 import org.geoserver.wcs.response.Wcs10CapsTransformer;
 import org.geoserver.wcs.response.Wcs10DescribeCoverageTransformer;
@@ -479,9 +480,11 @@ public class DefaultWebCoverageService100 implements WebCoverageService100 {
                     AbstractGridFormat.USE_JAI_IMAGEREAD);
             
             //
-            // perform read
+            // perform read, unless the client already went away
             //
+            CancellationToken.checkCurrent();
             coverage = (GridCoverage2D) reader.read(readParameters);
+            CancellationToken.checkCurrent();
             if ((coverage == null) || !(coverage instanceof GridCoverage2D)) {
                 throw new IOException("No raster data found in the request (it may be that " +
                 		"the request bbox is outside of the coverage area, or that the filters used " +
@@ -45,6 +45,7 @@ import org.geoserver.catalog.CoverageDimensionInfo;
 import org.geoserver.catalog.CoverageInfo;
 import org.geoserver.config.GeoServer;
 import org.geoserver.data.util.CoverageUtils;
+import org.geoserver.ows.CancellationToken;
 import org.geoserver.ows.util.RequestUtils;
 import org.geoserver.wcs.kvp.GridCS;
 import org.geoserver.wcs.kvp.GridType;
@@ -353,9 +354,11 @@ public class DefaultWebCoverageService111 implements WebCoverageService111 {
                     AbstractGridFormat.USE_JAI_IMAGEREAD);
 
             //
-            // perform Read ...
+            // perform Read, unless the client already went away ...
             //
+            CancellationToken.checkCurrent();
             coverage = (GridCoverage2D) reader.read(readParameters);
+            CancellationToken.checkCurrent();
             if ((coverage == null) || !(coverage instanceof GridCoverage2D)) {
                 throw new IOException("The requested coverage could not be found.");
             }
@@ -33,6 +33,7 @@ import org.geoserver.catalog.CoverageDimensionCustomizerReader.GridCoverageWrapp
 import org.geoserver.catalog.CoverageInfo;
 import org.geoserver.catalog.LayerInfo;
 import org.geoserver.data.util.CoverageUtils;
+import org.geoserver.ows.CancellationToken;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wcs.CoverageCleanerCallback;
 import org.geoserver.wcs.WCSInfo;
@@ -925,6 +926,8 @@ public class GetCoverage {
         // === read
         // check limits
         WCSUtils.checkInputLimits(wcs,cinfo,reader,readGG);
+        // don't read if the client already went away
+        CancellationToken.checkCurrent();
         coverage= RequestUtils.readBestCoverage(
                 reader, 
                 readParameters,  
@@ -932,6 +935,7 @@ public class GetCoverage {
                 spatialInterpolation,
                 request.getOverviewPolicy(),
                 hints);
+        CancellationToken.checkCurrent();
         // check limits again
         if (coverage != null) {
             if (incrementalInputSize == null) {
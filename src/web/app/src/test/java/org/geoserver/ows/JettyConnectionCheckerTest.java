@@ -0,0 +1,104 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks {@link JettyConnectionChecker} against a real Jetty connection, lives here as this is
+ * the module having Jetty in the test classpath
+ */
+public class JettyConnectionCheckerTest {
+
+    Server server;
+
+    final JettyConnectionChecker checker = new JettyConnectionChecker();
+
+    final CountDownLatch entered = new CountDownLatch(1);
+
+    final CountDownLatch done = new CountDownLatch(1);
+
+    final AtomicBoolean disconnectedOnEntry = new AtomicBoolean();
+
+    final AtomicBoolean disconnectDetected = new AtomicBoolean();
+
+    @Before
+    public void startServer() throws Exception {
+        server = new Server(0);
+        server.setHandler(new AbstractHandler() {
+
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request,
+                    HttpServletResponse response) throws IOException, ServletException {
+                try {
+                    disconnectedOnEntry.set(checker.isDisconnected(request, response));
+                    entered.countDown();
+                    // poll like the disconnect monitor would, without ever reading the request
+                    long end = System.currentTimeMillis() + 10000;
+                    while (System.currentTimeMillis() < end) {
+                        if (checker.isDisconnected(request, response)) {
+                            disconnectDetected.set(true);
+                            break;
+                        }
+                        Thread.sleep(50);
+                    }
+                } catch (InterruptedException e) {
+                    throw new ServletException(e);
+                } finally {
+                    baseRequest.setHandled(true);
+                    done.countDown();
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testClientDisconnect() throws Exception {
+        int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        Socket socket = new Socket("localhost", port);
+        try {
+            OutputStream os = socket.getOutputStream();
+            os.write("GET /slow HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes("ISO-8859-1"));
+            os.flush();
+
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+            assertEquals(Boolean.TRUE, checker.jetty);
+            assertFalse(disconnectedOnEntry.get());
+        } finally {
+            // sends a FIN while Jetty is not reading from the connection
+            socket.close();
+        }
+
+        assertTrue(done.await(20, TimeUnit.SECONDS));
+        assertTrue(disconnectDetected.get());
+    }
+}
@@ -27,6 +27,10 @@ import org.geoserver.config.CoverageAccessInfo;
 import org.geoserver.config.GeoServerDataDirectory;
 import org.geoserver.config.GeoServerInfo;
 import org.geoserver.config.JAIInfo;
+import org.geoserver.security.ResourceAccessManager;
+import org.geoserver.security.ResourceAccessManagerWrapper;
+import org.geoserver.security.SecureCatalogImpl;
+import org.geoserver.security.impl.DefaultResourceAccessManager;
 import org.geoserver.web.util.MapModel;
 import org.geoserver.web.wicket.ParamResourceModel;
 import org.geotools.data.DataAccess;
@@ -78,6 +82,8 @@ public class StatusPage extends ServerAdminPage {
     
     private static final String KEY_JAVA_RENDERER = "renderer";
 
+    private static final String KEY_ACCESS_CACHE = "access_cache";
+
     public StatusPage() {
         values = new HashMap<String, String>();
         updateModel();
@@ -101,6 +107,7 @@ public class StatusPage extends ServerAdminPage {
         add(new Label("coverage.keepalivetime", new MapModel(values, KEY_COVERAGEACCESS_KEEP_ALIVE_TIME)));
         add(new Label("updateSequence", new MapModel(values, KEY_UPDATE_SEQUENCE)));
         add(new Label("renderer", new MapModel(values, KEY_JAVA_RENDERER)));
+        add(new Label("accessCache", new MapModel(values, KEY_ACCESS_CACHE)));
    
         add(new Link("free.locks") {
             private static final long serialVersionUID = 1L;
@@ -202,6 +209,31 @@ public class StatusPage extends ServerAdminPage {
 
         values.put(KEY_UPDATE_SEQUENCE, Long.toString(geoServerInfo.getUpdateSequence()));
         values.put(KEY_JAVA_RENDERER, checkRenderer());
+        values.put(KEY_ACCESS_CACHE, getAccessCacheStatus());
+    }
+
+    /**
+     * Reports the size and hit rate of the layer security access decision cache
+     */
+    private String getAccessCacheStatus() {
+        Object secureCatalog = getGeoServerApplication().getBean("secureCatalog");
+        if (!(secureCatalog instanceof SecureCatalogImpl)) {
+            return "-";
+        }
+        ResourceAccessManager manager = ((SecureCatalogImpl) secureCatalog)
+                .getResourceAccessManager();
+        while (manager instanceof ResourceAccessManagerWrapper) {
+            manager = ((ResourceAccessManagerWrapper) manager).getDelegate();
+        }
+        if (!(manager instanceof DefaultResourceAccessManager)) {
+            return "-";
+        }
+        DefaultResourceAccessManager defaultManager = (DefaultResourceAccessManager) manager;
+        NumberFormat format = NumberFormat.getPercentInstance();
+        format.setMaximumFractionDigits(1);
+        return new ParamResourceModel("StatusPage.accessCacheStatus", this,
+                defaultManager.getCacheSize(),
+                format.format(defaultManager.getCacheStats().hitRate())).getString();
     }
 
     /**
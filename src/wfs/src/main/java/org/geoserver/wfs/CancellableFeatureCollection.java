@@ -0,0 +1,57 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import java.util.NoSuchElementException;
+
+import org.geoserver.ows.CancellationToken;
+import org.geoserver.ows.ClientStreamAbortedException;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.collection.DecoratingSimpleFeatureCollection;
+import org.geotools.feature.collection.DecoratingSimpleFeatureIterator;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Stops the iteration over the wrapped collection once the request is cancelled, so that the
+ * output formats stop reading and encoding features for a client that went away. The
+ * {@link ClientStreamAbortedException} is thrown wrapped in a runtime exception, the iterator
+ * methods cannot throw checked ones, the dispatcher looks for it in the exception causes.
+ */
+class CancellableFeatureCollection extends DecoratingSimpleFeatureCollection {
+
+    final CancellationToken token;
+
+    CancellableFeatureCollection(SimpleFeatureCollection delegate, CancellationToken token) {
+        super(delegate);
+        this.token = token;
+    }
+
+    @Override
+    public SimpleFeatureIterator features() {
+        check();
+        return new DecoratingSimpleFeatureIterator(super.features()) {
+            @Override
+            public boolean hasNext() {
+                check();
+                return super.hasNext();
+            }
+
+            @Override
+            public SimpleFeature next() throws NoSuchElementException {
+                check();
+                return super.next();
+            }
+        };
+    }
+
+    void check() {
+        try {
+            token.check();
+        } catch (ClientStreamAbortedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -25,11 +25,18 @@ class CountExecutor {
 
     Query query;
 
+    FeatureCountCache countCache;
+
     int providedCount = COUNT_UNSET;
 
     public CountExecutor(FeatureSource source, Query query) {
+        this(source, query, null);
+    }
+
+    public CountExecutor(FeatureSource source, Query query, FeatureCountCache countCache) {
         this.source = source;
         this.query = query;
+        this.countCache = countCache;
     }
 
     public CountExecutor(int providedCount) {
@@ -42,6 +49,9 @@ class CountExecutor {
         } else {
             // make sure we get a count by getting a feature colleciton
             // FeatureSource.getCount(...) can return -1
+            if (countCache != null) {
+                return countCache.size(source, query, source.getFeatures(query));
+            }
             return source.getFeatures(query).size();
         }
     }
@@ -52,6 +52,11 @@ public class DefaultWebFeatureService implements WebFeatureService, ApplicationC
      */
     protected FilterFactory2 filterFactory;
 
+    /**
+     * Feature count cache, used by GetFeature
+     */
+    protected FeatureCountCache countCache;
+
     /**
      * The spring application context, used to look up transaction listeners, plugins and
      * element handlers
@@ -70,6 +75,13 @@ public class DefaultWebFeatureService implements WebFeatureService, ApplicationC
         this.filterFactory = filterFactory;
     }
 
+    /**
+     * Sets the feature count cache.
+     */
+    public void setCountCache(FeatureCountCache countCache) {
+        this.countCache = countCache;
+    }
+
     public WFSInfo getServiceInfo() {
         return geoServer.getService(WFSInfo.class);
     }
@@ -118,6 +130,7 @@ public class DefaultWebFeatureService implements WebFeatureService, ApplicationC
         throws WFSException {
         GetFeature getFeature = new GetFeature(getServiceInfo(), catalog);
         getFeature.setFilterFactory(filterFactory);
+        getFeature.setCountCache(countCache);
 
         return getFeature.run(new GetFeatureRequest.WFS11(request));
     }
@@ -167,6 +180,7 @@ public class DefaultWebFeatureService implements WebFeatureService, ApplicationC
         throws WFSException {
         Transaction transaction = new Transaction(getServiceInfo(), catalog, context);
         transaction.setFilterFactory(filterFactory);
+        transaction.setCountCache(countCache);
 
         return (TransactionResponseType) 
             transaction.transaction(new TransactionRequest.WFS11(request)).getAdaptee();
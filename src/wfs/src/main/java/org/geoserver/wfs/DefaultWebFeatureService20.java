@@ -49,6 +49,9 @@ public class DefaultWebFeatureService20 implements WebFeatureService20, Applicat
     /** filter factory */
     protected FilterFactory2 filterFactory;
 
+    /** feature count cache */
+    protected FeatureCountCache countCache;
+
     /**
      * The spring application context, used to look up transaction listeners, plugins and
      * element handlers
@@ -62,6 +65,10 @@ public class DefaultWebFeatureService20 implements WebFeatureService20, Applicat
     public void setFilterFactory(FilterFactory2 filterFactory) {
         this.filterFactory = filterFactory;
     }
+
+    public void setCountCache(FeatureCountCache countCache) {
+        this.countCache = countCache;
+    }
     
     public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
         this.context = applicationContext;
@@ -93,6 +100,7 @@ public class DefaultWebFeatureService20 implements WebFeatureService20, Applicat
     public FeatureCollectionResponse getFeature(GetFeatureType request) throws WFSException {
         GetFeature gf = new GetFeature(getServiceInfo(), getCatalog());
         gf.setFilterFactory(filterFactory);
+        gf.setCountCache(countCache);
         gf.setStoredQueryProvider(getStoredQueryProvider());
         
         return gf.run(new GetFeatureRequest.WFS20(request));
@@ -117,6 +125,7 @@ public class DefaultWebFeatureService20 implements WebFeatureService20, Applicat
     public TransactionResponseType transaction(TransactionType request) throws WFSException {
         Transaction tx = new Transaction(getServiceInfo(), getCatalog(), context);
         tx.setFilterFactory(filterFactory);
+        tx.setCountCache(countCache);
         
         return (TransactionResponseType) 
             tx.transaction(new TransactionRequest.WFS20(request)).getAdaptee();
@@ -0,0 +1,319 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.namespace.QName;
+
+import org.geoserver.catalog.BoundedCache;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Query;
+import org.geotools.factory.Hints;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.util.Utilities;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.type.Name;
+import org.opengis.filter.Filter;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Caches the number of features matched by the GetFeature queries, so that paging through a large
+ * result does not run a full count for each page.
+ * <p>
+ * Counts are keyed by feature type, filter, view parameters and the current user, since the
+ * security subsystem can restrict what each user sees. Only the count of the whole result is
+ * stored, the size of a page is derived from it. The entries of a feature type are dropped when a
+ * WFS transaction modifies it, and again once the transaction is over, whatever the WFS version,
+ * changes made behind GeoServer back are picked up when the entries expire.
+ * </p>
+ * <p>
+ * The cache is disabled by default, the {@code GS_WFS_COUNT_CACHE_SIZE} property sets the max
+ * number of counts kept, the {@code GS_WFS_COUNT_CACHE_TTL} property how long, in seconds, a count
+ * is considered valid (defaults to 60).
+ * </p>
+ */
+public class FeatureCountCache implements TransactionListener {
+
+    static final Logger LOGGER = Logging.getLogger(FeatureCountCache.class);
+
+    public static final String CACHE_SIZE_KEY = "GS_WFS_COUNT_CACHE_SIZE";
+
+    public static final String CACHE_TTL_KEY = "GS_WFS_COUNT_CACHE_TTL";
+
+    static final int DEFAULT_TTL = 60;
+
+    /**
+     * The feature types modified by the transaction running in the current thread, dropped again
+     * once it is committed, in case a count was run in the meantime
+     */
+    static final ThreadLocal<Set<QName>> MODIFIED = new ThreadLocal<Set<QName>>();
+
+    static class CountKey {
+        Name typeName;
+
+        Filter filter;
+
+        Object viewParams;
+
+        String version;
+
+        String user;
+
+        Set<String> roles;
+
+        CountKey(Name typeName, Query query, Authentication auth) {
+            this.typeName = typeName;
+            this.filter = query.getFilter();
+            this.viewParams = query.getHints() != null
+                    ? query.getHints().get(Hints.VIRTUAL_TABLE_PARAMETERS) : null;
+            this.version = query.getVersion();
+            if (auth != null) {
+                this.user = auth.getName();
+                this.roles = new HashSet<String>();
+                for (GrantedAuthority authority : auth.getAuthorities()) {
+                    roles.add(authority.getAuthority());
+                }
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return Utilities.deepHashCode(new Object[] { typeName, filter, viewParams, version,
+                    user, roles });
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof CountKey)) {
+                return false;
+            }
+            CountKey other = (CountKey) obj;
+            return Utilities.equals(typeName, other.typeName)
+                    && Utilities.equals(filter, other.filter)
+                    && Utilities.equals(viewParams, other.viewParams)
+                    && Utilities.equals(version, other.version)
+                    && Utilities.equals(user, other.user) && Utilities.equals(roles, other.roles);
+        }
+    }
+
+    static class CachedCount {
+        int count;
+
+        long created;
+
+        CachedCount(int count, long created) {
+            this.count = count;
+            this.created = created;
+        }
+    }
+
+    final BoundedCache<CountKey, CachedCount> cache;
+
+    final long timeToLive;
+
+    /**
+     * Bumped on every invalidation, a count that started before one is not stored, it might be
+     * stale already
+     */
+    final AtomicLong generation = new AtomicLong();
+
+    final AtomicLong hits = new AtomicLong();
+
+    final AtomicLong misses = new AtomicLong();
+
+    final AtomicLong countTime = new AtomicLong();
+
+    /**
+     * Builds the cache reading its configuration from the {@link #CACHE_SIZE_KEY} and
+     * {@link #CACHE_TTL_KEY} properties
+     */
+    public FeatureCountCache() {
+        this(getIntProperty(CACHE_SIZE_KEY, 0), getIntProperty(CACHE_TTL_KEY, DEFAULT_TTL));
+    }
+
+    /**
+     * Builds the cache
+     *
+     * @param maxEntries the max number of counts cached, zero or negative to disable caching
+     * @param timeToLive how long a count is considered valid, in seconds
+     */
+    public FeatureCountCache(int maxEntries, int timeToLive) {
+        this.cache = maxEntries > 0 ? new BoundedCache<CountKey, CachedCount>(
+                BoundedCache.Policy.LRU, maxEntries, 0, 0, null, null) : null;
+        this.timeToLive = TimeUnit.SECONDS.toNanos(timeToLive);
+    }
+
+    static int getIntProperty(String key, int defaultValue) {
+        String value = GeoServerExtensions.getProperty(key);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + key + ": " + value + ", using "
+                        + defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Returns the size of the feature collection, using the cached total count of the query, if
+     * available, to avoid running the count
+     *
+     * @param source the source the features are read from
+     * @param query the query used to build the collection
+     * @param features the collection, counted if no cached value can be used
+     */
+    public int size(FeatureSource<?, ?> source, Query query,
+            FeatureCollection<?, ?> features) throws IOException {
+        CountKey key = cache != null ? getKey(source, query) : null;
+        int offset = query.getStartIndex() != null ? query.getStartIndex() : 0;
+        if (key != null) {
+            CachedCount cached = cache.get(key);
+            if (cached != null && System.nanoTime() - cached.created <= timeToLive) {
+                hits.incrementAndGet();
+                return Math.max(0, Math.min(query.getMaxFeatures(), cached.count - offset));
+            }
+        }
+
+        misses.incrementAndGet();
+        long generation = this.generation.get();
+        long start = System.nanoTime();
+        int count = features.size();
+        long elapsed = System.nanoTime() - start;
+        countTime.addAndGet(elapsed);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Counted " + count + " features for " + source.getName() + " in "
+                    + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms");
+        }
+
+        // only the count of the whole result can be reused for the other pages
+        if (key != null && count >= 0 && offset == 0 && query.getMaxFeatures() == Query.DEFAULT_MAX
+                && generation == this.generation.get()) {
+            cache.put(key, new CachedCount(count, start));
+        }
+        return count;
+    }
+
+    /**
+     * Returns the cache key for the query, or null if the query cannot be cached
+     */
+    CountKey getKey(FeatureSource<?, ?> source, Query query) {
+        if (query.getJoins() != null && !query.getJoins().isEmpty()) {
+            return null;
+        }
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return new CountKey(source.getSchema().getName(), query, auth);
+    }
+
+    /**
+     * Drops the cached counts of the specified feature type
+     */
+    public void invalidate(QName typeName) {
+        generation.incrementAndGet();
+        if (cache == null) {
+            return;
+        }
+        List<CountKey> keys = new ArrayList<CountKey>();
+        for (CountKey key : cache.keySet()) {
+            if (typeName.getLocalPart().equals(key.typeName.getLocalPart())
+                    && Utilities.equals(emptyToNull(typeName.getNamespaceURI()),
+                            emptyToNull(key.typeName.getNamespaceURI()))) {
+                keys.add(key);
+            }
+        }
+        for (CountKey key : keys) {
+            cache.remove(key);
+        }
+    }
+
+    static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Drops all the cached counts
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * The total time spent counting features, in milliseconds
+     */
+    public long getTotalCountTime() {
+        return TimeUnit.NANOSECONDS.toMillis(countTime.get());
+    }
+
+    /**
+     * The number of cached counts
+     */
+    public int getSize() {
+        return cache != null ? cache.size() : 0;
+    }
+
+    @Override
+    public void dataStoreChange(TransactionEvent event) throws WFSException {
+        if (event.getLayerName() == null) {
+            return;
+        }
+        invalidate(event.getLayerName());
+        Set<QName> modified = MODIFIED.get();
+        if (modified == null) {
+            modified = new HashSet<QName>();
+            MODIFIED.set(modified);
+        }
+        modified.add(event.getLayerName());
+    }
+
+    /**
+     * Called by {@link Transaction} once a transaction is committed or rolled back, drops again
+     * the counts of the feature types it modified, a count run before the commit could have been
+     * cached meanwhile
+     */
+    public void transactionFinished() {
+        Collection<QName> modified = MODIFIED.get();
+        MODIFIED.remove();
+        if (modified != null) {
+            for (QName typeName : modified) {
+                invalidate(typeName);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FeatureCountCache[size=" + getSize() + ", hits=" + hits + ", misses=" + misses
+                + ", countTime=" + getTotalCountTime() + "ms]";
+    }
+}
@@ -0,0 +1,30 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+/**
+ * JMX view of the {@link FeatureCountCache} statistics
+ */
+public interface FeatureCountCacheMXBean {
+
+    /**
+     * Whether the counts are cached at all, when disabled every count is a miss
+     */
+    boolean isEnabled();
+
+    /**
+     * The number of cached counts
+     */
+    int getSize();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    /**
+     * The total time spent counting features, in milliseconds
+     */
+    long getTotalCountTime();
+}
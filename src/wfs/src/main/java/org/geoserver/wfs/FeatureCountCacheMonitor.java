@@ -0,0 +1,92 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.geotools.util.logging.Logging;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Publishes the statistics of the {@link FeatureCountCache} in the platform MBean server
+ */
+public class FeatureCountCacheMonitor implements FeatureCountCacheMXBean, InitializingBean,
+        DisposableBean {
+
+    static final Logger LOGGER = Logging.getLogger(FeatureCountCacheMonitor.class);
+
+    public static final String OBJECT_NAME = "org.geoserver:type=WFSFeatureCountCache";
+
+    FeatureCountCache cache;
+
+    ObjectName name;
+
+    public FeatureCountCacheMonitor(FeatureCountCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return cache.isEnabled();
+    }
+
+    @Override
+    public int getSize() {
+        return cache.getSize();
+    }
+
+    @Override
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    @Override
+    public long getTotalCountTime() {
+        return cache.getTotalCountTime();
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            // multiple application contexts in the same JVM (e.g., tests), keep the last one
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            this.name = name;
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not register the feature count cache MBean", e);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (name == null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Could not unregister the feature count cache MBean", e);
+        }
+        name = null;
+    }
+}
@@ -30,10 +30,12 @@ import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.ResourcePool;
 import org.geoserver.feature.TypeNameExtractingVisitor;
+import org.geoserver.ows.CancellationToken;
 import org.geoserver.ows.Dispatcher;
 import org.geoserver.ows.Request;
 import org.geoserver.ows.URLMangler.URLType;
 import org.geoserver.ows.util.KvpMap;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.wfs.request.FeatureCollectionResponse;
 import org.geoserver.wfs.request.GetFeatureRequest;
 import org.geoserver.wfs.request.Lock;
@@ -120,6 +122,17 @@ public class GetFeature {
     /** Standard logging instance for class */
     private static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.vfny.geoserver.requests");
 
+    /**
+     * Enables keyset paging, the next links carry a cursor allowing to read the following page of
+     * a sorted query with a range filter instead of an offset, see {@link KeysetCursor}
+     */
+    public static final String KEYSET_PAGING_KEY = "GS_WFS_KEYSET_PAGING";
+
+    /**
+     * The KVP parameter carrying the keyset paging cursor
+     */
+    public static final String CURSOR_PARAM = "CURSOR";
+
     /**
      * Describes the allowed filters we support for join queries.
      */
@@ -180,6 +193,12 @@ public class GetFeature {
     /** stored query provider */
     StoredQueryProvider storedQueryProvider;
 
+    /** feature count cache */
+    FeatureCountCache countCache;
+
+    /** cursor of the page following the one being returned, if keyset paging is possible */
+    KeysetCursor nextCursor;
+
     /**
      * Creates the WFS 1.0/1.1 GetFeature operation.
      */
@@ -225,6 +244,13 @@ public class GetFeature {
         this.storedQueryProvider = storedQueryProvider;
     }
 
+    /**
+     * Sets the cache used to avoid counting the same features over and over while paging
+     */
+    public void setCountCache(FeatureCountCache countCache) {
+        this.countCache = countCache;
+    }
+
     public FeatureCollectionResponse run(GetFeatureRequest request)
         throws WFSException {
         List<Query> queries = request.getQueries();
@@ -318,6 +344,12 @@ public class GetFeature {
         boolean calculateSize = !(("1.0".equals(request.getVersion()) || "1.0.0".equals(request.getVersion())) && 
             (queries.size() == 1 || maxFeatures == Integer.MAX_VALUE));
 
+        // keyset paging, only for single query requests
+        boolean keysetPaging = queries.size() == 1 && totalOffset > -1
+                && Boolean.parseBoolean(GeoServerExtensions.getProperty(KEYSET_PAGING_KEY));
+        KeysetCursor cursor = keysetPaging && totalOffset > 0 ? KeysetCursor
+                .decode(getRequestCursor()) : null;
+
         List results = new ArrayList();
         final List<CountExecutor> totalCountExecutors = new ArrayList<CountExecutor>();
         try {
@@ -506,6 +538,15 @@ public class GetFeature {
                         queryMaxFeatures, source, request, allPropNames.get(0), viewParam,
                             joins, primaryTypeName, primaryAlias);
 
+                // seek to the requested page instead of scanning the whole result up to it
+                if (cursor != null) {
+                    if (cursor.matches(gtQuery, offset, source.getSchema())) {
+                        gtQuery = cursor.seek(gtQuery, source.getSchema());
+                    } else {
+                        cursor = null;
+                    }
+                }
+
                 LOGGER.fine("Query is " + query + "\n To gt2: " + gtQuery);
 
                 FeatureCollection<? extends FeatureType, ? extends Feature> features = getFeatures(request, source, gtQuery);
@@ -526,11 +567,20 @@ public class GetFeature {
                     calculateSize = offset > 0 && i < queries.size() - 1; 
                 }
 
+                // no need to count if the client already went away
+                CancellationToken.checkCurrent();
+
                 int size = 0;
                 if (calculateSize) {
-                    size = features.size();
+                    size = countCache != null ? countCache.size(source, gtQuery, features)
+                            : features.size();
                 }
                 
+                // build the cursor for the next page, if there is one
+                if (keysetPaging && calculateSize && size > 0 && size >= queryMaxFeatures) {
+                    nextCursor = KeysetCursor.next(source, gtQuery, offset, size, cursor);
+                }
+
                 //update the count
                 count += size;
                 
@@ -571,7 +621,7 @@ public class GetFeature {
                         org.geotools.data.Query qTotal = toDataQuery(query, filter, 0,
                                 Integer.MAX_VALUE, source, request, allPropNames.get(0), viewParam,
                                 joins, primaryTypeName, primaryAlias);
-                        totalCountExecutors.add(new CountExecutor(source, qTotal));
+                        totalCountExecutors.add(new CountExecutor(source, qTotal, countCache));
                     }
                 }
 
@@ -597,6 +647,13 @@ public class GetFeature {
                 //                  maxFeatures -= features.getCount();
                 //                }
 
+                // stop reading and encoding the features if the client goes away
+                CancellationToken token = CancellationToken.current();
+                if (token != null && features instanceof SimpleFeatureCollection) {
+                    features = new CancellableFeatureCollection(
+                            (SimpleFeatureCollection) features, token);
+                }
+
                 //GR: I don't know if the featuresults should be added here for later
                 //encoding if it was a lock request. may be after ensuring the lock
                 //succeed?
@@ -749,6 +806,8 @@ public class GetFeature {
                 //generate kvp map from request object
                 kvp = buildKvpFromRequest(request);
             }
+            // the cursor is only valid for the page following this one
+            kvp.remove(CURSOR_PARAM);
 
             if (offset > 0) {
                 //previous
@@ -771,6 +830,9 @@ public class GetFeature {
                 if (maxFeatures <= count) {
                     kvp.put("startIndex", String.valueOf(offset > 0 ? offset + count : count));
                     kvp.put("count", String.valueOf(maxFeatures));
+                    if (nextCursor != null) {
+                        kvp.put(CURSOR_PARAM, nextCursor.encode());
+                    }
                     result.setNext(buildURL(request.getBaseUrl(), "wfs", kvp, URLType.SERVICE));
                 }
             }
@@ -779,6 +841,18 @@ public class GetFeature {
         return result;
     }
 
+    /**
+     * Returns the keyset paging cursor of the current request, if any
+     */
+    String getRequestCursor() {
+        Request req = Dispatcher.REQUEST.get();
+        if (req == null || req.getRawKvp() == null) {
+            return null;
+        }
+        Object cursor = req.getRawKvp().get(CURSOR_PARAM);
+        return cursor != null ? cursor.toString() : null;
+    }
+
     KvpMap buildKvpFromRequest(GetFeatureRequest request) {
         
         // FILTER_LANGUAGE
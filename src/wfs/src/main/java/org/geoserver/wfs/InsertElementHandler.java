@@ -10,6 +10,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -28,17 +29,18 @@ import org.eclipse.emf.ecore.EObject;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.config.GeoServer;
 import org.geoserver.feature.ReprojectingFeatureCollection;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.wfs.request.Insert;
 import org.geoserver.wfs.request.TransactionElement;
 import org.geoserver.wfs.request.TransactionRequest;
 import org.geoserver.wfs.request.TransactionResponse;
 import org.geotools.data.DataUtilities;
 import org.geotools.data.FeatureStore;
+import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureStore;
 import org.geotools.factory.Hints;
-import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.referencing.operation.projection.PointOutsideEnvelopeException;
 import org.opengis.feature.simple.SimpleFeature;
@@ -62,11 +64,41 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
      * logger
      */
     static Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geoserver.wfs");
+    /**
+     * The max number of features inserted in the store at once, zero or negative for no limit
+     */
+    public static final String BATCH_SIZE_KEY = "GS_WFS_INSERT_BATCH_SIZE";
+
+    static final int DEFAULT_BATCH_SIZE = 1000;
+
     private FilterFactory filterFactory;
 
+    int batchSize = DEFAULT_BATCH_SIZE;
+
     public InsertElementHandler(GeoServer gs, FilterFactory filterFactory) {
         super(gs);
         this.filterFactory = filterFactory;
+        String value = GeoServerExtensions.getProperty(BATCH_SIZE_KEY);
+        if (value != null) {
+            try {
+                batchSize = Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + BATCH_SIZE_KEY + ": " + value + ", using "
+                        + DEFAULT_BATCH_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Sets the max number of features inserted in the store at once, zero or negative for no
+     * limit
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
     }
 
     public void checkValidity(TransactionElement element, Map<QName, FeatureTypeInfo> featureTypeInfos)
@@ -86,20 +118,29 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
         long inserted = response.getTotalInserted().longValue();
 
         try {
-            // group features by their schema
-            HashMap /* <SimpleFeatureType,FeatureCollection> */ schema2features = new HashMap();
+            // group features by their schema, keeping the order they were supplied in
+            Map<SimpleFeatureType, List<SimpleFeature>> schema2features = 
+                new LinkedHashMap<SimpleFeatureType, List<SimpleFeature>>();
+            // the feature ids met so far for each schema, features without an id or with one
+            // already used are skipped, as the feature collections used to do
+            Map<SimpleFeatureType, Set<String>> schema2ids = 
+                new HashMap<SimpleFeatureType, Set<String>>();
 
             
             List featureList = insert.getFeatures();
             for (Iterator f = featureList.iterator(); f.hasNext();) {
                 SimpleFeature feature = (SimpleFeature) f.next();
                 SimpleFeatureType schema = feature.getFeatureType();
-                DefaultFeatureCollection collection = 
-                    (DefaultFeatureCollection) schema2features.get(schema);
+                List<SimpleFeature> features = schema2features.get(schema);
 
-                if (collection == null) {
-                    collection = new DefaultFeatureCollection(null, schema);
-                    schema2features.put(schema, collection);
+                if (features == null) {
+                    features = new ArrayList<SimpleFeature>();
+                    schema2features.put(schema, features);
+                    schema2ids.put(schema, new HashSet<String>());
+                }
+                String id = feature.getID();
+                if (id == null || !schema2ids.get(schema).add(id)) {
+                    continue;
                 }
 
                 // do a check for idegen = useExisting, if set try to tell the datastore to use
@@ -108,7 +149,7 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
                     feature.getUserData().put(Hints.USE_PROVIDED_FID, true);
                 }
 
-                collection.add(feature);
+                features.add(feature);
             }
 
             // JD: change from set fo list because if inserting
@@ -119,9 +160,10 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
             // as they were supplied
             Map<String, List<FeatureId>> schema2fids = new HashMap<String, List<FeatureId>>();
 
-            for (Iterator c = schema2features.values().iterator(); c.hasNext();) {
-                SimpleFeatureCollection collection = (SimpleFeatureCollection) c.next();
-                SimpleFeatureType schema = collection.getSchema();
+            for (Map.Entry<SimpleFeatureType, List<SimpleFeature>> entry : schema2features
+                    .entrySet()) {
+                SimpleFeatureType schema = entry.getKey();
+                List<SimpleFeature> features = entry.getValue();
 
                 final QName elementName = new QName(schema.getName().getNamespaceURI(), schema.getTypeName());
                 SimpleFeatureStore store;
@@ -132,66 +174,23 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
                         + "'");
                 }
 
-                if (collection != null) {
-                    // if we really need to, make sure we are inserting coordinates that do
-                    // match the CRS area of validity
-                    if(getInfo().isCiteCompliant()) {
-                        checkFeatureCoordinatesRange(collection);
-                    }
-                    
-                    // reprojection
-                    final GeometryDescriptor defaultGeometry = store.getSchema().getGeometryDescriptor();
-                    if(defaultGeometry != null) {
-                        CoordinateReferenceSystem target = defaultGeometry.getCoordinateReferenceSystem();
-                        if (target != null) {
-                            collection = new ReprojectingFeatureCollection(collection, target);
-                        }
-                    }
-                    
-                    // Need to use the namespace here for the
-                    // lookup, due to our weird
-                    // prefixed internal typenames. see
-                    // https://osgeo-org.atlassian.net/browse/GEOS-143
-
-                    // Once we get our datastores making features
-                    // with the correct namespaces
-                    // we can do something like this:
-                    // FeatureTypeInfo typeInfo =
-                    // catalog.getFeatureTypeInfo(schema.getTypeName(),
-                    // schema.getNamespace());
-                    // until then (when geos-144 is resolved) we're
-                    // stuck with:
-                    // QName qName = (QName) typeNames.get( i );
-                    // FeatureTypeInfo typeInfo =
-                    // catalog.featureType( qName.getPrefix(),
-                    // qName.getLocalPart() );
-
-                    // this is possible with the insert hack above.
-                    LOGGER.finer("Use featureValidation to check contents of insert");
-
-                    // featureValidation(
-                    // typeInfo.getDataStore().getId(), schema,
-                    // collection );
-                    List<FeatureId> fids = schema2fids.get(schema.getTypeName());
-
-                    if (fids == null) {
-                        fids = new LinkedList<FeatureId>();
-                        schema2fids.put(schema.getTypeName(), fids);
-                    }
+                List<FeatureId> fids = schema2fids.get(schema.getTypeName());
+
+                if (fids == null) {
+                    fids = new LinkedList<FeatureId>();
+                    schema2fids.put(schema.getTypeName(), fids);
+                }
 
-                    //fire pre insert event
-                    TransactionEvent event = new TransactionEvent(TransactionEventType.PRE_INSERT,
-                            request, elementName, collection);
-                    event.setSource(Insert.WFS11.unadapt(insert));
-                    
-                    listener.dataStoreChange( event );
-                    fids.addAll(store.addFeatures(collection));
-                    
-                    //fire post insert event
-                    SimpleFeatureCollection features = store.getFeatures(filterFactory.id(new HashSet<FeatureId>(fids)));
-                    event = new TransactionEvent(TransactionEventType.POST_INSERT, request, 
-                        elementName, features, Insert.WFS11.unadapt(insert));
-                    listener.dataStoreChange( event );
+                // insert in batches, so that neither the store, the listeners or the post insert
+                // lookup have to deal with the whole collection at once. Batches are views over
+                // the parsed features, no copies, and can be read more than once (listeners,
+                // reprojection and coordinate checks all iterate them)
+                int size = features.size();
+                int step = batchSize > 0 ? batchSize : Math.max(size, 1);
+                for (int from = 0; from < size; from += step) {
+                    List<SimpleFeature> batch = features.subList(from, Math.min(size, from + step));
+                    fids.addAll(insertBatch(new ListFeatureCollection(schema, batch), store,
+                            elementName, insert, request, listener));
                 }
             }
 
@@ -220,6 +219,46 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
     }
 
     
+    /**
+     * Inserts a batch of features in the store, firing the pre and post insert events for it
+     */
+    List<FeatureId> insertBatch(SimpleFeatureCollection collection, SimpleFeatureStore store,
+            QName elementName, Insert insert, TransactionRequest request,
+            TransactionListener listener) throws Exception {
+        // if we really need to, make sure we are inserting coordinates that do
+        // match the CRS area of validity
+        if(getInfo().isCiteCompliant()) {
+            checkFeatureCoordinatesRange(collection);
+        }
+        
+        // reprojection
+        final GeometryDescriptor defaultGeometry = store.getSchema().getGeometryDescriptor();
+        if(defaultGeometry != null) {
+            CoordinateReferenceSystem target = defaultGeometry.getCoordinateReferenceSystem();
+            if (target != null) {
+                collection = new ReprojectingFeatureCollection(collection, target);
+            }
+        }
+        
+        LOGGER.finer("Use featureValidation to check contents of insert");
+
+        //fire pre insert event
+        TransactionEvent event = new TransactionEvent(TransactionEventType.PRE_INSERT,
+                request, elementName, collection);
+        event.setSource(Insert.WFS11.unadapt(insert));
+        
+        listener.dataStoreChange( event );
+        List<FeatureId> fids = store.addFeatures(collection);
+        
+        //fire post insert event
+        SimpleFeatureCollection features = store.getFeatures(filterFactory.id(new HashSet<FeatureId>(fids)));
+        event = new TransactionEvent(TransactionEventType.POST_INSERT, request, 
+            elementName, features, Insert.WFS11.unadapt(insert));
+        listener.dataStoreChange( event );
+        
+        return fids;
+    }
+
     /**
      * Checks that all features coordinates are within the expected coordinate range
      * @param collection
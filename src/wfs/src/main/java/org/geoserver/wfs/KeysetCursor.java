@@ -0,0 +1,337 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Query;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.Feature;
+import org.opengis.feature.Property;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.FeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+/**
+ * An opaque paging cursor, allowing to turn the deep pages of a sorted query into a range query
+ * on the sort attributes instead of an offset query, which forces the database to scan and
+ * discard all the rows preceding the page.
+ * <p>
+ * The cursor records the sort values of the last feature of a page, the next page is read from
+ * the features whose sort values are greater than or equal to them (lexicographically, following
+ * the sort directions), skipping the ones sharing exactly those values that were already returned.
+ * The ordering of the features sharing the same sort values must be stable across requests, the
+ * same assumption plain offset paging relies on.
+ * </p>
+ * <p>
+ * Cursors are only built for single type queries sorted on non null string, number, date or
+ * timestamp attributes. Timestamps are recorded as ISO 8601 instants, at their full precision,
+ * so that seeking past them does not skip or repeat features. A cursor is bound to the start index, type, sort and filter of the query it was
+ * built for, when any of them does not match the query falls back on plain offset paging.
+ * </p>
+ */
+class KeysetCursor {
+
+    static final Logger LOGGER = Logging.getLogger(KeysetCursor.class);
+
+    static final String VERSION = "1";
+
+    static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2();
+
+    static final List<Class<?>> SEEKABLE_BINDINGS = Arrays.<Class<?>> asList(String.class,
+            Integer.class, Long.class, Short.class, Byte.class, BigInteger.class, BigDecimal.class,
+            Double.class, Float.class, java.sql.Date.class, java.util.Date.class,
+            java.sql.Timestamp.class);
+
+    int startIndex;
+
+    String typeName;
+
+    String sortSpec;
+
+    int filterHash;
+
+    int skip;
+
+    String[] values;
+
+    KeysetCursor(int startIndex, String typeName, String sortSpec, int filterHash, int skip,
+            String[] values) {
+        this.startIndex = startIndex;
+        this.typeName = typeName;
+        this.sortSpec = sortSpec;
+        this.filterHash = filterHash;
+        this.skip = skip;
+        this.values = values;
+    }
+
+    /**
+     * Encodes the cursor as an url safe string
+     */
+    String encode() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(VERSION).append('\n').append(startIndex).append('\n').append(typeName)
+                .append('\n').append(sortSpec).append('\n').append(filterHash).append('\n')
+                .append(skip);
+        for (String value : values) {
+            sb.append('\n').append(base64(value));
+        }
+        return base64(sb.toString());
+    }
+
+    /**
+     * Decodes a cursor, returns null if the cursor is not valid
+     */
+    static KeysetCursor decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String[] parts = unbase64(cursor).split("\n", -1);
+            if (parts.length < 7 || !VERSION.equals(parts[0])) {
+                return null;
+            }
+            String[] values = new String[parts.length - 6];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = unbase64(parts[i + 6]);
+            }
+            return new KeysetCursor(Integer.parseInt(parts[1]), parts[2], parts[3],
+                    Integer.parseInt(parts[4]), Integer.parseInt(parts[5]), values);
+        } catch (IllegalArgumentException e) {
+            // includes NumberFormatException
+            LOGGER.log(Level.FINE, "Invalid paging cursor " + cursor, e);
+            return null;
+        }
+    }
+
+    static String base64(String value) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String unbase64(String value) {
+        return new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the sort attributes bindings, or null if the query sort does not allow to seek
+     */
+    static Class<?>[] getSortBindings(FeatureType schema, SortBy[] sortBy) {
+        if (!(schema instanceof SimpleFeatureType) || sortBy == null || sortBy.length == 0) {
+            return null;
+        }
+        Class<?>[] bindings = new Class<?>[sortBy.length];
+        for (int i = 0; i < sortBy.length; i++) {
+            // natural and reverse order have no property name
+            PropertyName property = sortBy[i].getPropertyName();
+            if (property == null) {
+                return null;
+            }
+            AttributeDescriptor descriptor = ((SimpleFeatureType) schema)
+                    .getDescriptor(property.getPropertyName());
+            if (descriptor == null || descriptor instanceof GeometryDescriptor
+                    || !SEEKABLE_BINDINGS.contains(descriptor.getType().getBinding())) {
+                return null;
+            }
+            bindings[i] = descriptor.getType().getBinding();
+        }
+        return bindings;
+    }
+
+    static String getSortSpec(SortBy[] sortBy) {
+        StringBuilder sb = new StringBuilder();
+        for (SortBy sort : sortBy) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(sort.getPropertyName().getPropertyName()).append(' ')
+                    .append(sort.getSortOrder() == SortOrder.DESCENDING ? 'D' : 'A');
+        }
+        return sb.toString();
+    }
+
+    static int getFilterHash(Filter filter) {
+        return String.valueOf(filter).hashCode();
+    }
+
+    /**
+     * Returns true if the cursor was built for the page at the specified start index of the query
+     */
+    boolean matches(Query query, int offset, FeatureType schema) {
+        return startIndex == offset && typeName.equals(schema.getName().getLocalPart())
+                && query.getSortBy() != null && getSortBindings(schema, query.getSortBy()) != null
+                && sortSpec.equals(getSortSpec(query.getSortBy()))
+                && filterHash == getFilterHash(query.getFilter())
+                && values.length == query.getSortBy().length;
+    }
+
+    /**
+     * Turns the offset query into a range query starting at the cursor, returns the query
+     * unchanged if the cursor values cannot be parsed
+     */
+    Query seek(Query query, FeatureType schema) {
+        SortBy[] sortBy = query.getSortBy();
+        Class<?>[] bindings = getSortBindings(schema, sortBy);
+        Object[] parsed = new Object[values.length];
+        try {
+            for (int i = 0; i < values.length; i++) {
+                parsed[i] = parse(values[i], bindings[i]);
+            }
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "Cursor values do not match the sort attributes", e);
+            return query;
+        }
+
+        // lexicographic "greater or equal" following the sort directions, e.g., for a, b sorted
+        // ascending: (a > va) or (a = va and b > vb) or (a = va and b = vb)
+        List<Filter> alternatives = new ArrayList<Filter>();
+        List<Filter> equalities = new ArrayList<Filter>();
+        for (int i = 0; i < sortBy.length; i++) {
+            PropertyName property = FF.property(sortBy[i].getPropertyName().getPropertyName());
+            Filter after = sortBy[i].getSortOrder() == SortOrder.DESCENDING ? FF.less(property,
+                    FF.literal(parsed[i])) : FF.greater(property, FF.literal(parsed[i]));
+            List<Filter> conditions = new ArrayList<Filter>(equalities);
+            conditions.add(after);
+            alternatives.add(conditions.size() == 1 ? after : FF.and(conditions));
+            equalities.add(FF.equals(property, FF.literal(parsed[i])));
+        }
+        alternatives.add(equalities.size() == 1 ? equalities.get(0) : FF.and(equalities));
+
+        Query result = new Query(query);
+        result.setFilter(FF.and(query.getFilter(), FF.or(alternatives)));
+        result.setStartIndex(skip);
+        return result;
+    }
+
+    static Object parse(String value, Class<?> binding) {
+        if (binding == Integer.class) {
+            return Integer.valueOf(value);
+        } else if (binding == Long.class) {
+            return Long.valueOf(value);
+        } else if (binding == Short.class) {
+            return Short.valueOf(value);
+        } else if (binding == Byte.class) {
+            return Byte.valueOf(value);
+        } else if (binding == BigInteger.class) {
+            return new BigInteger(value);
+        } else if (binding == BigDecimal.class) {
+            return new BigDecimal(value);
+        } else if (binding == Double.class) {
+            return Double.valueOf(value);
+        } else if (binding == Float.class) {
+            return Float.valueOf(value);
+        } else if (binding == java.sql.Date.class) {
+            return java.sql.Date.valueOf(value);
+        } else if (binding == java.util.Date.class || binding == java.sql.Timestamp.class) {
+            // stores can return timestamps for date attributes, keep the nanoseconds around
+            return java.sql.Timestamp.from(Instant.parse(value));
+        }
+        return value;
+    }
+
+    /**
+     * Turns a sort value into its cursor representation, the inverse of
+     * {@link #parse(String, Class)}
+     */
+    static String format(Object value) {
+        if (value instanceof java.sql.Date) {
+            // yyyy-mm-dd, there is no time part to lose
+            return value.toString();
+        } else if (value instanceof java.util.Date) {
+            // the ISO instant of a timestamp includes its nanoseconds
+            return ((java.util.Date) value).toInstant().toString();
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * Builds the cursor of the page following the one returned by the query, reading the sort
+     * values of the page features. Returns null if the page does not allow to build one.
+     *
+     * @param source the source the page is read from
+     * @param query the query returning the page, a seek query if the cursor is not null
+     * @param offset the start index of the page in the whole result
+     * @param size the page size
+     * @param cursor the cursor used to read the page, or null if it was read with an offset
+     */
+    static KeysetCursor next(FeatureSource<?, ?> source, Query query, int offset, int size,
+            KeysetCursor cursor) throws IOException {
+        FeatureType schema = source.getSchema();
+        SortBy[] sortBy = query.getSortBy();
+        if (size <= 0 || getSortBindings(schema, sortBy) == null) {
+            return null;
+        }
+        String[] names = new String[sortBy.length];
+        for (int i = 0; i < sortBy.length; i++) {
+            names[i] = sortBy[i].getPropertyName().getPropertyName();
+        }
+
+        // read only the sort values of the page, keeping track of the last ones and of how many
+        // features at the end of the page share them
+        Query keysQuery = new Query(query);
+        keysQuery.setPropertyNames(names);
+        String[] last = null;
+        int ties = 0;
+        int read = 0;
+        FeatureIterator<?> it = source.getFeatures(keysQuery).features();
+        try {
+            while (it.hasNext()) {
+                Feature feature = it.next();
+                String[] current = new String[names.length];
+                for (int i = 0; i < names.length; i++) {
+                    Property property = feature.getProperty(names[i]);
+                    Object value = property != null ? property.getValue() : null;
+                    if (value == null) {
+                        // null ordering is database dependent, cannot seek past it
+                        return null;
+                    }
+                    current[i] = format(value);
+                }
+                ties = Arrays.equals(current, last) ? ties + 1 : 1;
+                last = current;
+                read++;
+            }
+        } finally {
+            it.close();
+        }
+        if (last == null || read != size) {
+            // the data changed in the meantime
+            return null;
+        }
+
+        int skip = ties;
+        if (ties == read) {
+            // the whole page shares the same values, so might the features before it
+            if (cursor != null && Arrays.equals(cursor.values, last)) {
+                skip = cursor.skip + ties;
+            } else if (cursor == null && offset > 0) {
+                return null;
+            }
+        }
+        // the query of a page read with a cursor has the seek filter added to the original one
+        int filterHash = cursor != null ? cursor.filterHash : getFilterHash(query.getFilter());
+        return new KeysetCursor(Math.max(offset, 0) + size, schema.getName().getLocalPart(),
+                getSortSpec(sortBy), filterHash, skip, last);
+    }
+}
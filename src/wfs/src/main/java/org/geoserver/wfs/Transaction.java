@@ -74,6 +74,9 @@ public class Transaction {
     protected List transactionElementHandlers = new ArrayList();
     protected List transactionListeners = new ArrayList();
     protected List transactionPlugins = new ArrayList();
+
+    /** The feature counts to drop once the transaction is committed */
+    protected FeatureCountCache countCache;
     
     public Transaction(WFSInfo wfs, Catalog catalog, ApplicationContext context) {
         this.wfs = wfs;
@@ -95,6 +98,10 @@ public class Transaction {
         this.filterFactory = filterFactory;
     }
 
+    public void setCountCache(FeatureCountCache countCache) {
+        this.countCache = countCache;
+    }
+
     public TransactionResponse transaction(TransactionRequest request)
         throws WFSException {
         // make sure server is supporting transactions
@@ -110,6 +117,11 @@ public class Transaction {
         } catch (Throwable t) {
             abort(request); // release any locks
             throw new WFSException(request, t);
+        } finally {
+            // the transaction is over, counts run while it was in progress are stale
+            if (countCache != null) {
+                countCache.transactionFinished();
+            }
         }
     }
 
@@ -5,6 +5,7 @@
  */
 package org.geoserver.wfs.json;
 
+import java.io.IOException;
 import java.io.Writer;
 import java.util.Calendar;
 import java.util.logging.Logger;
@@ -45,10 +46,18 @@ public class GeoJSONBuilder extends JSONBuilder {
     
     private CRS.AxisOrder axisOrder = CRS.AxisOrder.EAST_NORTH;
 
-    private int numDecimals = 6;
+    private final Writer out;
+
+    /**
+     * Writes the ordinates directly into the output, the builder is used only to open and close
+     * the coordinate arrays
+     */
+    private final RoundedNumberWriter numbers;
 
     public GeoJSONBuilder(Writer w) {
         super(w);
+        this.out = w;
+        this.numbers = new RoundedNumberWriter(w, 6);
     }
 
     /**
@@ -143,40 +152,57 @@ public class GeoJSONBuilder extends JSONBuilder {
         // guess the dimension of the coordinate sequence
         int dim = CoordinateSequences.coordinateDimension(coords);
 
-        final int coordCount = coords.size();
-        for (int i = 0; i < coordCount; i++) {
-            if(dim > 2) {
-                writeCoordinate(coords.getX(i), coords.getY(i), coords.getOrdinate(i, 2));
-            } else {
-                writeCoordinate(coords.getX(i), coords.getY(i));
+        // the coordinates are written straight into the output, the builder would
+        // go through a String for each ordinate
+        try {
+            final int coordCount = coords.size();
+            for (int i = 0; i < coordCount; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                out.write('[');
+                if(dim > 2) {
+                    writeOrdinates(coords.getX(i), coords.getY(i), coords.getOrdinate(i, 2));
+                } else {
+                    writeOrdinates(coords.getX(i), coords.getY(i), Double.NaN);
+                }
+                out.write(']');
             }
+        } catch (IOException e) {
+            throw new JSONException(e);
         }
 
         return this.endArray();
     }
 
-    private JSONBuilder writeCoordinate(double x, double y) {
-        return writeCoordinate(x, y, Double.NaN);
-    }
-    
     private JSONBuilder writeCoordinate(double x, double y, double z) {
         this.array();
-        if(axisOrder==CRS.AxisOrder.NORTH_EAST){
-            roundedValue(y);
-            roundedValue(x);
-        } else {
-            roundedValue(x);
-            roundedValue(y);
-        }
-        if(!Double.isNaN(z)) {
-            roundedValue(z);
+        try {
+            writeOrdinates(x, y, z);
+        } catch (IOException e) {
+            throw new JSONException(e);
         }
 
         return this.endArray();
     }
 
-    private void roundedValue(double value) {
-        super.value(RoundingUtil.round(value, numDecimals));
+    /**
+     * Writes the comma separated ordinates, honoring the axis order, right after an array opening
+     */
+    private void writeOrdinates(double x, double y, double z) throws IOException {
+        if(axisOrder==CRS.AxisOrder.NORTH_EAST){
+            numbers.write(y);
+            out.write(',');
+            numbers.write(x);
+        } else {
+            numbers.write(x);
+            out.write(',');
+            numbers.write(y);
+        }
+        if(!Double.isNaN(z)) {
+            out.write(',');
+            numbers.write(z);
+        }
     }
     
     /**
@@ -187,16 +213,12 @@ public class GeoJSONBuilder extends JSONBuilder {
     protected JSONBuilder writeBoundingBox(Envelope env) {
         this.key("bbox");
         this.array();
-        if(axisOrder==CRS.AxisOrder.NORTH_EAST) {
-            roundedValue(env.getMinY());
-            roundedValue(env.getMinX());
-            roundedValue(env.getMaxY());
-            roundedValue(env.getMaxX());
-        } else {
-            roundedValue(env.getMinX());
-            roundedValue(env.getMinY());
-            roundedValue(env.getMaxX());
-            roundedValue(env.getMaxY());
+        try {
+            writeOrdinates(env.getMinX(), env.getMinY(), Double.NaN);
+            out.write(',');
+            writeOrdinates(env.getMaxX(), env.getMaxY(), Double.NaN);
+        } catch (IOException e) {
+            throw new JSONException(e);
         }
         return this.endArray();
     }
@@ -319,6 +341,6 @@ public class GeoJSONBuilder extends JSONBuilder {
     }
 
     public void setNumberOfDecimals(int numberOfDecimals) {
-        this.numDecimals = numberOfDecimals;
+        this.numbers.setNumberOfDecimals(numberOfDecimals);
     }
 }
@@ -0,0 +1,123 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.json;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import net.sf.json.util.JSONUtils;
+
+/**
+ * Writes doubles rounded with {@link RoundingUtil} straight into a {@link Writer}.
+ * <p>
+ * The output is the same json-lib would produce for the rounded value, that is,
+ * {@link Double#toString(double)} with the trailing zeros removed, but the values that are not
+ * using the scientific notation are formatted in a reusable buffer, without creating any
+ * intermediate object. Instances are not thread safe.
+ * </p>
+ */
+public class RoundedNumberWriter {
+
+    /**
+     * Powers of ten, indexed by the number of decimals handled in the fast path. With at most 8
+     * decimals and values below 10^7 the rounded values have at most 15 significant digits, which
+     * is what guarantees the double to be printed back as the same decimal number
+     */
+    static final long[] SCALE = { 1l, 10l, 100l, 1000l, 10000l, 100000l, 1000000l, 10000000l,
+            100000000l };
+
+    /**
+     * Double.toString switches to the scientific notation outside of [10^-3, 10^7)
+     */
+    static final double MIN_PLAIN = 1e-3;
+
+    static final double MAX_PLAIN = 1e7;
+
+    final Writer writer;
+
+    final char[] buffer = new char[32];
+
+    int numDecimals;
+
+    public RoundedNumberWriter(Writer writer, int numDecimals) {
+        this.writer = writer;
+        this.numDecimals = numDecimals;
+    }
+
+    public int getNumberOfDecimals() {
+        return numDecimals;
+    }
+
+    public void setNumberOfDecimals(int numDecimals) {
+        this.numDecimals = numDecimals;
+    }
+
+    /**
+     * Rounds the value to the configured number of decimals and writes it out
+     *
+     * @throws net.sf.json.JSONException if the value is not finite
+     */
+    public void write(double value) throws IOException {
+        double rounded = RoundingUtil.round(value, numDecimals);
+        if (!writePlain(rounded)) {
+            writer.write(JSONUtils.numberToString(Double.valueOf(rounded)));
+        }
+    }
+
+    /**
+     * Writes the rounded value using integer arithmetic, returns false if the value cannot be
+     * handled this way
+     */
+    boolean writePlain(double rounded) throws IOException {
+        if (numDecimals < 0 || numDecimals >= SCALE.length) {
+            return false;
+        }
+        if (rounded == 0) {
+            if (Double.doubleToRawLongBits(rounded) != 0) {
+                // negative zero, rather uncommon
+                return false;
+            }
+            writer.write('0');
+            return true;
+        }
+        double abs = Math.abs(rounded);
+        if (!(abs >= MIN_PLAIN && abs < MAX_PLAIN)) {
+            // also excludes NaN
+            return false;
+        }
+
+        // the rounded value is the closest double to units / scale, check it
+        long scale = SCALE[numDecimals];
+        long units = Math.round(abs * scale);
+        if (units / (double) scale != abs) {
+            return false;
+        }
+
+        int pos = buffer.length;
+        long integer = units / scale;
+        long fraction = units % scale;
+        int decimals = numDecimals;
+        while (decimals > 0 && fraction % 10 == 0) {
+            fraction /= 10;
+            decimals--;
+        }
+        if (decimals > 0) {
+            for (int i = 0; i < decimals; i++) {
+                buffer[--pos] = (char) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            buffer[--pos] = '.';
+        }
+        do {
+            buffer[--pos] = (char) ('0' + integer % 10);
+            integer /= 10;
+        } while (integer > 0);
+        if (rounded < 0) {
+            buffer[--pos] = '-';
+        }
+        writer.write(buffer, pos, buffer.length - pos);
+        return true;
+    }
+}
@@ -20,14 +20,18 @@ import java.io.StringWriter;
 import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.SimpleTimeZone;
 import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import javax.servlet.http.HttpServletRequest;
@@ -217,12 +221,28 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat implements A
         
         // target charset
         
+        // the files that make it into the zip
+        final FilenameFilter filter = new FilenameFilter() {
+        
+            public boolean accept(File dir, String name) {
+                name = name.toLowerCase();
+                return name.endsWith(".shp") || name.endsWith(".shx") || name.endsWith(".dbf")
+                       || name.endsWith(".prj") || name.endsWith(".cst") || name.endsWith(".txt");
+            }
+        };
+        ZipOutputStream zipOut = new ZipOutputStream(output);
+        ZippedFiles zipped = new ZippedFiles();
+        
         try {
             // if an empty result out of feature type with unknown geometry is created, the
             // zip file will be empty and the zip output stream will break
             boolean shapefileCreated = false;
             for (SimpleFeatureCollection collection : collections) {
                 shapefileCreated |= dumper.dump(collection);
+                // stream out the shapefiles of this collection right away, so that the client
+                // starts receiving data before the next ones are dumped and the temp dir never
+                // holds more than one collection worth of shapefiles
+                zipCompletedFiles(tempDir, zipOut, filter, zipped);
             }
             
             // take care of the case the output is completely empty
@@ -233,17 +253,7 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat implements A
             // dump the request
             createRequestDump(tempDir, request, collections.get(0));
             
-            // zip all the files produced
-            final FilenameFilter filter = new FilenameFilter() {
-            
-                public boolean accept(File dir, String name) {
-                    name = name.toLowerCase();
-                    return name.endsWith(".shp") || name.endsWith(".shx") || name.endsWith(".dbf")
-                           || name.endsWith(".prj") || name.endsWith(".cst") || name.endsWith(".txt");
-                }
-            };
-            ZipOutputStream zipOut = new ZipOutputStream(output);
-            IOUtils.zipDirectory(tempDir, zipOut, filter);
+            zipCompletedFiles(tempDir, zipOut, filter, zipped);
             zipOut.finish();
 
             // This is an error, because this closes the output stream too... it's
@@ -259,6 +269,77 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat implements A
         }
     }
 
+    /**
+     * The extensions of the shapefile files, the ones renamed when a shapefile name is reused
+     */
+    private static final Set<String> SHAPEFILE_EXTENSIONS = new HashSet<String>(Arrays.asList(
+            ".shp", ".shx", ".dbf", ".prj", ".cst"));
+
+    /**
+     * Keeps track of the files already copied in the zip output
+     */
+    private static class ZippedFiles {
+        /**
+         * The base names (file name without extension) used by the zip entries so far
+         */
+        Set<String> baseNames = new HashSet<String>();
+
+        /**
+         * The files already zipped that could not be removed from the temp directory
+         */
+        Set<String> leftovers = new HashSet<String>();
+    }
+
+    /**
+     * Copies the files found in the temp directory to the zip output, and removes them right away
+     * to free the disk space. The dumper can re-use the name of a shapefile that was already
+     * streamed out (e.g., two queries against the same feature type), in that case the shapefile
+     * entries get a numeric suffix instead of clashing with the existing ones. The other files,
+     * such as the request dump, keep their name.
+     */
+    private void zipCompletedFiles(File tempDir, ZipOutputStream zipOut, FilenameFilter filter,
+            ZippedFiles zipped) throws IOException {
+        File[] files = tempDir.listFiles(filter);
+        if (files == null) {
+            return;
+        }
+        // keep the files of the same shapefile next to each other
+        Arrays.sort(files);
+        Map<String, String> entryBaseNames = new HashMap<String, String>();
+        for (File file : files) {
+            String name = file.getName();
+            if (zipped.leftovers.contains(name)) {
+                continue;
+            }
+            int idx = name.lastIndexOf('.');
+            String entryName = name;
+            if (idx > 0 && SHAPEFILE_EXTENSIONS.contains(name.substring(idx).toLowerCase())) {
+                String baseName = name.substring(0, idx);
+                String entryBaseName = entryBaseNames.get(baseName);
+                if (entryBaseName == null) {
+                    entryBaseName = baseName;
+                    for (int i = 1; zipped.baseNames.contains(entryBaseName); i++) {
+                        entryBaseName = baseName + "_" + i;
+                    }
+                    entryBaseNames.put(baseName, entryBaseName);
+                }
+                entryName = entryBaseName + name.substring(idx);
+            }
+
+            zipOut.putNextEntry(new ZipEntry(entryName));
+            FileUtils.copyFile(file, zipOut);
+            zipOut.closeEntry();
+
+            if (!file.delete()) {
+                LOGGER.fine("Could not delete " + file.getAbsolutePath()
+                        + ", it will be removed along with the temp directory");
+                zipped.leftovers.add(name);
+            }
+        }
+        zipped.baseNames.addAll(entryBaseNames.values());
+        zipOut.flush();
+    }
+
     /**
      * Dumps the request
      * @param simpleFeatureCollection
@@ -0,0 +1,240 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.xml;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.BoundedCache;
+import org.geoserver.catalog.CoverageStoreInfo;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourcePool;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.config.ConfigurationListenerAdapter;
+import org.geoserver.config.GeoServer;
+import org.geoserver.config.ServiceInfo;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.security.decorators.DecoratingFeatureTypeInfo;
+import org.geoserver.wfs.WFSInfo;
+import org.geotools.data.DataAccess;
+import org.geotools.util.Utilities;
+import org.geotools.util.logging.Logging;
+import org.opengis.coverage.grid.GridCoverageReader;
+import org.opengis.feature.type.FeatureType;
+
+/**
+ * Caches the application schemas built for the GetFeature output, so that the feature type
+ * schemas, and the element declarations the encoder looks up for each feature, are not rebuilt on
+ * every request.
+ * <p>
+ * Schemas are keyed by the set of feature types encoded and the base URL of the request, the
+ * imports of the schema being relative to it. The whole cache is dropped whenever a feature type,
+ * store or namespace is added, modified or removed, or the WFS configuration changes. Feature
+ * types wrapped by the security subsystem can expose a different set of attributes to each user,
+ * their schemas are not cached.
+ * </p>
+ * <p>
+ * The {@code GS_WFS_SCHEMA_CACHE_SIZE} property sets the max number of schemas kept, zero or
+ * negative disables the cache.
+ * </p>
+ */
+public class ApplicationSchemaCache {
+
+    static final Logger LOGGER = Logging.getLogger(ApplicationSchemaCache.class);
+
+    public static final String CACHE_SIZE_KEY = "GS_WFS_SCHEMA_CACHE_SIZE";
+
+    static final int DEFAULT_CACHE_SIZE = 100;
+
+    static class SchemaKey {
+        Set<String> typeIds;
+
+        String baseURL;
+
+        SchemaKey(Set<String> typeIds, String baseURL) {
+            this.typeIds = typeIds;
+            this.baseURL = baseURL;
+        }
+
+        @Override
+        public int hashCode() {
+            return Utilities.deepHashCode(new Object[] { typeIds, baseURL });
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof SchemaKey)) {
+                return false;
+            }
+            SchemaKey other = (SchemaKey) obj;
+            return Utilities.equals(typeIds, other.typeIds)
+                    && Utilities.equals(baseURL, other.baseURL);
+        }
+    }
+
+    final BoundedCache<SchemaKey, ApplicationSchemaXSD2> cache;
+
+    public ApplicationSchemaCache(GeoServer geoServer) {
+        this(geoServer, getCacheSize());
+    }
+
+    /**
+     * Builds the cache
+     *
+     * @param geoServer the configuration whose changes drop the cached schemas
+     * @param maxEntries the max number of schemas cached, zero or negative to disable caching
+     */
+    public ApplicationSchemaCache(GeoServer geoServer, int maxEntries) {
+        this.cache = maxEntries > 0 ? new BoundedCache<SchemaKey, ApplicationSchemaXSD2>(
+                BoundedCache.Policy.LRU, maxEntries, 0, 0, null, null) : null;
+        if (cache != null) {
+            addListeners(geoServer);
+        }
+    }
+
+    static int getCacheSize() {
+        String value = GeoServerExtensions.getProperty(CACHE_SIZE_KEY);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + CACHE_SIZE_KEY + ": " + value + ", using "
+                        + DEFAULT_CACHE_SIZE);
+            }
+        }
+        return DEFAULT_CACHE_SIZE;
+    }
+
+    void addListeners(GeoServer geoServer) {
+        geoServer.getCatalog().addListener(new CatalogListener() {
+
+            public void handleAddEvent(CatalogAddEvent event) {
+                if (event.getSource() instanceof FeatureTypeInfo) {
+                    reloaded();
+                }
+            }
+
+            public void handleModifyEvent(CatalogModifyEvent event) {
+            }
+
+            public void handlePostModifyEvent(CatalogPostModifyEvent event) {
+                // post modify, a schema built in the meantime would be stale otherwise
+                if (event.getSource() instanceof DataStoreInfo
+                        || event.getSource() instanceof FeatureTypeInfo
+                        || event.getSource() instanceof NamespaceInfo) {
+                    reloaded();
+                }
+            }
+
+            public void handleRemoveEvent(CatalogRemoveEvent event) {
+                if (event.getSource() instanceof DataStoreInfo
+                        || event.getSource() instanceof FeatureTypeInfo
+                        || event.getSource() instanceof NamespaceInfo) {
+                    reloaded();
+                }
+            }
+
+            public void reloaded() {
+                clear();
+            }
+        });
+        geoServer.getCatalog().getResourcePool().addListener(new ResourcePool.Listener() {
+
+            public void disposed(FeatureTypeInfo featureType, FeatureType ft) {
+                clear();
+            }
+
+            public void disposed(CoverageStoreInfo coverageStore, GridCoverageReader gcr) {
+            }
+
+            public void disposed(DataStoreInfo dataStore, DataAccess da) {
+                clear();
+            }
+        });
+        geoServer.addListener(new ConfigurationListenerAdapter() {
+
+            public void reloaded() {
+                clear();
+            }
+
+            public void handlePostServiceChange(ServiceInfo service) {
+                if (service instanceof WFSInfo) {
+                    clear();
+                }
+            }
+        });
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Returns the application schema for the specified feature types, building it with the schema
+     * builder if not cached
+     *
+     * @param schemaBuilder the builder used to build the schema if not cached
+     * @param featureTypes the feature types, grouped by namespace URI
+     * @param baseURL the base URL of the request
+     */
+    public ApplicationSchemaXSD2 getSchema(FeatureTypeSchemaBuilder schemaBuilder,
+            Map<String, Set<FeatureTypeInfo>> featureTypes, String baseURL) {
+        SchemaKey key = cache != null ? getKey(featureTypes, baseURL) : null;
+        if (key != null) {
+            ApplicationSchemaXSD2 xsd = cache.get(key);
+            if (xsd != null) {
+                return xsd;
+            }
+        }
+
+        ApplicationSchemaXSD2 xsd = new ApplicationSchemaXSD2(schemaBuilder, featureTypes);
+        xsd.setBaseURL(baseURL);
+        if (key != null) {
+            // the schema itself is built lazily, once, by the first encoder using it
+            cache.put(key, xsd);
+        }
+        return xsd;
+    }
+
+    /**
+     * Returns the cache key, or null if the schema cannot be cached
+     */
+    SchemaKey getKey(Map<String, Set<FeatureTypeInfo>> featureTypes, String baseURL) {
+        Set<String> ids = new TreeSet<String>();
+        for (Set<FeatureTypeInfo> fts : featureTypes.values()) {
+            for (FeatureTypeInfo ft : fts) {
+                if (ft.getId() == null || ft instanceof DecoratingFeatureTypeInfo) {
+                    return null;
+                }
+                ids.add(ft.getId());
+            }
+        }
+        return new SchemaKey(ids, baseURL);
+    }
+
+    /**
+     * Drops all the cached schemas
+     */
+    public void clear() {
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * The number of cached schemas
+     */
+    public int getSize() {
+        return cache != null ? cache.size() : 0;
+    }
+}
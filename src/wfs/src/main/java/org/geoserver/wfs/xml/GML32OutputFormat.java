@@ -51,6 +51,8 @@ public class GML32OutputFormat extends GML3OutputFormat {
     
     GeoServer geoServer;
 
+    ApplicationSchemaCache schemaCache;
+
     protected static DOMSource xslt;
 
     static {
@@ -70,6 +72,14 @@ public class GML32OutputFormat extends GML3OutputFormat {
     public GML32OutputFormat(GeoServer geoServer, WFSConfiguration configuration) {
         super(new HashSet(FORMATS), geoServer, configuration);
         this.geoServer = geoServer;
+        this.schemaCache = new ApplicationSchemaCache(geoServer);
+    }
+
+    /**
+     * The cache of the application schemas used to encode the features
+     */
+    public ApplicationSchemaCache getSchemaCache() {
+        return schemaCache;
     }
 
     @Override
@@ -97,8 +107,8 @@ public class GML32OutputFormat extends GML3OutputFormat {
             }
         }
         
-        ApplicationSchemaXSD2 xsd = new ApplicationSchemaXSD2(schemaBuilder, featureTypes);
-        xsd.setBaseURL(GetFeatureRequest.adapt(request).getBaseURL());
+        ApplicationSchemaXSD2 xsd = schemaCache.getSchema(schemaBuilder, featureTypes,
+                GetFeatureRequest.adapt(request).getBaseURL());
 
         org.geotools.wfs.v2_0.WFSConfiguration wfs = new org.geotools.wfs.v2_0.WFSConfiguration();
         wfs.getDependency(GMLConfiguration.class).setSrsSyntax(
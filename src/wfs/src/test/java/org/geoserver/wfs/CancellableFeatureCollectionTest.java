@@ -0,0 +1,58 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.geoserver.ows.CancellationToken;
+import org.geoserver.ows.ClientStreamAbortedException;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+public class CancellableFeatureCollectionTest {
+
+    @Test
+    public void testCancelWhileIterating() throws Exception {
+        SimpleFeatureType schema = DataUtilities.createType("test", "name:String");
+        ListFeatureCollection features = new ListFeatureCollection(schema);
+        for (int i = 0; i < 10; i++) {
+            features.add(SimpleFeatureBuilder.build(schema, new Object[] { "f" + i }, "test." + i));
+        }
+        CancellationToken token = new CancellationToken();
+        CancellableFeatureCollection cancellable = new CancellableFeatureCollection(features,
+                token);
+
+        int read = 0;
+        SimpleFeatureIterator it = cancellable.features();
+        try {
+            while (it.hasNext()) {
+                it.next();
+                if (++read == 3) {
+                    token.cancel();
+                }
+            }
+            fail("Should have stopped the iteration");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof ClientStreamAbortedException);
+        } finally {
+            it.close();
+        }
+        assertEquals(3, read);
+
+        // no new iterations either
+        try {
+            cancellable.features();
+            fail("Should have failed opening the iterator");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof ClientStreamAbortedException);
+        }
+    }
+}
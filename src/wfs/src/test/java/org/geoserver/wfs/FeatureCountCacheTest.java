@@ -0,0 +1,169 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.xml.namespace.QName;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.Query;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+
+public class FeatureCountCacheTest {
+
+    /**
+     * Keeps track of how many times it was counted
+     */
+    static class CountingCollection extends ListFeatureCollection {
+
+        int counts;
+
+        CountingCollection(SimpleFeatureType schema) {
+            super(schema);
+        }
+
+        @Override
+        public int size() {
+            counts++;
+            return super.size();
+        }
+    }
+
+    CountingCollection features;
+
+    SimpleFeatureSource source;
+
+    @Before
+    public void setup() throws Exception {
+        SimpleFeatureType schema = DataUtilities.createType("test", "name:String");
+        features = new CountingCollection(schema);
+        for (int i = 0; i < 10; i++) {
+            features.add(SimpleFeatureBuilder.build(schema, new Object[] { "f" + i }, "test." + i));
+        }
+        source = DataUtilities.source(features);
+    }
+
+    Query query(Filter filter, Integer startIndex, int maxFeatures) {
+        Query query = new Query("test", filter);
+        query.setStartIndex(startIndex);
+        query.setMaxFeatures(maxFeatures);
+        return query;
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        FeatureCountCache cache = new FeatureCountCache(0, 60);
+        assertFalse(cache.isEnabled());
+        Query query = query(Filter.INCLUDE, null, Query.DEFAULT_MAX);
+        assertEquals(10, cache.size(source, query, features));
+        assertEquals(10, cache.size(source, query, features));
+        assertEquals(2, features.counts);
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testPagesFromTotal() throws Exception {
+        FeatureCountCache cache = new FeatureCountCache(10, 60);
+        assertEquals(10, cache.size(source, query(Filter.INCLUDE, null, Query.DEFAULT_MAX), features));
+        assertEquals(1, cache.getSize());
+
+        // the pages are derived from the total count
+        assertEquals(3, cache.size(source, query(Filter.INCLUDE, 5, 3), features));
+        assertEquals(2, cache.size(source, query(Filter.INCLUDE, 8, 3), features));
+        assertEquals(0, cache.size(source, query(Filter.INCLUDE, 12, 3), features));
+        assertEquals(1, features.counts);
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testPageNotCached() throws Exception {
+        FeatureCountCache cache = new FeatureCountCache(10, 60);
+        cache.size(source, query(Filter.INCLUDE, 5, 3), features);
+        assertEquals(0, cache.getSize());
+        cache.size(source, query(Filter.INCLUDE, 5, 3), features);
+        assertEquals(2, features.counts);
+    }
+
+    @Test
+    public void testFilterInKey() throws Exception {
+        FeatureCountCache cache = new FeatureCountCache(10, 60);
+        FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+        Filter filter = ff.equals(ff.property("name"), ff.literal("f1"));
+        cache.size(source, query(Filter.INCLUDE, null, Query.DEFAULT_MAX), features);
+        cache.size(source, query(filter, null, Query.DEFAULT_MAX), features);
+        assertEquals(2, features.counts);
+        assertEquals(2, cache.getSize());
+    }
+
+    @Test
+    public void testTransactionInvalidates() throws Exception {
+        FeatureCountCache cache = new FeatureCountCache(10, 60);
+        Query query = query(Filter.INCLUDE, null, Query.DEFAULT_MAX);
+        cache.size(source, query, features);
+
+        // another type, nothing happens
+        cache.dataStoreChange(new TransactionEvent(TransactionEventType.POST_UPDATE, null,
+                new QName("other"), null));
+        assertEquals(1, cache.getSize());
+
+        cache.dataStoreChange(new TransactionEvent(TransactionEventType.POST_UPDATE, null,
+                new QName("test"), null));
+        assertEquals(0, cache.getSize());
+        cache.size(source, query, features);
+        assertEquals(2, features.counts);
+        cache.transactionFinished();
+        assertEquals(0, cache.getSize());
+        assertNull(FeatureCountCache.MODIFIED.get());
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        FeatureCountCache cache = new FeatureCountCache(10, 0);
+        Query query = query(Filter.INCLUDE, null, Query.DEFAULT_MAX);
+        cache.size(source, query, features);
+        Thread.sleep(5);
+        cache.size(source, query, features);
+        assertEquals(2, features.counts);
+    }
+
+    @Test
+    public void testStatisticsPublished() throws Exception {
+        FeatureCountCache cache = new FeatureCountCache(10, 60);
+        FeatureCountCacheMonitor monitor = new FeatureCountCacheMonitor(cache);
+        monitor.afterPropertiesSet();
+        try {
+            Query query = query(Filter.INCLUDE, null, Query.DEFAULT_MAX);
+            cache.size(source, query, features);
+            cache.size(source, query, features);
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(FeatureCountCacheMonitor.OBJECT_NAME);
+            assertEquals(Boolean.TRUE, server.getAttribute(name, "Enabled"));
+            assertEquals(1, server.getAttribute(name, "Size"));
+            assertEquals(1L, server.getAttribute(name, "HitCount"));
+            assertEquals(1L, server.getAttribute(name, "MissCount"));
+        } finally {
+            monitor.destroy();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(
+                new ObjectName(FeatureCountCacheMonitor.OBJECT_NAME)));
+    }
+}
@@ -0,0 +1,199 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.Query;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+public class KeysetCursorTest {
+
+    static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2();
+
+    static final int[] VALUES = new int[] { 4, 1, 1, 2, 4, 1, 3, 4, 4, 2, 5, 4, 4 };
+
+    SimpleFeatureType schema;
+
+    SimpleFeatureSource source;
+
+    @Before
+    public void setup() throws Exception {
+        schema = DataUtilities.createType("test", "name:String,value:Integer,geom:Point");
+        ListFeatureCollection features = new ListFeatureCollection(schema);
+        for (int i = 0; i < VALUES.length; i++) {
+            features.add(SimpleFeatureBuilder.build(schema, new Object[] { "f" + i, VALUES[i],
+                    null }, "test." + i));
+        }
+        source = DataUtilities.source(features);
+    }
+
+    Query query(int startIndex, int maxFeatures, SortBy... sortBy) {
+        Query query = new Query("test", Filter.INCLUDE);
+        query.setStartIndex(startIndex);
+        query.setMaxFeatures(maxFeatures);
+        query.setSortBy(sortBy);
+        return query;
+    }
+
+    List<String> names(Query query) throws Exception {
+        List<String> names = new ArrayList<String>();
+        SimpleFeatureIterator it = source.getFeatures(query).features();
+        try {
+            while (it.hasNext()) {
+                names.add((String) it.next().getAttribute("name"));
+            }
+        } finally {
+            it.close();
+        }
+        return names;
+    }
+
+    @Test
+    public void testEncodeDecode() {
+        KeysetCursor cursor = new KeysetCursor(30, "test", "value A,name D", 123, 2,
+                new String[] { "4", "a\nb" });
+        KeysetCursor decoded = KeysetCursor.decode(cursor.encode());
+        assertNotNull(decoded);
+        assertEquals(30, decoded.startIndex);
+        assertEquals("test", decoded.typeName);
+        assertEquals("value A,name D", decoded.sortSpec);
+        assertEquals(123, decoded.filterHash);
+        assertEquals(2, decoded.skip);
+        assertArrayEquals(new String[] { "4", "a\nb" }, decoded.values);
+
+        assertNull(KeysetCursor.decode("not a cursor"));
+        assertNull(KeysetCursor.decode(""));
+    }
+
+    @Test
+    public void testNotSeekable() throws Exception {
+        // natural order, geometries and missing attributes cannot be used
+        assertNull(KeysetCursor.getSortBindings(schema, new SortBy[] { SortBy.NATURAL_ORDER }));
+        assertNull(KeysetCursor.getSortBindings(schema,
+                new SortBy[] { FF.sort("geom", SortOrder.ASCENDING) }));
+        assertNull(KeysetCursor.getSortBindings(schema,
+                new SortBy[] { FF.sort("missing", SortOrder.ASCENDING) }));
+        assertNull(KeysetCursor.next(source, query(0, 3, SortBy.NATURAL_ORDER), 0, 3, null));
+    }
+
+    @Test
+    public void testMatches() throws Exception {
+        SortBy[] sortBy = new SortBy[] { FF.sort("value", SortOrder.ASCENDING) };
+        KeysetCursor cursor = KeysetCursor.next(source, query(0, 3, sortBy), 0, 3, null);
+        assertTrue(cursor.matches(query(3, 3, sortBy), 3, schema));
+        // different page, sort, or filter
+        assertFalse(cursor.matches(query(6, 3, sortBy), 6, schema));
+        assertFalse(cursor.matches(query(3, 3, FF.sort("value", SortOrder.DESCENDING)), 3,
+                schema));
+        Query filtered = query(3, 3, sortBy);
+        filtered.setFilter(FF.greater(FF.property("value"), FF.literal(1)));
+        assertFalse(cursor.matches(filtered, 3, schema));
+    }
+
+    @Test
+    public void testPagingAscending() throws Exception {
+        checkPaging(FF.sort("value", SortOrder.ASCENDING));
+    }
+
+    @Test
+    public void testPagingDescending() throws Exception {
+        checkPaging(FF.sort("value", SortOrder.DESCENDING));
+    }
+
+    @Test
+    public void testPagingMultipleAttributes() throws Exception {
+        checkPaging(FF.sort("value", SortOrder.DESCENDING), FF.sort("name", SortOrder.ASCENDING));
+    }
+
+    @Test
+    public void testPagingSmallPages() throws Exception {
+        // pages smaller than the groups of equal values
+        for (int pageSize = 1; pageSize <= 4; pageSize++) {
+            checkPaging(pageSize, FF.sort("value", SortOrder.ASCENDING));
+        }
+    }
+
+    @Test
+    public void testTimestamps() throws Exception {
+        java.sql.Timestamp timestamp = java.sql.Timestamp.valueOf("2016-05-10 12:30:15.123456789");
+        String formatted = KeysetCursor.format(timestamp);
+        assertEquals(timestamp, KeysetCursor.parse(formatted, java.sql.Timestamp.class));
+        assertEquals(timestamp, KeysetCursor.parse(formatted, java.util.Date.class));
+        java.sql.Date date = java.sql.Date.valueOf("2016-05-10");
+        assertEquals(date, KeysetCursor.parse(KeysetCursor.format(date), java.sql.Date.class));
+
+        // timestamps with a sub millisecond part, cursors losing it would make the seek filter
+        // repeat or skip the last features of the pages
+        schema = DataUtilities.createType("test", "name:String,time:java.util.Date");
+        ListFeatureCollection features = new ListFeatureCollection(schema);
+        for (int i = 0; i < VALUES.length; i++) {
+            java.sql.Timestamp time = new java.sql.Timestamp(timestamp.getTime() + VALUES[i]
+                    * 1000);
+            time.setNanos(timestamp.getNanos());
+            features.add(SimpleFeatureBuilder.build(schema, new Object[] { "f" + i, time },
+                    "test." + i));
+        }
+        source = DataUtilities.source(features);
+        for (int pageSize = 1; pageSize <= 4; pageSize++) {
+            checkPaging(pageSize, FF.sort("time", SortOrder.ASCENDING));
+        }
+    }
+
+    void checkPaging(SortBy... sortBy) throws Exception {
+        checkPaging(3, sortBy);
+    }
+
+    /**
+     * Pages through the whole result following the cursors, and checks the result is the same as
+     * the one of offset paging
+     */
+    void checkPaging(int pageSize, SortBy... sortBy) throws Exception {
+        List<String> expected = names(query(0, Query.DEFAULT_MAX, sortBy));
+        List<String> actual = new ArrayList<String>();
+
+        KeysetCursor cursor = null;
+        int offset = 0;
+        while (true) {
+            Query query = query(offset, pageSize, sortBy);
+            if (cursor != null) {
+                assertTrue(cursor.matches(query, offset, schema));
+                query = cursor.seek(query, schema);
+            }
+            List<String> page = names(query);
+            actual.addAll(page);
+            if (page.size() < pageSize) {
+                break;
+            }
+            KeysetCursor next = KeysetCursor.next(source, query, offset, page.size(), cursor);
+            // the first page can always produce a cursor, the following ones have one to start
+            // from
+            assertNotNull(next);
+            cursor = KeysetCursor.decode(next.encode());
+            offset += page.size();
+        }
+        assertEquals(expected, actual);
+    }
+}
@@ -120,6 +120,87 @@ public class TransactionListenerTest extends WFSTestSupport {
         assertEquals(fid, inserted.getIdentifier().getID());
     }
 
+    @Test
+    public void testInsertBatches() throws Exception {
+        InsertElementHandler handler = (InsertElementHandler) applicationContext
+                .getBean("wfsInsertElementHandler");
+        int batchSize = handler.getBatchSize();
+        handler.setBatchSize(1);
+        try {
+            String insert = "<wfs:Transaction service=\"WFS\" version=\"1.0.0\" "
+                    + "xmlns:cgf=\"http://www.opengis.net/cite/geometry\" "
+                    + "xmlns:ogc=\"http://www.opengis.net/ogc\" "
+                    + "xmlns:wfs=\"http://www.opengis.net/wfs\" "
+                    + "xmlns:gml=\"http://www.opengis.net/gml\"> "
+                    + "<wfs:Insert > "
+                    + "<cgf:Lines>"
+                    + "<cgf:lineStringProperty>"
+                    + "<gml:LineString>"
+                    + "<gml:coordinates decimal=\".\" cs=\",\" ts=\" \">"
+                    + "494475.71056415,5433016.8189323 494982.70115662,5435041.95096618"
+                    + "</gml:coordinates>" + "</gml:LineString>"
+                    + "</cgf:lineStringProperty>" + "<cgf:id>t0004</cgf:id>"
+                    + "</cgf:Lines>"
+                    + "<cgf:Lines>"
+                    + "<cgf:lineStringProperty>"
+                    + "<gml:LineString>"
+                    + "<gml:coordinates decimal=\".\" cs=\",\" ts=\" \">"
+                    + "494475.71056415,5433016.8189323 494982.70115662,5435041.95096618"
+                    + "</gml:coordinates>" + "</gml:LineString>"
+                    + "</cgf:lineStringProperty>" + "<cgf:id>t0005</cgf:id>"
+                    + "</cgf:Lines>" + "</wfs:Insert>" + "</wfs:Transaction>";
+
+            Document dom = postAsDOM("wfs", insert);
+            assertEquals(2, dom.getElementsByTagName("ogc:FeatureId").getLength());
+
+            // a pre and post insert event for each batch, with one feature each
+            assertEquals(4, listener.events.size());
+            assertEquals(4, listener.features.size());
+            for (int i = 0; i < 4; i++) {
+                TransactionEvent event = (TransactionEvent) listener.events.get(i);
+                assertEquals(i % 2 == 0 ? TransactionEventType.PRE_INSERT
+                        : TransactionEventType.POST_INSERT, event.getType());
+            }
+        } finally {
+            handler.setBatchSize(batchSize);
+        }
+    }
+
+    @Test
+    public void testInsertDuplicateFids() throws Exception {
+        String insert = "<wfs:Transaction service=\"WFS\" version=\"1.0.0\" "
+                + "xmlns:cgf=\"http://www.opengis.net/cite/geometry\" "
+                + "xmlns:ogc=\"http://www.opengis.net/ogc\" "
+                + "xmlns:wfs=\"http://www.opengis.net/wfs\" "
+                + "xmlns:gml=\"http://www.opengis.net/gml\"> "
+                + "<wfs:Insert > "
+                + "<cgf:Lines fid=\"Lines.dup\">"
+                + "<cgf:lineStringProperty>"
+                + "<gml:LineString>"
+                + "<gml:coordinates decimal=\".\" cs=\",\" ts=\" \">"
+                + "494475.71056415,5433016.8189323 494982.70115662,5435041.95096618"
+                + "</gml:coordinates>" + "</gml:LineString>"
+                + "</cgf:lineStringProperty>" + "<cgf:id>t0006</cgf:id>"
+                + "</cgf:Lines>"
+                + "<cgf:Lines fid=\"Lines.dup\">"
+                + "<cgf:lineStringProperty>"
+                + "<gml:LineString>"
+                + "<gml:coordinates decimal=\".\" cs=\",\" ts=\" \">"
+                + "494475.71056415,5433016.8189323 494982.70115662,5435041.95096618"
+                + "</gml:coordinates>" + "</gml:LineString>"
+                + "</cgf:lineStringProperty>" + "<cgf:id>t0007</cgf:id>"
+                + "</cgf:Lines>" + "</wfs:Insert>" + "</wfs:Transaction>";
+
+        postAsDOM("wfs", insert);
+        // the second feature with the same fid is skipped, only the first reaches the store
+        assertEquals(2, listener.events.size());
+        TransactionEvent event = (TransactionEvent) listener.events.get(0);
+        assertEquals(TransactionEventType.PRE_INSERT, event.getType());
+        assertEquals(2, listener.features.size());
+        Feature inserted = (Feature) listener.features.get(0);
+        assertEquals("t0006", inserted.getProperty("id").getValue());
+    }
+
     @Test
     public void testUpdate() throws Exception {
         // perform an update
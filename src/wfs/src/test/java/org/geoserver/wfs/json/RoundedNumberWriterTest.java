@@ -0,0 +1,61 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.json;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.util.Random;
+
+import net.sf.json.JSONException;
+import net.sf.json.util.JSONUtils;
+
+import org.junit.Test;
+
+public class RoundedNumberWriterTest {
+
+    @Test
+    public void testSpecialValues() throws Exception {
+        assertEncoding(0, 6);
+        assertEncoding(-0d, 6);
+        assertEncoding(1, 6);
+        assertEncoding(-1, 6);
+        assertEncoding(0.001, 6);
+        assertEncoding(0.0009999, 6);
+        assertEncoding(0.0001, 6);
+        assertEncoding(9999999.9999, 2);
+        assertEncoding(10000000, 2);
+        assertEncoding(1e20, 4);
+        assertEncoding(12.345678912, 8);
+        assertEncoding(12.345678912, 10);
+        assertEncoding(-180, 0);
+        assertEncoding(0.5, 0);
+    }
+
+    @Test(expected = JSONException.class)
+    public void testNaN() throws Exception {
+        new RoundedNumberWriter(new StringWriter(), 6).write(Double.NaN);
+    }
+
+    @Test
+    public void testRandomValues() throws Exception {
+        Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            int decimals = random.nextInt(10);
+            // cover several orders of magnitude, typical of geographic and projected coordinates
+            double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 4);
+            assertEncoding(value, decimals);
+        }
+    }
+
+    void assertEncoding(double value, int decimals) throws Exception {
+        StringWriter writer = new StringWriter();
+        new RoundedNumberWriter(writer, decimals).write(value);
+        String expected = JSONUtils.numberToString(Double.valueOf(RoundingUtil.round(value,
+                decimals)));
+        assertEquals("Encoding " + value + " with " + decimals + " decimals", expected,
+                writer.toString());
+    }
+}
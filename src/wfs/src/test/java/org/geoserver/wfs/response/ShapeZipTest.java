@@ -168,6 +168,28 @@ public class ShapeZipTest extends WFSTestSupport {
                 getRequest(getBinaryInputStream(response)));
     }
     
+    @Test
+    public void testRequestDumpName() throws Exception {
+        MockHttpServletResponse response = getAsServletResponse("wfs?service=WFS&version=1.0.0"
+                + "&request=GetFeature&typeName=" + getLayerId(SystemTestData.BASIC_POLYGONS)
+                + "&outputFormat=SHAPE-ZIP");
+        assertEquals("application/zip", response.getContentType());
+        Set<String> names = new HashSet<String>();
+        ZipInputStream zis = new ZipInputStream(getBinaryInputStream(response));
+        try {
+            ZipEntry entry = null;
+            while ((entry = zis.getNextEntry()) != null) {
+                names.add(entry.getName());
+            }
+        } finally {
+            zis.close();
+        }
+        // the request dump shares the shapefile name, but is not a part of it
+        assertTrue(names.toString(), names.contains("BasicPolygons.shp"));
+        assertTrue(names.toString(), names.contains("BasicPolygons.txt"));
+        assertFalse(names.toString(), names.contains("BasicPolygons_1.txt"));
+    }
+
     @Test
     public void testRequestUrlWithProxyBase() throws Exception {
         // setup a proxy base url
@@ -282,6 +304,32 @@ public class ShapeZipTest extends WFSTestSupport {
         assertTrue("Did not find readme file", foundReadme);
     }
 
+    @Test
+    public void testSameTypeTwice() throws Exception {
+        // two queries against the same type, the shapefiles are streamed out one after the other
+        // and the second one must not clash with the first
+        SimpleFeatureCollection fc = getFeatureSource(SystemTestData.BASIC_POLYGONS).getFeatures();
+        ShapeZipOutputFormat zip = new ShapeZipOutputFormat();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        FeatureCollectionResponse fct = 
+            FeatureCollectionResponse.adapt(WfsFactory.eINSTANCE.createFeatureCollectionType());
+        fct.getFeature().add(fc);
+        fct.getFeature().add(fc);
+        zip.write(fct, bos, op);
+
+        Set<String> shapefiles = new HashSet<String>();
+        ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            if (entry.getName().endsWith(".shp")) {
+                assertTrue(entry.getName().startsWith("BasicPolygons"));
+                shapefiles.add(entry.getName());
+            }
+        }
+        zis.close();
+        assertEquals(2, shapefiles.size());
+    }
+
     @Test
     public void testTemplateSingleType() throws Exception {
         // copy the new template to the data dir
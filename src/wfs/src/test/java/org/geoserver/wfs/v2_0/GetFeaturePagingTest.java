@@ -9,9 +9,11 @@ import static org.junit.Assert.*;
 
 import java.io.ByteArrayInputStream;
 import java.net.URLDecoder;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -22,6 +24,7 @@ import org.geoserver.catalog.DataStoreInfo;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.data.test.SystemTestData;
 import org.geoserver.ows.util.KvpMap;
+import org.geoserver.wfs.GetFeature;
 import org.geotools.data.DataStore;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.FeatureStore;
@@ -41,6 +44,8 @@ import org.opengis.filter.FilterFactory;
 import org.opengis.filter.Id;
 import org.opengis.filter.identity.Identifier;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 
 public class GetFeaturePagingTest extends WFS20TestSupport {
 
@@ -537,6 +542,56 @@ public class GetFeaturePagingTest extends WFS20TestSupport {
         XMLAssert.assertXpathExists("//gs:Fifteen/gs:num[text() = '14']", dom);
     }
 
+    @Test
+    public void testKeysetPagingGET() throws Exception {
+        System.setProperty(GetFeature.KEYSET_PAGING_KEY, "true");
+        try {
+            String request = "wfs?request=GetFeature&version=2.0.0&service=wfs"
+                    + "&typename=gs:Fifteen&sortBy=num+DESC&count=4";
+            Document doc = getAsDOM(request + "&startIndex=0");
+            List<String> ids = featureIds(doc, "gs:Fifteen");
+            String cursor = null;
+            int startIndex = 0;
+            while (doc.getDocumentElement().hasAttribute("next")) {
+                String next = doc.getDocumentElement().getAttribute("next");
+                KvpMap kvp = toKvpMap(next);
+                startIndex += 4;
+                assertEquals(String.valueOf(startIndex), kvp.get("STARTINDEX"));
+                assertNotNull(kvp.get(GetFeature.CURSOR_PARAM));
+                if (cursor == null) {
+                    cursor = (String) kvp.get(GetFeature.CURSOR_PARAM);
+                }
+
+                // following the cursor returns the same page as offset paging
+                doc = getAsDOM(next.substring(next.indexOf("wfs")));
+                Document offsetDoc = getAsDOM(request + "&startIndex=" + startIndex);
+                assertEquals(featureIds(offsetDoc, "gs:Fifteen"), featureIds(doc, "gs:Fifteen"));
+                ids.addAll(featureIds(doc, "gs:Fifteen"));
+            }
+            assertEquals(15, ids.size());
+            assertEquals(15, new HashSet<String>(ids).size());
+
+            // a cursor built for another page, or a tampered one, falls back on offset paging
+            List<String> expected = featureIds(getAsDOM(request + "&startIndex=8"), "gs:Fifteen");
+            doc = getAsDOM(request + "&startIndex=8&" + GetFeature.CURSOR_PARAM + "=" + cursor);
+            assertEquals(expected, featureIds(doc, "gs:Fifteen"));
+            doc = getAsDOM(request + "&startIndex=8&" + GetFeature.CURSOR_PARAM + "=tampered"
+                    + cursor);
+            assertEquals(expected, featureIds(doc, "gs:Fifteen"));
+        } finally {
+            System.clearProperty(GetFeature.KEYSET_PAGING_KEY);
+        }
+    }
+
+    List<String> featureIds(Document doc, String typeName) {
+        List<String> ids = new ArrayList<String>();
+        NodeList features = doc.getElementsByTagName(typeName);
+        for (int i = 0; i < features.getLength(); i++) {
+            ids.add(((Element) features.item(i)).getAttribute("gml:id"));
+        }
+        return ids;
+    }
+
     @Test
     public void testNextPreviousHitsGET() throws Exception {
         doTestNextPreviousHitsGET("gs:Fifteen");
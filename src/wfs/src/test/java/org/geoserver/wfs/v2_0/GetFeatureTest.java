@@ -22,6 +22,8 @@ import org.geoserver.data.test.SystemTestData;
 import org.geoserver.wfs.GMLInfo;
 import org.geoserver.wfs.StoredQuery;
 import org.geoserver.wfs.WFSInfo;
+import org.geoserver.wfs.xml.ApplicationSchemaCache;
+import org.geoserver.wfs.xml.GML32OutputFormat;
 import org.geotools.filter.v2_0.FES;
 import org.geotools.gml3.v3_2.GML;
 import org.geotools.wfs.v2_0.WFS;
@@ -82,6 +84,30 @@ public class GetFeatureTest extends WFS20TestSupport {
         XMLAssert.assertXpathEvaluatesTo("7", "count(//cdf:Seven)", dom);
     }
 
+    @Test
+    public void testSchemaCache() throws Exception {
+        ApplicationSchemaCache cache = ((GML32OutputFormat) applicationContext
+                .getBean("gml32OutputFormat")).getSchemaCache();
+        cache.clear();
+
+        // the same types, in any order, share the same schema
+        getAsDOM("wfs?request=GetFeature&typenames=(cdf:Fifteen)(cdf:Seven)&version=2.0.0&service=wfs");
+        Document dom = getAsDOM("wfs?request=GetFeature&typenames=(cdf:Seven)(cdf:Fifteen)&version=2.0.0&service=wfs");
+        XMLAssert.assertXpathEvaluatesTo("15", "count(//cdf:Fifteen)", dom);
+        XMLAssert.assertXpathEvaluatesTo("7", "count(//cdf:Seven)", dom);
+        assertEquals(1, cache.getSize());
+        getAsDOM("wfs?request=GetFeature&typenames=cdf:Fifteen&version=2.0.0&service=wfs");
+        assertEquals(2, cache.getSize());
+
+        // a catalog change drops the cached schemas
+        FeatureTypeInfo fti = getCatalog().getFeatureTypeByName("Fifteen");
+        fti.setTitle("Fifteen features");
+        getCatalog().save(fti);
+        assertEquals(0, cache.getSize());
+        testGetFifteenAll("wfs?request=GetFeature&typenames=cdf:Fifteen&version=2.0.0&service=wfs");
+        assertEquals(1, cache.getSize());
+    }
+
     @Test
     public void testGetTypeName() throws Exception {
         testGetFifteenAll("wfs?request=GetFeature&typename=cdf:Fifteen&version=2.0.0&service=wfs");
@@ -17,6 +17,8 @@ import javax.xml.namespace.QName;
 import org.custommonkey.xmlunit.XMLAssert;
 import org.geoserver.data.test.CiteTestData;
 import org.geoserver.data.test.SystemTestData;
+import org.geoserver.wfs.DefaultWebFeatureService20;
+import org.geoserver.wfs.FeatureCountCache;
 import org.geotools.filter.v2_0.FES;
 import org.geotools.gml3.v3_2.GML;
 import org.geotools.wfs.v2_0.WFS;
@@ -824,4 +826,41 @@ public class TransactionTest extends WFS20TestSupport {
        assertEquals("soap:Envelope", dom.getDocumentElement().getNodeName());
        assertEquals(1, dom.getElementsByTagName("wfs:TransactionResponse").getLength());
    }
+
+    @Test
+    public void testDeleteInvalidatesCount() throws Exception {
+        DefaultWebFeatureService20 service = applicationContext.getBean("wfsService20Target",
+                DefaultWebFeatureService20.class);
+        FeatureCountCache cache = new FeatureCountCache(10, 60);
+        service.setCountCache(cache);
+        try {
+            String hits = "wfs?service=wfs&version=2.0.0&request=GetFeature"
+                    + "&typenames=cite:RoadSegments&resultType=hits";
+            Document dom = getAsDOM(hits);
+            int count = Integer.parseInt(dom.getDocumentElement().getAttribute("numberMatched"));
+            assertEquals(1, cache.getSize());
+
+            String xml = "<wfs:Transaction service='WFS' version='2.0.0'"
+                    + " xmlns:fes='" + FES.NAMESPACE + "'"
+                    + " xmlns:wfs='" + WFS.NAMESPACE + "'"
+                    + " xmlns:cite='http://www.opengis.net/cite'>"
+                    + " <wfs:Delete typeName='cite:RoadSegments'>"
+                    + "  <fes:Filter>"
+                    + "   <fes:ResourceId rid='RoadSegments.1107532045091'/>"
+                    + "  </fes:Filter>"
+                    + " </wfs:Delete>"
+                    + "</wfs:Transaction>";
+            dom = postAsDOM("wfs", xml);
+            XMLAssert.assertXpathExists("//wfs:totalDeleted[text() = 1]", dom);
+
+            // the cached count is gone, and the new one accounts for the deletion
+            assertEquals(0, cache.getSize());
+            dom = getAsDOM(hits);
+            assertEquals(String.valueOf(count - 1),
+                    dom.getDocumentElement().getAttribute("numberMatched"));
+        } finally {
+            service.setCountCache(applicationContext.getBean("wfsFeatureCountCache",
+                    FeatureCountCache.class));
+        }
+    }
 }
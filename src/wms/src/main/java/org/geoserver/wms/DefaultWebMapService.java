@@ -117,6 +117,12 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
      */
     public static ExecutorService RENDERING_POOL;
 
+    /**
+     * The pool used to render the layers of a map in parallel, see
+     * {@link WMS#isParallelRenderingEnabled()}
+     */
+    static ExecutorService PARALLEL_RENDERING_POOL;
+
     /**
      * default for 'bbox' paramter
      */
@@ -148,6 +154,11 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
      */
     private static Boolean USE_GLOBAL_RENDERING_POOL = null;
 
+    /**
+     * Max number of threads rendering layers in parallel, shared among all requests
+     */
+    private static Integer PARALLEL_RENDERING_THREADS = null;
+
     private GetCapabilities getCapabilities;
 
     private DescribeLayer describeLayer;
@@ -247,6 +258,16 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
             else
                 USE_GLOBAL_RENDERING_POOL = Boolean.valueOf(usePool);
         }
+
+        // size of the parallel layer rendering pool
+        if (PARALLEL_RENDERING_THREADS == null) {
+            String threads = GeoServerExtensions.getProperty("PARALLEL_RENDERING_THREADS", context);
+            // default to the number of cores
+            if (threads == null)
+                PARALLEL_RENDERING_THREADS = Runtime.getRuntime().availableProcessors();
+            else
+                PARALLEL_RENDERING_THREADS = Integer.valueOf(threads);
+        }
     }
 
     /**
@@ -686,12 +707,44 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
         return RENDERING_POOL;
     }
 
+    /**
+     * Returns the max number of layer groups of a single map that can be rendered in parallel
+     * (defaults to the number of cores, can be set with the PARALLEL_RENDERING_THREADS property)
+     */
+    public static int getParallelRenderingThreads() {
+        if (PARALLEL_RENDERING_THREADS == null) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return PARALLEL_RENDERING_THREADS;
+    }
+
+    /**
+     * Returns the app wide bounded pool used to render the layers of a map in parallel
+     */
+    public static ExecutorService getParallelRenderingPool() {
+        if (PARALLEL_RENDERING_POOL == null) {
+            synchronized (DefaultWebMapService.class) {
+                if (PARALLEL_RENDERING_POOL == null) {
+                    PARALLEL_RENDERING_POOL = Executors
+                            .newFixedThreadPool(getParallelRenderingThreads());
+                }
+            }
+        }
+
+        return PARALLEL_RENDERING_POOL;
+    }
+
     public void destroy() throws Exception {
         if (RENDERING_POOL != null) {
             RENDERING_POOL.shutdown();
             RENDERING_POOL.awaitTermination(10, TimeUnit.SECONDS);
             RENDERING_POOL = null;
         }
+        if (PARALLEL_RENDERING_POOL != null) {
+            PARALLEL_RENDERING_POOL.shutdown();
+            PARALLEL_RENDERING_POOL.awaitTermination(10, TimeUnit.SECONDS);
+            PARALLEL_RENDERING_POOL = null;
+        }
     }
 
 }
@@ -103,6 +103,28 @@ public class WMS implements ApplicationContextAware {
 
     public static final int PNG_COMPRESSION_DEFAULT = 25;
 
+    /**
+     * Minimum number of pixels for a PNG image to be compressed in parallel
+     */
+    public static final String PNG_PARALLEL_THRESHOLD = "pngParallelThreshold";
+
+    /**
+     * Parallel PNG compression is disabled by default
+     */
+    public static final int PNG_PARALLEL_THRESHOLD_DEFAULT = 0;
+
+    /**
+     * Max number of blocks compressed in parallel for a single PNG image
+     */
+    public static final String PNG_PARALLEL_THREADS = "pngParallelThreads";
+
+    /**
+     * Enables picking the PNG filter, compression level and palette reduction by sampling each map
+     */
+    public static final String PNG_ADAPTIVE = "pngAdaptive";
+
+    public static final boolean PNG_ADAPTIVE_DEFAULT = false;
+
     public static final String MAX_ALLOWED_FRAMES = "maxAllowedFrames";
 
     public static final int MAX_ALLOWED_FRAMES_DEFAULT = Integer.MAX_VALUE;
@@ -201,6 +223,26 @@ public class WMS implements ApplicationContextAware {
      */
     public static String ADVANCED_PROJECTION_KEY = "advancedProjectionHandling";
 
+    /**
+     * Capabilities document cache key
+     */
+    public static final String CAPABILITIES_CACHE_KEY = "capabilitiesCache";
+
+    /**
+     * Capabilities documents are not cached by default
+     */
+    public static final Boolean CAPABILITIES_CACHE_DEFAULT = Boolean.FALSE;
+
+    /**
+     * Parallel rendering of the layers of a GetMap request key
+     */
+    public static final String PARALLEL_RENDERING_KEY = "parallelRendering";
+
+    /**
+     * Layers are rendered one after the other by default
+     */
+    public static final Boolean PARALLEL_RENDERING_DEFAULT = Boolean.FALSE;
+
     /**
      * GIF disposal methods
      */
@@ -508,6 +550,32 @@ public class WMS implements ApplicationContextAware {
                 PNG_COMPRESSION_DEFAULT);
     }
 
+    /**
+     * Returns the minimum number of pixels for a PNG image to be compressed in parallel, zero or
+     * negative if parallel compression is disabled
+     */
+    public int getPngParallelThreshold() {
+        return getMetadataValue(PNG_PARALLEL_THRESHOLD, PNG_PARALLEL_THRESHOLD_DEFAULT,
+                Integer.class);
+    }
+
+    /**
+     * Returns the max number of blocks compressed in parallel for a single PNG image, defaults to
+     * the number of cores
+     */
+    public int getPngParallelThreads() {
+        return getMetadataValue(PNG_PARALLEL_THREADS, Runtime.getRuntime().availableProcessors(),
+                Integer.class);
+    }
+
+    /**
+     * Returns true if the PNG encoding parameters should be picked by sampling each map, instead of
+     * using the configured compression for all of them
+     */
+    public boolean isPngAdaptive() {
+        return getMetadataValue(PNG_ADAPTIVE, PNG_ADAPTIVE_DEFAULT, Boolean.class);
+    }
+
     public int getJpegCompression() {
         WMSInfo serviceInfo = getServiceInfo();
         return getMetadataPercentage(serviceInfo.getMetadata(), JPEG_COMPRESSION,
@@ -539,6 +607,23 @@ public class WMS implements ApplicationContextAware {
         return enabled;
     }
 
+    /**
+     * Checks if the encoded capabilities documents should be cached in memory, see
+     * {@link org.geoserver.wms.capabilities.CapabilitiesCache}
+     */
+    public boolean isCapabilitiesCacheEnabled() {
+        return getMetadataValue(CAPABILITIES_CACHE_KEY, CAPABILITIES_CACHE_DEFAULT, Boolean.class);
+    }
+
+    /**
+     * Checks if the layers of a GetMap request should be rendered in parallel, each group of
+     * layers in its own off-screen buffer, see
+     * {@link org.geoserver.wms.map.RenderedImageMapOutputFormat}
+     */
+    public boolean isParallelRenderingEnabled() {
+        return getMetadataValue(PARALLEL_RENDERING_KEY, PARALLEL_RENDERING_DEFAULT, Boolean.class);
+    }
+
     public int getMaxAllowedFrames() {
     	return getMetadataValue(MAX_ALLOWED_FRAMES, MAX_ALLOWED_FRAMES_DEFAULT, Integer.class);
     }
@@ -5,12 +5,18 @@
  */
 package org.geoserver.wms.capabilities;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
 import org.geoserver.ows.Response;
 import org.geoserver.platform.Operation;
 import org.geoserver.platform.ServiceException;
+import org.geoserver.wms.GetCapabilitiesRequest;
 
 /**
- * Base class that handles common behavior between 1.1.1 and 1.3.0
+ * Base class that handles common behavior between 1.1.1 and 1.3.0, including serving the
+ * documents out of the {@link CapabilitiesCache} when enabled
  * 
  * @author Simone Giannecchini, GeoSolutions
  *
@@ -49,4 +55,35 @@ public abstract class BaseCapabilitiesResponse extends Response {
                 + "/" + operation.getId());
     }
 
-}
\ No newline at end of file
+    /**
+     * Writes the capabilities document, serving it from the {@link CapabilitiesCache} if
+     * possible, or encoding it with {@link #encode(Object, OutputStream, Operation)} otherwise
+     */
+    @Override
+    public final void write(Object value, OutputStream output, Operation operation)
+            throws IOException, ServiceException {
+        CapabilitiesCache cache = CapabilitiesCache.get();
+        if (cache == null || !cache.isEnabled()) {
+            encode(value, output, operation);
+            return;
+        }
+
+        GetCapabilitiesRequest request = (GetCapabilitiesRequest) operation.getParameters()[0];
+        String key = cache.getKey(request);
+        byte[] document = cache.get(key);
+        if (document == null) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            encode(value, bos, operation);
+            document = bos.toByteArray();
+            cache.put(key, document);
+        }
+        output.write(document);
+    }
+
+    /**
+     * Encodes the capabilities document to the output
+     */
+    protected abstract void encode(Object value, OutputStream output, Operation operation)
+            throws IOException, ServiceException;
+
+}
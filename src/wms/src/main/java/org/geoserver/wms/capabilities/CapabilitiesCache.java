@@ -0,0 +1,280 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.capabilities;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.config.ConfigurationListenerAdapter;
+import org.geoserver.config.GeoServer;
+import org.geoserver.config.GeoServerInfo;
+import org.geoserver.config.ServiceInfo;
+import org.geoserver.config.SettingsInfo;
+import org.geoserver.ows.LocalLayer;
+import org.geoserver.ows.LocalWorkspace;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.security.impl.DataAccessRuleDAO;
+import org.geoserver.wms.GetCapabilitiesRequest;
+import org.geoserver.wms.WMS;
+import org.geotools.util.logging.Logging;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * Keeps the encoded WMS capabilities documents in memory, so that repeated requests do not need
+ * to walk the whole catalog again.
+ * <p>
+ * Documents are keyed by the request version, base URL and parameters, the virtual service
+ * workspace and layer, the global update sequence, the data security rules revision and the roles
+ * of the current user, so that users seeing different subsets of the catalog get different
+ * documents. The cache is emptied on any catalog or configuration change.
+ * </p>
+ * <p>
+ * The cache is used only if enabled in the WMS configuration, see
+ * {@link WMS#isCapabilitiesCacheEnabled()}. The maximum amount of memory used by the cached
+ * documents and their time to live can be configured via {@link #setMaxSize(long)} and
+ * {@link #setTimeToLive(long)}.
+ * </p>
+ */
+public class CapabilitiesCache extends ConfigurationListenerAdapter implements CatalogListener {
+
+    static final Logger LOGGER = Logging.getLogger(CapabilitiesCache.class);
+
+    /**
+     * Default max amount of memory used by the cached documents, 64MB
+     */
+    public static final long DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Default time to live of a cached document, in seconds
+     */
+    public static final long DEFAULT_TIME_TO_LIVE = 600;
+
+    WMS wms;
+
+    long maxSize = DEFAULT_MAX_SIZE;
+
+    long timeToLive = DEFAULT_TIME_TO_LIVE;
+
+    volatile Cache<String, byte[]> documents;
+
+    public CapabilitiesCache(WMS wms, GeoServer geoServer) {
+        this.wms = wms;
+        this.documents = buildCache();
+        geoServer.getCatalog().addListener(this);
+        geoServer.addListener(this);
+    }
+
+    /**
+     * Looks up the capabilities cache in the application context
+     */
+    public static CapabilitiesCache get() {
+        return GeoServerExtensions.bean(CapabilitiesCache.class);
+    }
+
+    Cache<String, byte[]> buildCache() {
+        return CacheBuilder.newBuilder().maximumWeight(maxSize)
+                .weigher(new Weigher<String, byte[]>() {
+
+                    @Override
+                    public int weigh(String key, byte[] value) {
+                        return key.length() * 2 + value.length;
+                    }
+                }).expireAfterWrite(timeToLive, TimeUnit.SECONDS).build();
+    }
+
+    /**
+     * Sets the max amount of memory, in bytes, used by the cached documents
+     */
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        this.documents = buildCache();
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the time to live of the cached documents, in seconds
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+        this.documents = buildCache();
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Returns true if the cache is enabled in the WMS configuration
+     */
+    public boolean isEnabled() {
+        return wms.isCapabilitiesCacheEnabled();
+    }
+
+    /**
+     * Returns the cached document for the specified key, or null if not found
+     */
+    public byte[] get(String key) {
+        return documents.getIfPresent(key);
+    }
+
+    public void put(String key, byte[] document) {
+        documents.put(key, document);
+    }
+
+    /**
+     * Number of documents currently in the cache
+     */
+    public long size() {
+        return documents.size();
+    }
+
+    /**
+     * Removes all the cached documents
+     */
+    public void clear() {
+        documents.invalidateAll();
+    }
+
+    /**
+     * Builds the key for the specified request, in the context of the current request thread
+     * (virtual services and authenticated user)
+     */
+    public String getKey(GetCapabilitiesRequest request) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(request.getVersion()).append('|');
+        sb.append(request.getBaseUrl()).append('|');
+        sb.append(request.getNamespace()).append('|');
+        WorkspaceInfo ws = LocalWorkspace.get();
+        sb.append(ws != null ? ws.getName() : "").append('|');
+        LayerInfo layer = LocalLayer.get();
+        sb.append(layer != null ? layer.getName() : "").append('|');
+        sb.append(wms.getGeoServer().getGlobal().getUpdateSequence()).append('|');
+        sb.append(getSecurityRevision()).append('|');
+
+        // the raw parameters, in a case insensitive, predictable order
+        Map<String, String> rawKvp = request.getRawKvp();
+        if (rawKvp != null) {
+            Map<String, String> sorted = new TreeMap<String, String>();
+            for (Map.Entry<String, String> entry : rawKvp.entrySet()) {
+                if (entry.getKey() != null) {
+                    sorted.put(entry.getKey().toUpperCase(), entry.getValue());
+                }
+            }
+            sb.append(sorted).append('|');
+        }
+
+        // the roles of the current user
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null && auth.getAuthorities() != null) {
+            List<String> roles = new ArrayList<String>();
+            for (GrantedAuthority authority : auth.getAuthorities()) {
+                roles.add(authority.getAuthority());
+            }
+            Collections.sort(roles);
+            sb.append(roles);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * The data security rules can be changed by editing the rules file directly, without any
+     * configuration event, use its last modification time as part of the key
+     */
+    long getSecurityRevision() {
+        try {
+            DataAccessRuleDAO dao = DataAccessRuleDAO.get();
+            if (dao != null) {
+                // forces a check of the rules file
+                dao.getRules();
+                return dao.getLastModified();
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Could not check the data access rules revision", e);
+        }
+        return 0;
+    }
+
+    //
+    // Invalidation
+    //
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        clear();
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        clear();
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+        // we use the post modify event
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        clear();
+    }
+
+    @Override
+    public void reloaded() {
+        clear();
+    }
+
+    @Override
+    public void handlePostGlobalChange(GeoServerInfo global) {
+        clear();
+    }
+
+    @Override
+    public void handleSettingsAdded(SettingsInfo settings) {
+        clear();
+    }
+
+    @Override
+    public void handleSettingsPostModified(SettingsInfo settings) {
+        clear();
+    }
+
+    @Override
+    public void handleSettingsRemoved(SettingsInfo settings) {
+        clear();
+    }
+
+    @Override
+    public void handlePostServiceChange(ServiceInfo service) {
+        clear();
+    }
+
+    @Override
+    public void handleServiceRemove(ServiceInfo service) {
+        clear();
+    }
+}
@@ -35,11 +35,11 @@ public class Capabilities_1_3_0_Response extends BaseCapabilitiesResponse {
      *            destination
      * @param operation
      *            The operation identifier which resulted in <code>value</code>
-     * @see org.geoserver.ows.Response#write(java.lang.Object, java.io.OutputStream,
+     * @see BaseCapabilitiesResponse#encode(java.lang.Object, java.io.OutputStream,
      *      org.geoserver.platform.Operation)
      */
     @Override
-    public void write(final Object value, final OutputStream output, final Operation operation)
+    protected void encode(final Object value, final OutputStream output, final Operation operation)
             throws IOException, ServiceException {
 
         Capabilities_1_3_0_Transformer transformer = (Capabilities_1_3_0_Transformer) value;
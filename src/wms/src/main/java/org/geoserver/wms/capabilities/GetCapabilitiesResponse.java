@@ -96,11 +96,11 @@ public class GetCapabilitiesResponse extends BaseCapabilitiesResponse {
      *            destination
      * @param operation
      *            The operation identifier which resulted in <code>value</code>
-     * @see org.geoserver.ows.Response#write(java.lang.Object, java.io.OutputStream,
+     * @see BaseCapabilitiesResponse#encode(java.lang.Object, java.io.OutputStream,
      *      org.geoserver.platform.Operation)
      */
     @Override
-    public void write(final Object value, final OutputStream output, final Operation operation)
+    protected void encode(final Object value, final OutputStream output, final Operation operation)
             throws IOException, ServiceException {
 
         final GetCapabilitiesTransformer transformer = (GetCapabilitiesTransformer) value;
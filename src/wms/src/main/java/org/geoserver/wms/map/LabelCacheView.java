@@ -0,0 +1,136 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.geometry.jts.LiteShape2;
+import org.geotools.renderer.label.LabelCacheImpl;
+import org.geotools.styling.TextSymbolizer;
+import org.geotools.util.NumberRange;
+import org.opengis.feature.Feature;
+
+/**
+ * The label cache used by each of the renderers painting a group of layers when the layers of a
+ * map are rendered in parallel.
+ * <p>
+ * Each view buffers the labels of its group, and once all the groups are rendered the caller
+ * replays them into a single shared cache, one group after the other, in the group order. Conflict
+ * resolution then happens across all the layers of the map and sees the labels in the same order
+ * as in sequential rendering, no matter how the group renderings interleaved. Layer ids are made
+ * unique by prefixing them with the group index, since each renderer numbers its own layers
+ * starting from zero. The start and end calls of the renderers are ignored: the shared cache is
+ * started by the caller before rendering, and its labels are painted by the caller on top of the
+ * composited map.
+ * </p>
+ */
+class LabelCacheView extends LabelCacheImpl {
+
+    /**
+     * A buffered call to the shared cache
+     */
+    static abstract class LabelCall {
+        abstract void replay(LabelCacheImpl cache);
+    }
+
+    final LabelCacheImpl shared;
+
+    final String prefix;
+
+    final List<LabelCall> calls = new ArrayList<LabelCall>();
+
+    LabelCacheView(LabelCacheImpl shared, int group) {
+        this.shared = shared;
+        this.prefix = group + "_";
+    }
+
+    /**
+     * Applies the buffered labels to the shared cache, in the order the renderer issued them, and
+     * empties the buffer. Views are meant to be replayed one at a time, in group order, once all
+     * the groups are rendered.
+     */
+    void replay() {
+        List<LabelCall> buffered;
+        synchronized (calls) {
+            buffered = new ArrayList<LabelCall>(calls);
+            calls.clear();
+        }
+        for (LabelCall call : buffered) {
+            call.replay(shared);
+        }
+    }
+
+    void record(LabelCall call) {
+        synchronized (calls) {
+            calls.add(call);
+        }
+    }
+
+    @Override
+    public void start() {
+        // started by the caller
+    }
+
+    @Override
+    public void end(Graphics2D graphics, Rectangle displayArea) {
+        // labels are painted by the caller once all groups are rendered
+    }
+
+    @Override
+    public void stop() {
+        shared.stop();
+    }
+
+    @Override
+    public void startLayer(final String layerId) {
+        record(new LabelCall() {
+            void replay(LabelCacheImpl cache) {
+                cache.startLayer(prefix + layerId);
+            }
+        });
+    }
+
+    @Override
+    public void endLayer(final String layerId, final Graphics2D graphics,
+            final Rectangle displayArea) {
+        record(new LabelCall() {
+            void replay(LabelCacheImpl cache) {
+                cache.endLayer(prefix + layerId, graphics, displayArea);
+            }
+        });
+    }
+
+    @Override
+    public void put(final String layerId, final TextSymbolizer symbolizer, final Feature feature,
+            final LiteShape2 shape, final NumberRange<Double> scaleRange) {
+        record(new LabelCall() {
+            void replay(LabelCacheImpl cache) {
+                cache.put(prefix + layerId, symbolizer, feature, shape, scaleRange);
+            }
+        });
+    }
+
+    @Override
+    public void put(final Rectangle2D area) {
+        record(new LabelCall() {
+            void replay(LabelCacheImpl cache) {
+                cache.put(area);
+            }
+        });
+    }
+
+    @Override
+    public void clear(final String layerId) {
+        record(new LabelCall() {
+            void replay(LabelCacheImpl cache) {
+                cache.clear(prefix + layerId);
+            }
+        });
+    }
+}
@@ -5,6 +5,10 @@
  */
 package org.geoserver.wms.map;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.geotools.renderer.GTRenderer;
 import org.geotools.renderer.RenderListener;
 import org.opengis.feature.simple.SimpleFeature;
@@ -16,7 +20,7 @@ import org.opengis.feature.simple.SimpleFeature;
  */
 public class MaxErrorEnforcer {
 
-    GTRenderer renderer;
+    List<GTRenderer> renderers;
 
     int maxErrors;
 
@@ -31,24 +35,45 @@ public class MaxErrorEnforcer {
      * @param maxErrors
      */
     public MaxErrorEnforcer(GTRenderer renderer, int maxErrors) {
-        this.renderer = renderer;
+        this(Collections.singletonList(renderer), maxErrors);
+    }
+
+    /**
+     * Builds a new max errors enforcer counting the errors of a set of renderers working on the
+     * same map, all of them are stopped once the errors exceed the threshold. If maxErrors is not
+     * positive the enforcer will do nothing
+     * 
+     * @param renderers
+     * @param maxErrors
+     */
+    public MaxErrorEnforcer(List<? extends GTRenderer> renderers, int maxErrors) {
+        this.renderers = new ArrayList<GTRenderer>(renderers);
         this.maxErrors = maxErrors;
         this.errors = 0;
 
         if (maxErrors > 0) {
-            renderer.addRenderListener(new RenderListener() {
+            RenderListener listener = new RenderListener() {
 
                 public void featureRenderer(SimpleFeature feature) {
                 }
 
                 public void errorOccurred(Exception e) {
-                    errors++;
-                    lastException = e;
-                    if (errors > MaxErrorEnforcer.this.maxErrors) {
-                        MaxErrorEnforcer.this.renderer.stopRendering();
+                    boolean stop;
+                    synchronized (MaxErrorEnforcer.this) {
+                        errors++;
+                        lastException = e;
+                        stop = errors > MaxErrorEnforcer.this.maxErrors;
+                    }
+                    if (stop) {
+                        for (GTRenderer renderer : MaxErrorEnforcer.this.renderers) {
+                            renderer.stopRendering();
+                        }
                     }
                 }
-            });
+            };
+            for (GTRenderer renderer : this.renderers) {
+                renderer.addRenderListener(listener);
+            }
         }
     }
 
@@ -56,7 +81,7 @@ public class MaxErrorEnforcer {
      * True if the max error threshold was exceeded
      *
      */
-    public boolean exceedsMaxErrors() {
+    public synchronized boolean exceedsMaxErrors() {
         return maxErrors > 0 && errors > maxErrors;
     }
     
@@ -64,7 +89,7 @@ public class MaxErrorEnforcer {
      * Returns the last exception occurred (or null if none happened)
      *
      */
-    public Exception getLastException() {
+    public synchronized Exception getLastException() {
         return lastException;
     }
 
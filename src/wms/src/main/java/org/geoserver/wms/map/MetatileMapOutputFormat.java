@@ -13,14 +13,19 @@ import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.imageio.ImageIO;
 import javax.media.jai.PlanarImage;
 
+import org.geoserver.ows.CancellationToken;
+import org.geoserver.ows.ClientStreamAbortedException;
 import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wms.GetMapOutputFormat;
@@ -37,6 +42,8 @@ import org.geotools.resources.i18n.ErrorKeys;
 import org.geotools.resources.i18n.Errors;
 import org.geotools.util.logging.Logging;
 
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
 /**
  * Wrapping map producer that performs on the fly meta tiling wrapping another map producer. It will
  * first peek inside a tile cache to see if the requested tile has already been computed, if so,
@@ -119,25 +126,19 @@ public final class MetatileMapOutputFormat implements GetMapOutputFormat {
      * 
      * @see org.geoserver.wms.GetMapOutputFormat#produceMap(org.geoserver.wms.WMSMapContent)
      */
-    public WebMap produceMap(WMSMapContent mapContent) throws ServiceException, IOException {
+    public WebMap produceMap(final WMSMapContent mapContent) throws ServiceException,
+            IOException {
         // get the key that identifies the meta tile. The cache will make sure
-        // two threads asking
-        // for the same tile will get the same key, and thus will synchronize
-        // with each other
-        // (the first eventually builds the meta-tile, the second finds it ready
-        // to be used)
-        QuickTileCache.MetaTileKey key = tileCache.getMetaTileKey(request);
-
-        synchronized (key) {
-            RenderedImage tile = tileCache.getTile(key, request);
-            List<GridCoverage2D> renderedCoverages = null;
-
-            if (LOGGER.isLoggable(Level.FINER)) {
-                LOGGER.finer("Looked for meta tile " + key.metaTileCoords.x + ", "
-                        + key.metaTileCoords.y + "in cache: " + ((tile != null) ? "hit!" : "miss"));
-            }
+        // two threads asking for the same meta tile will wait for each other
+        // (the first eventually builds the meta-tile, the others get it once ready)
+        final QuickTileCache.MetaTileKey key = tileCache.getMetaTileKey(request);
 
-            if (tile == null) {
+        // the coverages rendered while building the meta-tile, if this request built it
+        final List<List<GridCoverage2D>> renderedCoverages = new ArrayList<List<GridCoverage2D>>(1);
+        Callable<RenderedImage[]> loader = new Callable<RenderedImage[]>() {
+
+            @Override
+            public RenderedImage[] call() throws Exception {
                 // compute the meta-tile
                 if (LOGGER.isLoggable(Level.FINER)) {
                     LOGGER.finer("Building meta tile " + key.metaTileCoords.x + ", "
@@ -163,15 +164,55 @@ public final class MetatileMapOutputFormat implements GetMapOutputFormat {
                 RenderedImageMap metaTileMap = delegate.produceMap(mapContent);
 
                 RenderedImage metaTile = metaTileMap.getImage();
-                RenderedImage[] tiles = split(key, metaTile);
-                tileCache.storeTiles(key, tiles);
-                tile = tileCache.getTile(key, request, tiles);
-                renderedCoverages = metaTileMap.getRenderedCoverages();
+                renderedCoverages.add(metaTileMap.getRenderedCoverages());
+                return split(key, metaTile);
+            }
+        };
+
+        RenderedImage[] tiles = null;
+        while (tiles == null) {
+            try {
+                tiles = tileCache.getTiles(key, loader);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new ServiceException("Failed to build the meta tile", e.getCause());
+            } catch (UncheckedExecutionException e) {
+                // the request building the meta tile might have been cancelled because its client
+                // went away, if we are still being waited for, build it on our own
+                CancellationToken cancellation = CancellationToken.current();
+                if (isClientAborted(e) && (cancellation == null || !cancellation.isCancelled())) {
+                    continue;
+                }
+                // runtime exceptions thrown by the loader, service exceptions included
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
             }
-            RenderedImageMap tileMap = new RenderedImageMap(mapContent, tile, getMimeType());
-            tileMap.setRenderedCoverages(renderedCoverages);
-            return tileMap;
         }
+
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.finer("Looked for meta tile " + key.metaTileCoords.x + ", "
+                    + key.metaTileCoords.y + "in cache: "
+                    + (renderedCoverages.isEmpty() ? "hit!" : "miss"));
+        }
+
+        RenderedImage tile = tileCache.getTile(key, request, tiles);
+        RenderedImageMap tileMap = new RenderedImageMap(mapContent, tile, getMimeType());
+        tileMap.setRenderedCoverages(renderedCoverages.isEmpty() ? null : renderedCoverages.get(0));
+        return tileMap;
+    }
+
+    static boolean isClientAborted(Throwable t) {
+        while (t != null) {
+            if (t instanceof ClientStreamAbortedException) {
+                return true;
+            }
+            t = t.getCause();
+        }
+        return false;
     }
 
     /**
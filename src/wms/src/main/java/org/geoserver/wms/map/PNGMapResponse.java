@@ -20,6 +20,8 @@ import org.geoserver.wms.MapProducerCapabilities;
 import org.geoserver.wms.RasterCleaner;
 import org.geoserver.wms.WMS;
 import org.geoserver.wms.WMSMapContent;
+import org.geoserver.wms.kvp.PaletteManager;
+import org.geoserver.wms.map.png.PNGEncodingAdvisor;
 import org.geoserver.wms.map.png.PNGJWriter;
 import org.geotools.image.ImageWorker;
 import org.geotools.util.logging.Logging;
@@ -99,9 +101,26 @@ public class PNGMapResponse extends RenderedImageMapResponse {
         // check to see if we have to see a translucent or bitmask quantizer
         image = applyPalette(image, mapContent, "image/png8", true);
         float quality = (100 - wms.getPngCompression()) / 100.0f;
+        // let the image contents drive the encoding parameters, if so configured
+        PNGEncodingAdvisor.Decision decision = null;
+        if (wms.isPngAdaptive()) {
+            decision = PNGEncodingAdvisor.advise(image, mapContent,
+                    Math.round(9 * (1f - quality)));
+            quality = decision.getQuality();
+            if (decision.getPalette() != null) {
+                image = forceIndexed8Bitmask(image,
+                        PaletteManager.getInverseColorMapOp(decision.getPalette()));
+            }
+        }
         JAIInfo.PngEncoderType encoder = wms.getPNGEncoderType();
         if(encoder == JAIInfo.PngEncoderType.PNGJ) {
-            image = new PNGJWriter().writePNG(image, outStream, quality, mapContent);
+            PNGJWriter writer = new PNGJWriter(wms.getPngParallelThreshold(),
+                    wms.getPngParallelThreads());
+            if (decision != null && decision.getFilterType() != null) {
+                image = writer.writePNG(image, outStream, quality, decision.getFilterType());
+            } else {
+                image = writer.writePNG(image, outStream, quality, mapContent);
+            }
             RasterCleaner.addImage(image);
         } else {
             Boolean PNGNativeAcc = (encoder == JAIInfo.PngEncoderType.NATIVE);
@@ -14,7 +14,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
@@ -23,6 +27,7 @@ import org.geoserver.config.GeoServer;
 import org.geoserver.config.GeoServerInfo;
 import org.geoserver.config.ServiceInfo;
 import org.geoserver.config.impl.GeoServerLifecycleHandler;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wfs.TransactionEvent;
 import org.geoserver.wfs.TransactionListener;
@@ -32,10 +37,34 @@ import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.CRS.AxisOrder;
 import org.geotools.util.CanonicalSet;
+import org.geotools.util.logging.Logging;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
 import com.vividsolutions.jts.geom.Envelope;
 
+/**
+ * Keeps the tiles of the recently rendered meta-tiles in memory, so that the other tiles of the
+ * same meta-tile can be served without rendering it again.
+ * <p>
+ * The cache is shared among all requests and bounded by the amount of memory used by the tiles,
+ * which can be set with the QUICK_TILE_CACHE_MAX_SIZE property (in bytes) or
+ * {@link #setMaxSize(long)}. Requests for a meta-tile being rendered wait for the rendering to
+ * complete and use its result. The cache is emptied on any WFS transaction and configuration
+ * change.
+ * </p>
+ */
 public class QuickTileCache implements TransactionListener, GeoServerLifecycleHandler {
+
+    static final Logger LOGGER = Logging.getLogger(QuickTileCache.class);
+
+    /**
+     * Default max amount of memory used by the cached tiles, 64MB
+     */
+    public static final long DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+
     /**
      * Set of parameters that we can ignore, since they do not define a map, are either unrelated,
      * or define the tiling instead
@@ -59,22 +88,39 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
      */
     private CanonicalSet<MetaTileKey> metaTileKeys = CanonicalSet.newInstance(MetaTileKey.class);
 
-    private WeakHashMap tileCache = new WeakHashMap();
+    private long maxSize = DEFAULT_MAX_SIZE;
+
+    private volatile Cache<MetaTileKey, CacheElement> tileCache = buildCache();
+
+    /**
+     * Incremented at each invalidation, used to avoid caching meta-tiles whose rendering started
+     * before the data or configuration changed
+     */
+    final AtomicLong generation = new AtomicLong();
 
     public QuickTileCache(GeoServer geoServer) {
+        String size = GeoServerExtensions.getProperty("QUICK_TILE_CACHE_MAX_SIZE");
+        if (size != null) {
+            try {
+                setMaxSize(Long.parseLong(size));
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.WARNING, "Invalid QUICK_TILE_CACHE_MAX_SIZE value " + size
+                        + ", using the default " + DEFAULT_MAX_SIZE, e);
+            }
+        }
         geoServer.addListener(new ConfigurationListenerAdapter() {
             public void handleGlobalChange(GeoServerInfo global, List<String> propertyNames,
                     List<Object> oldValues, List<Object> newValues) {
-                tileCache.clear();
+                clear();
             }
 
             public void handleServiceChange(ServiceInfo service, List<String> propertyNames,
                     List<Object> oldValues, List<Object> newValues) {
-                tileCache.clear();
+                clear();
             }
 
             public void reloaded() {
-                tileCache.clear();
+                clear();
             }
         });
     }
@@ -85,6 +131,51 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
     QuickTileCache() {
     }
 
+    Cache<MetaTileKey, CacheElement> buildCache() {
+        return CacheBuilder.newBuilder().maximumWeight(maxSize)
+                .weigher(new Weigher<MetaTileKey, CacheElement>() {
+
+                    @Override
+                    public int weigh(MetaTileKey key, CacheElement value) {
+                        return value.getSize();
+                    }
+                }).recordStats().build();
+    }
+
+    /**
+     * Sets the max amount of memory, in bytes, used by the cached tiles
+     */
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        this.tileCache = buildCache();
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the hit, miss and eviction counts of the cache (reset when the max size is changed)
+     */
+    public CacheStats getStatistics() {
+        return tileCache.stats();
+    }
+
+    /**
+     * Number of meta-tiles currently in the cache
+     */
+    public long size() {
+        return tileCache.size();
+    }
+
+    /**
+     * Removes all the cached meta-tiles
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        tileCache.invalidateAll();
+    }
+
     /**
      * Given a tiled request, builds a key that can be used to access the cache looking for a
      * specific meta-tile, and also as a synchronization tool to avoid multiple requests to trigger
@@ -335,11 +426,15 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
      * @param request
      *
      */
-    public synchronized RenderedImage getTile(MetaTileKey key, GetMapRequest request) {
-        CacheElement ce = (CacheElement) tileCache.get(key);
+    public RenderedImage getTile(MetaTileKey key, GetMapRequest request) {
+        CacheElement ce = tileCache.getIfPresent(key);
 
         if (ce == null) {
             return null;
+        } else if (ce.generation != generation.get()) {
+            // rendered before the last invalidation
+            tileCache.asMap().remove(key, ce);
+            return null;
         }
 
         return getTile(key, request, ce.tiles);
@@ -364,22 +459,80 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
     }
 
     /**
-     * Puts the specified tile array in the cache, and returns the tile the request was looking for
+     * Returns the tiles of the specified meta-tile, using the loader to render them if they are
+     * not in the cache. If another request is already rendering the same meta-tile, waits for it
+     * to complete and returns its tiles instead. Tiles whose rendering started before the last
+     * invalidation are never returned from the cache, even if they made it back in after it.
+     * 
+     * @param key
+     * @param loader
+     * @throws ExecutionException if the loader failed
+     */
+    public RenderedImage[] getTiles(MetaTileKey key, final Callable<RenderedImage[]> loader)
+            throws ExecutionException {
+        while (true) {
+            final long startGeneration = generation.get();
+            CacheElement ce = tileCache.get(key, new Callable<CacheElement>() {
+
+                @Override
+                public CacheElement call() throws Exception {
+                    return new CacheElement(loader.call(), startGeneration);
+                }
+            });
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Meta tile cache statistics: " + tileCache.stats());
+            }
+            if (ce.generation == generation.get()) {
+                return ce.tiles;
+            }
+
+            // the tiles were rendered before the last invalidation, don't keep them around, but
+            // leave alone a fresher entry another request might have put meanwhile
+            tileCache.asMap().remove(key, ce);
+            if (ce.generation == startGeneration) {
+                // rendered for this request, as fresh as it could be when it started
+                return ce.tiles;
+            }
+            // found a stale entry, render again
+        }
+    }
+
+    /**
+     * Puts the specified tile array in the cache
      * 
      * @param key
-     * @param request
      * @param tiles
      *
      */
-    public synchronized void storeTiles(MetaTileKey key, RenderedImage[] tiles) {
-        tileCache.put(key, new CacheElement(tiles));
+    public void storeTiles(MetaTileKey key, RenderedImage[] tiles) {
+        tileCache.put(key, new CacheElement(tiles, generation.get()));
     }
 
-    class CacheElement {
+    static class CacheElement {
         RenderedImage[] tiles;
 
-        public CacheElement(RenderedImage[] tiles) {
+        /**
+         * The cache generation the rendering of the tiles started in
+         */
+        long generation;
+
+        public CacheElement(RenderedImage[] tiles, long generation) {
             this.tiles = tiles;
+            this.generation = generation;
+        }
+
+        /**
+         * Memory used by the tiles, in bytes
+         */
+        int getSize() {
+            long size = 0;
+            for (RenderedImage tile : tiles) {
+                if (tile != null) {
+                    size += (long) tile.getWidth() * tile.getHeight()
+                            * tile.getColorModel().getPixelSize() / 8;
+                }
+            }
+            return (int) Math.min(size, Integer.MAX_VALUE);
         }
     }
 
@@ -388,18 +541,18 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
         // contains a string with part of the map request where the layer
         // name is included, but we would have to parse it and consider
         // also that the namespace may be missing in the getmap request
-        tileCache.clear();
+        clear();
     }
 
     @Override
     public void onReset() {
         // data might have changed in the meantime
-        tileCache.clear();        
+        clear();
     }
 
     @Override
     public void onDispose() {
-        tileCache.clear();
+        clear();
     }
 
     public void beforeReload() {
@@ -408,6 +561,6 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
 
     @Override
     public void onReload() {
-        tileCache.clear();
+        clear();
     }
 }
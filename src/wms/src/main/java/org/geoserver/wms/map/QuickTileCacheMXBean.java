@@ -0,0 +1,40 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+/**
+ * JMX view of the {@link QuickTileCache} statistics. The counters restart from zero when the max
+ * size of the cache is changed.
+ */
+public interface QuickTileCacheMXBean {
+
+    /**
+     * Number of meta-tiles currently in the cache
+     */
+    long getSize();
+
+    /**
+     * Max amount of memory, in bytes, used by the cached tiles
+     */
+    long getMaxSize();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    /**
+     * Number of meta-tiles rendered to fill the cache
+     */
+    long getLoadCount();
+
+    /**
+     * Total time spent rendering meta-tiles for the cache, in milliseconds
+     */
+    long getTotalLoadTime();
+
+    long getEvictionCount();
+}
@@ -0,0 +1,108 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.geotools.util.logging.Logging;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Publishes the statistics of the {@link QuickTileCache} in the platform MBean server
+ */
+public class QuickTileCacheMonitor implements QuickTileCacheMXBean, InitializingBean,
+        DisposableBean {
+
+    static final Logger LOGGER = Logging.getLogger(QuickTileCacheMonitor.class);
+
+    public static final String OBJECT_NAME = "org.geoserver:type=QuickTileCache";
+
+    QuickTileCache cache;
+
+    ObjectName name;
+
+    public QuickTileCacheMonitor(QuickTileCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public long getSize() {
+        return cache.size();
+    }
+
+    @Override
+    public long getMaxSize() {
+        return cache.getMaxSize();
+    }
+
+    @Override
+    public long getHitCount() {
+        return cache.getStatistics().hitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return cache.getStatistics().missCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        return cache.getStatistics().hitRate();
+    }
+
+    @Override
+    public long getLoadCount() {
+        return cache.getStatistics().loadCount();
+    }
+
+    @Override
+    public long getTotalLoadTime() {
+        return TimeUnit.NANOSECONDS.toMillis(cache.getStatistics().totalLoadTime());
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return cache.getStatistics().evictionCount();
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            // multiple application contexts in the same JVM (e.g., tests), keep the last one
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            this.name = name;
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not register the meta tile cache MBean", e);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (name == null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Could not unregister the meta tile cache MBean", e);
+        }
+        name = null;
+    }
+}
@@ -6,6 +6,9 @@
 package org.geoserver.wms.map;
 
 import java.awt.geom.NoninvertibleTransformException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,9 +44,9 @@ import org.opengis.referencing.operation.TransformException;
 public class RenderExceptionStrategy implements RenderListener {
 
     private static final Logger LOGGER = Logging.getLogger("org.geoserver.wms");
-    private final GTRenderer renderer;
+    private final List<GTRenderer> renderers;
 
-    private Exception renderException;
+    private volatile Exception renderException;
 
     /**
      * Creates a render listener to stop the given {@code renderer} when a non ignorable
@@ -54,7 +57,20 @@ public class RenderExceptionStrategy implements RenderListener {
      *            ignorable exception occurs
      */
     public RenderExceptionStrategy(final GTRenderer renderer) {
-        this.renderer = renderer;
+        this(Collections.singletonList(renderer));
+    }
+
+    /**
+     * Creates a render listener to stop all the given {@code renderers}, working on the same map,
+     * when a non ignorable exception is notified by any of them. The listener must be registered
+     * on each renderer by the caller.
+     * 
+     * @param renderers
+     *            the renderers to {@link GTRenderer#stopRendering() stop} if a non
+     *            ignorable exception occurs
+     */
+    public RenderExceptionStrategy(final List<? extends GTRenderer> renderers) {
+        this.renderers = new ArrayList<GTRenderer>(renderers);
         this.renderException = null;
     }
 
@@ -102,7 +118,9 @@ public class RenderExceptionStrategy implements RenderListener {
         // not an ignorable cause... stop rendering
         LOGGER.log(Level.FINE, "Got an unexpected render exception.", renderException);
         this.renderException = renderException;
-        renderer.stopRendering();
+        for (GTRenderer renderer : renderers) {
+            renderer.stopRendering();
+        }
     }
 
     /**
@@ -28,6 +28,10 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -44,8 +48,11 @@ import javax.media.jai.ROIShape;
 import javax.media.jai.operator.ConstantDescriptor;
 import javax.media.jai.operator.MosaicDescriptor;
 
+import org.geoserver.ows.CancellationToken;
+import org.geoserver.ows.ClientStreamAbortedException;
 import org.geoserver.platform.GeoServerResourceLoader;
 import org.geoserver.platform.ServiceException;
+import org.geoserver.threadlocals.ThreadLocalsTransfer;
 import org.geoserver.platform.resource.Resource;
 import org.geoserver.platform.resource.Resource.Type;
 import org.geoserver.wms.DefaultWebMapService;
@@ -73,17 +80,22 @@ import org.geotools.gce.imagemosaic.ImageMosaicFormat;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.image.ImageWorker;
 import org.geotools.map.Layer;
+import org.geotools.map.MapContent;
+import org.geotools.map.MapViewport;
 import org.geotools.map.StyleLayer;
 import org.geotools.parameter.Parameter;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.CRS.AxisOrder;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.geotools.referencing.operation.transform.AffineTransform2D;
+import org.geotools.renderer.label.LabelCacheImpl;
+import org.geotools.renderer.label.LabelCacheImpl.LabelRenderingMode;
 import org.geotools.renderer.lite.RendererUtilities;
 import org.geotools.renderer.lite.RenderingTransformationHelper;
 import org.geotools.renderer.lite.StreamingRenderer;
 import org.geotools.renderer.lite.gridcoverage2d.GridCoverageRenderer;
 import org.geotools.resources.image.ColorUtilities;
+import org.geotools.styling.FeatureTypeStyle;
 import org.geotools.styling.RasterSymbolizer;
 import org.geotools.styling.Style;
 import org.geotools.util.logging.Logging;
@@ -313,6 +325,12 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         StreamingRenderer testRenderer = buildRenderer();
         testRenderer.setMapContent(mapContent);
         memory += testRenderer.getMaxBackBufferMemory(paintArea.width, paintArea.height);
+        // .. and the off-screen buffers used when rendering the layers in parallel
+        final List<List<Layer>> layerGroups = getParallelRenderingGroups(mapContent);
+        if (layerGroups != null) {
+            memory += layerGroups.size() * getDrawingSurfaceMemoryUse(paintArea.width,
+                    paintArea.height, null, true);
+        }
         if (maxMemory > 0 && memory > maxMemory) {
             long kbUsed = memory / KB;
             long kbMax = maxMemory / KB;
@@ -410,10 +428,6 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         graphic.setRenderingHints(hintsMap);
 
         RenderingHints hints = new RenderingHints(hintsMap);
-        StreamingRenderer renderer = buildRenderer();
-        renderer.setThreadPool(DefaultWebMapService.getRenderingPool());
-        renderer.setMapContent(mapContent);
-        renderer.setJava2DHints(hints);
 
         // setup the renderer hints
         Map<Object, Object> rendererParams = new HashMap<Object, Object>();
@@ -497,25 +511,64 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
             }
         }
         
-        renderer.setRendererHints(rendererParams);
-
         // if abort already requested bail out
         // if (this.abortRequested) {
         // graphic.dispose();
         // return null;
         // }
 
+        // a single renderer paints the whole map, unless the layers are rendered in parallel,
+        // in that case each group of layers gets its own renderer and off-screen buffer, and all
+        // the labels go in a shared cache, replayed in group order and painted on top of the
+        // composited map
+        final List<StreamingRenderer> renderers = new ArrayList<StreamingRenderer>();
+        final List<Graphics2D> graphics = new ArrayList<Graphics2D>();
+        final List<BufferedImage> buffers = new ArrayList<BufferedImage>();
+        final List<MapContent> groupContents = new ArrayList<MapContent>();
+        final List<LabelCacheView> labelViews = new ArrayList<LabelCacheView>();
+        final LabelCacheImpl labelCache;
+        if (layerGroups == null) {
+            labelCache = null;
+            renderers.add(setupRenderer(mapContent, hints, rendererParams));
+        } else {
+            labelCache = new LabelCacheImpl();
+            labelCache.setLabelRenderingMode(LabelRenderingMode.valueOf((String) rendererParams
+                    .get(StreamingRenderer.TEXT_RENDERING_KEY)));
+            labelCache.start();
+            for (int i = 0; i < layerGroups.size(); i++) {
+                MapContent groupContent = new MapContent();
+                groupContent.setViewport(new MapViewport(mapContent.getViewport()));
+                groupContent.addLayers(layerGroups.get(i));
+                groupContents.add(groupContent);
+
+                Map<Object, Object> groupParams = new HashMap<Object, Object>(rendererParams);
+                LabelCacheView labelView = new LabelCacheView(labelCache, i);
+                labelViews.add(labelView);
+                groupParams.put(StreamingRenderer.LABEL_CACHE_KEY, labelView);
+                renderers.add(setupRenderer(groupContent, hints, groupParams));
+
+                BufferedImage buffer = new BufferedImage(paintArea.width, paintArea.height,
+                        BufferedImage.TYPE_INT_ARGB_PRE);
+                Graphics2D groupGraphic = buffer.createGraphics();
+                groupGraphic.setRenderingHints(hintsMap);
+                buffers.add(buffer);
+                graphics.add(groupGraphic);
+            }
+        }
+        graphics.add(graphic);
+
         // enforce no more than x rendering errors
         int maxErrors = wms.getMaxRenderingErrors();
-        MaxErrorEnforcer errorChecker = new MaxErrorEnforcer(renderer, maxErrors);
+        MaxErrorEnforcer errorChecker = new MaxErrorEnforcer(renderers, maxErrors);
 
         // Add a render listener that ignores well known rendering exceptions and reports back non
         // ignorable ones
         final RenderExceptionStrategy nonIgnorableExceptionListener;
-        nonIgnorableExceptionListener = new RenderExceptionStrategy(renderer);
-        renderer.addRenderListener(nonIgnorableExceptionListener);
-        
-        onBeforeRender(renderer);
+        nonIgnorableExceptionListener = new RenderExceptionStrategy(renderers);
+        for (StreamingRenderer renderer : renderers) {
+            renderer.addRenderListener(nonIgnorableExceptionListener);
+            onBeforeRender(renderer);
+        }
         
         int localMaxRenderingTime = 0;
         Object timeoutOption = request.getFormatOptions().get("timeout");
@@ -531,22 +584,53 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         ServiceException serviceException = null;
         boolean saveMap = (request.getRawKvp() != null && WMSServiceExceptionHandler
                 .isPartialMapExceptionType(request.getRawKvp().get("EXCEPTIONS")));
-        RenderingTimeoutEnforcer timeout = new RenderingTimeoutEnforcer(maxRenderingTime, renderer,
-                graphic, saveMap) {
+        RenderingTimeoutEnforcer timeout = new RenderingTimeoutEnforcer(maxRenderingTime,
+                renderers, graphics, saveMap) {
             
             /**
              * Save the map before disposing of the graphics
              */
             @Override
             public void saveMap() {
+                // when rendering in parallel, save whatever the groups painted so far
+                for (BufferedImage buffer : buffers) {
+                    graphic.drawImage(buffer, 0, 0, null);
+                }
                 this.map = optimizeAndBuildMap(palette, preparedImage, mapContent);
             }
         };
+        // stop rendering as soon as the client goes away
+        final CancellationToken cancellation = CancellationToken.current();
+        Runnable stopper = new Runnable() {
+
+            @Override
+            public void run() {
+                stopRendering(renderers);
+            }
+        };
+        if (cancellation != null) {
+            cancellation.addListener(stopper);
+        }
         timeout.start();
         try {
             // finally render the image;
-            renderer.paint(graphic, paintArea, mapContent.getRenderingArea(),
-                    mapContent.getRenderingTransform());
+            if (layerGroups == null) {
+                renderers.get(0).paint(graphic, paintArea, mapContent.getRenderingArea(),
+                        mapContent.getRenderingTransform());
+            } else {
+                paintInParallel(renderers, graphics, paintArea, mapContent);
+                // composite the groups in order, then paint the labels on top, unless the
+                // timeout already disposed the graphics
+                if (!timeout.isTimedOut()) {
+                    for (BufferedImage buffer : buffers) {
+                        graphic.drawImage(buffer, 0, 0, null);
+                    }
+                    for (LabelCacheView labelView : labelViews) {
+                        labelView.replay();
+                    }
+                    labelCache.end(graphic, paintArea);
+                }
+            }
 
             // apply watermarking
             if (layout != null) {
@@ -557,6 +641,12 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
                 }
             }
             timeout.stop();
+
+            // nobody is waiting for the map anymore
+            if (cancellation != null && cancellation.isCancelled()) {
+                throw new ServiceException(new ClientStreamAbortedException(
+                        "The client disconnected, rendering stopped"));
+            }
             
             // Determine what (if any) exception should be thrown
             
@@ -594,11 +684,125 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
             }
         } finally {
             timeout.stop();
-            graphic.dispose();
+            if (cancellation != null) {
+                cancellation.removeListener(stopper);
+            }
+            for (Graphics2D g : graphics) {
+                g.dispose();
+            }
+            // the layers belong to the request map content, don't let the groups dispose them
+            for (MapContent groupContent : groupContents) {
+                for (Layer layer : groupContent.layers()) {
+                    groupContent.removeLayer(layer);
+                }
+                groupContent.dispose();
+            }
         }
         throw serviceException;
     }
 
+    /**
+     * Builds and configures the renderer painting the layers of the given map content
+     */
+    private StreamingRenderer setupRenderer(MapContent content, RenderingHints hints,
+            Map<Object, Object> rendererParams) {
+        StreamingRenderer renderer = buildRenderer();
+        renderer.setThreadPool(DefaultWebMapService.getRenderingPool());
+        renderer.setMapContent(content);
+        renderer.setJava2DHints(hints);
+        renderer.setRendererHints(rendererParams);
+        return renderer;
+    }
+
+    /**
+     * Splits the layers of the map in contiguous groups that can be rendered in parallel, one
+     * group per thread of the parallel rendering pool at most. Returns null if the map should be
+     * rendered sequentially, that is, if parallel rendering is disabled, there is a single layer,
+     * or the styles compose or z-order features across layers, which requires painting them all
+     * on the same surface.
+     */
+    List<List<Layer>> getParallelRenderingGroups(WMSMapContent mapContent) {
+        List<Layer> layers = mapContent.layers();
+        int threads = DefaultWebMapService.getParallelRenderingThreads();
+        if (!wms.isParallelRenderingEnabled() || layers.size() < 2 || threads < 2) {
+            return null;
+        }
+        for (Layer layer : layers) {
+            Style style = layer.getStyle();
+            if (style == null) {
+                continue;
+            }
+            for (FeatureTypeStyle fts : style.featureTypeStyles()) {
+                Map<String, String> options = fts.getOptions();
+                if (options != null && (options.containsKey(FeatureTypeStyle.COMPOSITE)
+                        || options.containsKey(FeatureTypeStyle.COMPOSITE_BASE)
+                        || options.containsKey(FeatureTypeStyle.SORT_BY_GROUP))) {
+                    return null;
+                }
+            }
+        }
+
+        int groupCount = Math.min(threads, layers.size());
+        List<List<Layer>> groups = new ArrayList<List<Layer>>(groupCount);
+        int start = 0;
+        for (int i = 0; i < groupCount; i++) {
+            // spread the remainder over the first groups
+            int end = start + layers.size() / groupCount + (i < layers.size() % groupCount ? 1 : 0);
+            groups.add(new ArrayList<Layer>(layers.subList(start, end)));
+            start = end;
+        }
+        return groups;
+    }
+
+    /**
+     * Paints each group of layers with its own renderer and graphics on the parallel rendering
+     * pool, and waits for all of them to complete
+     */
+    private void paintInParallel(final List<StreamingRenderer> renderers,
+            final List<Graphics2D> graphics, final Rectangle paintArea,
+            final WMSMapContent mapContent) {
+        final ThreadLocalsTransfer threadLocals = new ThreadLocalsTransfer();
+        ExecutorService pool = DefaultWebMapService.getParallelRenderingPool();
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(renderers.size());
+        for (int i = 0; i < renderers.size(); i++) {
+            final StreamingRenderer renderer = renderers.get(i);
+            final Graphics2D groupGraphic = graphics.get(i);
+            futures.add(pool.submit(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    threadLocals.apply();
+                    try {
+                        renderer.paint(groupGraphic, paintArea, mapContent.getRenderingArea(),
+                                mapContent.getRenderingTransform());
+                    } finally {
+                        threadLocals.cleanup();
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            stopRendering(renderers);
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Interrupted while rendering the map", e);
+        } catch (ExecutionException e) {
+            stopRendering(renderers);
+            throw new ServiceException("Rendering process failed", e.getCause(), "internalError");
+        }
+    }
+
+    private void stopRendering(List<StreamingRenderer> renderers) {
+        for (StreamingRenderer renderer : renderers) {
+            renderer.stopRendering();
+        }
+    }
+
     /**
      * Creates a {@link StreamingRenderer} instance (subclasses can provide
      * their own specialized subclasses of {@link StreamingRenderer}
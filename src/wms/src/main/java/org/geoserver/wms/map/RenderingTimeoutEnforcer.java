@@ -6,6 +6,9 @@
 package org.geoserver.wms.map;
 
 import java.awt.Graphics;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -21,8 +24,8 @@ import org.geotools.renderer.GTRenderer;
 public class RenderingTimeoutEnforcer {
     
     long timeout;
-    GTRenderer renderer;
-    Graphics graphics;
+    List<GTRenderer> renderers;
+    List<Graphics> graphics;
     Timer timer;
     boolean timedOut = false;
     boolean saveMap;
@@ -32,9 +35,19 @@ public class RenderingTimeoutEnforcer {
         this(timeout, renderer, graphics, false);
     }
     public RenderingTimeoutEnforcer(long timeout, GTRenderer renderer, Graphics graphics, boolean saveMap) {
+        this(timeout, Collections.singletonList(renderer), Collections.singletonList(graphics),
+                saveMap);
+    }
+
+    /**
+     * Builds an enforcer stopping a set of renderers working on the same map, and disposing all the
+     * graphics they are drawing on, once the timeout elapses
+     */
+    public RenderingTimeoutEnforcer(long timeout, List<? extends GTRenderer> renderers,
+            List<? extends Graphics> graphics, boolean saveMap) {
         this.timeout = timeout;
-        this.renderer = renderer;
-        this.graphics = graphics;
+        this.renderers = new ArrayList<GTRenderer>(renderers);
+        this.graphics = new ArrayList<Graphics>(graphics);
         this.saveMap = saveMap;
     }
     
@@ -89,11 +102,15 @@ public class RenderingTimeoutEnforcer {
                 saveMap();
             }
             // ask gently...
-            renderer.stopRendering();
+            for (GTRenderer renderer : renderers) {
+                renderer.stopRendering();
+            }
             // ... but also be rude for extra measure (coverage rendering is
             // an atomic call to the graphics, it cannot be stopped
             // by the above)
-            graphics.dispose();
+            for (Graphics g : graphics) {
+                g.dispose();
+            }
             
         }
         
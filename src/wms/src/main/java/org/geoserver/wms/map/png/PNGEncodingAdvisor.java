@@ -0,0 +1,376 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.png;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.wms.WMSMapContent;
+import org.geoserver.wms.map.PaletteExtractor;
+import org.geotools.map.Layer;
+import org.geotools.styling.Style;
+import org.geotools.util.logging.Logging;
+
+import ar.com.hjg.pngj.FilterType;
+
+/**
+ * Samples a rendered map and picks the PNG encoding parameters that should give the best size/CPU
+ * tradeoff for it:
+ * <ul>
+ * <li>the scanline filter, SUB if predicting each sample from the one on its left lowers the
+ * entropy of the data, NONE otherwise, or if the image is paletted or already very redundant</li>
+ * <li>the compression level, lowered for high entropy (photographic, noisy) images, for which
+ * harder compression effort buys very little, raised for low entropy ones, which compress fast
+ * at any level</li>
+ * <li>whether the image can be turned into a paletted one without losses, using the palette
+ * computed by the {@link PaletteExtractor} out of the map styles. The sample only tells if the
+ * palette is worth trying, the reduction is picked only if every pixel of the image is found in
+ * the palette</li>
+ * </ul>
+ * The decision is logged at FINE level along with the image statistics it was based on.
+ */
+public class PNGEncodingAdvisor {
+
+    static final Logger LOGGER = Logging.getLogger(PNGEncodingAdvisor.class);
+
+    /**
+     * Number of rows sampled from the image
+     */
+    static final int SAMPLE_ROWS = 32;
+
+    /**
+     * Number of rows read at a time when checking the whole image against a palette
+     */
+    static final int CHECK_STRIP_ROWS = 16;
+
+    /**
+     * Above this entropy (in bits per byte) the data is close to random, deflate won't do much
+     * better than its fastest level
+     */
+    static final double HIGH_ENTROPY = 6;
+
+    /**
+     * Below this entropy (in bits per byte) the data is very redundant, deflate is fast at any
+     * level and higher levels can still shave off some bytes
+     */
+    static final double LOW_ENTROPY = 2;
+
+    /**
+     * SUB filtering is used only if it lowers the entropy at least by this ratio
+     */
+    static final double SUB_GAIN = 0.9;
+
+    static final int FAST_LEVEL = 2;
+
+    static final int STRONG_LEVEL = 6;
+
+    /**
+     * The encoding parameters picked for an image
+     */
+    public static class Decision {
+        FilterType filterType;
+
+        int compressionLevel;
+
+        IndexColorModel palette;
+
+        double transparentRatio;
+
+        int sampledColors;
+
+        double entropy;
+
+        double subEntropy;
+
+        Decision(int compressionLevel) {
+            this.compressionLevel = compressionLevel;
+        }
+
+        /**
+         * The scanline filter to use, or null if the default one should be used
+         */
+        public FilterType getFilterType() {
+            return filterType;
+        }
+
+        /**
+         * The deflate compression level, between 0 and 9
+         */
+        public int getCompressionLevel() {
+            return compressionLevel;
+        }
+
+        /**
+         * The compression level expressed as the quality parameter used by the PNG writers
+         */
+        public float getQuality() {
+            return 1f - compressionLevel / 9f;
+        }
+
+        /**
+         * The palette the image can be reduced to without losses, or null if the image should be
+         * encoded as is
+         */
+        public IndexColorModel getPalette() {
+            return palette;
+        }
+
+        @Override
+        public String toString() {
+            return "PNG encoding [filter=" + filterType + ", level=" + compressionLevel
+                    + ", palette=" + (palette != null ? palette.getMapSize() + " colors" : "none")
+                    + "] for transparent=" + Math.round(transparentRatio * 100) + "%, colors="
+                    + (sampledColors > 256 ? ">256" : String.valueOf(sampledColors))
+                    + ", entropy=" + Math.round(entropy * 100) / 100d + ", sub entropy="
+                    + Math.round(subEntropy * 100) / 100d;
+        }
+    }
+
+    /**
+     * Picks the encoding parameters for a rendered map, using the map styles to look for a
+     * lossless palette
+     *
+     * @param image the rendered map
+     * @param mapContent the map content
+     * @param defaultLevel the configured compression level, between 0 and 9
+     */
+    public static Decision advise(RenderedImage image, WMSMapContent mapContent, int defaultLevel) {
+        IndexColorModel palette = null;
+        if (mapContent.getPalette() == null && !(image.getColorModel() instanceof IndexColorModel)) {
+            palette = getStylePalette(mapContent);
+        }
+        return advise(image, palette, defaultLevel);
+    }
+
+    /**
+     * Picks the encoding parameters for an image
+     *
+     * @param image the image to be encoded
+     * @param candidatePalette a palette the image might be reduced to, or null
+     * @param defaultLevel the configured compression level, between 0 and 9
+     */
+    public static Decision advise(RenderedImage image, IndexColorModel candidatePalette,
+            int defaultLevel) {
+        Decision decision = new Decision(defaultLevel);
+        ColorModel cm = image.getColorModel();
+        SampleModel sm = image.getSampleModel();
+        boolean indexed = cm instanceof IndexColorModel;
+        if (sm.getDataType() != DataBuffer.TYPE_BYTE || sm.getNumBands() > 4
+                || cm.isAlphaPremultiplied()
+                || !(indexed || cm instanceof ComponentColorModel)) {
+            // not something we can sample cheaply, and will be rescaled to bytes later anyways
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Cannot sample the image, using the default PNG encoding parameters");
+            }
+            return decision;
+        }
+
+        // sample full rows, the SUB filter works on consecutive samples
+        int bands = sm.getNumBands();
+        int alphaBand = !indexed && cm.hasAlpha() ? bands - 1 : -1;
+        boolean rgb = !indexed && bands >= 3;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int rows = Math.min(SAMPLE_ROWS, height);
+        long[] histogram = new long[256];
+        long[] subHistogram = new long[256];
+        Set<Integer> colors = new HashSet<Integer>();
+        boolean translucent = false;
+        long transparent = 0;
+        long pixels = 0;
+        int[] samples = new int[width * bands];
+        for (int i = 0; i < rows; i++) {
+            int y = image.getMinY() + (int) ((i + 0.5) * height / rows);
+            Raster raster = image.getData(new Rectangle(image.getMinX(), y, width, 1));
+            raster.getPixels(image.getMinX(), y, width, 1, samples);
+            for (int x = 0, s = 0; x < width; x++) {
+                int key = 0;
+                for (int b = 0; b < bands; b++, s++) {
+                    int sample = samples[s];
+                    histogram[sample & 0xFF]++;
+                    int left = x > 0 ? samples[s - bands] : 0;
+                    subHistogram[(sample - left) & 0xFF]++;
+                    key = (key << 8) | sample;
+                }
+
+                int alpha = 255;
+                if (indexed) {
+                    alpha = ((IndexColorModel) cm).getAlpha(key);
+                } else if (alphaBand >= 0) {
+                    alpha = samples[s - 1];
+                }
+                if (alpha == 0) {
+                    transparent++;
+                    // the color of fully transparent pixels is irrelevant
+                    key = 0;
+                } else if (alpha < 255) {
+                    translucent = true;
+                }
+                if (rgb) {
+                    // turn the key into ARGB, no matter if alpha is there
+                    key = alphaBand >= 0 ? (key >>> 8) | (alpha << 24) : key | 0xFF000000;
+                    if (alpha == 0) {
+                        key = 0;
+                    }
+                }
+                // no need to keep on counting, the image is not going to be paletted
+                if (colors.size() <= 256) {
+                    colors.add(key);
+                }
+            }
+            pixels += width;
+        }
+
+        decision.transparentRatio = pixels > 0 ? transparent / (double) pixels : 0;
+        decision.sampledColors = colors.size();
+        decision.entropy = entropy(histogram);
+        decision.subEntropy = entropy(subHistogram);
+
+        // palette reduction, only if all the sampled colors are in the palette, anti-aliased
+        // or translucent maps will have extra colors and will be left alone. The sampled rows
+        // can miss colors, so the whole image is checked before going for it
+        if (candidatePalette != null && rgb && !translucent && colors.size() <= 256) {
+            Set<Integer> paletteColors = getColors(candidatePalette);
+            if (paletteColors.containsAll(colors)
+                    && isInPalette(image, paletteColors, bands, alphaBand)) {
+                decision.palette = candidatePalette;
+            }
+        }
+
+        // paletted images are usually better off without filtering, and so are the very redundant
+        // ones (e.g., mostly transparent overlays), for the others check if predicting from the
+        // left sample actually helps
+        double entropy = decision.entropy;
+        if (indexed || decision.palette != null || decision.entropy < LOW_ENTROPY
+                || decision.subEntropy > decision.entropy * SUB_GAIN) {
+            decision.filterType = FilterType.FILTER_NONE;
+        } else {
+            decision.filterType = FilterType.FILTER_SUB;
+            entropy = decision.subEntropy;
+        }
+
+        if (entropy > HIGH_ENTROPY) {
+            decision.compressionLevel = Math.min(defaultLevel, FAST_LEVEL);
+        } else if (entropy < LOW_ENTROPY) {
+            decision.compressionLevel = Math.max(defaultLevel, STRONG_LEVEL);
+        }
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(decision.toString());
+        }
+        return decision;
+    }
+
+    /**
+     * Returns the palette computed out of the map styles, or null if the styles use colors that
+     * are not known in advance
+     */
+    static IndexColorModel getStylePalette(WMSMapContent mapContent) {
+        Color background = mapContent.isTransparent() ? null : mapContent.getBgColor();
+        PaletteExtractor pe = new PaletteExtractor(background);
+        List<Layer> layers = mapContent.layers();
+        for (int i = 0; i < layers.size(); i++) {
+            Style style = layers.get(i).getStyle();
+            if (style == null) {
+                return null;
+            }
+            pe.visit(style);
+            if (!pe.canComputePalette()) {
+                return null;
+            }
+        }
+        return pe.getPalette();
+    }
+
+    /**
+     * Returns the ARGB colors of the palette, with fully transparent ones encoded as zero
+     */
+    static Set<Integer> getColors(IndexColorModel palette) {
+        Set<Integer> paletteColors = new HashSet<Integer>();
+        for (int i = 0; i < palette.getMapSize(); i++) {
+            int argb = palette.getRGB(i);
+            paletteColors.add((argb >>> 24) == 0 ? 0 : argb);
+        }
+        return paletteColors;
+    }
+
+    /**
+     * Checks every pixel of a RGB(A) byte image is either opaque or fully transparent, and has
+     * one of the palette colors
+     *
+     * @param image the image to check
+     * @param paletteColors the ARGB palette colors, with fully transparent ones encoded as zero
+     * @param bands the number of bands of the image
+     * @param alphaBand the index of the alpha band, or -1 if the image has no alpha
+     */
+    static boolean isInPalette(RenderedImage image, Set<Integer> paletteColors, int bands,
+            int alphaBand) {
+        int minX = image.getMinX();
+        int width = image.getWidth();
+        int maxY = image.getMinY() + image.getHeight();
+        int[] samples = new int[width * bands * CHECK_STRIP_ROWS];
+        // maps are made of large areas of the same color, avoid most of the set lookups
+        int lastColor = 0;
+        boolean lastFound = false;
+        for (int y = image.getMinY(); y < maxY; y += CHECK_STRIP_ROWS) {
+            int rows = Math.min(CHECK_STRIP_ROWS, maxY - y);
+            Raster raster = image.getData(new Rectangle(minX, y, width, rows));
+            raster.getPixels(minX, y, width, rows, samples);
+            for (int s = 0, end = width * bands * rows; s < end; s += bands) {
+                int argb;
+                int alpha = alphaBand >= 0 ? samples[s + alphaBand] : 255;
+                if (alpha == 0) {
+                    argb = 0;
+                } else if (alpha < 255) {
+                    return false;
+                } else {
+                    argb = 0xFF000000 | (samples[s] << 16) | (samples[s + 1] << 8)
+                            | samples[s + 2];
+                }
+                if (!lastFound || argb != lastColor) {
+                    if (!paletteColors.contains(argb)) {
+                        return false;
+                    }
+                    lastColor = argb;
+                    lastFound = true;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Shannon entropy of the histogram, in bits per byte
+     */
+    static double entropy(long[] histogram) {
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        double entropy = 0;
+        for (long count : histogram) {
+            if (count > 0) {
+                double p = count / (double) total;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+}
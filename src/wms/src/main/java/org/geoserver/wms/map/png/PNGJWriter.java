@@ -24,7 +24,8 @@ import org.geotools.util.logging.Logging;
 import ar.com.hjg.pngj.FilterType;
 
 /**
- * Encodes the image in PNG using the PNGJ library
+ * Encodes the image in PNG using the PNGJ library, or the {@link ParallelPNGEncoder} for large
+ * images when parallel compression is enabled
  * 
  * @author Andrea Aime - GeoSolutions
  */
@@ -32,10 +33,44 @@ public class PNGJWriter {
 
     private static final Logger LOGGER = Logging.getLogger(PNGJWriter.class);
 
+    private int parallelThreshold;
+
+    private int parallelThreads;
+
+    /**
+     * Builds a writer compressing the images on the calling thread
+     */
+    public PNGJWriter() {
+        this(0, 1);
+    }
+
+    /**
+     * Builds a writer compressing the images in parallel when they are large enough
+     * 
+     * @param parallelThreshold the minimum number of pixels for an image to be compressed in
+     *        parallel, zero or negative to disable parallel compression
+     * @param parallelThreads the max number of blocks compressed in parallel for a single image
+     */
+    public PNGJWriter(int parallelThreshold, int parallelThreads) {
+        this.parallelThreshold = parallelThreshold;
+        this.parallelThreads = parallelThreads;
+    }
+
     public RenderedImage writePNG(RenderedImage image, OutputStream outStream, float quality,
             WMSMapContent mapContent) {
         // what kind of scaline filtering are we going to use?
         FilterType filterType = getFilterType(mapContent);
+        return writePNG(image, outStream, quality, filterType);
+    }
+
+    /**
+     * Encodes the image using the specified scanline filter
+     * 
+     * @param filterType the scanline filter, the parallel encoder only supports NONE and SUB and
+     *        will use NONE for the others
+     */
+    public RenderedImage writePNG(RenderedImage image, OutputStream outStream, float quality,
+            FilterType filterType) {
         // Creation of a new PNGWriter object
         PNGWriter writer = new PNGWriter();
         // Check if a Scanline is supported by the writer
@@ -48,6 +83,13 @@ public class PNGJWriter {
         RenderedImage output = null;
         // Image writing
         try {
+            if (isParallel(image)) {
+                // same compression level as PNGWriter
+                int level = Math.round(9 * (1f - quality));
+                new ParallelPNGEncoder(parallelThreads).encode(image, outStream, level,
+                        filterType == FilterType.FILTER_SUB);
+                return image;
+            }
             output =  writer.writePNG(image, outStream, quality, filterType);
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Failed to encode the PNG", e);
@@ -57,6 +99,12 @@ public class PNGJWriter {
         return output;
     }
 
+    private boolean isParallel(RenderedImage image) {
+        return parallelThreshold > 0 && parallelThreads > 1
+                && (long) image.getWidth() * image.getHeight() >= parallelThreshold
+                && ParallelPNGEncoder.canEncode(image);
+    }
+
     /**
      * SUB filtering is useful for raster images with "high" variation, otherwise we go for NONE,
      * empirically it provides better compression at lower effort
@@ -0,0 +1,381 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.png;
+
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Encodes 8 bit images in PNG compressing blocks of rows in parallel, pigz style: each block is
+ * deflated on its own, using the tail of the previous block as the preset dictionary so that the
+ * compression ratio is barely affected, and the raw deflate streams are then concatenated (all
+ * but the last one are sync flushed) into a single zlib stream, whose checksum is computed by
+ * combining the ones of the blocks.
+ * <p>
+ * Only the common map image layouts are supported, see {@link #canEncode(RenderedImage)}, the
+ * others are left to the PNGJ based encoder.
+ * </p>
+ */
+public class ParallelPNGEncoder {
+
+    static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+
+    static final byte[] IHDR = { 'I', 'H', 'D', 'R' };
+
+    static final byte[] PLTE = { 'P', 'L', 'T', 'E' };
+
+    static final byte[] TRNS = { 't', 'R', 'N', 'S' };
+
+    static final byte[] IDAT = { 'I', 'D', 'A', 'T' };
+
+    static final byte[] IEND = { 'I', 'E', 'N', 'D' };
+
+    /**
+     * zlib header, deflate with a 32KB window and default compression flag
+     */
+    static final byte[] ZLIB_HEADER = { 0x78, (byte) 0x9C };
+
+    /**
+     * The deflate window, how much data of the previous block is used as the dictionary
+     */
+    static final int WINDOW_SIZE = 32768;
+
+    /**
+     * Blocks smaller than this are not worth the overhead
+     */
+    static final int MIN_BLOCK_ROWS = 16;
+
+    static final int FILTER_NONE = 0;
+
+    static final int FILTER_SUB = 1;
+
+    /**
+     * Shared among all the requests, the number of blocks of each image bounds the concurrency of
+     * a single encoding
+     */
+    private static ExecutorService POOL;
+
+    int threads;
+
+    public ParallelPNGEncoder(int threads) {
+        this.threads = threads;
+    }
+
+    static synchronized ExecutorService getPool() {
+        if (POOL == null) {
+            CustomizableThreadFactory factory = new CustomizableThreadFactory("PNGEncoder-");
+            factory.setDaemon(true);
+            POOL = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    factory);
+        }
+        return POOL;
+    }
+
+    /**
+     * Returns true if the image is 8 bit gray, gray/alpha, RGB, RGBA (not premultiplied) or
+     * paletted, with a byte sample model
+     */
+    public static boolean canEncode(RenderedImage image) {
+        SampleModel sm = image.getSampleModel();
+        ColorModel cm = image.getColorModel();
+        if (sm.getDataType() != DataBuffer.TYPE_BYTE || cm == null) {
+            return false;
+        }
+        for (int i = 0; i < sm.getNumBands(); i++) {
+            if (sm.getSampleSize(i) != 8) {
+                return false;
+            }
+        }
+        if (cm instanceof IndexColorModel) {
+            return sm.getNumBands() == 1;
+        } else if (cm instanceof ComponentColorModel) {
+            int bands = sm.getNumBands();
+            int csType = cm.getColorSpace().getType();
+            return !cm.isAlphaPremultiplied()
+                    && bands == cm.getNumComponents()
+                    && (((bands == 1 || bands == 2) && csType == ColorSpace.TYPE_GRAY) || ((bands == 3 || bands == 4) && csType == ColorSpace.TYPE_RGB));
+        }
+        return false;
+    }
+
+    /**
+     * Encodes the image
+     *
+     * @param image the image, must be supported according to {@link #canEncode(RenderedImage)}
+     * @param out the destination stream
+     * @param level the deflate compression level
+     * @param sub true to use the SUB scanline filter, false to avoid filtering
+     */
+    public void encode(final RenderedImage image, OutputStream out, final int level,
+            final boolean sub) throws IOException {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int bands = image.getSampleModel().getNumBands();
+        ColorModel cm = image.getColorModel();
+
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.write(SIGNATURE);
+        writeHeader(dos, width, height, cm, bands);
+        if (cm instanceof IndexColorModel) {
+            writePalette(dos, (IndexColorModel) cm);
+        }
+
+        // single tile images can be shared among the workers, otherwise each copies its rows
+        final Raster tile = image.getNumXTiles() == 1 && image.getNumYTiles() == 1 ? image
+                .getTile(image.getMinTileX(), image.getMinTileY()) : null;
+        final int blockRows = Math.max(MIN_BLOCK_ROWS, (height + threads - 1) / threads);
+        List<Future<Block>> futures = new ArrayList<Future<Block>>();
+        ExecutorService pool = getPool();
+        try {
+            for (int y = 0; y < height; y += blockRows) {
+                final int startRow = y;
+                final int endRow = Math.min(height, y + blockRows);
+                futures.add(pool.submit(new Callable<Block>() {
+
+                    @Override
+                    public Block call() throws Exception {
+                        return compress(image, tile, startRow, endRow, bands, level, sub);
+                    }
+                }));
+            }
+
+            // write out the blocks as they are ready, in order
+            long adler = 1;
+            for (int i = 0; i < futures.size(); i++) {
+                Block block = futures.get(i).get();
+                byte[] prefix = i == 0 ? ZLIB_HEADER : null;
+                byte[] suffix = null;
+                adler = combineAdler32(adler, block.adler, block.length);
+                if (i == futures.size() - 1) {
+                    suffix = new byte[] { (byte) (adler >>> 24), (byte) (adler >>> 16),
+                            (byte) (adler >>> 8), (byte) adler };
+                }
+                writeChunk(dos, IDAT, prefix, block.data, block.data.length, suffix);
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while encoding the PNG image", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed to encode the PNG image", cause);
+        } finally {
+            for (Future<Block> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        writeChunk(dos, IEND, null, new byte[0], 0, null);
+        dos.flush();
+    }
+
+    /**
+     * A compressed block of rows
+     */
+    static class Block {
+        byte[] data;
+
+        long adler;
+
+        long length;
+    }
+
+    Block compress(RenderedImage image, Raster tile, int startRow, int endRow, int bands,
+            int level, boolean sub) {
+        int width = image.getWidth();
+        int rowLength = width * bands + 1;
+
+        // the previous rows provide the dictionary, the next ones are the data to compress
+        int dictionaryRows = Math.min(startRow, (WINDOW_SIZE + rowLength - 1) / rowLength);
+        int firstRow = startRow - dictionaryRows;
+        Raster raster = tile;
+        if (raster == null) {
+            raster = image.getData(new Rectangle(image.getMinX(), image.getMinY() + firstRow,
+                    width, endRow - firstRow));
+        }
+        byte[] filtered = new byte[(endRow - firstRow) * rowLength];
+        byte[] row = new byte[width * bands];
+        for (int r = firstRow; r < endRow; r++) {
+            raster.getDataElements(image.getMinX(), image.getMinY() + r, width, 1, row);
+            int offset = (r - firstRow) * rowLength;
+            if (sub) {
+                filtered[offset] = FILTER_SUB;
+                for (int i = 0; i < bands && i < row.length; i++) {
+                    filtered[offset + 1 + i] = row[i];
+                }
+                for (int i = bands; i < row.length; i++) {
+                    filtered[offset + 1 + i] = (byte) (row[i] - row[i - bands]);
+                }
+            } else {
+                filtered[offset] = FILTER_NONE;
+                System.arraycopy(row, 0, filtered, offset + 1, row.length);
+            }
+        }
+        int dataOffset = dictionaryRows * rowLength;
+        int dataLength = filtered.length - dataOffset;
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dataOffset > 0) {
+                int dictionaryLength = Math.min(WINDOW_SIZE, dataOffset);
+                deflater.setDictionary(filtered, dataOffset - dictionaryLength, dictionaryLength);
+            }
+            deflater.setInput(filtered, dataOffset, dataLength);
+            boolean last = endRow == image.getHeight();
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(dataLength / 4 + 64);
+            byte[] buffer = new byte[65536];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buffer);
+                    bos.write(buffer, 0, count);
+                }
+            } else {
+                // sync flush, aligns the output to a byte boundary without ending the stream
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    bos.write(buffer, 0, count);
+                } while (count == buffer.length);
+            }
+
+            Adler32 adler = new Adler32();
+            adler.update(filtered, dataOffset, dataLength);
+
+            Block block = new Block();
+            block.data = bos.toByteArray();
+            block.adler = adler.getValue();
+            block.length = dataLength;
+            return block;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    void writeHeader(DataOutputStream dos, int width, int height, ColorModel cm, int bands)
+            throws IOException {
+        int colorType;
+        if (cm instanceof IndexColorModel) {
+            colorType = 3;
+        } else if (bands == 1) {
+            colorType = 0;
+        } else if (bands == 2) {
+            colorType = 4;
+        } else if (bands == 3) {
+            colorType = 2;
+        } else {
+            colorType = 6;
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(13);
+        DataOutputStream header = new DataOutputStream(bos);
+        header.writeInt(width);
+        header.writeInt(height);
+        header.writeByte(8); // bit depth
+        header.writeByte(colorType);
+        header.writeByte(0); // deflate compression
+        header.writeByte(0); // adaptive filtering
+        header.writeByte(0); // no interlacing
+        byte[] data = bos.toByteArray();
+        writeChunk(dos, IHDR, null, data, data.length, null);
+    }
+
+    void writePalette(DataOutputStream dos, IndexColorModel icm) throws IOException {
+        int size = icm.getMapSize();
+        byte[] palette = new byte[size * 3];
+        byte[] alphas = new byte[size];
+        int lastTranslucent = -1;
+        for (int i = 0; i < size; i++) {
+            palette[i * 3] = (byte) icm.getRed(i);
+            palette[i * 3 + 1] = (byte) icm.getGreen(i);
+            palette[i * 3 + 2] = (byte) icm.getBlue(i);
+            alphas[i] = (byte) icm.getAlpha(i);
+            if (icm.getAlpha(i) != 255) {
+                lastTranslucent = i;
+            }
+        }
+        writeChunk(dos, PLTE, null, palette, palette.length, null);
+        if (icm.getTransparency() != Transparency.OPAQUE && lastTranslucent >= 0) {
+            writeChunk(dos, TRNS, null, alphas, lastTranslucent + 1, null);
+        }
+    }
+
+    /**
+     * Writes a chunk whose data is made of an optional prefix, the first <code>length</code> bytes
+     * of data, and an optional suffix
+     */
+    void writeChunk(DataOutputStream dos, byte[] type, byte[] prefix, byte[] data, int length,
+            byte[] suffix) throws IOException {
+        int prefixLength = prefix != null ? prefix.length : 0;
+        int suffixLength = suffix != null ? suffix.length : 0;
+        dos.writeInt(prefixLength + length + suffixLength);
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        dos.write(type);
+        if (prefix != null) {
+            crc.update(prefix);
+            dos.write(prefix);
+        }
+        crc.update(data, 0, length);
+        dos.write(data, 0, length);
+        if (suffix != null) {
+            crc.update(suffix);
+            dos.write(suffix);
+        }
+        dos.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Computes the Adler-32 checksum of two concatenated sequences, given their own checksums and
+     * the length of the second one (same as zlib adler32_combine)
+     */
+    static long combineAdler32(long adler1, long adler2, long length2) {
+        final long base = 65521;
+        long remainder = length2 % base;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (remainder * sum1) % base;
+        sum1 += (adler2 & 0xffff) + base - 1;
+        sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + base - remainder;
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum2 >= (base << 1)) {
+            sum2 -= (base << 1);
+        }
+        if (sum2 >= base) {
+            sum2 -= base;
+        }
+        return sum1 | (sum2 << 16);
+    }
+}
@@ -0,0 +1,85 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.capabilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.data.test.MockData;
+import org.geoserver.wms.WMS;
+import org.geoserver.wms.WMSInfo;
+import org.geoserver.wms.WMSTestSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CapabilitiesCacheTest extends WMSTestSupport {
+
+    static final String CAPS_111 = "wms?service=WMS&version=1.1.1&request=GetCapabilities";
+
+    static final String CAPS_130 = "wms?service=WMS&version=1.3.0&request=GetCapabilities";
+
+    CapabilitiesCache cache;
+
+    @Before
+    public void enableCache() {
+        setCacheEnabled(true);
+        cache = CapabilitiesCache.get();
+        cache.clear();
+    }
+
+    @After
+    public void disableCache() {
+        setCacheEnabled(false);
+    }
+
+    void setCacheEnabled(boolean enabled) {
+        WMSInfo wms = getGeoServer().getService(WMSInfo.class);
+        wms.getMetadata().put(WMS.CAPABILITIES_CACHE_KEY, enabled);
+        getGeoServer().save(wms);
+    }
+
+    @Test
+    public void testCached() throws Exception {
+        String caps = getAsString(CAPS_130);
+        assertEquals(1, cache.size());
+        assertEquals(caps, getAsString(CAPS_130));
+        // parameter order and case do not matter
+        assertEquals(caps,
+                getAsString("wms?REQUEST=GetCapabilities&VERSION=1.3.0&SERVICE=WMS"));
+        assertEquals(1, cache.size());
+
+        getAsString(CAPS_111);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testCatalogChangeInvalidates() throws Exception {
+        String caps = getAsString(CAPS_130);
+        assertFalse(caps.contains("A cached title"));
+        assertEquals(1, cache.size());
+
+        LayerInfo layer = getCatalog().getLayerByName(getLayerId(MockData.BASIC_POLYGONS));
+        String title = layer.getResource().getTitle();
+        layer.getResource().setTitle("A cached title");
+        getCatalog().save(layer.getResource());
+        try {
+            assertEquals(0, cache.size());
+            assertTrue(getAsString(CAPS_130).contains("A cached title"));
+        } finally {
+            layer.getResource().setTitle(title);
+            getCatalog().save(layer.getResource());
+        }
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        setCacheEnabled(false);
+        getAsString(CAPS_130);
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,84 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.geotools.renderer.label.LabelCacheImpl;
+import org.junit.Test;
+
+public class LabelCacheViewTest {
+
+    /**
+     * Records the calls reaching the shared cache
+     */
+    static class RecordingLabelCache extends LabelCacheImpl {
+        List<String> calls = new ArrayList<String>();
+
+        @Override
+        public void startLayer(String layerId) {
+            calls.add("start " + layerId);
+        }
+
+        @Override
+        public void put(Rectangle2D area) {
+            calls.add("put " + (int) area.getX());
+        }
+
+        @Override
+        public void clear(String layerId) {
+            calls.add("clear " + layerId);
+        }
+    }
+
+    @Test
+    public void testReplayInGroupOrder() throws Exception {
+        List<List<String>> runs = new ArrayList<List<String>>();
+        for (int run = 0; run < 2; run++) {
+            final RecordingLabelCache shared = new RecordingLabelCache();
+            final List<LabelCacheView> views = new ArrayList<LabelCacheView>();
+            for (int i = 0; i < 3; i++) {
+                views.add(new LabelCacheView(shared, i));
+            }
+
+            // fill the views concurrently, in opposite orders on each run
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int i = 0; i < views.size(); i++) {
+                final int group = run == 0 ? i : views.size() - 1 - i;
+                Thread thread = new Thread() {
+                    public void run() {
+                        LabelCacheView view = views.get(group);
+                        view.startLayer("0");
+                        view.put(new Rectangle2D.Double(group, 0, 1, 1));
+                        view.clear("1");
+                    }
+                };
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            // nothing reaches the shared cache before the replay
+            assertTrue(shared.calls.isEmpty());
+
+            for (LabelCacheView view : views) {
+                view.replay();
+            }
+            runs.add(shared.calls);
+        }
+
+        List<String> expected = Arrays.asList("start 0_0", "put 0", "clear 0_1", "start 1_0",
+                "put 1", "clear 1_1", "start 2_0", "put 2", "clear 2_1");
+        assertEquals(expected, runs.get(0));
+        assertEquals(expected, runs.get(1));
+    }
+}
@@ -6,10 +6,31 @@
 package org.geoserver.wms.map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.awt.Point;
 import java.awt.geom.Point2D;
-
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.geoserver.wms.map.QuickTileCache.MapKey;
+import org.geoserver.wms.map.QuickTileCache.MetaTileKey;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultEngineeringCRS;
 import org.junit.Test;
 
 import com.vividsolutions.jts.geom.Envelope;
@@ -67,4 +88,167 @@ public class QuickTileCacheTest {
         assertEquals(new Point(0, 2), cache.getTileOffsetsInMeta(box1, meta));
         assertEquals(new Point(1, 2), cache.getTileOffsetsInMeta(box2, meta));
     }
+
+    MetaTileKey key(int x) {
+        MapKey mapKey = new MapKey("abcd", 0.01, new Point2D.Double(0, 0));
+        return new MetaTileKey(mapKey, new Point(x, 0), new ReferencedEnvelope(0, 10, 0, 10,
+                DefaultEngineeringCRS.GENERIC_2D));
+    }
+
+    RenderedImage[] tiles() {
+        RenderedImage[] tiles = new RenderedImage[9];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = new BufferedImage(256, 256, BufferedImage.TYPE_4BYTE_ABGR);
+        }
+        return tiles;
+    }
+
+    @Test
+    public void testBoundedSize() throws Exception {
+        // each meta tile uses 9 * 256KB
+        cache.setMaxSize(20 * 1024 * 1024);
+        for (int i = 0; i < 100; i++) {
+            cache.storeTiles(key(i), tiles());
+        }
+        // the last one is still there
+        cache.getTiles(key(99), new Callable<RenderedImage[]>() {
+
+            @Override
+            public RenderedImage[] call() throws Exception {
+                throw new AssertionError("Should have been a cache hit");
+            }
+        });
+        assertTrue(cache.size() * 9 * 256 * 1024 <= cache.getMaxSize());
+        assertEquals(100 - cache.size(), cache.getStatistics().evictionCount());
+        assertEquals(1, cache.getStatistics().hitCount());
+    }
+
+    @Test
+    public void testConcurrentLoadsCoalesced() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final RenderedImage[] tiles = tiles();
+        final Callable<RenderedImage[]> loader = new Callable<RenderedImage[]>() {
+
+            @Override
+            public RenderedImage[] call() throws Exception {
+                loads.incrementAndGet();
+                loading.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                return tiles;
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<RenderedImage[]> first = executor.submit(new Callable<RenderedImage[]>() {
+
+                @Override
+                public RenderedImage[] call() throws Exception {
+                    return cache.getTiles(key(0), loader);
+                }
+            });
+            loading.await(10, TimeUnit.SECONDS);
+            Future<RenderedImage[]> second = executor.submit(new Callable<RenderedImage[]>() {
+
+                @Override
+                public RenderedImage[] call() throws Exception {
+                    return cache.getTiles(key(0), loader);
+                }
+            });
+            release.countDown();
+
+            assertSame(tiles, first.get());
+            assertSame(tiles, second.get());
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testTransactionInvalidates() throws Exception {
+        cache.storeTiles(key(0), tiles());
+        assertEquals(1, cache.size());
+
+        cache.dataStoreChange(null);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidatedWhileLoading() throws Exception {
+        RenderedImage[] result = cache.getTiles(key(0), new Callable<RenderedImage[]>() {
+
+            @Override
+            public RenderedImage[] call() throws Exception {
+                // the data changes while the meta tile is being rendered
+                cache.dataStoreChange(null);
+                return tiles();
+            }
+        });
+        assertNotNull(result);
+        // the possibly stale tiles have not been kept
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testStaleEntryNotReturned() throws Exception {
+        cache.storeTiles(key(0), tiles());
+        // an invalidation the entry slipped past, e.g., stored by a rendering that started before
+        cache.generation.incrementAndGet();
+        assertEquals(1, cache.size());
+
+        final RenderedImage[] fresh = tiles();
+        RenderedImage[] result = cache.getTiles(key(0), new Callable<RenderedImage[]>() {
+
+            @Override
+            public RenderedImage[] call() throws Exception {
+                return fresh;
+            }
+        });
+        assertSame(fresh, result);
+        // the fresh tiles are cached
+        result = cache.getTiles(key(0), new Callable<RenderedImage[]>() {
+
+            @Override
+            public RenderedImage[] call() throws Exception {
+                throw new AssertionError("Should have been a cache hit");
+            }
+        });
+        assertSame(fresh, result);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testStatisticsPublished() throws Exception {
+        QuickTileCacheMonitor monitor = new QuickTileCacheMonitor(cache);
+        monitor.afterPropertiesSet();
+        try {
+            final RenderedImage[] tiles = tiles();
+            Callable<RenderedImage[]> loader = new Callable<RenderedImage[]>() {
+
+                @Override
+                public RenderedImage[] call() throws Exception {
+                    return tiles;
+                }
+            };
+            // a miss with a load, then a hit
+            cache.getTiles(key(0), loader);
+            cache.getTiles(key(0), loader);
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(QuickTileCacheMonitor.OBJECT_NAME);
+            assertEquals(1L, server.getAttribute(name, "Size"));
+            assertEquals(cache.getMaxSize(), server.getAttribute(name, "MaxSize"));
+            assertEquals(1L, server.getAttribute(name, "HitCount"));
+            assertEquals(1L, server.getAttribute(name, "MissCount"));
+            assertEquals(1L, server.getAttribute(name, "LoadCount"));
+            assertEquals(0.5, (Double) server.getAttribute(name, "HitRate"), 0d);
+        } finally {
+            monitor.destroy();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(
+                new ObjectName(QuickTileCacheMonitor.OBJECT_NAME)));
+    }
 }
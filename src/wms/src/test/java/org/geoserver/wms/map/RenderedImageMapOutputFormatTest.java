@@ -47,6 +47,7 @@ import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -230,6 +231,83 @@ public class RenderedImageMapOutputFormatTest extends WMSTestSupport {
 
     @Test 
     public void testBlueLake() throws IOException, IllegalFilterException, Exception {
+        BufferedImage image = renderBlueLake();
+        assertNotBlank("testBlueLake", image);
+    }
+
+    @Test
+    public void testParallelRendering() throws Exception {
+        BufferedImage sequential = renderBlueLake();
+
+        WMSInfo wms = getGeoServer().getService(WMSInfo.class);
+        wms.getMetadata().put(WMS.PARALLEL_RENDERING_KEY, true);
+        getGeoServer().save(wms);
+        try {
+            // same map, layers rendered in parallel and composited
+            BufferedImage parallel = renderBlueLake();
+            ImageAssert.assertEquals(sequential, parallel, 100);
+        } finally {
+            wms.getMetadata().put(WMS.PARALLEL_RENDERING_KEY, false);
+            getGeoServer().save(wms);
+        }
+    }
+
+    @Test
+    public void testParallelRenderingLabels() throws Exception {
+        BufferedImage sequential = renderLabels();
+
+        WMSInfo wms = getGeoServer().getService(WMSInfo.class);
+        wms.getMetadata().put(WMS.PARALLEL_RENDERING_KEY, true);
+        getGeoServer().save(wms);
+        try {
+            // the conflicting labels of the groups must be resolved the same way on every run,
+            // and the same way as in sequential rendering
+            for (int i = 0; i < 5; i++) {
+                BufferedImage parallel = renderLabels();
+                ImageAssert.assertEquals(sequential, parallel, 0);
+            }
+        } finally {
+            wms.getMetadata().put(WMS.PARALLEL_RENDERING_KEY, false);
+            getGeoServer().save(wms);
+        }
+    }
+
+    @Test
+    public void testParallelRenderingGroups() throws Exception {
+        WMSInfo wms = getGeoServer().getService(WMSInfo.class);
+        wms.getMetadata().put(WMS.PARALLEL_RENDERING_KEY, true);
+        getGeoServer().save(wms);
+        try {
+            final WMSMapContent map = new WMSMapContent();
+            addToMap(map, MockData.FORESTS);
+            assertNull(rasterMapProducer.getParallelRenderingGroups(map));
+
+            addToMap(map, MockData.LAKES);
+            addToMap(map, MockData.STREAMS);
+            addToMap(map, MockData.BUILDINGS);
+            addToMap(map, MockData.BRIDGES);
+            List<List<Layer>> groups = rasterMapProducer.getParallelRenderingGroups(map);
+            if (DefaultWebMapService.getParallelRenderingThreads() < 2) {
+                assertNull(groups);
+            } else {
+                // contiguous groups, in map order
+                assertEquals(Math.min(5, DefaultWebMapService.getParallelRenderingThreads()),
+                        groups.size());
+                List<Layer> layers = new ArrayList<Layer>();
+                for (List<Layer> group : groups) {
+                    assertFalse(group.isEmpty());
+                    layers.addAll(group);
+                }
+                assertEquals(map.layers(), layers);
+            }
+            map.dispose();
+        } finally {
+            wms.getMetadata().put(WMS.PARALLEL_RENDERING_KEY, false);
+            getGeoServer().save(wms);
+        }
+    }
+
+    private BufferedImage renderBlueLake() throws Exception {
         final Catalog catalog = getCatalog();
         org.geoserver.catalog.FeatureTypeInfo typeInfo = catalog.getFeatureTypeByName(
                 MockData.LAKES.getNamespaceURI(), MockData.LAKES.getLocalPart());
@@ -266,11 +344,50 @@ public class RenderedImageMapOutputFormatTest extends WMSTestSupport {
         RenderedImageMap imageMap = this.rasterMapProducer.produceMap(map);
         BufferedImage image = (BufferedImage) imageMap.getImage();
         imageMap.dispose();
-        assertNotBlank("testBlueLake", image);
+        return image;
     }
     
     
     
+    private BufferedImage renderLabels() throws Exception {
+        final Catalog catalog = getCatalog();
+        Envelope env = catalog.getFeatureTypeByName(MockData.LAKES.getNamespaceURI(),
+                MockData.LAKES.getLocalPart()).getFeatureSource(null, null).getBounds();
+        double shift = env.getWidth() / 6;
+        env = new Envelope(env.getMinX() - shift, env.getMaxX() + shift, env.getMinY() - shift,
+                env.getMaxY() + shift);
+
+        GetMapRequest request = new GetMapRequest();
+        final WMSMapContent map = new WMSMapContent();
+        int w = 200;
+        int h = (int) Math.round((env.getHeight() * w) / env.getWidth());
+        map.setMapWidth(w);
+        map.setMapHeight(h);
+        map.setBgColor(BG_COLOR);
+        map.setTransparent(true);
+        map.setRequest(request);
+
+        // big labels on a small map, so that the labels of the different layers conflict
+        StyleBuilder sb = new StyleBuilder();
+        Style style = sb.createStyle(sb.createTextSymbolizer(Color.BLACK,
+                sb.createFont("Serif", 24), "NAME"));
+        for (QName layer : new QName[] { MockData.FORESTS, MockData.LAKES, MockData.STREAMS,
+                MockData.NAMED_PLACES, MockData.ROAD_SEGMENTS, MockData.PONDS,
+                MockData.DIVIDED_ROUTES, MockData.BRIDGES }) {
+            FeatureSource fs = catalog.getFeatureTypeByName(layer.getNamespaceURI(),
+                    layer.getLocalPart()).getFeatureSource(null, null);
+            map.addLayer(new FeatureLayer(fs, style));
+        }
+
+        map.getViewport().setBounds(new ReferencedEnvelope(env, DefaultGeographicCRS.WGS84));
+
+        request.setFormat(getMapFormat());
+        RenderedImageMap imageMap = this.rasterMapProducer.produceMap(map);
+        BufferedImage image = (BufferedImage) imageMap.getImage();
+        imageMap.dispose();
+        return image;
+    }
+
     @Override
     protected void onSetUp(SystemTestData testData) throws Exception {
         super.onSetUp(testData);
@@ -0,0 +1,155 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.png;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.util.Random;
+
+import org.geoserver.wms.map.png.PNGEncodingAdvisor.Decision;
+import org.junit.Test;
+
+import ar.com.hjg.pngj.FilterType;
+
+public class PNGEncodingAdvisorTest {
+
+    static final IndexColorModel NO_PALETTE = null;
+
+    @Test
+    public void testNoise() {
+        BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_3BYTE_BGR);
+        Random random = new Random(0);
+        for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+
+        Decision decision = PNGEncodingAdvisor.advise(image, NO_PALETTE, 9);
+        assertEquals(FilterType.FILTER_NONE, decision.getFilterType());
+        assertEquals(PNGEncodingAdvisor.FAST_LEVEL, decision.getCompressionLevel());
+        assertNull(decision.getPalette());
+    }
+
+    @Test
+    public void testGradient() {
+        BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_3BYTE_BGR);
+        for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                image.setRGB(x, y, new Color(x, (x + y) / 2, y).getRGB());
+            }
+        }
+
+        Decision decision = PNGEncodingAdvisor.advise(image, NO_PALETTE, 2);
+        assertEquals(FilterType.FILTER_SUB, decision.getFilterType());
+        assertEquals(PNGEncodingAdvisor.STRONG_LEVEL, decision.getCompressionLevel());
+    }
+
+    @Test
+    public void testMostlyTransparent() {
+        BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(10, 10, 20, 20);
+        graphics.dispose();
+
+        Decision decision = PNGEncodingAdvisor.advise(image, NO_PALETTE, 2);
+        assertEquals(FilterType.FILTER_NONE, decision.getFilterType());
+        assertEquals(PNGEncodingAdvisor.STRONG_LEVEL, decision.getCompressionLevel());
+        assertNull(decision.getPalette());
+    }
+
+    @Test
+    public void testPaletteReduction() {
+        IndexColorModel palette = buildPalette(Color.RED, Color.BLUE);
+        BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(10, 10, 100, 100);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(120, 120, 100, 100);
+        graphics.dispose();
+
+        assertSame(palette, PNGEncodingAdvisor.advise(image, palette, 2).getPalette());
+
+        // anti-aliasing adds colors that are not in the palette
+        graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setColor(Color.RED);
+        graphics.drawLine(0, 0, 255, 200);
+        graphics.dispose();
+        assertNull(PNGEncodingAdvisor.advise(image, palette, 2).getPalette());
+    }
+
+    @Test
+    public void testPaletteColorOutsideSample() {
+        IndexColorModel palette = buildPalette(Color.RED, Color.BLUE);
+        BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 256, 256);
+        graphics.dispose();
+        assertSame(palette, PNGEncodingAdvisor.advise(image, palette, 2).getPalette());
+
+        // a single green pixel on the first row, the sampled rows are the ones in the middle of
+        // each band of height / SAMPLE_ROWS rows
+        int y = 0;
+        assertTrue(image.getHeight() / PNGEncodingAdvisor.SAMPLE_ROWS > 1);
+        image.setRGB(100, y, Color.GREEN.getRGB());
+        assertNull(PNGEncodingAdvisor.advise(image, palette, 2).getPalette());
+    }
+
+    @Test
+    public void testIndexed() {
+        BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_BYTE_INDEXED);
+        for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                image.getRaster().setSample(x, y, 0, x);
+            }
+        }
+
+        // paletted images are not filtered, even if SUB would lower the entropy
+        Decision decision = PNGEncodingAdvisor.advise(image, NO_PALETTE, 2);
+        assertEquals(FilterType.FILTER_NONE, decision.getFilterType());
+        assertNull(decision.getPalette());
+    }
+
+    @Test
+    public void testUnsupported() {
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_USHORT_GRAY);
+        Decision decision = PNGEncodingAdvisor.advise(image, NO_PALETTE, 4);
+        assertNull(decision.getFilterType());
+        assertEquals(4, decision.getCompressionLevel());
+    }
+
+    @Test
+    public void testEntropy() {
+        assertEquals(0, PNGEncodingAdvisor.entropy(new long[256]), 0d);
+        long[] histogram = new long[256];
+        histogram[0] = 10;
+        assertEquals(0, PNGEncodingAdvisor.entropy(histogram), 0d);
+        histogram[1] = 10;
+        assertEquals(1, PNGEncodingAdvisor.entropy(histogram), 1e-9);
+    }
+
+    IndexColorModel buildPalette(Color... colors) {
+        int[] cmap = new int[colors.length + 1];
+        for (int i = 0; i < colors.length; i++) {
+            cmap[i] = colors[i].getRGB();
+        }
+        return new IndexColorModel(8, cmap.length, cmap, 0, true, colors.length,
+                DataBuffer.TYPE_BYTE);
+    }
+}
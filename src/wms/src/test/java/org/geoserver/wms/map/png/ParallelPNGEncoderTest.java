@@ -0,0 +1,100 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.png;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.zip.Adler32;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class ParallelPNGEncoderTest {
+
+    @Test
+    public void testCanEncode() {
+        assertTrue(ParallelPNGEncoder.canEncode(new BufferedImage(10, 10,
+                BufferedImage.TYPE_4BYTE_ABGR)));
+        assertTrue(ParallelPNGEncoder.canEncode(new BufferedImage(10, 10,
+                BufferedImage.TYPE_3BYTE_BGR)));
+        assertTrue(ParallelPNGEncoder.canEncode(new BufferedImage(10, 10,
+                BufferedImage.TYPE_BYTE_INDEXED)));
+        assertTrue(ParallelPNGEncoder.canEncode(new BufferedImage(10, 10,
+                BufferedImage.TYPE_BYTE_GRAY)));
+        // packed and premultiplied images are left to PNGJ
+        assertFalse(ParallelPNGEncoder.canEncode(new BufferedImage(10, 10,
+                BufferedImage.TYPE_INT_ARGB)));
+        assertFalse(ParallelPNGEncoder.canEncode(new BufferedImage(10, 10,
+                BufferedImage.TYPE_4BYTE_ABGR_PRE)));
+        assertFalse(ParallelPNGEncoder.canEncode(new BufferedImage(10, 10,
+                BufferedImage.TYPE_BYTE_BINARY)));
+    }
+
+    @Test
+    public void testCombineAdler32() {
+        byte[] data = new byte[100000];
+        new Random(0).nextBytes(data);
+        Adler32 full = new Adler32();
+        full.update(data);
+        Adler32 first = new Adler32();
+        first.update(data, 0, 40000);
+        Adler32 second = new Adler32();
+        second.update(data, 40000, 60000);
+
+        assertEquals(full.getValue(), ParallelPNGEncoder.combineAdler32(first.getValue(),
+                second.getValue(), 60000));
+        assertEquals(first.getValue(), ParallelPNGEncoder.combineAdler32(1, first.getValue(),
+                40000));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        int[] types = { BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_3BYTE_BGR,
+                BufferedImage.TYPE_BYTE_INDEXED, BufferedImage.TYPE_BYTE_GRAY };
+        for (int type : types) {
+            BufferedImage image = buildImage(type);
+            assertRoundTrip(image, true);
+            assertRoundTrip(image, false);
+        }
+    }
+
+    BufferedImage buildImage(int type) {
+        BufferedImage image = new BufferedImage(300, 400, type);
+        Graphics2D graphics = image.createGraphics();
+        Random random = new Random(0);
+        for (int i = 0; i < 200; i++) {
+            graphics.setColor(new Color(random.nextInt(256), random.nextInt(256), random
+                    .nextInt(256), random.nextInt(256)));
+            graphics.fillOval(random.nextInt(300), random.nextInt(400), random.nextInt(100),
+                    random.nextInt(100));
+        }
+        graphics.dispose();
+        return image;
+    }
+
+    void assertRoundTrip(BufferedImage image, boolean sub) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        // several blocks, the decoder checks the combined checksum too
+        new ParallelPNGEncoder(4).encode(image, bos, 4, sub);
+        BufferedImage read = ImageIO.read(new ByteArrayInputStream(bos.toByteArray()));
+
+        assertEquals(image.getWidth(), read.getWidth());
+        assertEquals(image.getHeight(), read.getHeight());
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                assertEquals(image.getRGB(x, y), read.getRGB(x, y));
+            }
+        }
+    }
+}